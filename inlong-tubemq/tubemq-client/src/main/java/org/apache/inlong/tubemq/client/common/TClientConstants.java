@@ -29,10 +29,16 @@ public class TClientConstants {
     public static final long CFG_DEFAULT_PUSH_LISTENER_WAIT_PERIOD_MS = 3000L;
     public static final long CFG_DEFAULT_PULL_REB_CONFIRM_WAIT_PERIOD_MS = 3000L;
     public static final long CFG_DEFAULT_PULL_PROTECT_CONFIRM_WAIT_PERIOD_MS = 60000L;
+    public static final long CFG_DEFAULT_PULL_PREFETCH_MAX_BYTES = 64 * 1024 * 1024L;
+    public static final int CFG_DEFAULT_PULL_ASYNC_CALLBACK_THREAD_CNT = 2;
+    public static final long CFG_DEFAULT_METRICS_REPORT_PERIOD_MS = 60000L;
     public static final long CFG_DEFAULT_SHUTDOWN_REBALANCE_WAIT_PERIOD_MS = 10000L;
     public static final long CFG_DEFAULT_HEARTBEAT_PERIOD_AFTER_RETRY_FAIL = 60000;
     public static final int CFG_DEFAULT_CLIENT_PUSH_FETCH_THREAD_CNT =
             Runtime.getRuntime().availableProcessors();
+    public static final int CFG_DEFAULT_BATCH_MAX_SIZE = 256 * 1024;
+    public static final int CFG_DEFAULT_BATCH_MAX_MSG_COUNT = 500;
+    public static final int CFG_DEFAULT_COMPRESS_MIN_SIZE = 1024;
 
     public static final int MAX_CONNECTION_FAILURE_LOG_TIMES = 10;
     public static final int MAX_SUBSCRIBE_REPORT_INTERVAL_TIMES = 6;
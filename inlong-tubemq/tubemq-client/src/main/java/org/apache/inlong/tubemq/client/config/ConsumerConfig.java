@@ -59,6 +59,20 @@ public class ConsumerConfig extends TubeClientConfig {
     private long pullProtectConfirmTimeoutMs =
             TClientConstants.CFG_DEFAULT_PULL_PROTECT_CONFIRM_WAIT_PERIOD_MS;
     private boolean pullConfirmInLocal = false;
+    // count of the threads prefetching messages for the pull consumer, 0 means not prefetch
+    private int pullPrefetchThreadCnt = 0;
+    // max bytes of the prefetched messages not taken by the pull consumer
+    private long pullPrefetchMaxBytes =
+            TClientConstants.CFG_DEFAULT_PULL_PREFETCH_MAX_BYTES;
+    // count of the threads completing the futures of the asynchronous pull requests
+    private int pullAsyncCallbackThreadCnt =
+            TClientConstants.CFG_DEFAULT_PULL_ASYNC_CALLBACK_THREAD_CNT;
+    // whether allow broker to send stored messages by file region
+    private boolean fetchByFileRegion = true;
+    // max time the broker holds a fetch that found no message, 0 means not wait
+    private int fetchMaxWaitMs = 0;
+    // consume from the messages received since this time, -1 means not used
+    private long consumeStartTimeMs = -1;
 
     public ConsumerConfig(String masterAddrInfo, String consumerGroup) {
         this(new MasterInfo(masterAddrInfo), consumerGroup);
@@ -219,6 +233,90 @@ public class ConsumerConfig extends TubeClientConfig {
         this.pullConfirmInLocal = pullConfirmInLocal;
     }
 
+    public int getPullPrefetchThreadCnt() {
+        return pullPrefetchThreadCnt;
+    }
+
+    /***
+     * Set the count of the threads fetching messages in background for the pull consumer,
+     * getMessage() then returns the prefetched messages. Each partition still has at most
+     * one batch fetched and not confirmed.
+     *
+     * @param pullPrefetchThreadCnt  the thread count, 0 means fetch in getMessage()
+     */
+    public void setPullPrefetchThreadCnt(int pullPrefetchThreadCnt) {
+        this.pullPrefetchThreadCnt = Math.max(0, pullPrefetchThreadCnt);
+    }
+
+    public long getPullPrefetchMaxBytes() {
+        return pullPrefetchMaxBytes;
+    }
+
+    public void setPullPrefetchMaxBytes(long pullPrefetchMaxBytes) {
+        if (pullPrefetchMaxBytes <= 0) {
+            this.pullPrefetchMaxBytes = TClientConstants.CFG_DEFAULT_PULL_PREFETCH_MAX_BYTES;
+        } else {
+            this.pullPrefetchMaxBytes = pullPrefetchMaxBytes;
+        }
+    }
+
+    public int getPullAsyncCallbackThreadCnt() {
+        return pullAsyncCallbackThreadCnt;
+    }
+
+    /***
+     * Set the count of the threads processing the responses of getMessageAsync() and
+     * confirmConsumeAsync(), the futures are completed by these threads instead of the
+     * network threads.
+     *
+     * @param pullAsyncCallbackThreadCnt  the thread count
+     */
+    public void setPullAsyncCallbackThreadCnt(int pullAsyncCallbackThreadCnt) {
+        if (pullAsyncCallbackThreadCnt <= 0) {
+            this.pullAsyncCallbackThreadCnt =
+                    TClientConstants.CFG_DEFAULT_PULL_ASYNC_CALLBACK_THREAD_CNT;
+        } else {
+            this.pullAsyncCallbackThreadCnt = pullAsyncCallbackThreadCnt;
+        }
+    }
+
+    public boolean isFetchByFileRegion() {
+        return fetchByFileRegion;
+    }
+
+    public void setFetchByFileRegion(boolean fetchByFileRegion) {
+        this.fetchByFileRegion = fetchByFileRegion;
+    }
+
+    public int getFetchMaxWaitMs() {
+        return fetchMaxWaitMs;
+    }
+
+    /***
+     * Set the max time the broker holds a fetch request until new messages arrive,
+     * the broker limits it by its own configuration and the rpc timeout.
+     *
+     * @param fetchMaxWaitMs  the wait time in milliseconds, 0 means not wait
+     */
+    public void setFetchMaxWaitMs(int fetchMaxWaitMs) {
+        this.fetchMaxWaitMs = Math.max(0, fetchMaxWaitMs);
+    }
+
+    public long getConsumeStartTimeMs() {
+        return consumeStartTimeMs;
+    }
+
+    /***
+     * Set the time to consume from, the consumer resets the group's offset of each
+     * partition to the first message received at or after this time when it registers
+     * the partition for the first time. The offsets bound by completeSubscribe() take priority.
+     *
+     * @param consumeStartTimeMs  the timestamp in milliseconds, -1 means not used
+     */
+    public void setConsumeStartTimeMs(long consumeStartTimeMs) {
+        this.consumeStartTimeMs = consumeStartTimeMs < 0 ? -1 : consumeStartTimeMs;
+    }
+
     public long getPullProtectConfirmTimeoutMs() {
         return pullProtectConfirmTimeoutMs;
     }
@@ -270,6 +368,12 @@ public class ConsumerConfig extends TubeClientConfig {
                 .append(",\"pullConfirmWaitPeriodMs\":").append(this.pullRebConfirmWaitPeriodMs)
                 .append(",\"pullProtectConfirmTimeoutPeriodMs\":").append(this.pullProtectConfirmTimeoutMs)
                 .append(",\"pullConfirmInLocal\":").append(this.pullConfirmInLocal)
+                .append(",\"pullPrefetchThreadCnt\":").append(this.pullPrefetchThreadCnt)
+                .append(",\"pullPrefetchMaxBytes\":").append(this.pullPrefetchMaxBytes)
+                .append(",\"pullAsyncCallbackThreadCnt\":").append(this.pullAsyncCallbackThreadCnt)
+                .append(",\"fetchByFileRegion\":").append(this.fetchByFileRegion)
+                .append(",\"fetchMaxWaitMs\":").append(this.fetchMaxWaitMs)
+                .append(",\"consumeStartTimeMs\":").append(this.consumeStartTimeMs)
                 .append(",\"ClientConfig\":").append(toJsonString())
                 .append("}").toString();
     }
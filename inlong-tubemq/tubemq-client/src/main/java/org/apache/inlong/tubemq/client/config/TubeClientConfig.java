@@ -18,9 +18,13 @@
 package org.apache.inlong.tubemq.client.config;
 
 import org.apache.inlong.tubemq.client.common.TClientConstants;
+import org.apache.inlong.tubemq.client.metrics.MetricsReporter;
 import org.apache.inlong.tubemq.corebase.cluster.MasterInfo;
 import org.apache.inlong.tubemq.corebase.config.TLSConfig;
 import org.apache.inlong.tubemq.corebase.utils.AddressUtils;
+import org.apache.inlong.tubemq.corebase.utils.MessageCompressUtils;
+import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
+import org.apache.inlong.tubemq.corebase.utils.MixedUtils;
 import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
 import org.apache.inlong.tubemq.corerpc.RpcConstants;
 
@@ -34,6 +38,10 @@ public class TubeClientConfig {
     private long rpcReadTimeoutMs = RpcConstants.CFG_RPC_READ_TIMEOUT_DEFAULT_MS;
     // Rpc connection processor number.
     private int rpcConnProcessorCnt = RpcConstants.CFG_DEFAULT_CLIENT_WORKER_COUNT;
+    // Rpc connection count to each broker.
+    private int rpcConnPoolSize = RpcConstants.CFG_DEFAULT_CLIENT_CONN_POOL_SIZE;
+    // Max in-flight requests of a rpc connection, 0 means not limited.
+    private int rpcMaxInflightRequests = RpcConstants.CFG_DEFAULT_CLIENT_MAX_INFLIGHT_REQUESTS;
     // Netty memory size.
     private int rpcNettyWorkMemorySize = RpcConstants.CFG_DEFAULT_TOTAL_MEM_SIZE;
     // The size of the thread pool, which handles the call back response.
@@ -91,6 +99,27 @@ public class TubeClientConfig {
     private String usrPassWord = "";
     // TLS configuration.
     private TLSConfig tlsConfig = new TLSConfig();
+    // How long an asynchronously sent message waits for other messages of
+    // the same partition to be sent in one batch, 0 means sent at once.
+    private long batchLingerMs = 0;
+    // Max total data size of a batch.
+    private int batchMaxSize = TClientConstants.CFG_DEFAULT_BATCH_MAX_SIZE;
+    // Max message count of a batch.
+    private int batchMaxMsgCount = TClientConstants.CFG_DEFAULT_BATCH_MAX_MSG_COUNT;
+    // Compression codec of the sent message data, see MessageFlagUtils.
+    private int compressCodec = MessageFlagUtils.COMPRESS_CODEC_NONE;
+    // Min data size of a message to be compressed.
+    private int compressMinSize = TClientConstants.CFG_DEFAULT_COMPRESS_MIN_SIZE;
+    // Whether choose the partition by the send latency and in-flight requests of its broker.
+    private boolean adaptivePartitionRouter = false;
+    // Attribute key of the message whose value keeps the message on one partition.
+    private String partitionKeyAttr = "";
+    // Whether record the latency histograms of the client, exposed by JMX.
+    private boolean enableClientMetrics = false;
+    // Period of handing the client metrics to the metrics reporter.
+    private long metricsReportPeriodMs = TClientConstants.CFG_DEFAULT_METRICS_REPORT_PERIOD_MS;
+    // Receiver of the client metrics, null means only exposed by JMX.
+    private MetricsReporter metricsReporter = null;
 
     public TubeClientConfig(String masterAddrInfo) {
         this(new MasterInfo(masterAddrInfo));
@@ -168,6 +197,39 @@ public class TubeClientConfig {
         }
     }
 
+    public int getRpcConnPoolSize() {
+        return rpcConnPoolSize;
+    }
+
+    /**
+     * Set the connection count to each broker, the requests are sent over
+     * the connection with the least in-flight requests.
+     *
+     * With more than one connection, the requests in flight at the same time may
+     * arrive at the broker out of order, so the messages sent asynchronously to a
+     * partition are not kept in send order. Keep the default 1 if the order matters.
+     *
+     * @param rpcConnPoolSize the connection count, between 1 and 16
+     */
+    public void setRpcConnPoolSize(int rpcConnPoolSize) {
+        this.rpcConnPoolSize = MixedUtils.mid(rpcConnPoolSize,
+                1, RpcConstants.CFG_MAX_CLIENT_CONN_POOL_SIZE);
+    }
+
+    public int getRpcMaxInflightRequests() {
+        return rpcMaxInflightRequests;
+    }
+
+    /**
+     * Set the max in-flight requests of a connection, the request exceeding
+     * the limit fails at once with OverflowException.
+     *
+     * @param rpcMaxInflightRequests the max in-flight requests, 0 means not limited
+     */
+    public void setRpcMaxInflightRequests(int rpcMaxInflightRequests) {
+        this.rpcMaxInflightRequests = Math.max(0, rpcMaxInflightRequests);
+    }
+
     public long getUnAvailableFbdDurationMs() {
         return unAvailableFbdDurationMs;
     }
@@ -437,6 +499,142 @@ public class TubeClientConfig {
         return tlsConfig.getTlsKeyStorePassword();
     }
 
+    public long getBatchLingerMs() {
+        return batchLingerMs;
+    }
+
+    /**
+     * Set the linger time of the asynchronously sent messages, the messages of
+     * a partition are sent in one batch when the batch is full or lingers for this time.
+     *
+     * @param batchLingerMs the linger time in milliseconds, 0 means sent at once
+     */
+    public void setBatchLingerMs(long batchLingerMs) {
+        this.batchLingerMs = Math.max(0, batchLingerMs);
+    }
+
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public void setBatchMaxSize(int batchMaxSize) {
+        if (batchMaxSize <= 0) {
+            throw new IllegalArgumentException("Illegal parameter: batchMaxSize must be greater than 0!");
+        }
+        this.batchMaxSize = batchMaxSize;
+    }
+
+    public int getBatchMaxMsgCount() {
+        return batchMaxMsgCount;
+    }
+
+    public void setBatchMaxMsgCount(int batchMaxMsgCount) {
+        if (batchMaxMsgCount <= 0) {
+            throw new IllegalArgumentException("Illegal parameter: batchMaxMsgCount must be greater than 0!");
+        }
+        this.batchMaxMsgCount = batchMaxMsgCount;
+    }
+
+    public int getCompressCodec() {
+        return compressCodec;
+    }
+
+    /**
+     * Set the compression codec of the sent message data, the data is stored
+     * compressed in broker and decompressed by consumer when it is read.
+     *
+     * @param compressCodec the codec defined in MessageFlagUtils, COMPRESS_CODEC_NONE by default
+     */
+    public void setCompressCodec(int compressCodec) {
+        if (!MessageCompressUtils.isSupportedCodec(compressCodec)) {
+            throw new IllegalArgumentException(new StringBuilder(512)
+                    .append("Illegal parameter: unsupported compressCodec ")
+                    .append(compressCodec).append("!").toString());
+        }
+        this.compressCodec = compressCodec;
+    }
+
+    public int getCompressMinSize() {
+        return compressMinSize;
+    }
+
+    public void setCompressMinSize(int compressMinSize) {
+        if (compressMinSize < 0) {
+            throw new IllegalArgumentException("Illegal parameter: compressMinSize must not be less than 0!");
+        }
+        this.compressMinSize = compressMinSize;
+    }
+
+    public boolean isAdaptivePartitionRouter() {
+        return adaptivePartitionRouter;
+    }
+
+    /**
+     * Set whether the producer chooses the less loaded partition of two random ones,
+     * the load is the send latency average multiplied by the in-flight requests of
+     * the broker; the partitions are chosen in turn if not set.
+     *
+     * @param adaptivePartitionRouter whether route the messages by the broker load
+     */
+    public void setAdaptivePartitionRouter(boolean adaptivePartitionRouter) {
+        this.adaptivePartitionRouter = adaptivePartitionRouter;
+    }
+
+    public String getPartitionKeyAttr() {
+        return partitionKeyAttr;
+    }
+
+    /**
+     * Set the attribute key of the partition key, the messages with the same value of
+     * this attribute are sent to the same partition. The key is mapped to a broker by
+     * rendezvous hashing and to a partition of the broker by jump consistent hashing,
+     * or by rendezvous hashing over the allowed partitions if the adaptive partition
+     * router is used.
+     *
+     * @param partitionKeyAttr the attribute key, blank means not used
+     */
+    public void setPartitionKeyAttr(String partitionKeyAttr) {
+        this.partitionKeyAttr = partitionKeyAttr == null ? "" : partitionKeyAttr.trim();
+    }
+
+    public boolean isEnableClientMetrics() {
+        return enableClientMetrics;
+    }
+
+    /**
+     * Set whether record the per broker histograms of the produce, fetch and confirm
+     * latencies, the batch sizes and the rebalance pauses, see ClientMetrics.
+     *
+     * @param enableClientMetrics whether record the client metrics
+     */
+    public void setEnableClientMetrics(boolean enableClientMetrics) {
+        this.enableClientMetrics = enableClientMetrics;
+    }
+
+    public long getMetricsReportPeriodMs() {
+        return metricsReportPeriodMs;
+    }
+
+    public void setMetricsReportPeriodMs(long metricsReportPeriodMs) {
+        if (metricsReportPeriodMs <= 0) {
+            throw new IllegalArgumentException("Illegal parameter: metricsReportPeriodMs must be greater than 0!");
+        }
+        this.metricsReportPeriodMs = metricsReportPeriodMs;
+    }
+
+    public MetricsReporter getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    /**
+     * Set the reporter receiving the client metrics of each report period.
+     *
+     * @param metricsReporter the metrics reporter, null means only exposed by JMX
+     */
+    public void setMetricsReporter(MetricsReporter metricsReporter) {
+        this.metricsReporter = metricsReporter;
+    }
+
     public boolean isEnableUserAuthentic() {
         return enableUserAuthentic;
     }
@@ -466,6 +664,12 @@ public class TubeClientConfig {
         if (rpcConnProcessorCnt != that.rpcConnProcessorCnt) {
             return false;
         }
+        if (rpcConnPoolSize != that.rpcConnPoolSize) {
+            return false;
+        }
+        if (rpcMaxInflightRequests != that.rpcMaxInflightRequests) {
+            return false;
+        }
         if (rpcNettyWorkMemorySize != that.rpcNettyWorkMemorySize) {
             return false;
         }
@@ -541,6 +745,36 @@ public class TubeClientConfig {
         if (!this.tlsConfig.equals(that.tlsConfig)) {
             return false;
         }
+        if (batchLingerMs != that.batchLingerMs) {
+            return false;
+        }
+        if (batchMaxSize != that.batchMaxSize) {
+            return false;
+        }
+        if (batchMaxMsgCount != that.batchMaxMsgCount) {
+            return false;
+        }
+        if (compressCodec != that.compressCodec) {
+            return false;
+        }
+        if (compressMinSize != that.compressMinSize) {
+            return false;
+        }
+        if (adaptivePartitionRouter != that.adaptivePartitionRouter) {
+            return false;
+        }
+        if (!partitionKeyAttr.equals(that.partitionKeyAttr)) {
+            return false;
+        }
+        if (enableClientMetrics != that.enableClientMetrics) {
+            return false;
+        }
+        if (metricsReportPeriodMs != that.metricsReportPeriodMs) {
+            return false;
+        }
+        if (metricsReporter != that.metricsReporter) {
+            return false;
+        }
         return masterInfo.equals(that.masterInfo);
     }
 
@@ -562,6 +796,8 @@ public class TubeClientConfig {
         }
         return sBuilder.append("],\"rpcReadTimeoutMs\":").append(this.rpcReadTimeoutMs)
             .append(",\"rpcConnProcessorCnt\":").append(this.rpcConnProcessorCnt)
+            .append(",\"rpcConnPoolSize\":").append(this.rpcConnPoolSize)
+            .append(",\"rpcMaxInflightRequests\":").append(this.rpcMaxInflightRequests)
             .append(",\"rpcNettyWorkMemorySize\":").append(this.rpcNettyWorkMemorySize)
             .append(",\"rpcRspCallBackThreadCnt\":").append(this.rpcRspCallBackThreadCnt)
             .append(",\"nettyWriteBufferHighWaterMark\":").append(this.nettyWriteBufferHighWaterMark)
@@ -583,6 +819,16 @@ public class TubeClientConfig {
             .append(",\"linkMaxAllowedDelayedMsgCount\":").append(this.linkMaxAllowedDelayedMsgCount)
             .append(",\"sessionMaxAllowedDelayedMsgCount\":").append(this.sessionMaxAllowedDelayedMsgCount)
             .append(",\"unAvailableFbdDurationMs\":").append(this.unAvailableFbdDurationMs)
+            .append(",\"batchLingerMs\":").append(this.batchLingerMs)
+            .append(",\"batchMaxSize\":").append(this.batchMaxSize)
+            .append(",\"batchMaxMsgCount\":").append(this.batchMaxMsgCount)
+            .append(",\"compressCodec\":").append(this.compressCodec)
+            .append(",\"compressMinSize\":").append(this.compressMinSize)
+            .append(",\"adaptivePartitionRouter\":").append(this.adaptivePartitionRouter)
+            .append(",\"partitionKeyAttr\":\"").append(this.partitionKeyAttr)
+            .append("\"")
+            .append(",\"enableClientMetrics\":").append(this.enableClientMetrics)
+            .append(",\"metricsReportPeriodMs\":").append(this.metricsReportPeriodMs)
             .append(",\"enableUserAuthentic\":").append(this.enableUserAuthentic)
             .append(",\"usrName\":\"").append(this.usrName)
             .append("\",\"usrPassWord\":\"").append(this.usrPassWord)
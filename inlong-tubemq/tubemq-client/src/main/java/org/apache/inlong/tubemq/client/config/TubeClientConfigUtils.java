@@ -47,6 +47,9 @@ public class TubeClientConfigUtils {
         config.put(RpcConstants.NETTY_WRITE_LOW_MARK,
                 tubeClientConfig.getNettyWriteBufferLowWaterMark());
         config.put(RpcConstants.WORKER_COUNT, tubeClientConfig.getRpcConnProcessorCnt());
+        config.put(RpcConstants.CLIENT_CONN_POOL_SIZE, tubeClientConfig.getRpcConnPoolSize());
+        config.put(RpcConstants.CLIENT_MAX_INFLIGHT_REQUESTS,
+                tubeClientConfig.getRpcMaxInflightRequests());
         if (isSingleSession) {
             config.put(RpcConstants.WORKER_THREAD_NAME, "tube_single_netty_worker-");
         } else {
@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.client.consumer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import org.apache.inlong.tubemq.client.config.ConsumerConfig;
+import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serve the asynchronous message requests of the pull consumer.
+ *
+ * Each request is a demand of one message batch. A demand takes an idle partition and
+ * fetches it by the asynchronous broker service, the response is processed and the future
+ * of the demand is completed by the callback executor, not the network thread. The demands
+ * without idle partition wait in a queue, one dispatch thread assigns them to the partitions
+ * released later, so no fetch is sent without a demand and the threads are not blocked on
+ * the network.
+ */
+public class AsyncFetchManager {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(AsyncFetchManager.class);
+    private final ConsumerConfig consumerConfig;
+    private final BaseMessageConsumer baseConsumer;
+    private final Executor callbackExecutor;
+    private final ConcurrentLinkedQueue<FetchDemand> demandQueue =
+            new ConcurrentLinkedQueue<>();
+    // Manager status:
+    // -1: Undefined
+    // 0: Stopped
+    // 1: Started
+    private final AtomicInteger managerStatus = new AtomicInteger(-1);
+    private Thread dispatchWorker;
+
+    public AsyncFetchManager(final ConsumerConfig consumerConfig,
+                             final BaseMessageConsumer baseConsumer,
+                             final Executor callbackExecutor) {
+        this.consumerConfig = consumerConfig;
+        this.baseConsumer = baseConsumer;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Start the dispatch worker.
+     */
+    public synchronized void startDispatchWorker() {
+        if (!managerStatus.compareAndSet(-1, 1)) {
+            return;
+        }
+        this.dispatchWorker = new Thread(new DispatchTaskWorker());
+        this.dispatchWorker.setName(new StringBuilder(256)
+                .append("Async_Fetch_Dispatcher_")
+                .append(this.consumerConfig.getConsumerGroup()).toString());
+        this.dispatchWorker.setDaemon(true);
+        this.dispatchWorker.start();
+        logger.info("Async Fetch Dispatcher started!");
+    }
+
+    /**
+     * Stop the dispatch worker, and complete the waiting demands with error.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void stopDispatchWorker() throws InterruptedException {
+        if (managerStatus.getAndSet(0) != 1) {
+            return;
+        }
+        this.dispatchWorker.interrupt();
+        this.dispatchWorker.join();
+        FetchDemand demand;
+        while ((demand = demandQueue.poll()) != null) {
+            demand.future.complete(new ConsumerResult(TErrCodeConstants.BAD_REQUEST,
+                    "Client instance has been shutdown!"));
+        }
+        logger.info("Async Fetch Dispatcher stopped!");
+    }
+
+    /**
+     * Add a demand of one message batch.
+     *
+     * @return the future completed with the fetched messages or the error
+     */
+    public CompletableFuture<ConsumerResult> requestMessage() {
+        FetchDemand demand = new FetchDemand();
+        if (managerStatus.get() != 1) {
+            demand.future.complete(new ConsumerResult(TErrCodeConstants.BAD_REQUEST,
+                    "Client instance has been shutdown!"));
+            return demand.future;
+        }
+        // serve the demand in place if no demand waits before it
+        if (!demandQueue.isEmpty() || !tryDispatch(demand)) {
+            demandQueue.offer(demand);
+            wakeup();
+        }
+        return demand.future;
+    }
+
+    /**
+     * Wake up the dispatch worker when a partition may be released.
+     */
+    public void wakeup() {
+        Thread worker = this.dispatchWorker;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    public int getWaitingDemandCnt() {
+        return demandQueue.size();
+    }
+
+    private boolean tryDispatch(final FetchDemand demand) {
+        PartitionSelectResult selectResult = baseConsumer.rmtDataCache.pullSelect();
+        if (!selectResult.isSuccess()) {
+            return false;
+        }
+        baseConsumer.fetchMessageAsync(selectResult, callbackExecutor).whenComplete(
+                new BiConsumer<FetchContext, Throwable>() {
+                    @Override
+                    public void accept(FetchContext taskContext, Throwable error) {
+                        if (error != null) {
+                            demand.future.completeExceptionally(error);
+                        } else {
+                            demand.future.complete(new ConsumerResult(taskContext));
+                        }
+                    }
+                });
+        return true;
+    }
+
+    private class DispatchTaskWorker implements Runnable {
+        @Override
+        public void run() {
+            FetchDemand demand;
+            while (managerStatus.get() == 1) {
+                try {
+                    while ((demand = demandQueue.peek()) != null) {
+                        if (baseConsumer.isShutdown()) {
+                            if (demandQueue.remove(demand)) {
+                                demand.future.complete(new ConsumerResult(
+                                        TErrCodeConstants.BAD_REQUEST,
+                                        "Client instance has been shutdown!"));
+                            }
+                            continue;
+                        }
+                        if (!tryDispatch(demand)) {
+                            break;
+                        }
+                        demandQueue.remove(demand);
+                    }
+                    expireDemands();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(
+                            Math.max(1, consumerConfig.getPullConsumeReadyChkSliceMs())));
+                } catch (Throwable e) {
+                    logger.warn("Async Fetch Dispatcher process failure", e);
+                }
+            }
+        }
+
+        // complete the demands waiting longer than the wait period with the partition status
+        private void expireDemands() {
+            long waitPeriodMs = consumerConfig.getPullConsumeReadyWaitPeriodMs();
+            if (waitPeriodMs < 0) {
+                return;
+            }
+            FetchDemand demand;
+            long currTime = System.currentTimeMillis();
+            while ((demand = demandQueue.peek()) != null
+                    && currTime - demand.createTime >= waitPeriodMs) {
+                if (demandQueue.remove(demand)) {
+                    PartitionSelectResult selectResult =
+                            baseConsumer.rmtDataCache.getCurrPartsStatus();
+                    if (selectResult.isSuccess()) {
+                        demand.future.complete(new ConsumerResult(
+                                TErrCodeConstants.ALL_PARTITION_INUSE,
+                                "No idle partition for the message request!"));
+                    } else {
+                        demand.future.complete(new ConsumerResult(
+                                selectResult.getErrCode(), selectResult.getErrMsg()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static class FetchDemand {
+        private final CompletableFuture<ConsumerResult> future = new CompletableFuture<>();
+        private final long createTime = System.currentTimeMillis();
+    }
+}
@@ -27,8 +27,10 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -41,6 +43,7 @@ import org.apache.inlong.tubemq.client.common.TubeClientVersion;
 import org.apache.inlong.tubemq.client.config.ConsumerConfig;
 import org.apache.inlong.tubemq.client.exception.TubeClientException;
 import org.apache.inlong.tubemq.client.factory.InnerSessionFactory;
+import org.apache.inlong.tubemq.client.metrics.ClientMetrics;
 import org.apache.inlong.tubemq.corebase.Message;
 import org.apache.inlong.tubemq.corebase.TBaseConstants;
 import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
@@ -64,6 +67,7 @@ import org.apache.inlong.tubemq.corebase.utils.ThreadUtils;
 import org.apache.inlong.tubemq.corerpc.RpcConfig;
 import org.apache.inlong.tubemq.corerpc.RpcConstants;
 import org.apache.inlong.tubemq.corerpc.RpcServiceFactory;
+import org.apache.inlong.tubemq.corerpc.client.Callback;
 import org.apache.inlong.tubemq.corerpc.service.BrokerReadService;
 import org.apache.inlong.tubemq.corerpc.service.MasterService;
 import org.slf4j.Logger;
@@ -101,6 +105,8 @@ public class BaseMessageConsumer implements MessageConsumer {
     private final ConsumerSamplePrint samplePrintCtrl =
             new ConsumerSamplePrint();
     private final RpcConfig rpcConfig = new RpcConfig();
+    // null if the client metrics are disabled
+    private final ClientMetrics clientMetrics;
     private AtomicLong visitToken = new AtomicLong(TBaseConstants.META_VALUE_UNDEFINED);
     private AtomicReference<String> authAuthorizedTokenRef =
             new AtomicReference<>("");
@@ -121,6 +127,8 @@ public class BaseMessageConsumer implements MessageConsumer {
     private int rebalanceRetryTimes = 0;
     private long lastHeartbeatTime2Master = 0;
     private long lastHeartbeatTime2Broker = 0;
+    // start time of the rebalance in process, only accessed by the rebalance thread
+    private long rebalanceStartTime = 0;
     private AtomicBoolean nextWithAuthInfo2M = new AtomicBoolean(false);
     private ConcurrentHashMap<Integer, AtomicBoolean> nextWithAuthInfo2BMap
         = new ConcurrentHashMap<Integer, AtomicBoolean>();
@@ -187,16 +195,32 @@ public class BaseMessageConsumer implements MessageConsumer {
                         if ((isRebalanceStopped()) || (isShutdown())) {
                             break;
                         }
+                        long eventStartTime = System.currentTimeMillis();
                         switch (event.getType()) {
                             case DISCONNECT:
+                                // consumption pauses until the following connect
+                                rebalanceStartTime = eventStartTime;
+                                disconnectFromBroker(event);
+                                rebalanceResults.put(event);
+                                break;
                             case ONLY_DISCONNECT:
                                 disconnectFromBroker(event);
                                 rebalanceResults.put(event);
+                                updateMetrics(ClientMetrics.REBALANCE_PAUSE_MS,
+                                        ClientMetrics.NO_BROKER_ID,
+                                        System.currentTimeMillis() - eventStartTime);
                                 break;
                             case CONNECT:
                             case ONLY_CONNECT:
+                                if (rebalanceStartTime > 0) {
+                                    eventStartTime = rebalanceStartTime;
+                                    rebalanceStartTime = 0;
+                                }
                                 connect2Broker(event);
                                 rebalanceResults.put(event);
+                                updateMetrics(ClientMetrics.REBALANCE_PAUSE_MS,
+                                        ClientMetrics.NO_BROKER_ID,
+                                        System.currentTimeMillis() - eventStartTime);
                                 break;
                             case REPORT:
                                 reportSubscribeInfo();
@@ -225,6 +249,14 @@ public class BaseMessageConsumer implements MessageConsumer {
         }, new StringBuilder(512).append("Rebalance-Thread-")
                 .append(this.consumerId).toString());
         this.rebalanceThread.setPriority(Thread.MAX_PRIORITY);
+        if (consumerConfig.isEnableClientMetrics()) {
+            this.clientMetrics = new ClientMetrics(this.consumerId,
+                    consumerConfig.getMetricsReportPeriodMs(),
+                    consumerConfig.getMetricsReporter(), this.rpcServiceFactory);
+            this.clientMetrics.start();
+        } else {
+            this.clientMetrics = null;
+        }
     }
 
     /**
@@ -446,6 +478,9 @@ public class BaseMessageConsumer implements MessageConsumer {
         unregisterPartitions(unRegisterInfoMap);
         this.isShutdown.set(true);
         this.sessionFactory.removeClient(this);
+        if (this.clientMetrics != null) {
+            this.clientMetrics.stop();
+        }
         if (this.heartService2Master != null) {
             try {
                 this.heartService2Master.shutdownNow();
@@ -783,6 +818,10 @@ public class BaseMessageConsumer implements MessageConsumer {
         builder.setPartitionId(partition.getPartitionId());
         builder.setLastPackConsumed(isLastConsumed);
         builder.setManualCommitOffset(false);
+        builder.setSupportFileRegion(this.consumerConfig.isFetchByFileRegion());
+        if (this.consumerConfig.getFetchMaxWaitMs() > 0) {
+            builder.setMaxWaitTimeMs(this.consumerConfig.getFetchMaxWaitMs());
+        }
         return builder.build();
     }
 
@@ -1048,7 +1087,8 @@ public class BaseMessageConsumer implements MessageConsumer {
         builder.setTopicName(partition.getTopic());
         builder.setPartitionId(partition.getPartitionId());
         builder.setQryPriorityId(groupFlowCtrlRuleHandler.getQryPriorityId());
-        builder.setReadStatus(getGroupInitReadStatus(rmtDataCache.bookPartition(partition.getPartitionKey())));
+        final boolean isFirstReg = rmtDataCache.bookPartition(partition.getPartitionKey());
+        builder.setReadStatus(getGroupInitReadStatus(isFirstReg));
         TopicProcessor topicProcessor =
                 this.consumeSubInfo.getTopicProcessor(partition.getTopic());
         if (topicProcessor != null && topicProcessor.getFilterConds() != null) {
@@ -1062,6 +1102,10 @@ public class BaseMessageConsumer implements MessageConsumer {
                 builder.setCurrOffset(currOffset);
             }
         }
+        if (isFirstReg && !builder.hasCurrOffset()
+                && consumerConfig.getConsumeStartTimeMs() >= 0) {
+            builder.setStartTime(consumerConfig.getConsumeStartTimeMs());
+        }
         ClientBroker.AuthorizedInfo.Builder authInfoBuilder =
                 genBrokerAuthenticInfo(partition.getBrokerId(), false);
         if (authInfoBuilder != null) {
@@ -1267,10 +1311,9 @@ public class BaseMessageConsumer implements MessageConsumer {
         FetchContext taskContext =
                 new FetchContext(partSelectResult);
         Partition partition = taskContext.getPartition();
-        String topic = partition.getTopic();
-        String partitionKey = partition.getPartitionKey();
         // Response from broker
         ClientBroker.GetMessageResponseB2C msgRspB2C = null;
+        final long fetchStartTime = System.nanoTime();
         try {
             msgRspB2C =
                     getBrokerService(partition.getBroker())
@@ -1278,19 +1321,103 @@ public class BaseMessageConsumer implements MessageConsumer {
                                     partition, taskContext.isLastConsumed()),
                                     AddressUtils.getLocalAddress(), consumerConfig.isTlsEnable());
         } catch (Throwable ee) {
-            // Process the exception
-            rmtDataCache.errReqRelease(partitionKey, taskContext.getUsedToken(), false);
-            taskContext.setFailProcessResult(400, strBuffer
-                    .append("Get message error, reason is ")
-                    .append(ee.toString()).toString());
-            strBuffer.delete(0, strBuffer.length());
-            return taskContext;
+            return processFetchError(taskContext, ee, strBuffer);
         }
+        return processFetchResponse(taskContext, msgRspB2C, fetchStartTime, strBuffer);
+    }
+
+    /**
+     * Fetch the messages of the selected partition without blocking the calling thread.
+     *
+     * @param partSelectResult  the selected partition
+     * @param callbackExecutor  the executor processing the response
+     * @return the future completed with the fetch result by the callback executor
+     */
+    protected CompletableFuture<FetchContext> fetchMessageAsync(
+            PartitionSelectResult partSelectResult, final Executor callbackExecutor) {
+        final FetchContext taskContext =
+                new FetchContext(partSelectResult);
+        final CompletableFuture<FetchContext> fetchFuture = new CompletableFuture<>();
+        final Partition partition = taskContext.getPartition();
+        final long fetchStartTime = System.nanoTime();
+        try {
+            getAsyncBrokerService(partition.getBroker()).getMessagesC2B(
+                    createBrokerGetMessageRequest(partition, taskContext.isLastConsumed()),
+                    AddressUtils.getLocalAddress(), consumerConfig.isTlsEnable(),
+                    new Callback() {
+                        @Override
+                        public void handleResult(final Object result) {
+                            callbackExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    ClientBroker.GetMessageResponseB2C msgRspB2C = null;
+                                    if (result instanceof ClientBroker.GetMessageResponseB2C) {
+                                        msgRspB2C = (ClientBroker.GetMessageResponseB2C) result;
+                                    }
+                                    fetchFuture.complete(processFetchResponse(taskContext,
+                                            msgRspB2C, fetchStartTime, new StringBuilder(512)));
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void handleError(final Throwable error) {
+                            callbackExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    fetchFuture.complete(processFetchError(
+                                            taskContext, error, new StringBuilder(512)));
+                                }
+                            });
+                        }
+                    });
+        } catch (Throwable ee) {
+            fetchFuture.complete(processFetchError(taskContext, ee, new StringBuilder(512)));
+        }
+        return fetchFuture;
+    }
+
+    private FetchContext processFetchError(FetchContext taskContext, Throwable ee,
+                                           final StringBuilder strBuffer) {
+        // Process the exception
+        rmtDataCache.errReqRelease(taskContext.getPartition().getPartitionKey(),
+                taskContext.getUsedToken(), false);
+        taskContext.setFailProcessResult(400, strBuffer
+                .append("Get message error, reason is ")
+                .append(ee.toString()).toString());
+        strBuffer.delete(0, strBuffer.length());
+        return taskContext;
+    }
+
+    /**
+     * Record a value of the client metrics if enabled.
+     *
+     * @param metricName  the metric name defined in ClientMetrics
+     * @param brokerId    the broker id
+     * @param value       the value
+     */
+    protected void updateMetrics(String metricName, int brokerId, long value) {
+        if (clientMetrics != null) {
+            clientMetrics.update(metricName, brokerId, value);
+        }
+    }
+
+    // #lizard forgives
+    private FetchContext processFetchResponse(FetchContext taskContext,
+                                              ClientBroker.GetMessageResponseB2C msgRspB2C,
+                                              long fetchStartTime,
+                                              final StringBuilder strBuffer) {
+        Partition partition = taskContext.getPartition();
+        String topic = partition.getTopic();
+        String partitionKey = partition.getPartitionKey();
         if (msgRspB2C == null) {
             rmtDataCache.errReqRelease(partitionKey, taskContext.getUsedToken(), false);
             taskContext.setFailProcessResult(500, "Get message null");
             return taskContext;
         }
+        final int brokerId = partition.getBrokerId();
+        updateMetrics(ClientMetrics.FETCH_RTT_US, brokerId,
+                (System.nanoTime() - fetchStartTime) / 1000L);
         try {
             // Process the response based on the return code
             switch (msgRspB2C.getErrCode()) {
@@ -1341,6 +1468,7 @@ public class BaseMessageConsumer implements MessageConsumer {
                         strBuffer.append(partitionKey).append(TokenConstants.ATTR_SEP)
                             .append(taskContext.getUsedToken()).toString(), messageList, maxOffset);
                     strBuffer.delete(0, strBuffer.length());
+                    updateMetrics(ClientMetrics.FETCH_MSGS, brokerId, messageList.size());
                     break;
                 }
                 case TErrCodeConstants.HB_NO_NODE:
@@ -1386,6 +1514,11 @@ public class BaseMessageConsumer implements MessageConsumer {
                         }
                         case TErrCodeConstants.NOT_FOUND: {
                             limitDlt = consumerConfig.getMsgNotFoundWaitPeriodMs();
+                            if (consumerConfig.getFetchMaxWaitMs() > 0) {
+                                // the time waited in broker is counted in the wait period
+                                limitDlt = Math.max(0, limitDlt - TimeUnit.NANOSECONDS
+                                        .toMillis(System.nanoTime() - fetchStartTime));
+                            }
                             break;
                         }
                         default: {
@@ -1479,6 +1612,17 @@ public class BaseMessageConsumer implements MessageConsumer {
         return rpcServiceFactory.getService(BrokerReadService.class, brokerInfo, rpcConfig);
     }
 
+    /**
+     * Get the broker read service with callbacks.
+     *
+     * @param brokerInfo broker information
+     * @return broker read service
+     */
+    protected BrokerReadService.AsyncService getAsyncBrokerService(BrokerInfo brokerInfo) {
+        return rpcServiceFactory.getService(
+                BrokerReadService.AsyncService.class, brokerInfo, rpcConfig);
+    }
+
     // #lizard forgives
     private class HeartTask2MasterWorker implements Runnable {
         // Heartbeat logic between master and worker
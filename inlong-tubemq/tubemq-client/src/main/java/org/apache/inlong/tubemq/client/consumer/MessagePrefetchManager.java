@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.client.consumer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.inlong.tubemq.client.config.ConsumerConfig;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.utils.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prefetch messages for the pull consumer with background threads.
+ *
+ * The prefetch workers select the idle partitions and fetch their messages into a queue,
+ * the pull consumer takes the fetched messages from the queue without waiting the network.
+ * A partition is fetched once until the fetched messages are confirmed, the same as the
+ * direct pull, so the offset semantics of the broker are unchanged; the confirm made in
+ * local is carried to the broker by the next prefetch of the partition.
+ */
+public class MessagePrefetchManager {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(MessagePrefetchManager.class);
+    private final ConsumerConfig consumerConfig;
+    private final BaseMessageConsumer baseConsumer;
+    private final LinkedBlockingQueue<FetchContext> fetchedQueue =
+            new LinkedBlockingQueue<>();
+    // message bytes of the fetched queue
+    private final AtomicLong fetchedBytes = new AtomicLong(0);
+    // Manager status:
+    // -1: Undefined
+    // 0: Stopped
+    // 1: Started
+    private final AtomicInteger managerStatus = new AtomicInteger(-1);
+    private Thread[] prefetchWorkerPool;
+
+    public MessagePrefetchManager(final ConsumerConfig consumerConfig,
+                                  final BaseMessageConsumer baseConsumer) {
+        this.consumerConfig = consumerConfig;
+        this.baseConsumer = baseConsumer;
+    }
+
+    /**
+     * Start the prefetch workers.
+     */
+    public void startPrefetchWorkers() {
+        if (!managerStatus.compareAndSet(-1, 1)) {
+            return;
+        }
+        StringBuilder sBuilder = new StringBuilder(256);
+        this.prefetchWorkerPool =
+                new Thread[this.consumerConfig.getPullPrefetchThreadCnt()];
+        for (int i = 0; i < this.prefetchWorkerPool.length; i++) {
+            this.prefetchWorkerPool[i] = new Thread(new PrefetchTaskWorker());
+            this.prefetchWorkerPool[i].setName(sBuilder.append("Prefetch_Worker_")
+                    .append(this.consumerConfig.getConsumerGroup())
+                    .append("-").append(i).toString());
+            this.prefetchWorkerPool[i].setDaemon(true);
+            sBuilder.delete(0, sBuilder.length());
+        }
+        for (final Thread thread : this.prefetchWorkerPool) {
+            thread.start();
+        }
+        logger.info(sBuilder.append("Prefetch Worker Pool started, total count:")
+                .append(prefetchWorkerPool.length).toString());
+    }
+
+    /**
+     * Stop the prefetch workers, and release the partitions of the messages not taken.
+     *
+     * @throws InterruptedException
+     */
+    public void stopPrefetchWorkers() throws InterruptedException {
+        if (!managerStatus.compareAndSet(1, 0)) {
+            return;
+        }
+        for (final Thread thread : this.prefetchWorkerPool) {
+            thread.interrupt();
+        }
+        for (final Thread thread : this.prefetchWorkerPool) {
+            thread.join();
+        }
+        FetchContext taskContext;
+        while ((taskContext = fetchedQueue.poll()) != null) {
+            releaseUntaken(taskContext);
+        }
+        logger.info("Prefetch Worker Pool stopped!");
+    }
+
+    /**
+     * Take the fetched messages of a partition still in use.
+     *
+     * @param waitTimeMs  the max wait time
+     * @return the fetch result, or null if no messages fetched
+     * @throws InterruptedException
+     */
+    public FetchContext takeFetchedMessages(long waitTimeMs) throws InterruptedException {
+        FetchContext taskContext;
+        long waitEndTime = System.currentTimeMillis() + waitTimeMs;
+        do {
+            taskContext = fetchedQueue.poll(Math.max(0,
+                    waitEndTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            if (taskContext == null) {
+                return null;
+            }
+            fetchedBytes.addAndGet(-getMessageBytes(taskContext));
+            // the partition may be released for confirm timeout or rebalance
+            if (baseConsumer.rmtDataCache.isPartitionInUse(
+                    taskContext.getPartition().getPartitionKey(), taskContext.getUsedToken())) {
+                return taskContext;
+            }
+        } while (true);
+    }
+
+    public long getFetchedBytes() {
+        return fetchedBytes.get();
+    }
+
+    private void releaseUntaken(FetchContext taskContext) {
+        fetchedBytes.addAndGet(-getMessageBytes(taskContext));
+        // not consumed, the broker will deliver the messages again
+        baseConsumer.rmtDataCache.errReqRelease(
+                taskContext.getPartition().getPartitionKey(), taskContext.getUsedToken(), false);
+    }
+
+    private long getMessageBytes(FetchContext taskContext) {
+        long msgBytes = 0L;
+        for (Message message : taskContext.getMessageList()) {
+            msgBytes += message.getData().length;
+        }
+        return msgBytes;
+    }
+
+    private class PrefetchTaskWorker implements Runnable {
+        @Override
+        public void run() {
+            StringBuilder sBuilder = new StringBuilder(256);
+            while (managerStatus.get() == 1 && !baseConsumer.isShutdown()) {
+                try {
+                    // keep the fetched messages under the memory bound
+                    if (fetchedBytes.get() >= consumerConfig.getPullPrefetchMaxBytes()
+                            || !baseConsumer.isSubscribed()) {
+                        ThreadUtils.sleep(consumerConfig.getPullConsumeReadyChkSliceMs());
+                        continue;
+                    }
+                    PartitionSelectResult selectResult =
+                            baseConsumer.rmtDataCache.pullSelect();
+                    if (!selectResult.isSuccess()) {
+                        ThreadUtils.sleep(consumerConfig.getPullConsumeReadyChkSliceMs());
+                        continue;
+                    }
+                    // the failed fetch has released the partition
+                    FetchContext taskContext =
+                            baseConsumer.fetchMessage(selectResult, sBuilder);
+                    if (taskContext.isSuccess()) {
+                        fetchedBytes.addAndGet(getMessageBytes(taskContext));
+                        fetchedQueue.offer(taskContext);
+                        if (managerStatus.get() != 1 && fetchedQueue.remove(taskContext)) {
+                            releaseUntaken(taskContext);
+                        }
+                    }
+                } catch (Throwable e) {
+                    if (managerStatus.get() != 1) {
+                        break;
+                    }
+                    logger.warn("Prefetch Worker process failure", e);
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.inlong.tubemq.client.consumer;
 
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import org.apache.inlong.tubemq.client.exception.TubeClientException;
 
 
@@ -39,4 +40,22 @@ public interface PullMessageConsumer extends MessageConsumer {
 
     ConsumerResult confirmConsume(String confirmContext,
                                   boolean isConsumed) throws TubeClientException;
+
+    // getMessageAsync() use note:
+    // Each call is a demand of one message batch and returns without blocking. The future
+    // is completed by the async callback threads of the consumer when the messages of an
+    // idle partition are fetched; if no partition is idle, the demand waits until a partition
+    // is released, or fails with the partition status after
+    // ConsumerConfig.getPullConsumeReadyWaitPeriodMs.
+    // The default implementation calls getMessage() in the calling thread.
+    default CompletableFuture<ConsumerResult> getMessageAsync() throws TubeClientException {
+        return CompletableFuture.completedFuture(getMessage());
+    }
+
+    // The default implementation calls confirmConsume() in the calling thread.
+    default CompletableFuture<ConsumerResult> confirmConsumeAsync(String confirmContext,
+                                                                  boolean isConsumed)
+            throws TubeClientException {
+        return CompletableFuture.completedFuture(confirmConsume(confirmContext, isConsumed));
+    }
 }
@@ -20,9 +20,17 @@ package org.apache.inlong.tubemq.client.consumer;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.inlong.tubemq.client.config.ConsumerConfig;
 import org.apache.inlong.tubemq.client.exception.TubeClientException;
 import org.apache.inlong.tubemq.client.factory.InnerSessionFactory;
+import org.apache.inlong.tubemq.client.metrics.ClientMetrics;
 import org.apache.inlong.tubemq.corebase.TBaseConstants;
 import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
 import org.apache.inlong.tubemq.corebase.TokenConstants;
@@ -31,6 +39,7 @@ import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
 import org.apache.inlong.tubemq.corebase.utils.AddressUtils;
 import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
 import org.apache.inlong.tubemq.corebase.utils.ThreadUtils;
+import org.apache.inlong.tubemq.corerpc.client.Callback;
 
 /**
  * An implementation of PullMessageConsumer
@@ -38,11 +47,58 @@ import org.apache.inlong.tubemq.corebase.utils.ThreadUtils;
 public class SimplePullMessageConsumer implements PullMessageConsumer {
 
     private final BaseMessageConsumer baseConsumer;
+    // null if the messages are fetched in getMessage()
+    private final MessagePrefetchManager prefetchManager;
+    // null if the messages are prefetched
+    private final AsyncFetchManager asyncFetchManager;
+    // the threads completing the futures of the asynchronous requests,
+    // the network threads only hand the responses over
+    private final ExecutorService asyncCallbackExecutor;
+    private final Executor asyncCallbackRunner = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            try {
+                asyncCallbackExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // the consumer is shut down, complete in place
+                task.run();
+            }
+        }
+    };
 
     public SimplePullMessageConsumer(final InnerSessionFactory messageSessionFactory,
                                      final ConsumerConfig consumerConfig) throws TubeClientException {
-        baseConsumer =
-                new BaseMessageConsumer(messageSessionFactory, consumerConfig, true);
+        this(consumerConfig,
+                new BaseMessageConsumer(messageSessionFactory, consumerConfig, true));
+    }
+
+    // create the consumer on the given base consumer
+    SimplePullMessageConsumer(final ConsumerConfig consumerConfig,
+                              final BaseMessageConsumer baseConsumer) {
+        this.baseConsumer = baseConsumer;
+        // the threads are created on the first asynchronous request
+        asyncCallbackExecutor = Executors.newFixedThreadPool(
+                consumerConfig.getPullAsyncCallbackThreadCnt(), new ThreadFactory() {
+                    private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, new StringBuilder(256)
+                                .append("Pull_Async_Callback_")
+                                .append(consumerConfig.getConsumerGroup()).append("-")
+                                .append(threadIndex.incrementAndGet()).toString());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        if (consumerConfig.getPullPrefetchThreadCnt() > 0) {
+            prefetchManager = new MessagePrefetchManager(consumerConfig, baseConsumer);
+            asyncFetchManager = null;
+        } else {
+            prefetchManager = null;
+            asyncFetchManager = new AsyncFetchManager(consumerConfig,
+                    baseConsumer, asyncCallbackRunner);
+        }
     }
 
     @Override
@@ -52,6 +108,13 @@ public class SimplePullMessageConsumer implements PullMessageConsumer {
 
     @Override
     public void shutdown() throws Throwable {
+        if (prefetchManager != null) {
+            prefetchManager.stopPrefetchWorkers();
+        }
+        if (asyncFetchManager != null) {
+            asyncFetchManager.stopDispatchWorker();
+        }
+        asyncCallbackExecutor.shutdown();
         baseConsumer.shutdown();
     }
 
@@ -115,6 +178,7 @@ public class SimplePullMessageConsumer implements PullMessageConsumer {
     @Override
     public void completeSubscribe() throws TubeClientException {
         baseConsumer.completeSubscribe();
+        startFetchWorkers();
     }
 
     @Override
@@ -123,6 +187,7 @@ public class SimplePullMessageConsumer implements PullMessageConsumer {
                                   final boolean isSelectBig,
                                   final Map<String, Long> partOffsetMap) throws TubeClientException {
         baseConsumer.completeSubscribe(sessionKey, sourceCount, isSelectBig, partOffsetMap);
+        startFetchWorkers();
     }
 
     @Override
@@ -131,6 +196,9 @@ public class SimplePullMessageConsumer implements PullMessageConsumer {
         if (!baseConsumer.isSubscribed()) {
             throw new TubeClientException("Please complete topic's Subscribe call first!");
         }
+        if (prefetchManager != null) {
+            return getPrefetchedMessage();
+        }
         PartitionSelectResult selectResult = null;
         long startTime = System.currentTimeMillis();
         while (true) {
@@ -171,29 +239,10 @@ public class SimplePullMessageConsumer implements PullMessageConsumer {
         StringBuilder sBuilder = new StringBuilder(512);
         long currOffset = TBaseConstants.META_VALUE_UNDEFINED;
         long maxOffset = TBaseConstants.META_VALUE_UNDEFINED;
-        // Verify if the confirmContext is valid
-        if (TStringUtils.isBlank(confirmContext)) {
-            throw new TubeClientException("ConfirmContext is null !");
-        }
-        String[] strConfirmContextItems =
-                confirmContext.split(TokenConstants.ATTR_SEP);
-        if (strConfirmContextItems.length != 4) {
-            throw new TubeClientException(
-                    "ConfirmContext format error: value must be aaaa:bbbb:cccc:ddddd !");
-        }
-        for (String itemStr : strConfirmContextItems) {
-            if (TStringUtils.isBlank(itemStr)) {
-                throw new TubeClientException(sBuilder
-                        .append("ConfirmContext's format error: item (")
-                        .append(itemStr).append(") is null !").toString());
-            }
-        }
-        String keyId = sBuilder.append(strConfirmContextItems[0].trim())
-                .append(TokenConstants.ATTR_SEP).append(strConfirmContextItems[1].trim())
-                .append(TokenConstants.ATTR_SEP).append(strConfirmContextItems[2].trim()).toString();
-        sBuilder.delete(0, sBuilder.length());
-        String topicName = strConfirmContextItems[1].trim();
-        long timeStamp = Long.parseLong(strConfirmContextItems[3]);
+        String[] confirmItems = parseConfirmContext(confirmContext, sBuilder);
+        String keyId = confirmItems[0];
+        String topicName = confirmItems[1];
+        long timeStamp = Long.parseLong(confirmItems[2]);
         if (!baseConsumer.rmtDataCache.isPartitionInUse(keyId, timeStamp)) {
             return new ConsumerResult(TErrCodeConstants.BAD_REQUEST,
                     "The confirmContext's value invalid!");
@@ -206,16 +255,18 @@ public class SimplePullMessageConsumer implements PullMessageConsumer {
                     .append(confirmContext).toString());
         }
         if (this.baseConsumer.consumerConfig.isPullConfirmInLocal()) {
-            baseConsumer.rmtDataCache.succRspRelease(keyId, topicName,
-                timeStamp, isConsumed, isFilterConsume(topicName), currOffset, maxOffset);
+            releaseConfirmed(keyId, topicName, timeStamp, isConsumed, currOffset, maxOffset);
             return new ConsumerResult(true, TErrCodeConstants.SUCCESS,
                     "OK!", topicName, curPartition, currOffset, maxOffset);
         } else {
             try {
+                final long confirmStartTime = System.nanoTime();
                 ClientBroker.CommitOffsetResponseB2C commitResponse =
                     baseConsumer.getBrokerService(curPartition.getBroker())
                         .consumerCommitC2B(baseConsumer.createBrokerCommitRequest(curPartition, isConsumed),
                             AddressUtils.getLocalAddress(), getConsumerConfig().isTlsEnable());
+                baseConsumer.updateMetrics(ClientMetrics.CONFIRM_RTT_US, curPartition.getBrokerId(),
+                        (System.nanoTime() - confirmStartTime) / 1000L);
                 if (commitResponse == null) {
                     return new ConsumerResult(TErrCodeConstants.BAD_REQUEST,
                             sBuilder.append("Confirm ").append(confirmContext)
@@ -236,9 +287,209 @@ public class SimplePullMessageConsumer implements PullMessageConsumer {
                 throw new TubeClientException(sBuilder.append("Confirm ")
                         .append(confirmContext).append("'s offset failed.").toString(), e);
             } finally {
-                baseConsumer.rmtDataCache.succRspRelease(keyId, topicName,
-                    timeStamp, isConsumed, isFilterConsume(topicName), currOffset, maxOffset);
+                releaseConfirmed(keyId, topicName, timeStamp, isConsumed, currOffset, maxOffset);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<ConsumerResult> getMessageAsync() throws TubeClientException {
+        baseConsumer.checkClientRunning();
+        if (!baseConsumer.isSubscribed()) {
+            throw new TubeClientException("Please complete topic's Subscribe call first!");
+        }
+        if (asyncFetchManager == null) {
+            throw new TubeClientException(
+                    "getMessageAsync is not supported when the messages are prefetched!");
+        }
+        return asyncFetchManager.requestMessage();
+    }
+
+    @Override
+    public CompletableFuture<ConsumerResult> confirmConsumeAsync(final String confirmContext,
+                                                                 final boolean isConsumed)
+            throws TubeClientException {
+        if (this.baseConsumer.consumerConfig.isPullConfirmInLocal()) {
+            // the confirm is released in local without waiting the broker
+            return CompletableFuture.completedFuture(confirmConsume(confirmContext, isConsumed));
+        }
+        baseConsumer.checkClientRunning();
+        if (!baseConsumer.isSubscribed()) {
+            throw new TubeClientException("Please complete topic's Subscribe call first!");
+        }
+        final StringBuilder sBuilder = new StringBuilder(512);
+        String[] confirmItems = parseConfirmContext(confirmContext, sBuilder);
+        final String keyId = confirmItems[0];
+        final String topicName = confirmItems[1];
+        final long timeStamp = Long.parseLong(confirmItems[2]);
+        if (!baseConsumer.rmtDataCache.isPartitionInUse(keyId, timeStamp)) {
+            return CompletableFuture.completedFuture(new ConsumerResult(
+                    TErrCodeConstants.BAD_REQUEST, "The confirmContext's value invalid!"));
+        }
+        final Partition curPartition =
+                baseConsumer.rmtDataCache.getPartitionByKey(keyId);
+        if (curPartition == null) {
+            return CompletableFuture.completedFuture(new ConsumerResult(
+                    TErrCodeConstants.NOT_FOUND, sBuilder
+                    .append("Not found the partition by confirmContext:")
+                    .append(confirmContext).toString()));
+        }
+        final CompletableFuture<ConsumerResult> confirmFuture = new CompletableFuture<>();
+        final long confirmStartTime = System.nanoTime();
+        try {
+            baseConsumer.getAsyncBrokerService(curPartition.getBroker())
+                    .consumerCommitC2B(baseConsumer.createBrokerCommitRequest(curPartition, isConsumed),
+                            AddressUtils.getLocalAddress(), getConsumerConfig().isTlsEnable(),
+                            new Callback() {
+                                @Override
+                                public void handleResult(final Object result) {
+                                    baseConsumer.updateMetrics(ClientMetrics.CONFIRM_RTT_US,
+                                            curPartition.getBrokerId(),
+                                            (System.nanoTime() - confirmStartTime) / 1000L);
+                                    asyncCallbackRunner.execute(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            confirmFuture.complete(processConfirmResponse(result,
+                                                    confirmContext, keyId, topicName, timeStamp,
+                                                    isConsumed, curPartition));
+                                        }
+                                    });
+                                }
+
+                                @Override
+                                public void handleError(final Throwable error) {
+                                    asyncCallbackRunner.execute(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            releaseConfirmed(keyId, topicName, timeStamp, isConsumed,
+                                                    TBaseConstants.META_VALUE_UNDEFINED,
+                                                    TBaseConstants.META_VALUE_UNDEFINED);
+                                            confirmFuture.completeExceptionally(new TubeClientException(
+                                                    new StringBuilder(512).append("Confirm ")
+                                                            .append(confirmContext)
+                                                            .append("'s offset failed.").toString(), error));
+                                        }
+                                    });
+                                }
+                            });
+        } catch (Throwable e) {
+            releaseConfirmed(keyId, topicName, timeStamp, isConsumed,
+                    TBaseConstants.META_VALUE_UNDEFINED, TBaseConstants.META_VALUE_UNDEFINED);
+            throw new TubeClientException(sBuilder.append("Confirm ")
+                    .append(confirmContext).append("'s offset failed.").toString(), e);
+        }
+        return confirmFuture;
+    }
+
+    // release the confirmed partition with the commit response
+    private ConsumerResult processConfirmResponse(final Object result, final String confirmContext,
+                                                  final String keyId, final String topicName,
+                                                  final long timeStamp, final boolean isConsumed,
+                                                  final Partition curPartition) {
+        long currOffset = TBaseConstants.META_VALUE_UNDEFINED;
+        long maxOffset = TBaseConstants.META_VALUE_UNDEFINED;
+        ConsumerResult consumerResult;
+        if (result instanceof ClientBroker.CommitOffsetResponseB2C) {
+            ClientBroker.CommitOffsetResponseB2C commitResponse =
+                    (ClientBroker.CommitOffsetResponseB2C) result;
+            if (commitResponse.hasCurrOffset() && commitResponse.getCurrOffset() >= 0) {
+                currOffset = commitResponse.getCurrOffset();
+            }
+            if (commitResponse.hasMaxOffset() && commitResponse.getMaxOffset() >= 0) {
+                maxOffset = commitResponse.getMaxOffset();
+            }
+            consumerResult = new ConsumerResult(commitResponse.getSuccess(),
+                    commitResponse.getErrCode(), commitResponse.getErrMsg(),
+                    topicName, curPartition, currOffset, maxOffset);
+        } else {
+            consumerResult = new ConsumerResult(TErrCodeConstants.BAD_REQUEST,
+                    new StringBuilder(512).append("Confirm ").append(confirmContext)
+                            .append("'s offset failed!").toString());
+        }
+        releaseConfirmed(keyId, topicName, timeStamp, isConsumed, currOffset, maxOffset);
+        return consumerResult;
+    }
+
+    // return the partition key, topic name and used token of the confirm context
+    private String[] parseConfirmContext(final String confirmContext,
+                                         final StringBuilder sBuilder) throws TubeClientException {
+        // Verify if the confirmContext is valid
+        if (TStringUtils.isBlank(confirmContext)) {
+            throw new TubeClientException("ConfirmContext is null !");
+        }
+        String[] strConfirmContextItems =
+                confirmContext.split(TokenConstants.ATTR_SEP);
+        if (strConfirmContextItems.length != 4) {
+            throw new TubeClientException(
+                    "ConfirmContext format error: value must be aaaa:bbbb:cccc:ddddd !");
+        }
+        for (String itemStr : strConfirmContextItems) {
+            if (TStringUtils.isBlank(itemStr)) {
+                throw new TubeClientException(sBuilder
+                        .append("ConfirmContext's format error: item (")
+                        .append(itemStr).append(") is null !").toString());
+            }
+        }
+        String keyId = sBuilder.append(strConfirmContextItems[0].trim())
+                .append(TokenConstants.ATTR_SEP).append(strConfirmContextItems[1].trim())
+                .append(TokenConstants.ATTR_SEP).append(strConfirmContextItems[2].trim()).toString();
+        sBuilder.delete(0, sBuilder.length());
+        return new String[]{keyId, strConfirmContextItems[1].trim(), strConfirmContextItems[3]};
+    }
+
+    private void releaseConfirmed(String keyId, String topicName, long timeStamp,
+                                  boolean isConsumed, long currOffset, long maxOffset) {
+        baseConsumer.rmtDataCache.succRspRelease(keyId, topicName,
+                timeStamp, isConsumed, isFilterConsume(topicName), currOffset, maxOffset);
+        wakeupAsyncFetch();
+    }
+
+    private void wakeupAsyncFetch() {
+        if (asyncFetchManager != null) {
+            asyncFetchManager.wakeup();
+        }
+    }
+
+    private ConsumerResult getPrefetchedMessage() throws TubeClientException {
+        FetchContext taskContext;
+        long waitPeriodMs =
+                baseConsumer.getConsumerConfig().getPullConsumeReadyWaitPeriodMs();
+        long startTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                if (baseConsumer.isShutdown()) {
+                    return new ConsumerResult(TErrCodeConstants.BAD_REQUEST,
+                            "Client instance has been shutdown!");
+                }
+                taskContext = prefetchManager.takeFetchedMessages(
+                        baseConsumer.getConsumerConfig().getPullConsumeReadyChkSliceMs());
+                if (taskContext != null) {
+                    return new ConsumerResult(taskContext);
+                }
+                if (waitPeriodMs >= 0
+                        && System.currentTimeMillis() - startTime >= waitPeriodMs) {
+                    PartitionSelectResult selectResult =
+                            baseConsumer.rmtDataCache.getCurrPartsStatus();
+                    if (selectResult.isSuccess()) {
+                        return new ConsumerResult(TErrCodeConstants.ALL_PARTITION_WAITING,
+                                "No prefetched message ready!");
+                    }
+                    return new ConsumerResult(selectResult.getErrCode(), selectResult.getErrMsg());
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ConsumerResult(TErrCodeConstants.BAD_REQUEST,
+                    "Interrupted while waiting prefetched message!");
+        }
+    }
+
+    private void startFetchWorkers() {
+        if (prefetchManager != null) {
+            prefetchManager.startPrefetchWorkers();
+        }
+        if (asyncFetchManager != null) {
+            asyncFetchManager.startDispatchWorker();
         }
     }
 }
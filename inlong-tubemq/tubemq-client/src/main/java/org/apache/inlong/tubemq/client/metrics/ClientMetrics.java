@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.inlong.tubemq.corebase.utils.LatencyHistogram;
+import org.apache.inlong.tubemq.corerpc.RpcServiceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per broker histograms of the client latencies and sizes.
+ *
+ * The metrics are exposed by JMX, and handed to the configured reporter at each report
+ * period; the histograms reported are replaced by empty ones, so each report holds the
+ * values of one period. Without reporter the values are kept until reset through JMX.
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+    // round trip time of the produce request, in microseconds
+    public static final String PRODUCE_RTT_US = "produce_rtt_us";
+    // message count of the produce request
+    public static final String PRODUCE_BATCH_MSGS = "produce_batch_msgs";
+    // round trip time of the fetch request, in microseconds
+    public static final String FETCH_RTT_US = "fetch_rtt_us";
+    // message count of the fetch response
+    public static final String FETCH_MSGS = "fetch_msgs";
+    // round trip time of the confirm request, in microseconds
+    public static final String CONFIRM_RTT_US = "confirm_rtt_us";
+    // time of the consumption paused by the rebalance, in milliseconds
+    public static final String REBALANCE_PAUSE_MS = "rebalance_pause_ms";
+    // the broker id of the metric not related to a broker
+    public static final int NO_BROKER_ID = -1;
+    private static final Logger logger =
+            LoggerFactory.getLogger(ClientMetrics.class);
+    private static final AtomicInteger INSTANCE_SEQ = new AtomicInteger(0);
+    private final String clientId;
+    private final long reportPeriodMs;
+    private final MetricsReporter reporter;
+    // the connections are shared by the clients of the session factory
+    private final RpcServiceFactory rpcServiceFactory;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Integer, LatencyHistogram>>
+            metricsMap = new ConcurrentHashMap<>();
+    // Metrics status:
+    // -1: Undefined
+    // 0: Stopped
+    // 1: Started
+    private final AtomicInteger status = new AtomicInteger(-1);
+    private ObjectName objectName;
+    private ScheduledExecutorService reportExecutor;
+
+    /**
+     * Create the client metrics.
+     *
+     * @param clientId        the producer or consumer id
+     * @param reportPeriodMs  the report period
+     * @param reporter        the reporter, null means only exposed by JMX
+     */
+    public ClientMetrics(String clientId, long reportPeriodMs, MetricsReporter reporter) {
+        this(clientId, reportPeriodMs, reporter, null);
+    }
+
+    /**
+     * Create the client metrics with the connection statistics.
+     *
+     * @param clientId           the producer or consumer id
+     * @param reportPeriodMs     the report period
+     * @param reporter           the reporter, null means only exposed by JMX
+     * @param rpcServiceFactory  the rpc service factory of the connections, may be null
+     */
+    public ClientMetrics(String clientId, long reportPeriodMs,
+                         MetricsReporter reporter, RpcServiceFactory rpcServiceFactory) {
+        this.clientId = clientId;
+        this.reportPeriodMs = reportPeriodMs;
+        this.reporter = reporter;
+        this.rpcServiceFactory = rpcServiceFactory;
+    }
+
+    /**
+     * Register the JMX bean and start the report task.
+     */
+    public void start() {
+        if (!status.compareAndSet(-1, 1)) {
+            return;
+        }
+        try {
+            // the clients of a session factory share the same id
+            objectName = new ObjectName(new StringBuilder(256)
+                    .append("org.apache.inlong.tubemq:type=ClientMetrics,name=")
+                    .append(ObjectName.quote(clientId)).append(",seq=")
+                    .append(INSTANCE_SEQ.incrementAndGet()).toString());
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            mbeanServer.registerMBean(this, objectName);
+        } catch (Throwable e) {
+            objectName = null;
+            logger.warn("[Client Metrics] register JMX bean failure", e);
+        }
+        if (reporter != null && reportPeriodMs > 0) {
+            reportExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Client_Metrics_Reporter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reportExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            }, reportPeriodMs, reportPeriodMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the report task after reporting the remaining values, and unregister the JMX bean.
+     */
+    public void stop() {
+        if (!status.compareAndSet(1, 0)) {
+            return;
+        }
+        if (reportExecutor != null) {
+            reportExecutor.shutdownNow();
+            report();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Throwable e) {
+                logger.warn("[Client Metrics] unregister JMX bean failure", e);
+            }
+        }
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param metricName  the metric name
+     * @param brokerId    the broker id, NO_BROKER_ID if not related to a broker
+     * @param value       the value
+     */
+    public void update(String metricName, int brokerId, long value) {
+        ConcurrentHashMap<Integer, LatencyHistogram> brokerMap = metricsMap.get(metricName);
+        if (brokerMap == null) {
+            ConcurrentHashMap<Integer, LatencyHistogram> newMap = new ConcurrentHashMap<>();
+            brokerMap = metricsMap.putIfAbsent(metricName, newMap);
+            if (brokerMap == null) {
+                brokerMap = newMap;
+            }
+        }
+        LatencyHistogram histogram = brokerMap.get(brokerId);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = brokerMap.putIfAbsent(brokerId, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        histogram.update(value);
+    }
+
+    /**
+     * Get the histogram of a metric.
+     *
+     * @param metricName  the metric name
+     * @param brokerId    the broker id
+     * @return the histogram, null if no value recorded
+     */
+    public LatencyHistogram getHistogram(String metricName, int brokerId) {
+        ConcurrentHashMap<Integer, LatencyHistogram> brokerMap = metricsMap.get(metricName);
+        return brokerMap == null ? null : brokerMap.get(brokerId);
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public String getMetricsJson() {
+        int metricCnt = 0;
+        StringBuilder strBuff = new StringBuilder(512);
+        strBuff.append("{\"clientId\":\"").append(clientId).append("\",\"metrics\":{");
+        for (Map.Entry<String, ConcurrentHashMap<Integer, LatencyHistogram>> metricEntry
+                : metricsMap.entrySet()) {
+            if (metricCnt++ > 0) {
+                strBuff.append(",");
+            }
+            int brokerCnt = 0;
+            strBuff.append("\"").append(metricEntry.getKey()).append("\":{");
+            for (Map.Entry<Integer, LatencyHistogram> brokerEntry
+                    : metricEntry.getValue().entrySet()) {
+                if (brokerCnt++ > 0) {
+                    strBuff.append(",");
+                }
+                strBuff.append("\"").append(brokerEntry.getKey()).append("\":");
+                brokerEntry.getValue().toJsonString(strBuff);
+            }
+            strBuff.append("}");
+        }
+        return strBuff.append("}}").toString();
+    }
+
+    @Override
+    public String getConnectionStatsJson() {
+        if (rpcServiceFactory == null) {
+            return "{}";
+        }
+        return rpcServiceFactory.getClientStats(new StringBuilder(512)).toString();
+    }
+
+    @Override
+    public void reset() {
+        for (ConcurrentHashMap<Integer, LatencyHistogram> brokerMap : metricsMap.values()) {
+            for (LatencyHistogram histogram : brokerMap.values()) {
+                histogram.reset();
+            }
+        }
+    }
+
+    // swap in empty histograms and report the old ones, a value recorded by a thread
+    // holding the old histogram during the swap may be missed
+    void report() {
+        for (Map.Entry<String, ConcurrentHashMap<Integer, LatencyHistogram>> metricEntry
+                : metricsMap.entrySet()) {
+            ConcurrentHashMap<Integer, LatencyHistogram> brokerMap = metricEntry.getValue();
+            for (Map.Entry<Integer, LatencyHistogram> brokerEntry : brokerMap.entrySet()) {
+                LatencyHistogram histogram = brokerEntry.getValue();
+                if (histogram.getCount() == 0
+                        || !brokerMap.replace(brokerEntry.getKey(),
+                        histogram, new LatencyHistogram())) {
+                    continue;
+                }
+                try {
+                    reporter.report(clientId, metricEntry.getKey(),
+                            brokerEntry.getKey(), histogram);
+                } catch (Throwable e) {
+                    logger.warn("[Client Metrics] report metrics failure", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.metrics;
+
+/**
+ * JMX view of the client metrics.
+ */
+public interface ClientMetricsMXBean {
+
+    /**
+     * Get the metrics recorded since the last report or reset.
+     *
+     * @return the metrics in json format
+     */
+    String getMetricsJson();
+
+    /**
+     * Get the in-flight request count and the round trip time of the connections
+     * of the session factory.
+     *
+     * @return the connection statistics in json format
+     */
+    String getConnectionStatsJson();
+
+    /**
+     * Clear the recorded metrics.
+     */
+    void reset();
+}
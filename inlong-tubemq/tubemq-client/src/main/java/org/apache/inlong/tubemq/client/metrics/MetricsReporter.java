@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.metrics;
+
+import org.apache.inlong.tubemq.corebase.utils.LatencyHistogram;
+
+/**
+ * Receive the client metrics periodically, see TubeClientConfig.setMetricsReporter().
+ */
+public interface MetricsReporter {
+
+    /**
+     * Report the values recorded in the last period of a metric.
+     *
+     * @param clientId    the producer or consumer id
+     * @param metricName  the metric name defined in ClientMetrics
+     * @param brokerId    the broker id, -1 if the metric is not of a broker
+     * @param histogram   the recorded values, not updated anymore
+     */
+    void report(String clientId, String metricName, int brokerId, LatencyHistogram histogram);
+}
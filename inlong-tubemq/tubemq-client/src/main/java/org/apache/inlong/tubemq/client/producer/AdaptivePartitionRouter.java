@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.client.producer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.inlong.tubemq.client.exception.TubeClientException;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
+
+/**
+ * A partition router choosing the partition by the load of its broker.
+ *
+ * The load of a broker is the moving average of its send latency multiplied by its
+ * in-flight requests. Two partitions are picked at random and the one on the less loaded
+ * broker is chosen, so a slow broker gets fewer messages without all the messages rushing
+ * to the fastest one. The message carrying the partition key attribute is routed by
+ * KeyHashPartitionRouter, so it goes to the same partition as with that router.
+ */
+public class AdaptivePartitionRouter implements PartitionRouter {
+
+    // weight of the latest latency in the moving average
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+    // the moving average decays by half in this period without any response
+    private static final long LATENCY_DECAY_HALF_LIFE_MS = 10000L;
+    // max times to pick the second partition on another broker
+    private static final int MAX_SECOND_PICK_TIMES = 3;
+    private final String partitionKeyAttr;
+    private final KeyHashPartitionRouter keyHashRouter;
+    private final long failPenaltyMs;
+    // null to use the thread local random
+    private final Random random;
+    private final ConcurrentHashMap<Integer/* brokerId */, BrokerLoad> brokerLoadMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Create an adaptive partition router.
+     *
+     * @param partitionKeyAttr  the attribute key of the partition key, blank means not used
+     * @param failPenaltyMs     the latency counted for a send without response
+     */
+    public AdaptivePartitionRouter(String partitionKeyAttr, long failPenaltyMs) {
+        this(partitionKeyAttr, failPenaltyMs, null);
+    }
+
+    // the random picks are reproducible with a given random
+    AdaptivePartitionRouter(String partitionKeyAttr, long failPenaltyMs, Random random) {
+        this.partitionKeyAttr = partitionKeyAttr;
+        this.keyHashRouter = new KeyHashPartitionRouter(partitionKeyAttr);
+        this.failPenaltyMs = failPenaltyMs;
+        this.random = random;
+    }
+
+    @Override
+    public Partition getPartition(final Message message,
+                                  final List<Partition> partitions) throws TubeClientException {
+        return getPartition(message, null, partitions);
+    }
+
+    @Override
+    public Partition getPartition(final Message message,
+                                  final Map<Integer, List<Partition>> brokerPartitions,
+                                  final List<Partition> partitions) throws TubeClientException {
+        if (partitions == null || partitions.isEmpty()) {
+            throw new TubeClientException(new StringBuilder(512)
+                    .append("No available partition for topic: ")
+                    .append(message.getTopic()).toString());
+        }
+        if (TStringUtils.isNotBlank(partitionKeyAttr)
+                && message.getAttrValue(partitionKeyAttr) != null) {
+            return keyHashRouter.getPartition(message, brokerPartitions, partitions);
+        }
+        int partSize = partitions.size();
+        if (partSize == 1) {
+            return partitions.get(0);
+        }
+        Random random = (this.random == null) ? ThreadLocalRandom.current() : this.random;
+        int firstIndex = random.nextInt(partSize);
+        Partition firstPart = partitions.get(firstIndex);
+        Partition secondPart = null;
+        // compare two brokers if possible, the partitions of a broker have the same load
+        for (int i = 0; i < MAX_SECOND_PICK_TIMES; i++) {
+            int secondIndex = random.nextInt(partSize - 1);
+            if (secondIndex >= firstIndex) {
+                secondIndex++;
+            }
+            secondPart = partitions.get(secondIndex);
+            if (secondPart.getBrokerId() != firstPart.getBrokerId()) {
+                break;
+            }
+        }
+        long currTime = System.currentTimeMillis();
+        // the partition delayed for send failures is chosen only if both are delayed
+        boolean isFirstDelayed = firstPart.getDelayTimeStamp() >= currTime;
+        boolean isSecondDelayed = secondPart.getDelayTimeStamp() >= currTime;
+        if (isFirstDelayed != isSecondDelayed) {
+            return isFirstDelayed ? secondPart : firstPart;
+        }
+        return getLoadScore(firstPart.getBrokerId(), currTime)
+                <= getLoadScore(secondPart.getBrokerId(), currTime) ? firstPart : secondPart;
+    }
+
+    /**
+     * Record a request sent to the broker.
+     *
+     * @param brokerId  the broker id
+     * @return the send time to pass to onSendComplete
+     */
+    public long onSendStart(int brokerId) {
+        getOrCreateBrokerLoad(brokerId).inFlightCnt.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the end of a request sent to the broker, called once for each request.
+     *
+     * A response counts its real latency even if it reports a failure, only a request
+     * without response, such as a timeout or a connection error, counts the fail penalty.
+     *
+     * @param brokerId       the broker id
+     * @param sendStartTime  the value returned by onSendStart
+     * @param isResponded    whether the broker responded
+     */
+    public void onSendComplete(int brokerId, long sendStartTime, boolean isResponded) {
+        BrokerLoad brokerLoad = getOrCreateBrokerLoad(brokerId);
+        brokerLoad.inFlightCnt.decrementAndGet();
+        double latencyMs = (System.nanoTime() - sendStartTime) / 1000000.0;
+        if (!isResponded) {
+            latencyMs = Math.max(latencyMs, failPenaltyMs);
+        }
+        brokerLoad.addLatency(latencyMs, System.currentTimeMillis());
+    }
+
+    // the broker without response yet has score 1, so it's tried first
+    double getLoadScore(int brokerId, long currTime) {
+        BrokerLoad brokerLoad = brokerLoadMap.get(brokerId);
+        if (brokerLoad == null) {
+            return 1.0;
+        }
+        return (brokerLoad.getLatency(currTime) + 1.0)
+                * (Math.max(0, brokerLoad.inFlightCnt.get()) + 1);
+    }
+
+    private BrokerLoad getOrCreateBrokerLoad(int brokerId) {
+        BrokerLoad brokerLoad = brokerLoadMap.get(brokerId);
+        if (brokerLoad == null) {
+            BrokerLoad newLoad = new BrokerLoad();
+            brokerLoad = brokerLoadMap.putIfAbsent(brokerId, newLoad);
+            if (brokerLoad == null) {
+                brokerLoad = newLoad;
+            }
+        }
+        return brokerLoad;
+    }
+
+    private static class BrokerLoad {
+        private final AtomicInteger inFlightCnt = new AtomicInteger(0);
+        // the moving average is updated by the response threads together,
+        // a lost update only makes the average a little stale
+        private volatile double latencyMs = 0.0;
+        private volatile long lastUpdateTime = System.currentTimeMillis();
+
+        void addLatency(double sampleMs, long currTime) {
+            this.latencyMs = getLatency(currTime) * (1 - LATENCY_EWMA_ALPHA)
+                    + sampleMs * LATENCY_EWMA_ALPHA;
+            this.lastUpdateTime = currTime;
+        }
+
+        // a slow broker left out recovers as its latency decays
+        double getLatency(long currTime) {
+            long idleTime = currTime - lastUpdateTime;
+            if (idleTime <= 0) {
+                return latencyMs;
+            }
+            return latencyMs * Math.pow(0.5, (double) idleTime / LATENCY_DECAY_HALF_LIFE_MS);
+        }
+    }
+}
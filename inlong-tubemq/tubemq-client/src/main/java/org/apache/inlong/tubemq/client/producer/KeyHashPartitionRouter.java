@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.producer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.inlong.tubemq.client.exception.TubeClientException;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
+
+/**
+ * A partition router keeping the messages of the same key on one partition.
+ *
+ * The key is the value of a configured message attribute, such as the stream id. The key
+ * is mapped to a broker by rendezvous hashing over all the brokers of the topic, then to a
+ * partition of the broker by jump consistent hashing over its partitions ordered by id, so
+ * adding or removing a broker, whatever its id, or adding partitions to a broker moves only
+ * the keys taken by the changed ones. The mapping is computed over all the partitions of
+ * the topic, a key is moved to another allowed partition only while its own partition is
+ * not allowed. The messages without the key are routed in turn.
+ */
+public class KeyHashPartitionRouter implements PartitionRouter {
+
+    private final String partitionKeyAttr;
+    private final RoundRobinPartitionRouter roundRobinRouter =
+            new RoundRobinPartitionRouter();
+
+    /**
+     * Create a key hash partition router.
+     *
+     * @param partitionKeyAttr  the attribute key of the partition key
+     */
+    public KeyHashPartitionRouter(String partitionKeyAttr) {
+        this.partitionKeyAttr = partitionKeyAttr;
+    }
+
+    @Override
+    public Partition getPartition(final Message message,
+                                  final List<Partition> partitions) throws TubeClientException {
+        return getPartition(message, null, partitions);
+    }
+
+    @Override
+    public Partition getPartition(final Message message,
+                                  final Map<Integer, List<Partition>> brokerPartitions,
+                                  final List<Partition> partitions) throws TubeClientException {
+        if (partitions == null || partitions.isEmpty()) {
+            throw new TubeClientException(new StringBuilder(512)
+                    .append("No available partition for topic: ")
+                    .append(message.getTopic()).toString());
+        }
+        String partitionKey = null;
+        if (TStringUtils.isNotBlank(partitionKeyAttr)) {
+            partitionKey = message.getAttrValue(partitionKeyAttr);
+        }
+        if (partitionKey == null) {
+            return roundRobinRouter.getPartition(message, partitions);
+        }
+        final long keyHash = hashKey(partitionKey);
+        if (brokerPartitions != null && !brokerPartitions.isEmpty()) {
+            Partition selected = selectByKey(keyHash, brokerPartitions);
+            if (selected != null) {
+                for (Partition partition : partitions) {
+                    if (partition.getPartitionKey().equals(selected.getPartitionKey())) {
+                        return partition;
+                    }
+                }
+            }
+        }
+        // the partition of the key is not allowed, choose among the allowed ones
+        Map<Integer, List<Partition>> allowedPartitions = new HashMap<>();
+        for (Partition partition : partitions) {
+            List<Partition> brokerParts = allowedPartitions.get(partition.getBrokerId());
+            if (brokerParts == null) {
+                brokerParts = new ArrayList<>();
+                allowedPartitions.put(partition.getBrokerId(), brokerParts);
+            }
+            brokerParts.add(partition);
+        }
+        return selectByKey(keyHash, allowedPartitions);
+    }
+
+    /**
+     * Map a key to a bucket, the keys move only to the new buckets when the buckets increase.
+     * See "A Fast, Minimal Memory, Consistent Hash Algorithm" by John Lamping and Eric Veach.
+     *
+     * @param key         the hash of the key
+     * @param bucketCnt   the bucket count
+     * @return the bucket index in [0, bucketCnt)
+     */
+    public static int jumpConsistentHash(long key, int bucketCnt) {
+        long hash = key;
+        long bucket = -1;
+        long next = 0;
+        while (next < bucketCnt) {
+            bucket = next;
+            hash = hash * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((hash >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    private Partition selectByKey(long keyHash,
+                                  Map<Integer, List<Partition>> brokerPartitions) {
+        // the broker with the max weight of the key, only the keys of a removed broker move
+        List<Partition> brokerParts = null;
+        long maxWeight = Long.MIN_VALUE;
+        for (Map.Entry<Integer, List<Partition>> entry : brokerPartitions.entrySet()) {
+            if (entry.getValue() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            long weight = mixHash(keyHash ^ mixHash(entry.getKey()));
+            if (brokerParts == null || weight > maxWeight) {
+                maxWeight = weight;
+                brokerParts = entry.getValue();
+            }
+        }
+        if (brokerParts == null) {
+            return null;
+        }
+        // the partitions of the selected broker in ascending order of id
+        int[] partitionIds = new int[brokerParts.size()];
+        for (int i = 0; i < partitionIds.length; i++) {
+            partitionIds[i] = brokerParts.get(i).getPartitionId();
+        }
+        Arrays.sort(partitionIds);
+        int partitionId = partitionIds[jumpConsistentHash(keyHash, partitionIds.length)];
+        for (Partition partition : brokerParts) {
+            if (partition.getPartitionId() == partitionId) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    private static long mixHash(long value) {
+        long hash = value ^ (value >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // 64 bits FNV-1a hash of the key
+    private static long hashKey(String partitionKey) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < partitionKey.length(); i++) {
+            hash ^= partitionKey.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
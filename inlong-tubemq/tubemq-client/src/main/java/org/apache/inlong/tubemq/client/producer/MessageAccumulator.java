@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.client.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.inlong.tubemq.client.exception.TubeClientException;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accumulates the asynchronously sent messages per partition. The messages of a
+ * partition are sent in one batch when the batch is full or has lingered long enough.
+ */
+public class MessageAccumulator {
+    private static final Logger logger =
+            LoggerFactory.getLogger(MessageAccumulator.class);
+    // partition key, the batch being accumulated
+    private final ConcurrentHashMap<String, PartitionBatch> partitionBatches =
+            new ConcurrentHashMap<>();
+    private final BatchSender batchSender;
+    private final long lingerMs;
+    private final int maxBatchSize;
+    private final int maxBatchMsgCount;
+    private final ScheduledExecutorService lingerScheduler;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    public MessageAccumulator(BatchSender batchSender, long lingerMs,
+                              int maxBatchSize, int maxBatchMsgCount) {
+        this.batchSender = batchSender;
+        this.lingerMs = lingerMs;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchMsgCount = maxBatchMsgCount;
+        this.lingerScheduler =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "tube_producer_batch_linger");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        long checkPeriodMs = Math.max(1, lingerMs / 2);
+        this.lingerScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendExpiredBatches(System.currentTimeMillis() - MessageAccumulator.this.lingerMs);
+                } catch (Throwable e) {
+                    logger.warn("[Batch Accumulator] send lingered batches failure", e);
+                }
+            }
+        }, checkPeriodMs, checkPeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a message to the batch of its partition, the batch is sent at once if it is full.
+     * If the accumulator is closed while the message is being added, the message is
+     * failed through its callback.
+     *
+     * @param partition the partition selected for the message
+     * @param message   the message
+     * @param msgSize   the data size of the message
+     * @param callback  the callback of the message
+     * @return false if the accumulator is closed
+     */
+    public boolean append(Partition partition, Message message,
+                          int msgSize, MessageSentCallback callback) {
+        if (closed.get()) {
+            return false;
+        }
+        PartitionBatch partBatch = partitionBatches.get(partition.getPartitionKey());
+        if (partBatch == null) {
+            PartitionBatch newBatch = new PartitionBatch();
+            partBatch = partitionBatches.putIfAbsent(partition.getPartitionKey(), newBatch);
+            if (partBatch == null) {
+                partBatch = newBatch;
+            }
+        }
+        List<SendingBatch> fullBatches = new ArrayList<>(2);
+        if (!partBatch.add(partition, message, msgSize, callback,
+                maxBatchSize, maxBatchMsgCount, closed, fullBatches)) {
+            // closed after the check above, the closing drain may have passed the batch
+            if (callback != null) {
+                callback.onException(new TubeClientException(
+                        "The message accumulator is closed!"));
+            }
+            return true;
+        }
+        for (SendingBatch fullBatch : fullBatches) {
+            send(fullBatch);
+        }
+        return true;
+    }
+
+    /**
+     * Send all the accumulated messages, and stop accepting new messages.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            lingerScheduler.shutdownNow();
+            sendExpiredBatches(Long.MAX_VALUE);
+        }
+    }
+
+    private void sendExpiredBatches(long expireTime) {
+        for (PartitionBatch partBatch : partitionBatches.values()) {
+            SendingBatch expiredBatch = partBatch.drainIfCreatedBefore(expireTime);
+            if (expiredBatch != null) {
+                send(expiredBatch);
+            }
+        }
+    }
+
+    private void send(SendingBatch sendingBatch) {
+        try {
+            batchSender.sendBatch(sendingBatch.partition,
+                    sendingBatch.messages, sendingBatch.callbacks);
+        } catch (Throwable e) {
+            for (MessageSentCallback callback : sendingBatch.callbacks) {
+                if (callback != null) {
+                    callback.onException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The sender of the accumulated batches.
+     */
+    public interface BatchSender {
+
+        void sendBatch(Partition partition, List<Message> messages,
+                       List<MessageSentCallback> callbacks) throws Throwable;
+    }
+
+    private static class SendingBatch {
+        private final Partition partition;
+        private final List<Message> messages;
+        private final List<MessageSentCallback> callbacks;
+
+        SendingBatch(Partition partition, List<Message> messages,
+                     List<MessageSentCallback> callbacks) {
+            this.partition = partition;
+            this.messages = messages;
+            this.callbacks = callbacks;
+        }
+    }
+
+    private static class PartitionBatch {
+        private Partition partition;
+        private List<Message> messages = new ArrayList<>();
+        private List<MessageSentCallback> callbacks = new ArrayList<>();
+        private int dataSize = 0;
+        private long createTime = 0;
+
+        // the closed state is checked under the batch lock, so that a message added
+        // here is always seen by the drain of close()
+        synchronized boolean add(Partition partition, Message message,
+                                 int msgSize, MessageSentCallback callback,
+                                 int maxBatchSize, int maxBatchMsgCount,
+                                 AtomicBoolean closed, List<SendingBatch> fullBatches) {
+            if (closed.get()) {
+                return false;
+            }
+            // the message can't join the current batch, send the current one first
+            if (!messages.isEmpty() && dataSize + msgSize > maxBatchSize) {
+                fullBatches.add(drain());
+            }
+            if (messages.isEmpty()) {
+                this.createTime = System.currentTimeMillis();
+            }
+            this.partition = partition;
+            this.messages.add(message);
+            this.callbacks.add(callback);
+            this.dataSize += msgSize;
+            // the new batch may be full already, don't let it wait for the linger
+            if (dataSize >= maxBatchSize || messages.size() >= maxBatchMsgCount) {
+                fullBatches.add(drain());
+            }
+            return true;
+        }
+
+        synchronized SendingBatch drainIfCreatedBefore(long expireTime) {
+            if (messages.isEmpty() || createTime > expireTime) {
+                return null;
+            }
+            return drain();
+        }
+
+        private SendingBatch drain() {
+            final SendingBatch sendingBatch =
+                    new SendingBatch(partition, messages, callbacks);
+            this.messages = new ArrayList<>();
+            this.callbacks = new ArrayList<>();
+            this.dataSize = 0;
+            return sendingBatch;
+        }
+    }
+}
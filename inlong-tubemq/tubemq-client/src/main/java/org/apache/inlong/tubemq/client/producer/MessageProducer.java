@@ -17,6 +17,8 @@
 
 package org.apache.inlong.tubemq.client.producer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.apache.inlong.tubemq.client.exception.TubeClientException;
 import org.apache.inlong.tubemq.corebase.Message;
@@ -39,6 +41,38 @@ public interface MessageProducer extends Shutdownable {
     void sendMessage(Message message, MessageSentCallback cb)
             throws TubeClientException, InterruptedException;
 
+    /**
+     * Send a list of messages, the messages routed to the same partition
+     * are sent to the broker in batches.
+     *
+     * The default implementation sends the messages one by one with sendMessage().
+     *
+     * @param messages the messages to send
+     * @return the sent result of each message, in the order of the messages
+     */
+    default List<MessageSentResult> sendMessages(List<Message> messages)
+            throws TubeClientException, InterruptedException {
+        List<MessageSentResult> sentResults = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            sentResults.add(sendMessage(message));
+        }
+        return sentResults;
+    }
+
+    /**
+     * Send a list of messages asynchronously, the callback is called once for each message.
+     * The default implementation sends the messages one by one with sendMessage().
+     *
+     * @param messages the messages to send
+     * @param cb       the callback of the messages
+     */
+    default void sendMessages(List<Message> messages, MessageSentCallback cb)
+            throws TubeClientException, InterruptedException {
+        for (Message message : messages) {
+            sendMessage(message, cb);
+        }
+    }
+
     @Override
     void shutdown() throws Throwable;
 }
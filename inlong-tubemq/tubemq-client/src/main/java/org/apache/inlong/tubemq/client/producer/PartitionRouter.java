@@ -18,6 +18,7 @@
 package org.apache.inlong.tubemq.client.producer;
 
 import java.util.List;
+import java.util.Map;
 import org.apache.inlong.tubemq.client.exception.TubeClientException;
 import org.apache.inlong.tubemq.corebase.Message;
 import org.apache.inlong.tubemq.corebase.cluster.Partition;
@@ -26,4 +27,20 @@ import org.apache.inlong.tubemq.corebase.cluster.Partition;
 public interface PartitionRouter {
 
     Partition getPartition(Message message, List<Partition> partitions) throws TubeClientException;
+
+    /**
+     * Choose a partition knowing all the partitions of the topic, so that a router keeping
+     * a key on one partition stays stable while some brokers are not allowed.
+     *
+     * @param message           the message to send
+     * @param brokerPartitions  all the partitions of the topic, keyed by broker id
+     * @param partitions        the allowed partitions
+     * @return the selected partition
+     * @throws TubeClientException
+     */
+    default Partition getPartition(Message message,
+                                   Map<Integer, List<Partition>> brokerPartitions,
+                                   List<Partition> partitions) throws TubeClientException {
+        return getPartition(message, partitions);
+    }
 }
@@ -19,7 +19,11 @@ package org.apache.inlong.tubemq.client.producer;
 
 import com.google.protobuf.ByteString;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,6 +33,7 @@ import org.apache.commons.codec.binary.StringUtils;
 import org.apache.inlong.tubemq.client.config.TubeClientConfig;
 import org.apache.inlong.tubemq.client.exception.TubeClientException;
 import org.apache.inlong.tubemq.client.factory.InnerSessionFactory;
+import org.apache.inlong.tubemq.client.metrics.ClientMetrics;
 import org.apache.inlong.tubemq.client.producer.qltystats.DefaultBrokerRcvQltyStats;
 import org.apache.inlong.tubemq.corebase.Message;
 import org.apache.inlong.tubemq.corebase.TBaseConstants;
@@ -37,6 +42,7 @@ import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
 import org.apache.inlong.tubemq.corebase.cluster.Partition;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
 import org.apache.inlong.tubemq.corebase.utils.AddressUtils;
+import org.apache.inlong.tubemq.corebase.utils.MessageCompressUtils;
 import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
 import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
 import org.apache.inlong.tubemq.corerpc.RpcConfig;
@@ -61,8 +67,13 @@ public class SimpleMessageProducer implements MessageProducer {
     private final RpcServiceFactory rpcServiceFactory;
     private final ProducerManager producerManager;
     private final PartitionRouter partitionRouter;
+    // null if the partitions are chosen in turn
+    private final AdaptivePartitionRouter adaptiveRouter;
     private final DefaultBrokerRcvQltyStats brokerRcvQltyStats;
     private final RpcConfig rpcConfig = new RpcConfig();
+    private final MessageAccumulator msgAccumulator;
+    // null if the client metrics are disabled
+    private final ClientMetrics clientMetrics;
     private AtomicBoolean isShutDown = new AtomicBoolean(false);
 
     public SimpleMessageProducer(final InnerSessionFactory sessionFactory,
@@ -78,7 +89,18 @@ public class SimpleMessageProducer implements MessageProducer {
         this.rpcServiceFactory = this.sessionFactory.getRpcServiceFactory();
         this.producerManager = this.sessionFactory.getProducerManager();
         this.brokerRcvQltyStats = sessionFactory.getBrokerRcvQltyStats();
-        this.partitionRouter = new RoundRobinPartitionRouter();
+        if (tubeClientConfig.isAdaptivePartitionRouter()) {
+            this.adaptiveRouter = new AdaptivePartitionRouter(
+                    tubeClientConfig.getPartitionKeyAttr(), tubeClientConfig.getRpcTimeoutMs());
+            this.partitionRouter = this.adaptiveRouter;
+        } else if (TStringUtils.isNotBlank(tubeClientConfig.getPartitionKeyAttr())) {
+            this.adaptiveRouter = null;
+            this.partitionRouter =
+                    new KeyHashPartitionRouter(tubeClientConfig.getPartitionKeyAttr());
+        } else {
+            this.adaptiveRouter = null;
+            this.partitionRouter = new RoundRobinPartitionRouter();
+        }
         this.rpcConfig.put(RpcConstants.CONNECT_TIMEOUT, 3000);
         this.rpcConfig.put(RpcConstants.REQUEST_TIMEOUT,
             tubeClientConfig.getRpcTimeoutMs());
@@ -88,12 +110,34 @@ public class SimpleMessageProducer implements MessageProducer {
             tubeClientConfig.getNettyWriteBufferLowWaterMark());
         this.rpcConfig.put(RpcConstants.WORKER_COUNT,
             tubeClientConfig.getRpcConnProcessorCnt());
+        this.rpcConfig.put(RpcConstants.CLIENT_MAX_INFLIGHT_REQUESTS,
+            tubeClientConfig.getRpcMaxInflightRequests());
         this.rpcConfig.put(RpcConstants.WORKER_THREAD_NAME,
             "tube_producer_netty_worker-");
         this.rpcConfig.put(RpcConstants.WORKER_MEM_SIZE,
             tubeClientConfig.getRpcNettyWorkMemorySize());
         this.rpcConfig.put(RpcConstants.CALLBACK_WORKER_COUNT,
             tubeClientConfig.getRpcRspCallBackThreadCnt());
+        if (tubeClientConfig.getBatchLingerMs() > 0) {
+            this.msgAccumulator = new MessageAccumulator(new MessageAccumulator.BatchSender() {
+                @Override
+                public void sendBatch(Partition partition, List<Message> messages,
+                                      List<MessageSentCallback> callbacks) {
+                    sendMessagesAsync(partition, messages, callbacks);
+                }
+            }, tubeClientConfig.getBatchLingerMs(), tubeClientConfig.getBatchMaxSize(),
+                tubeClientConfig.getBatchMaxMsgCount());
+        } else {
+            this.msgAccumulator = null;
+        }
+        if (tubeClientConfig.isEnableClientMetrics()) {
+            this.clientMetrics = new ClientMetrics(this.producerManager.getProducerId(),
+                    tubeClientConfig.getMetricsReportPeriodMs(),
+                    tubeClientConfig.getMetricsReporter(), this.rpcServiceFactory);
+            this.clientMetrics.start();
+        } else {
+            this.clientMetrics = null;
+        }
     }
 
     /**
@@ -190,9 +234,15 @@ public class SimpleMessageProducer implements MessageProducer {
             return;
         }
         if (this.isShutDown.compareAndSet(false, true)) {
+            if (this.msgAccumulator != null) {
+                this.msgAccumulator.close();
+            }
             this.producerManager.removeTopic(publishTopicMap.keySet());
             this.publishTopicMap.clear();
             this.sessionFactory.removeClient(this);
+            if (this.clientMetrics != null) {
+                this.clientMetrics.stop();
+            }
             logger.info("[ShutDown] producer has stopped!");
         }
     }
@@ -203,12 +253,14 @@ public class SimpleMessageProducer implements MessageProducer {
         checkMessageAndStatus(message);
         Partition partition = this.selectPartition(message, BrokerWriteService.class);
         int brokerId = partition.getBrokerId();
+        SendTrace sendTrace = onSendStart(brokerId, 1);
         try {
             this.brokerRcvQltyStats.addSendStatistic(brokerId);
             ClientBroker.SendMessageResponseB2P response =
                     getBrokerService(partition.getBroker()).sendMessageP2B(
                             createSendMessageRequest(partition, message),
                             AddressUtils.getLocalAddress(), producerConfig.isTlsEnable());
+            onSendComplete(sendTrace, true);
             rpcServiceFactory.resetRmtAddrErrCount(partition.getBroker().getBrokerAddr());
             this.brokerRcvQltyStats.addReceiveStatistic(brokerId, response.getSuccess());
             if (!response.getSuccess()
@@ -221,6 +273,7 @@ public class SimpleMessageProducer implements MessageProducer {
                 rpcServiceFactory.addRmtAddrErrCount(partition.getBroker().getBrokerAddr());
             }
             partition.increRetries(1);
+            onSendComplete(sendTrace, false);
             this.brokerRcvQltyStats.addReceiveStatistic(brokerId, false);
             throw new TubeClientException("Send message failed", e);
         }
@@ -229,10 +282,15 @@ public class SimpleMessageProducer implements MessageProducer {
     @Override
     public void sendMessage(final Message message, final MessageSentCallback cb) throws TubeClientException,
             InterruptedException {
-        checkMessageAndStatus(message);
+        int msgSize = checkMessageAndStatus(message);
         final Partition partition =
                 this.selectPartition(message, BrokerWriteService.AsyncService.class);
+        if (this.msgAccumulator != null
+                && this.msgAccumulator.append(partition, message, msgSize, cb)) {
+            return;
+        }
         final int brokerId = partition.getBrokerId();
+        final SendTrace sendTrace = onSendStart(brokerId, 1);
         try {
             this.brokerRcvQltyStats.addSendStatistic(brokerId);
             getAsyncBrokerService(partition.getBroker()).sendMessageP2B(
@@ -242,6 +300,7 @@ public class SimpleMessageProducer implements MessageProducer {
                         @Override
                         public void handleResult(Object result) {
                             if (!(result instanceof ClientBroker.SendMessageResponseB2P)) {
+                                onSendComplete(sendTrace, false);
                                 return;
                             }
                             final ClientBroker.SendMessageResponseB2P responseB2P =
@@ -249,6 +308,7 @@ public class SimpleMessageProducer implements MessageProducer {
                             final MessageSentResult rt =
                                     SimpleMessageProducer.this.buildMsgSentResult(message, partition, responseB2P);
                             partition.resetRetries();
+                            onSendComplete(sendTrace, true);
                             brokerRcvQltyStats.addReceiveStatistic(brokerId,
                                     responseB2P.getSuccess());
                             if (!responseB2P.getSuccess()
@@ -261,6 +321,7 @@ public class SimpleMessageProducer implements MessageProducer {
                         @Override
                         public void handleError(Throwable error) {
                             partition.increRetries(1);
+                            onSendComplete(sendTrace, false);
                             brokerRcvQltyStats.addReceiveStatistic(brokerId, false);
                             cb.onException(error);
                         }
@@ -272,12 +333,201 @@ public class SimpleMessageProducer implements MessageProducer {
             }
             // if failed,increment the counter
             partition.increRetries(1);
+            onSendComplete(sendTrace, false);
             this.brokerRcvQltyStats.addReceiveStatistic(brokerId, false);
             cb.onException(e);
         }
     }
 
-    private void checkMessageAndStatus(final Message message) throws TubeClientException {
+    @Override
+    public List<MessageSentResult> sendMessages(final List<Message> messages)
+            throws TubeClientException, InterruptedException {
+        List<MessageBatch> msgBatches =
+                groupMessages(messages, BrokerWriteService.class);
+        MessageSentResult[] sentResults = new MessageSentResult[messages.size()];
+        for (MessageBatch msgBatch : msgBatches) {
+            List<MessageSentResult> batchResults =
+                    sendMessagesSync(msgBatch.partition, msgBatch.messages);
+            for (int i = 0; i < batchResults.size(); i++) {
+                sentResults[msgBatch.msgIndexes.get(i)] = batchResults.get(i);
+            }
+        }
+        return Arrays.asList(sentResults);
+    }
+
+    @Override
+    public void sendMessages(final List<Message> messages, final MessageSentCallback cb)
+            throws TubeClientException, InterruptedException {
+        if (this.msgAccumulator == null) {
+            List<MessageBatch> msgBatches =
+                    groupMessages(messages, BrokerWriteService.AsyncService.class);
+            for (MessageBatch msgBatch : msgBatches) {
+                sendMessagesAsync(msgBatch.partition, msgBatch.messages,
+                        Collections.nCopies(msgBatch.messages.size(), cb));
+            }
+            return;
+        }
+        checkMessagesAndStatus(messages);
+        for (Message message : messages) {
+            Partition partition =
+                    this.selectPartition(message, BrokerWriteService.AsyncService.class);
+            if (!this.msgAccumulator.append(partition, message, getMessageSize(message), cb)) {
+                cb.onException(new TubeClientException("Status error: producer has been shutdown!"));
+            }
+        }
+    }
+
+    /**
+     * Check the messages and group them by the selected partition, the size and
+     * message count of each group are limited by the batch configuration.
+     *
+     * @param messages the messages to send
+     * @param clazz    the service class used to check the broker connection
+     * @return the message batches
+     * @throws TubeClientException
+     */
+    private List<MessageBatch> groupMessages(final List<Message> messages,
+                                             Class clazz) throws TubeClientException {
+        checkMessagesAndStatus(messages);
+        List<MessageBatch> msgBatches = new ArrayList<>();
+        LinkedHashMap<String, MessageBatch> curBatches = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            int msgSize = getMessageSize(message);
+            Partition partition = this.selectPartition(message, clazz);
+            MessageBatch msgBatch = curBatches.get(partition.getPartitionKey());
+            if (msgBatch != null
+                    && (msgBatch.dataSize + msgSize > producerConfig.getBatchMaxSize()
+                    || msgBatch.messages.size() >= producerConfig.getBatchMaxMsgCount())) {
+                msgBatch = null;
+            }
+            if (msgBatch == null) {
+                msgBatch = new MessageBatch(partition);
+                curBatches.put(partition.getPartitionKey(), msgBatch);
+                msgBatches.add(msgBatch);
+            }
+            msgBatch.add(i, message, msgSize);
+        }
+        return msgBatches;
+    }
+
+    private List<MessageSentResult> sendMessagesSync(final Partition partition,
+                                                     final List<Message> messages) {
+        int brokerId = partition.getBrokerId();
+        SendTrace sendTrace = onSendStart(brokerId, messages.size());
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                this.brokerRcvQltyStats.addSendStatistic(brokerId);
+            }
+            ClientBroker.SendMessagesResponseB2P response =
+                    getBrokerService(partition.getBroker()).sendMessagesP2B(
+                            createSendMessagesRequest(partition, messages),
+                            AddressUtils.getLocalAddress(), producerConfig.isTlsEnable());
+            onSendComplete(sendTrace, true);
+            rpcServiceFactory.resetRmtAddrErrCount(partition.getBroker().getBrokerAddr());
+            addBatchReceiveStatistic(brokerId, messages.size(), response);
+            return this.buildMsgSentResults(messages, partition, response);
+        } catch (final Throwable e) {
+            if (e instanceof LocalConnException) {
+                rpcServiceFactory.addRmtAddrErrCount(partition.getBroker().getBrokerAddr());
+            }
+            partition.increRetries(1);
+            onSendComplete(sendTrace, false);
+            List<MessageSentResult> sentResults = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                this.brokerRcvQltyStats.addReceiveStatistic(brokerId, false);
+                sentResults.add(new MessageSentResult(false,
+                        TErrCodeConstants.INTERNAL_SERVER_ERROR,
+                        "Send message failed, " + e.toString(), message,
+                        TBaseConstants.META_VALUE_UNDEFINED, partition));
+            }
+            return sentResults;
+        }
+    }
+
+    private void sendMessagesAsync(final Partition partition,
+                                   final List<Message> messages,
+                                   final List<MessageSentCallback> callbacks) {
+        final int brokerId = partition.getBrokerId();
+        final SendTrace sendTrace = onSendStart(brokerId, messages.size());
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                this.brokerRcvQltyStats.addSendStatistic(brokerId);
+            }
+            getAsyncBrokerService(partition.getBroker()).sendMessagesP2B(
+                    createSendMessagesRequest(partition, messages),
+                    AddressUtils.getLocalAddress(), producerConfig.isTlsEnable(),
+                    new Callback() {
+                        @Override
+                        public void handleResult(Object result) {
+                            if (!(result instanceof ClientBroker.SendMessagesResponseB2P)) {
+                                onSendComplete(sendTrace, false);
+                                return;
+                            }
+                            final ClientBroker.SendMessagesResponseB2P responseB2P =
+                                    (ClientBroker.SendMessagesResponseB2P) result;
+                            onSendComplete(sendTrace, true);
+                            final List<MessageSentResult> sentResults =
+                                    buildMsgSentResults(messages, partition, responseB2P);
+                            partition.resetRetries();
+                            addBatchReceiveStatistic(brokerId, messages.size(), responseB2P);
+                            for (int i = 0; i < sentResults.size(); i++) {
+                                callbacks.get(i).onMessageSent(sentResults.get(i));
+                            }
+                        }
+
+                        @Override
+                        public void handleError(Throwable error) {
+                            partition.increRetries(1);
+                            onSendComplete(sendTrace, false);
+                            for (MessageSentCallback callback : callbacks) {
+                                brokerRcvQltyStats.addReceiveStatistic(brokerId, false);
+                                callback.onException(error);
+                            }
+                        }
+                    });
+            rpcServiceFactory.resetRmtAddrErrCount(partition.getBroker().getBrokerAddr());
+        } catch (final Throwable e) {
+            if (e instanceof LocalConnException) {
+                rpcServiceFactory.addRmtAddrErrCount(partition.getBroker().getBrokerAddr());
+            }
+            // if failed,increment the counter
+            partition.increRetries(1);
+            onSendComplete(sendTrace, false);
+            for (MessageSentCallback callback : callbacks) {
+                this.brokerRcvQltyStats.addReceiveStatistic(brokerId, false);
+                callback.onException(e);
+            }
+        }
+    }
+
+    private void addBatchReceiveStatistic(int brokerId, int msgCnt,
+                                          ClientBroker.SendMessagesResponseB2P response) {
+        for (int i = 0; i < msgCnt; i++) {
+            this.brokerRcvQltyStats.addReceiveStatistic(brokerId,
+                    i < response.getMessageIdsCount());
+        }
+        if (!response.getSuccess()
+                && response.getErrCode() == TErrCodeConstants.SERVICE_UNAVAILABLE) {
+            rpcServiceFactory.addUnavailableBroker(brokerId);
+        }
+    }
+
+    private void checkMessagesAndStatus(final List<Message> messages) throws TubeClientException {
+        if (messages == null || messages.isEmpty()) {
+            throw new TubeClientException("Illegal parameter: null or empty message list!");
+        }
+        for (Message message : messages) {
+            checkMessageAndStatus(message);
+        }
+    }
+
+    private int getMessageSize(final Message message) {
+        return TStringUtils.isBlank(message.getAttribute())
+                ? message.getData().length : (message.getData().length + message.getAttribute().length());
+    }
+
+    private int checkMessageAndStatus(final Message message) throws TubeClientException {
         if (message == null) {
             throw new TubeClientException("Illegal parameter: null message package!");
         }
@@ -298,8 +548,7 @@ public class SimpleMessageProducer implements MessageProducer {
                     .append("Topic ").append(message.getTopic())
                     .append(" not publish, make sure the topic exist or acceptPublish and try later!").toString());
         }
-        int msgSize = TStringUtils.isBlank(message.getAttribute())
-                ? message.getData().length : (message.getData().length + message.getAttribute().length());
+        int msgSize = getMessageSize(message);
         if (msgSize > producerManager.getMaxMsgSize()) {
             throw new TubeClientException(new StringBuilder(512)
                     .append("Illegal parameter: over max message length for the total size of")
@@ -310,6 +559,7 @@ public class SimpleMessageProducer implements MessageProducer {
         if (isShutDown.get()) {
             throw new TubeClientException("Status error: producer has been shutdown!");
         }
+        return msgSize;
     }
 
     private ClientBroker.SendMessageRequestP2B createSendMessageRequest(Partition partition,
@@ -319,8 +569,9 @@ public class SimpleMessageProducer implements MessageProducer {
         builder.setClientId(this.producerManager.getProducerId());
         builder.setTopicName(partition.getTopic());
         builder.setPartitionId(partition.getPartitionId());
-        builder.setData(ByteString.copyFrom(encodePayload(message)));
-        builder.setFlag(MessageFlagUtils.getFlag(message));
+        final byte[] compressedData = compressData(message);
+        builder.setData(ByteString.copyFrom(encodePayload(message, compressedData)));
+        builder.setFlag(getMessageFlag(message, compressedData));
         builder.setSentAddr(this.producerManager.getProducerAddrId());
         builder.setCheckSum(-1);
         if (TStringUtils.isNotBlank(message.getMsgType())) {
@@ -333,8 +584,60 @@ public class SimpleMessageProducer implements MessageProducer {
         return builder.build();
     }
 
-    private byte[] encodePayload(final Message message) {
-        final byte[] payload = message.getData();
+    private ClientBroker.SendMessagesRequestP2B createSendMessagesRequest(Partition partition,
+                                                                          List<Message> messages) {
+        ClientBroker.SendMessagesRequestP2B.Builder builder =
+                ClientBroker.SendMessagesRequestP2B.newBuilder();
+        builder.setClientId(this.producerManager.getProducerId());
+        builder.setTopicName(partition.getTopic());
+        builder.setPartitionId(partition.getPartitionId());
+        builder.setSentAddr(this.producerManager.getProducerAddrId());
+        for (Message message : messages) {
+            ClientBroker.BatchMessageP2B.Builder msgBuilder =
+                    ClientBroker.BatchMessageP2B.newBuilder();
+            byte[] compressedData = compressData(message);
+            msgBuilder.setData(ByteString.copyFrom(encodePayload(message, compressedData)));
+            msgBuilder.setFlag(getMessageFlag(message, compressedData));
+            msgBuilder.setCheckSum(-1);
+            if (TStringUtils.isNotBlank(message.getMsgType())) {
+                msgBuilder.setMsgType(message.getMsgType());
+            }
+            if (TStringUtils.isNotBlank(message.getMsgTime())) {
+                msgBuilder.setMsgTime(message.getMsgTime());
+            }
+            builder.addMessages(msgBuilder.build());
+        }
+        builder = this.producerManager.setAuthorizedTokenInfo(builder);
+        return builder.build();
+    }
+
+    /**
+     * Compress the message data with the configured codec, the attribute is kept
+     * uncompressed so that the broker can still read it.
+     *
+     * @param message the message to send
+     * @return the compressed data, or null if the data is not compressed
+     */
+    private byte[] compressData(final Message message) {
+        if (producerConfig.getCompressCodec() == MessageFlagUtils.COMPRESS_CODEC_NONE
+                || message.getData().length < producerConfig.getCompressMinSize()) {
+            return null;
+        }
+        byte[] compressedData = MessageCompressUtils.compress(
+                producerConfig.getCompressCodec(), message.getData());
+        // send the original data if it can't be compressed
+        return compressedData.length < message.getData().length ? compressedData : null;
+    }
+
+    private int getMessageFlag(final Message message, final byte[] compressedData) {
+        if (compressedData == null) {
+            return MessageFlagUtils.getFlag(message);
+        }
+        return MessageFlagUtils.getFlag(message, producerConfig.getCompressCodec());
+    }
+
+    private byte[] encodePayload(final Message message, final byte[] compressedData) {
+        final byte[] payload = compressedData == null ? message.getData() : compressedData;
         final String attribute = message.getAttribute();
         if (TStringUtils.isBlank(attribute)) {
             return payload;
@@ -362,12 +665,45 @@ public class SimpleMessageProducer implements MessageProducer {
                 return new MessageSentResult(true, response.getErrCode(), "Ok!",
                         message, Long.parseLong(resultStr), partition);
             }
+        } else if (response.getErrCode() == TErrCodeConstants.STORED_NOT_ACKED) {
+            // stored by the broker, keep the message id for the caller to decide whether resend
+            return new MessageSentResult(false, response.getErrCode(), resultStr,
+                    message, response.getMessageId(), partition,
+                    response.getAppendTime(), response.getAppendOffset());
         } else {
             return new MessageSentResult(false, response.getErrCode(), resultStr,
                     message, TBaseConstants.META_VALUE_UNDEFINED, partition);
         }
     }
 
+    private List<MessageSentResult> buildMsgSentResults(final List<Message> messages,
+                                                        final Partition partition,
+                                                        final ClientBroker.SendMessagesResponseB2P response) {
+        // the messages are appended in order, the ones without id are not stored
+        final boolean storedNotAcked =
+                (response.getErrCode() == TErrCodeConstants.STORED_NOT_ACKED);
+        List<MessageSentResult> sentResults = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (i < response.getMessageIdsCount()) {
+                sentResults.add(new MessageSentResult(!storedNotAcked,
+                        storedNotAcked ? response.getErrCode() : TErrCodeConstants.SUCCESS,
+                        storedNotAcked ? response.getErrMsg() : "Ok!", messages.get(i),
+                        response.getMessageIds(i), partition,
+                        response.getAppendTime(), response.getAppendOffsets(i)));
+            } else if (storedNotAcked) {
+                sentResults.add(new MessageSentResult(false,
+                        TErrCodeConstants.SERVER_RECEIVE_OVERFLOW,
+                        "Put message failed, server receive message overflow", messages.get(i),
+                        TBaseConstants.META_VALUE_UNDEFINED, partition));
+            } else {
+                sentResults.add(new MessageSentResult(false,
+                        response.getErrCode(), response.getErrMsg(), messages.get(i),
+                        TBaseConstants.META_VALUE_UNDEFINED, partition));
+            }
+        }
+        return sentResults;
+    }
+
     private Partition selectPartition(final Message message,
                                       Class clazz) throws TubeClientException {
         String topic = message.getTopic();
@@ -385,7 +721,7 @@ public class SimpleMessageProducer implements MessageProducer {
                     .append(message.getTopic()).toString());
         }
         Partition partition =
-                this.partitionRouter.getPartition(message, partList);
+                this.partitionRouter.getPartition(message, brokerPartList, partList);
         if (partition == null) {
             throw new TubeClientException(new StringBuilder(512)
                     .append("Not found available partition for topic: ")
@@ -400,12 +736,43 @@ public class SimpleMessageProducer implements MessageProducer {
             if (rpcServiceFactory.getOrCreateService(clazz, brokerInfo, rpcConfig) != null) {
                 break;
             }
-            partition = this.partitionRouter.getPartition(message, partList);
+            partition = this.partitionRouter.getPartition(message, brokerPartList, partList);
             brokerInfo = partition.getBroker();
         }
         return partition;
     }
 
+    private SendTrace onSendStart(int brokerId, int msgCnt) {
+        if (clientMetrics != null) {
+            clientMetrics.update(ClientMetrics.PRODUCE_BATCH_MSGS, brokerId, msgCnt);
+        }
+        if (adaptiveRouter == null) {
+            return new SendTrace(brokerId, System.nanoTime());
+        }
+        return new SendTrace(brokerId, adaptiveRouter.onSendStart(brokerId));
+    }
+
+    /**
+     * Record the end of a send, only the first call of a send takes effect, the error
+     * handler may follow the result handler when the user callback throws.
+     *
+     * @param sendTrace    the value returned by onSendStart
+     * @param isResponded  whether the broker responded, whatever the result is
+     */
+    private void onSendComplete(SendTrace sendTrace, boolean isResponded) {
+        if (!sendTrace.completed.compareAndSet(false, true)) {
+            return;
+        }
+        if (adaptiveRouter != null) {
+            adaptiveRouter.onSendComplete(sendTrace.brokerId,
+                    sendTrace.sendStartTime, isResponded);
+        }
+        if (clientMetrics != null) {
+            clientMetrics.update(ClientMetrics.PRODUCE_RTT_US, sendTrace.brokerId,
+                    (System.nanoTime() - sendTrace.sendStartTime) / 1000L);
+        }
+    }
+
     private BrokerWriteService getBrokerService(BrokerInfo brokerInfo) {
         return rpcServiceFactory.getService(BrokerWriteService.class, brokerInfo, rpcConfig);
     }
@@ -414,4 +781,33 @@ public class SimpleMessageProducer implements MessageProducer {
         return rpcServiceFactory.getService(
                 BrokerWriteService.AsyncService.class, brokerInfo, rpcConfig);
     }
+
+    private static class MessageBatch {
+        private final Partition partition;
+        private final List<Integer> msgIndexes = new ArrayList<>();
+        private final List<Message> messages = new ArrayList<>();
+        private int dataSize = 0;
+
+        MessageBatch(Partition partition) {
+            this.partition = partition;
+        }
+
+        void add(int msgIndex, Message message, int msgSize) {
+            this.msgIndexes.add(msgIndex);
+            this.messages.add(message);
+            this.dataSize += msgSize;
+        }
+    }
+
+    // a request sent to a broker, completed once
+    private static class SendTrace {
+        private final int brokerId;
+        private final long sendStartTime;
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        SendTrace(int brokerId, long sendStartTime) {
+            this.brokerId = brokerId;
+            this.sendStartTime = sendStartTime;
+        }
+    }
 }
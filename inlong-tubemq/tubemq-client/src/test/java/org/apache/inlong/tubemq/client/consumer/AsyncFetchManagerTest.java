@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.client.consumer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import org.apache.inlong.tubemq.client.config.ConsumerConfig;
+import org.apache.inlong.tubemq.client.config.TubeClientConfig;
+import org.apache.inlong.tubemq.client.exception.TubeClientException;
+import org.apache.inlong.tubemq.client.factory.TubeBaseSessionFactory;
+import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.MasterInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
+import org.apache.inlong.tubemq.corebase.utils.AddressUtils;
+import org.apache.inlong.tubemq.corebase.utils.CheckSum;
+import org.apache.inlong.tubemq.corerpc.client.Callback;
+import org.apache.inlong.tubemq.corerpc.netty.NettyClientFactory;
+import org.apache.inlong.tubemq.corerpc.service.BrokerReadService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(AddressUtils.class)
+public class AsyncFetchManagerTest {
+    private static final String NETWORK_THREAD = "Stub_Network";
+    private static final String CALLBACK_THREAD = "Stub_Callback";
+    private static final byte[] PAYLOAD = "test message".getBytes();
+
+    private final ExecutorService networkExecutor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory(NETWORK_THREAD));
+    private final ExecutorService callbackExecutor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory(CALLBACK_THREAD));
+    private final AtomicInteger fetchCnt = new AtomicInteger(0);
+    private final AtomicInteger commitCnt = new AtomicInteger(0);
+    // the responses are sent after the gate is open
+    private volatile CountDownLatch responseGate = new CountDownLatch(0);
+    private volatile boolean fetchFailed = false;
+    private TubeBaseSessionFactory factory;
+    private ConsumerConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        TubeClientConfig clientConfig = mock(TubeClientConfig.class);
+        PowerMockito.mockStatic(AddressUtils.class);
+        PowerMockito.when(AddressUtils.getLocalAddress()).thenReturn("127.0.0.1");
+        when(clientConfig.getMasterInfo()).thenReturn(new MasterInfo("192.168.1.1:18080"));
+        factory = new TubeBaseSessionFactory(new NettyClientFactory(), clientConfig);
+        config = new ConsumerConfig("192.168.1.1:18080", "test");
+    }
+
+    @After
+    public void tearDown() {
+        networkExecutor.shutdownNow();
+        callbackExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncFetchManager() throws Exception {
+        config.setPullConsumeReadyWaitPeriodMs(100);
+        BaseMessageConsumer consumer = new BaseMessageConsumer(factory, config, true);
+        AsyncFetchManager fetchManager =
+                new AsyncFetchManager(config, consumer, callbackExecutor);
+
+        fetchManager.startDispatchWorker();
+        // no partition assigned, the demand fails after the wait period
+        ConsumerResult result = fetchManager.requestMessage().get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals(TErrCodeConstants.NO_PARTITION_ASSIGNED, result.getErrCode());
+        Assert.assertEquals(0, fetchManager.getWaitingDemandCnt());
+        fetchManager.stopDispatchWorker();
+        result = fetchManager.requestMessage().get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(TErrCodeConstants.BAD_REQUEST, result.getErrCode());
+    }
+
+    @Test
+    public void testFetchMessage() throws Exception {
+        config.setPullConsumeReadyWaitPeriodMs(10000);
+        BaseMessageConsumer consumer = createStubConsumer();
+        AsyncFetchManager fetchManager =
+                new AsyncFetchManager(config, consumer, callbackExecutor);
+        fetchManager.startDispatchWorker();
+        responseGate = new CountDownLatch(1);
+        CompletableFuture<ConsumerResult> future = fetchManager.requestMessage();
+        final AtomicReference<String> completeThread = recordCompleteThread(future);
+        responseGate.countDown();
+        // the response is processed by the callback executor, not the network thread
+        waitComplete(completeThread);
+        Assert.assertTrue(completeThread.get().startsWith(CALLBACK_THREAD));
+        ConsumerResult result = future.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(1, result.getMessageList().size());
+        Assert.assertArrayEquals(PAYLOAD, result.getMessageList().get(0).getData());
+        Assert.assertFalse(result.getConfirmContext().isEmpty());
+        Assert.assertEquals(1, fetchCnt.get());
+        // the partition is in use until confirmed, the next demand waits
+        CompletableFuture<ConsumerResult> nextFuture = fetchManager.requestMessage();
+        Thread.sleep(200);
+        Assert.assertFalse(nextFuture.isDone());
+        Assert.assertEquals(1, fetchManager.getWaitingDemandCnt());
+        Assert.assertEquals(1, fetchCnt.get());
+        fetchManager.stopDispatchWorker();
+        Assert.assertEquals(TErrCodeConstants.BAD_REQUEST,
+                nextFuture.get(5, TimeUnit.SECONDS).getErrCode());
+    }
+
+    @Test
+    public void testConfirmMessage() throws Exception {
+        config.setPullConsumeReadyWaitPeriodMs(10000);
+        BaseMessageConsumer consumer = createStubConsumer();
+        final SimplePullMessageConsumer pullConsumer =
+                new SimplePullMessageConsumer(config, consumer);
+        AsyncFetchManager fetchManager =
+                new AsyncFetchManager(config, consumer, callbackExecutor);
+        fetchManager.startDispatchWorker();
+        ConsumerResult result = fetchManager.requestMessage().get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(result.isSuccess());
+        CompletableFuture<ConsumerResult> nextFuture = fetchManager.requestMessage();
+        Assert.assertFalse(nextFuture.isDone());
+        // confirm the fetched messages
+        responseGate = new CountDownLatch(1);
+        CompletableFuture<ConsumerResult> confirmFuture =
+                pullConsumer.confirmConsumeAsync(result.getConfirmContext(), true);
+        final AtomicReference<String> completeThread = recordCompleteThread(confirmFuture);
+        responseGate.countDown();
+        waitComplete(completeThread);
+        Assert.assertTrue(completeThread.get().startsWith("Pull_Async_Callback_test"));
+        ConsumerResult confirmResult = confirmFuture.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(confirmResult.isSuccess());
+        Assert.assertEquals(1, commitCnt.get());
+        // the confirmed partition is released to the waiting demand
+        ConsumerResult nextResult = nextFuture.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(nextResult.isSuccess());
+        Assert.assertEquals(2, fetchCnt.get());
+        // the confirm context is used once
+        Assert.assertEquals(TErrCodeConstants.BAD_REQUEST, pullConsumer
+                .confirmConsumeAsync(result.getConfirmContext(), true)
+                .get(5, TimeUnit.SECONDS).getErrCode());
+        Assert.assertEquals(1, commitCnt.get());
+        fetchManager.stopDispatchWorker();
+    }
+
+    @Test
+    public void testFetchError() throws Exception {
+        config.setPullConsumeReadyWaitPeriodMs(10000);
+        BaseMessageConsumer consumer = createStubConsumer();
+        AsyncFetchManager fetchManager =
+                new AsyncFetchManager(config, consumer, callbackExecutor);
+        fetchManager.startDispatchWorker();
+        fetchFailed = true;
+        responseGate = new CountDownLatch(1);
+        CompletableFuture<ConsumerResult> future = fetchManager.requestMessage();
+        final AtomicReference<String> completeThread = recordCompleteThread(future);
+        responseGate.countDown();
+        waitComplete(completeThread);
+        Assert.assertTrue(completeThread.get().startsWith(CALLBACK_THREAD));
+        ConsumerResult result = future.get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals(400, result.getErrCode());
+        // the partition is released on error, the next demand fetches it again
+        fetchFailed = false;
+        result = fetchManager.requestMessage().get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(2, fetchCnt.get());
+        fetchManager.stopDispatchWorker();
+    }
+
+    private BaseMessageConsumer createStubConsumer() throws TubeClientException {
+        final BrokerReadService.AsyncService brokerService = new StubBrokerService();
+        BaseMessageConsumer consumer = new BaseMessageConsumer(factory, config, true) {
+            @Override
+            protected BrokerReadService.AsyncService getAsyncBrokerService(BrokerInfo brokerInfo) {
+                return brokerService;
+            }
+
+            @Override
+            protected boolean isSubscribed() {
+                return true;
+            }
+        };
+        consumer.rmtDataCache.addPartition(
+                new Partition(new BrokerInfo("0:127.0.0.1:8123"), "test", 0), 0, 100);
+        return consumer;
+    }
+
+    // record the thread completing the future, the future must not be completed yet.
+    // wait the record before getting the future, a thread waiting in get() may run the
+    // dependent actions itself
+    private AtomicReference<String> recordCompleteThread(CompletableFuture<ConsumerResult> future) {
+        final AtomicReference<String> completeThread = new AtomicReference<>();
+        Assert.assertFalse(future.isDone());
+        future.whenComplete(new BiConsumer<ConsumerResult, Throwable>() {
+            @Override
+            public void accept(ConsumerResult result, Throwable error) {
+                completeThread.set(Thread.currentThread().getName());
+            }
+        });
+        return completeThread;
+    }
+
+    private void waitComplete(AtomicReference<String> completeThread) throws Exception {
+        long startTime = System.currentTimeMillis();
+        while (completeThread.get() == null
+                && System.currentTimeMillis() - startTime < 5000) {
+            Thread.sleep(10);
+        }
+        Assert.assertNotNull(completeThread.get());
+    }
+
+    private void sendResponse(final Callback callback, final Object response) {
+        networkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    responseGate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (response instanceof Throwable) {
+                    callback.handleError((Throwable) response);
+                } else {
+                    callback.handleResult(response);
+                }
+            }
+        });
+    }
+
+    private class StubBrokerService implements BrokerReadService.AsyncService {
+        @Override
+        public ClientBroker.GetMessageResponseB2C getMessagesC2B(
+                ClientBroker.GetMessageRequestC2B request, String rmtAddress, boolean overtls) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getMessagesC2B(ClientBroker.GetMessageRequestC2B request, String rmtAddress,
+                                   boolean overtls, Callback callback) {
+            fetchCnt.incrementAndGet();
+            if (fetchFailed) {
+                sendResponse(callback, new IOException("Connection reset by peer"));
+                return;
+            }
+            ClientBroker.TransferedMessage message =
+                    ClientBroker.TransferedMessage.newBuilder()
+                            .setMessageId(fetchCnt.get())
+                            .setCheckSum(CheckSum.crc32(PAYLOAD))
+                            .setPayLoadData(ByteString.copyFrom(PAYLOAD))
+                            .setFlag(0).build();
+            sendResponse(callback, ClientBroker.GetMessageResponseB2C.newBuilder()
+                    .setSuccess(true).setErrCode(TErrCodeConstants.SUCCESS)
+                    .addMessages(message).setCurrOffset(fetchCnt.get())
+                    .setMaxOffset(100).build());
+        }
+
+        @Override
+        public ClientBroker.CommitOffsetResponseB2C consumerCommitC2B(
+                ClientBroker.CommitOffsetRequestC2B request, String rmtAddress, boolean overtls) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void consumerCommitC2B(ClientBroker.CommitOffsetRequestC2B request, String rmtAddress,
+                                      boolean overtls, Callback callback) {
+            commitCnt.incrementAndGet();
+            sendResponse(callback, ClientBroker.CommitOffsetResponseB2C.newBuilder()
+                    .setSuccess(true).setErrCode(TErrCodeConstants.SUCCESS).setErrMsg("OK!")
+                    .setCurrOffset(fetchCnt.get()).setMaxOffset(100).build());
+        }
+
+        @Override
+        public ClientBroker.RegisterResponseB2C consumerRegisterC2B(
+                ClientBroker.RegisterRequestC2B request, String rmtAddress, boolean overtls) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ClientBroker.HeartBeatResponseB2C consumerHeartbeatC2B(
+                ClientBroker.HeartBeatRequestC2B request, String rmtAddress, boolean overtls) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String threadName;
+
+        NamedThreadFactory(String threadName) {
+            this.threadName = threadName;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.client.consumer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.inlong.tubemq.client.config.ConsumerConfig;
+import org.apache.inlong.tubemq.client.config.TubeClientConfig;
+import org.apache.inlong.tubemq.client.exception.TubeClientException;
+import org.apache.inlong.tubemq.client.factory.TubeBaseSessionFactory;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.MasterInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.apache.inlong.tubemq.corebase.utils.AddressUtils;
+import org.apache.inlong.tubemq.corerpc.client.ClientFactory;
+import org.apache.inlong.tubemq.corerpc.netty.NettyClientFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(AddressUtils.class)
+public class MessagePrefetchManagerTest {
+
+    // the message bytes of each fetch
+    private static final int BATCH_BYTES = 600;
+
+    private final AtomicInteger fetchCnt = new AtomicInteger(0);
+    private final ConcurrentLinkedQueue<FetchContext> fetchedContexts =
+            new ConcurrentLinkedQueue<>();
+    private TubeBaseSessionFactory factory;
+    private ConsumerConfig config;
+    private MessagePrefetchManager prefetchManager;
+
+    @Before
+    public void setUp() throws Exception {
+        TubeClientConfig clientConfig = mock(TubeClientConfig.class);
+        PowerMockito.mockStatic(AddressUtils.class);
+        PowerMockito.when(AddressUtils.getLocalAddress()).thenReturn("127.0.0.1");
+        when(clientConfig.getMasterInfo()).thenReturn(new MasterInfo("192.168.1.1:18080"));
+        ClientFactory clientFactory = new NettyClientFactory();
+        factory = new TubeBaseSessionFactory(clientFactory, clientConfig);
+        config = new ConsumerConfig("192.168.1.1:18080", "test");
+        config.setPullConsumeReadyChkSliceMs(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (prefetchManager != null) {
+            prefetchManager.stopPrefetchWorkers();
+        }
+    }
+
+    @Test
+    public void testMessagePrefetchManager() throws Exception {
+        config.setPullPrefetchThreadCnt(2);
+        BaseMessageConsumer consumer = new BaseMessageConsumer(factory, config, true);
+        prefetchManager = new MessagePrefetchManager(config, consumer);
+
+        prefetchManager.startPrefetchWorkers();
+        // no partition assigned, nothing is prefetched
+        Assert.assertNull(prefetchManager.takeFetchedMessages(100));
+        Assert.assertEquals(0, prefetchManager.getFetchedBytes());
+    }
+
+    @Test
+    public void testMemoryBound() throws Exception {
+        config.setPullPrefetchThreadCnt(1);
+        config.setPullPrefetchMaxBytes(1000);
+        BaseMessageConsumer consumer = createStubConsumer(4);
+        prefetchManager = new MessagePrefetchManager(config, consumer);
+
+        prefetchManager.startPrefetchWorkers();
+        // the fetch is stopped once the fetched bytes reach the bound
+        waitFetchedBytes(2 * BATCH_BYTES);
+        Thread.sleep(200);
+        Assert.assertEquals(2, fetchCnt.get());
+        Assert.assertEquals(2 * BATCH_BYTES, prefetchManager.getFetchedBytes());
+        // taking the messages frees the room of the next fetch
+        FetchContext taskContext = prefetchManager.takeFetchedMessages(100);
+        Assert.assertNotNull(taskContext);
+        Assert.assertEquals(BATCH_BYTES, taskContext.getMessageList().get(0).getData().length);
+        waitFetchedBytes(2 * BATCH_BYTES);
+        Thread.sleep(200);
+        Assert.assertEquals(3, fetchCnt.get());
+        Assert.assertEquals(2 * BATCH_BYTES, prefetchManager.getFetchedBytes());
+    }
+
+    @Test
+    public void testReleasedPartitionDropped() throws Exception {
+        config.setPullPrefetchThreadCnt(1);
+        config.setPullPrefetchMaxBytes(BATCH_BYTES);
+        BaseMessageConsumer consumer = createStubConsumer(2);
+        prefetchManager = new MessagePrefetchManager(config, consumer);
+
+        prefetchManager.startPrefetchWorkers();
+        waitFetchedBytes(BATCH_BYTES);
+        Assert.assertEquals(1, fetchCnt.get());
+        // the partition of the fetched messages is removed by the rebalance
+        final Partition removedPartition = fetchedContexts.peek().getPartition();
+        consumer.rmtDataCache.removePartition(removedPartition);
+        // the messages of the removed partition are dropped, the other one is fetched
+        FetchContext taskContext = prefetchManager.takeFetchedMessages(5000);
+        Assert.assertNotNull(taskContext);
+        Assert.assertNotEquals(removedPartition.getPartitionKey(),
+                taskContext.getPartition().getPartitionKey());
+        Assert.assertEquals(2, fetchCnt.get());
+        Assert.assertEquals(0, prefetchManager.getFetchedBytes());
+        Assert.assertNull(prefetchManager.takeFetchedMessages(100));
+    }
+
+    @Test
+    public void testReleaseOnShutdown() throws Exception {
+        config.setPullPrefetchThreadCnt(2);
+        BaseMessageConsumer consumer = createStubConsumer(2);
+        prefetchManager = new MessagePrefetchManager(config, consumer);
+
+        prefetchManager.startPrefetchWorkers();
+        waitFetchedBytes(2 * BATCH_BYTES);
+        Assert.assertEquals(2, fetchCnt.get());
+        Assert.assertFalse(consumer.rmtDataCache.pullSelect().isSuccess());
+        // the messages not taken are released with their partitions
+        prefetchManager.stopPrefetchWorkers();
+        Assert.assertEquals(0, prefetchManager.getFetchedBytes());
+        Assert.assertNull(prefetchManager.takeFetchedMessages(0));
+        for (FetchContext taskContext : fetchedContexts) {
+            Assert.assertFalse(consumer.rmtDataCache.isPartitionInUse(
+                    taskContext.getPartition().getPartitionKey(), taskContext.getUsedToken()));
+        }
+        Assert.assertTrue(consumer.rmtDataCache.pullSelect().isSuccess());
+        Assert.assertTrue(consumer.rmtDataCache.pullSelect().isSuccess());
+        Assert.assertEquals(2, fetchCnt.get());
+    }
+
+    // a consumer fetching a message of BATCH_BYTES from each selected partition
+    private BaseMessageConsumer createStubConsumer(int partitionCnt) throws TubeClientException {
+        BaseMessageConsumer consumer = new BaseMessageConsumer(factory, config, true) {
+            @Override
+            protected FetchContext fetchMessage(PartitionSelectResult partSelectResult,
+                                                final StringBuilder strBuffer) {
+                FetchContext taskContext = new FetchContext(partSelectResult);
+                List<Message> messageList = new ArrayList<>();
+                messageList.add(new Message("test", new byte[BATCH_BYTES]));
+                taskContext.setSuccessProcessResult(fetchCnt.get(),
+                        partSelectResult.getPartition().getPartitionKey(), messageList, -1);
+                fetchedContexts.offer(taskContext);
+                fetchCnt.incrementAndGet();
+                return taskContext;
+            }
+
+            @Override
+            protected boolean isSubscribed() {
+                return true;
+            }
+        };
+        BrokerInfo brokerInfo = new BrokerInfo("0:127.0.0.1:8123");
+        for (int i = 0; i < partitionCnt; i++) {
+            consumer.rmtDataCache.addPartition(new Partition(brokerInfo, "test", i), 0, 100);
+        }
+        return consumer;
+    }
+
+    private void waitFetchedBytes(long expected) throws InterruptedException {
+        long waitEndTime = System.currentTimeMillis() + 5000;
+        while (prefetchManager.getFetchedBytes() != expected
+                && System.currentTimeMillis() < waitEndTime) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, prefetchManager.getFetchedBytes());
+    }
+}
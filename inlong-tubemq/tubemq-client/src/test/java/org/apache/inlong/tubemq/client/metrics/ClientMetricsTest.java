@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.inlong.tubemq.corebase.cluster.NodeAddrInfo;
+import org.apache.inlong.tubemq.corebase.utils.LatencyHistogram;
+import org.apache.inlong.tubemq.corerpc.RpcConfig;
+import org.apache.inlong.tubemq.corerpc.RpcServiceFactory;
+import org.apache.inlong.tubemq.corerpc.client.Client;
+import org.apache.inlong.tubemq.corerpc.client.ClientFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClientMetricsTest {
+
+    @Test
+    public void testUpdateAndReport() {
+        final List<String> reported = new ArrayList<>();
+        ClientMetrics metrics = new ClientMetrics("test-client", 60000L, new MetricsReporter() {
+            @Override
+            public void report(String clientId, String metricName,
+                               int brokerId, LatencyHistogram histogram) {
+                reported.add(clientId + ":" + metricName + ":" + brokerId
+                        + ":" + histogram.getCount());
+            }
+        });
+        for (int i = 1; i <= 100; i++) {
+            metrics.update(ClientMetrics.FETCH_RTT_US, 1, i);
+        }
+        metrics.update(ClientMetrics.FETCH_RTT_US, 2, 1000);
+        metrics.update(ClientMetrics.REBALANCE_PAUSE_MS, ClientMetrics.NO_BROKER_ID, 5);
+        LatencyHistogram histogram = metrics.getHistogram(ClientMetrics.FETCH_RTT_US, 1);
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertTrue(metrics.getMetricsJson().contains("\"fetch_rtt_us\":{"));
+        metrics.report();
+        Assert.assertEquals(3, reported.size());
+        Assert.assertTrue(reported.contains("test-client:fetch_rtt_us:1:100"));
+        Assert.assertTrue(reported.contains("test-client:rebalance_pause_ms:-1:1"));
+        // the reported values are not reported again
+        Assert.assertEquals(0,
+                metrics.getHistogram(ClientMetrics.FETCH_RTT_US, 1).getCount());
+        metrics.report();
+        Assert.assertEquals(3, reported.size());
+    }
+
+    @Test
+    public void testJmxRegister() throws Exception {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName queryName = new ObjectName("org.apache.inlong.tubemq:type=ClientMetrics,*");
+        int beanCnt = mbeanServer.queryNames(queryName, null).size();
+        ClientMetrics metrics1 = new ClientMetrics("jmx-client", 60000L, null);
+        ClientMetrics metrics2 = new ClientMetrics("jmx-client", 60000L, null);
+        metrics1.start();
+        metrics2.start();
+        Set<ObjectName> names = mbeanServer.queryNames(queryName, null);
+        Assert.assertEquals(beanCnt + 2, names.size());
+        metrics1.update(ClientMetrics.PRODUCE_RTT_US, 3, 200);
+        metrics1.update(ClientMetrics.PRODUCE_RTT_US, 3, 200);
+        metrics1.reset();
+        Assert.assertEquals(0,
+                metrics1.getHistogram(ClientMetrics.PRODUCE_RTT_US, 3).getCount());
+        metrics1.stop();
+        metrics2.stop();
+        Assert.assertEquals(beanCnt, mbeanServer.queryNames(queryName, null).size());
+    }
+
+    @Test
+    public void testConnectionStats() throws Exception {
+        ClientFactory clientFactory = new ClientFactory() {
+            @Override
+            public Client getClient(NodeAddrInfo addressInfo, RpcConfig conf) {
+                return null;
+            }
+
+            @Override
+            public Client removeClient(NodeAddrInfo addressInfo) {
+                return null;
+            }
+
+            @Override
+            public void shutdown() {
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return false;
+            }
+
+            @Override
+            public StringBuilder getClientStats(StringBuilder strBuff) {
+                return strBuff.append("{\"127.0.0.1:8123\":{\"inflight\":2}}");
+            }
+        };
+        ClientMetrics metrics = new ClientMetrics("stats-client", 60000L, null,
+                new RpcServiceFactory(clientFactory));
+        Assert.assertEquals("{}",
+                new ClientMetrics("stats-client", 60000L, null).getConnectionStatsJson());
+        metrics.start();
+        // the connection statistics are exposed by JMX
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = mbeanServer.queryNames(new ObjectName(
+                "org.apache.inlong.tubemq:type=ClientMetrics,name=\"stats-client\",*"), null);
+        Assert.assertEquals(1, names.size());
+        Assert.assertEquals("{\"127.0.0.1:8123\":{\"inflight\":2}}",
+                mbeanServer.getAttribute(names.iterator().next(), "ConnectionStatsJson"));
+        metrics.stop();
+    }
+}
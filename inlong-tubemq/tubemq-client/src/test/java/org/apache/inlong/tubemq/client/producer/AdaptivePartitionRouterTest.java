@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.producer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptivePartitionRouterTest {
+
+    @Test
+    public void testKeyStickiness() throws Exception {
+        AdaptivePartitionRouter router = new AdaptivePartitionRouter("streamId", 3000L);
+        List<Partition> partitions = buildPartitions(4, 4);
+        Message message = new Message("test", new byte[]{1, 2, 3});
+        message.setAttrKeyVal("streamId", "stream-1");
+        Partition selected = router.getPartition(message, partitions);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(selected, router.getPartition(message, partitions));
+        }
+        // the key stays on its partition when another broker is blocked
+        List<Partition> allowedParts = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.getBrokerId() == selected.getBrokerId()
+                    || partition.getBrokerId() % 2 == 0) {
+                allowedParts.add(partition);
+            }
+        }
+        Assert.assertEquals(selected, router.getPartition(message, allowedParts));
+    }
+
+    @Test
+    public void testKeySameAsKeyHashRouter() throws Exception {
+        AdaptivePartitionRouter router = new AdaptivePartitionRouter("streamId", 3000L);
+        KeyHashPartitionRouter keyHashRouter = new KeyHashPartitionRouter("streamId");
+        List<Partition> partitions = buildPartitions(4, 4);
+        Map<Integer, List<Partition>> brokerPartitions = new HashMap<>();
+        for (Partition partition : partitions) {
+            List<Partition> brokerParts = brokerPartitions.get(partition.getBrokerId());
+            if (brokerParts == null) {
+                brokerParts = new ArrayList<>();
+                brokerPartitions.put(partition.getBrokerId(), brokerParts);
+            }
+            brokerParts.add(partition);
+        }
+        // broker 0 is not allowed, its keys move as the key hash router moves them
+        List<Partition> allowedParts = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.getBrokerId() != 0) {
+                allowedParts.add(partition);
+            }
+        }
+        Message message = new Message("test", new byte[]{1, 2, 3});
+        for (int i = 0; i < 200; i++) {
+            message.setAttrKeyVal("streamId", "stream-" + i);
+            Assert.assertEquals(keyHashRouter.getPartition(message, partitions),
+                    router.getPartition(message, partitions));
+            Assert.assertEquals(keyHashRouter.getPartition(message, brokerPartitions, partitions),
+                    router.getPartition(message, brokerPartitions, partitions));
+            Assert.assertEquals(keyHashRouter.getPartition(message, brokerPartitions, allowedParts),
+                    router.getPartition(message, brokerPartitions, allowedParts));
+        }
+    }
+
+    @Test
+    public void testAvoidSlowBroker() throws Exception {
+        AdaptivePartitionRouter router =
+                new AdaptivePartitionRouter("", 3000L, new Random(12345L));
+        List<Partition> partitions = buildPartitions(4, 4);
+        // broker 0 responds in 200ms, the others in 10ms, 20ms and 30ms, the measured
+        // latency only adds microseconds, so the order of the brokers is fixed
+        final long[] latencyNs = {200000000L, 10000000L, 20000000L, 30000000L};
+        for (int i = 0; i < 20; i++) {
+            for (int brokerId = 0; brokerId < 4; brokerId++) {
+                long sendStartTime = router.onSendStart(brokerId);
+                router.onSendComplete(brokerId, sendStartTime - latencyNs[brokerId], true);
+            }
+        }
+        int[] selectCnt = new int[4];
+        Message message = new Message("test", new byte[]{1, 2, 3});
+        for (int i = 0; i < 10000; i++) {
+            selectCnt[router.getPartition(message, partitions).getBrokerId()]++;
+        }
+        // broker 0 is chosen only when both random partitions are on it
+        Assert.assertTrue(selectCnt[0] < 10000 / 8);
+        // the faster broker wins more comparisons
+        Assert.assertTrue(selectCnt[1] > selectCnt[2]);
+        Assert.assertTrue(selectCnt[2] > selectCnt[3]);
+        Assert.assertTrue(selectCnt[3] > selectCnt[0]);
+    }
+
+    @Test
+    public void testFailPenalty() throws Exception {
+        AdaptivePartitionRouter router = new AdaptivePartitionRouter("", 3000L);
+        long currTime = System.currentTimeMillis();
+        // a failure response counts its real latency
+        router.onSendComplete(0, router.onSendStart(0), true);
+        Assert.assertTrue(router.getLoadScore(0, currTime) < 2.0);
+        // a request without response counts the penalty
+        router.onSendComplete(1, router.onSendStart(1), false);
+        Assert.assertTrue(router.getLoadScore(1, currTime) > 3000L * 0.2);
+        // the in-flight requests are counted until completed
+        router.onSendStart(0);
+        Assert.assertTrue(router.getLoadScore(0, currTime) >= 2.0);
+    }
+
+    private List<Partition> buildPartitions(int brokerCnt, int partCnt) {
+        List<Partition> partitions = new ArrayList<>();
+        for (int brokerId = 0; brokerId < brokerCnt; brokerId++) {
+            BrokerInfo brokerInfo = new BrokerInfo(brokerId + ":127.0.0.1:18080");
+            for (int partId = 0; partId < partCnt; partId++) {
+                partitions.add(new Partition(brokerInfo, "test", partId));
+            }
+        }
+        return partitions;
+    }
+}
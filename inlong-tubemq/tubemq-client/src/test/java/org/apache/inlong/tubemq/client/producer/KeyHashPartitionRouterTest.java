@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.producer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeyHashPartitionRouterTest {
+
+    @Test
+    public void testJumpConsistentHash() {
+        int keyCnt = 10000;
+        int movedCnt = 0;
+        for (long key = 0; key < keyCnt; key++) {
+            int bucket = KeyHashPartitionRouter.jumpConsistentHash(key * 0x9e3779b97f4a7c15L, 10);
+            Assert.assertTrue(bucket >= 0 && bucket < 10);
+            int newBucket = KeyHashPartitionRouter.jumpConsistentHash(key * 0x9e3779b97f4a7c15L, 11);
+            if (newBucket != bucket) {
+                // a key moves only to the new bucket
+                Assert.assertEquals(10, newBucket);
+                movedCnt++;
+            }
+        }
+        Assert.assertTrue(movedCnt > keyCnt / 11 / 2 && movedCnt < keyCnt / 11 * 2);
+    }
+
+    @Test
+    public void testKeyStability() throws Exception {
+        KeyHashPartitionRouter router = new KeyHashPartitionRouter("streamId");
+        List<Partition> partitions = buildPartitions(4, 4);
+        List<Partition> morePartitions = buildPartitions(5, 4);
+        int keyCnt = 2000;
+        int movedCnt = 0;
+        Set<Partition> usedParts = new HashSet<>();
+        Message message = new Message("test", new byte[]{1, 2, 3});
+        for (int i = 0; i < keyCnt; i++) {
+            message.setAttrKeyVal("streamId", "stream-" + i);
+            Partition selected = router.getPartition(message, partitions);
+            Assert.assertEquals(selected, router.getPartition(message, partitions));
+            usedParts.add(selected);
+            Partition newSelected = router.getPartition(message, morePartitions);
+            if (!newSelected.equals(selected)) {
+                // a key moves only to the new broker
+                Assert.assertEquals(4, newSelected.getBrokerId());
+                movedCnt++;
+            }
+        }
+        Assert.assertEquals(partitions.size(), usedParts.size());
+        Assert.assertTrue(movedCnt < keyCnt / 5 * 2);
+        // the message without key is routed in turn
+        Set<Partition> rrParts = new HashSet<>();
+        Message noKeyMessage = new Message("test", new byte[]{1, 2, 3});
+        for (int i = 0; i < partitions.size(); i++) {
+            rrParts.add(router.getPartition(noKeyMessage, partitions));
+        }
+        Assert.assertEquals(partitions.size(), rrParts.size());
+    }
+
+    @Test
+    public void testBlockMiddleBroker() throws Exception {
+        KeyHashPartitionRouter router = new KeyHashPartitionRouter("streamId");
+        List<Partition> partitions = buildPartitions(0, 5, 4);
+        Map<Integer, List<Partition>> brokerPartitions = groupByBroker(partitions);
+        List<Partition> allowedParts = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.getBrokerId() != 2) {
+                allowedParts.add(partition);
+            }
+        }
+        Message message = new Message("test", new byte[]{1, 2, 3});
+        for (int i = 0; i < 2000; i++) {
+            message.setAttrKeyVal("streamId", "stream-" + i);
+            Partition selected = router.getPartition(message, brokerPartitions, partitions);
+            Partition blockedSelected =
+                    router.getPartition(message, brokerPartitions, allowedParts);
+            if (selected.getBrokerId() == 2) {
+                Assert.assertNotEquals(2, blockedSelected.getBrokerId());
+            } else {
+                // only the keys of the blocked broker move
+                Assert.assertEquals(selected, blockedSelected);
+            }
+            // the keys go back when the broker is allowed again
+            Assert.assertEquals(selected,
+                    router.getPartition(message, brokerPartitions, partitions));
+        }
+    }
+
+    @Test
+    public void testAddLowerIdBroker() throws Exception {
+        KeyHashPartitionRouter router = new KeyHashPartitionRouter("streamId");
+        List<Partition> partitions = buildPartitions(1, 5, 4);
+        List<Partition> morePartitions = buildPartitions(0, 5, 4);
+        Map<Integer, List<Partition>> brokerPartitions = groupByBroker(partitions);
+        Map<Integer, List<Partition>> moreBrokerPartitions = groupByBroker(morePartitions);
+        int keyCnt = 2000;
+        int movedCnt = 0;
+        Message message = new Message("test", new byte[]{1, 2, 3});
+        for (int i = 0; i < keyCnt; i++) {
+            message.setAttrKeyVal("streamId", "stream-" + i);
+            Partition selected = router.getPartition(message, brokerPartitions, partitions);
+            Partition newSelected =
+                    router.getPartition(message, moreBrokerPartitions, morePartitions);
+            if (!newSelected.equals(selected)) {
+                // a key moves only to the new broker
+                Assert.assertEquals(0, newSelected.getBrokerId());
+                movedCnt++;
+            }
+        }
+        Assert.assertTrue(movedCnt > keyCnt / 5 / 2 && movedCnt < keyCnt / 5 * 2);
+    }
+
+    private Map<Integer, List<Partition>> groupByBroker(List<Partition> partitions) {
+        Map<Integer, List<Partition>> brokerPartitions = new HashMap<>();
+        for (Partition partition : partitions) {
+            List<Partition> brokerParts = brokerPartitions.get(partition.getBrokerId());
+            if (brokerParts == null) {
+                brokerParts = new ArrayList<>();
+                brokerPartitions.put(partition.getBrokerId(), brokerParts);
+            }
+            brokerParts.add(partition);
+        }
+        return brokerPartitions;
+    }
+
+    private List<Partition> buildPartitions(int brokerCnt, int partCnt) {
+        return buildPartitions(0, brokerCnt, partCnt);
+    }
+
+    private List<Partition> buildPartitions(int startBrokerId, int endBrokerId, int partCnt) {
+        List<Partition> partitions = new ArrayList<>();
+        for (int brokerId = startBrokerId; brokerId < endBrokerId; brokerId++) {
+            BrokerInfo brokerInfo = new BrokerInfo(brokerId + ":127.0.0.1:18080");
+            for (int partId = 0; partId < partCnt; partId++) {
+                partitions.add(new Partition(brokerInfo, "test", partId));
+            }
+        }
+        return partitions;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.client.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.junit.Test;
+
+public class MessageAccumulatorTest {
+
+    @Test
+    public void testAppendAndClose() {
+        final List<List<Message>> sentBatches = new CopyOnWriteArrayList<>();
+        MessageAccumulator accumulator =
+                new MessageAccumulator(new MessageAccumulator.BatchSender() {
+                    @Override
+                    public void sendBatch(Partition partition, List<Message> messages,
+                                          List<MessageSentCallback> callbacks) {
+                        sentBatches.add(new ArrayList<>(messages));
+                    }
+                }, 60000, 100, 3);
+        final Partition partition1 = new Partition(new BrokerInfo("0:127.0.0.1:18080"), "test", 0);
+        final Partition partition2 = new Partition(new BrokerInfo("0:127.0.0.1:18080"), "test", 1);
+        final Message message = new Message("test", new byte[]{1, 2, 3});
+        // the batch is sent when the message count reaches the limit
+        for (int i = 0; i < 3; i++) {
+            assertTrue(accumulator.append(partition1, message, 3, null));
+        }
+        assertEquals(1, sentBatches.size());
+        assertEquals(3, sentBatches.get(0).size());
+        // the current batch is sent first if the new message exceeds the size limit
+        assertTrue(accumulator.append(partition2, message, 60, null));
+        assertTrue(accumulator.append(partition2, message, 60, null));
+        assertEquals(2, sentBatches.size());
+        assertEquals(1, sentBatches.get(1).size());
+        // the left messages are sent on close
+        assertTrue(accumulator.append(partition1, message, 3, null));
+        accumulator.close();
+        assertEquals(4, sentBatches.size());
+        assertFalse(accumulator.append(partition1, message, 3, null));
+    }
+
+    @Test
+    public void testSendFullBatchAfterOverflow() {
+        final List<List<Message>> sentBatches = new CopyOnWriteArrayList<>();
+        MessageAccumulator accumulator =
+                new MessageAccumulator(new MessageAccumulator.BatchSender() {
+                    @Override
+                    public void sendBatch(Partition partition, List<Message> messages,
+                                          List<MessageSentCallback> callbacks) {
+                        sentBatches.add(new ArrayList<>(messages));
+                    }
+                }, 60000, 100, 3);
+        final Partition partition = new Partition(new BrokerInfo("0:127.0.0.1:18080"), "test", 0);
+        final Message message = new Message("test", new byte[]{1, 2, 3});
+        assertTrue(accumulator.append(partition, message, 60, null));
+        // the new message overflows the current batch and fills up a new batch alone
+        assertTrue(accumulator.append(partition, message, 120, null));
+        assertEquals(2, sentBatches.size());
+        assertEquals(1, sentBatches.get(0).size());
+        assertEquals(1, sentBatches.get(1).size());
+        accumulator.close();
+        assertEquals(2, sentBatches.size());
+    }
+
+    @Test
+    public void testSendFailureWithoutCallback() {
+        final AtomicInteger failedCnt = new AtomicInteger(0);
+        MessageAccumulator accumulator =
+                new MessageAccumulator(new MessageAccumulator.BatchSender() {
+                    @Override
+                    public void sendBatch(Partition partition, List<Message> messages,
+                                          List<MessageSentCallback> callbacks) throws Throwable {
+                        throw new Exception("send failure");
+                    }
+                }, 60000, 100, 3);
+        final MessageSentCallback callback = new MessageSentCallback() {
+            @Override
+            public void onMessageSent(MessageSentResult result) {
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                failedCnt.incrementAndGet();
+            }
+        };
+        final Partition partition = new Partition(new BrokerInfo("0:127.0.0.1:18080"), "test", 0);
+        final Message message = new Message("test", new byte[]{1, 2, 3});
+        // the messages without callback are skipped in failing the batch
+        assertTrue(accumulator.append(partition, message, 3, callback));
+        assertTrue(accumulator.append(partition, message, 3, null));
+        assertTrue(accumulator.append(partition, message, 3, callback));
+        assertEquals(2, failedCnt.get());
+        accumulator.close();
+    }
+
+    @Test
+    public void testAppendWhileClosing() throws Exception {
+        final AtomicInteger sentCnt = new AtomicInteger(0);
+        final AtomicInteger failedCnt = new AtomicInteger(0);
+        final AtomicInteger rejectedCnt = new AtomicInteger(0);
+        final MessageAccumulator accumulator =
+                new MessageAccumulator(new MessageAccumulator.BatchSender() {
+                    @Override
+                    public void sendBatch(Partition partition, List<Message> messages,
+                                          List<MessageSentCallback> callbacks) {
+                        sentCnt.addAndGet(messages.size());
+                    }
+                }, 60000, 100000, 100000);
+        final MessageSentCallback callback = new MessageSentCallback() {
+            @Override
+            public void onMessageSent(MessageSentResult result) {
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                failedCnt.incrementAndGet();
+            }
+        };
+        final Message message = new Message("test", new byte[]{1, 2, 3});
+        final int threadCnt = 4;
+        final int msgCnt = 20000;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] appenders = new Thread[threadCnt];
+        for (int i = 0; i < threadCnt; i++) {
+            final Partition partition =
+                    new Partition(new BrokerInfo("0:127.0.0.1:18080"), "test", i);
+            appenders[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < msgCnt; j++) {
+                        if (!accumulator.append(partition, message, 3, callback)) {
+                            rejectedCnt.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            appenders[i].start();
+        }
+        startLatch.countDown();
+        Thread.sleep(5);
+        accumulator.close();
+        for (Thread appender : appenders) {
+            appender.join();
+        }
+        // every message is sent, failed or rejected, none is left in a batch
+        assertEquals(threadCnt * msgCnt,
+                sentCnt.get() + failedCnt.get() + rejectedCnt.get());
+    }
+}
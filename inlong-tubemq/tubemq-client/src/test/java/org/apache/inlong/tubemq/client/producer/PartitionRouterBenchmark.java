@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.client.producer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+
+/**
+ * Send latency of the round robin and the adaptive partition routers when one broker is slow,
+ * the brokers are simulated by sleeping with limited concurrency,
+ * run it by main method, e.g. PartitionRouterBenchmark [senderCount] [slowBrokerMs] [durationSecs]
+ */
+public class PartitionRouterBenchmark {
+    private static final int BROKER_COUNT = 4;
+    private static final int PARTITION_COUNT = 4;
+    private static final int BROKER_CONCURRENCY = 8;
+    private static final long BROKER_SERVICE_MS = 1L;
+
+    public static void main(String[] args) throws Exception {
+        final int senderCnt = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        final long slowBrokerMs = args.length > 1 ? Long.parseLong(args[1]) : 20L;
+        final int durationSecs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        final List<Partition> partitions = new ArrayList<>();
+        for (int brokerId = 0; brokerId < BROKER_COUNT; brokerId++) {
+            BrokerInfo brokerInfo = new BrokerInfo(brokerId + ":127.0.0.1:18080");
+            for (int partId = 0; partId < PARTITION_COUNT; partId++) {
+                partitions.add(new Partition(brokerInfo, "test", partId));
+            }
+        }
+        runRouter("round robin", new RoundRobinPartitionRouter(), null,
+                partitions, senderCnt, slowBrokerMs, durationSecs);
+        AdaptivePartitionRouter adaptiveRouter = new AdaptivePartitionRouter("", 3000L);
+        runRouter("adaptive", adaptiveRouter, adaptiveRouter,
+                partitions, senderCnt, slowBrokerMs, durationSecs);
+    }
+
+    private static void runRouter(String name, final PartitionRouter router,
+                                  final AdaptivePartitionRouter adaptiveRouter,
+                                  final List<Partition> partitions, int senderCnt,
+                                  final long slowBrokerMs, int durationSecs) throws Exception {
+        final Semaphore[] brokerSlots = new Semaphore[BROKER_COUNT];
+        for (int i = 0; i < BROKER_COUNT; i++) {
+            brokerSlots[i] = new Semaphore(BROKER_CONCURRENCY);
+        }
+        final long endTime = System.currentTimeMillis() + durationSecs * 1000L;
+        final long[][] senderLatencies = new long[senderCnt][];
+        final int[] senderCounts = new int[senderCnt];
+        final int[] slowBrokerCounts = new int[senderCnt];
+        final CountDownLatch finished = new CountDownLatch(senderCnt);
+        for (int i = 0; i < senderCnt; i++) {
+            final int senderId = i;
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long[] latencies = new long[1 << 16];
+                    int count = 0;
+                    Message message = new Message("test", new byte[]{1, 2, 3});
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            Partition partition = router.getPartition(message, partitions);
+                            int brokerId = partition.getBrokerId();
+                            final long startTime = System.nanoTime();
+                            long sendStartTime = adaptiveRouter == null
+                                    ? 0L : adaptiveRouter.onSendStart(brokerId);
+                            brokerSlots[brokerId].acquire();
+                            try {
+                                TimeUnit.MILLISECONDS.sleep(
+                                        brokerId == 0 ? slowBrokerMs : BROKER_SERVICE_MS);
+                            } finally {
+                                brokerSlots[brokerId].release();
+                            }
+                            if (adaptiveRouter != null) {
+                                adaptiveRouter.onSendComplete(brokerId, sendStartTime, true);
+                            }
+                            if (count == latencies.length) {
+                                latencies = Arrays.copyOf(latencies, count * 2);
+                            }
+                            latencies[count++] = System.nanoTime() - startTime;
+                            if (brokerId == 0) {
+                                slowBrokerCounts[senderId]++;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                    }
+                    senderLatencies[senderId] = latencies;
+                    senderCounts[senderId] = count;
+                    finished.countDown();
+                }
+            });
+            sender.start();
+        }
+        finished.await();
+        int totalCnt = 0;
+        int slowCnt = 0;
+        for (int i = 0; i < senderCnt; i++) {
+            totalCnt += senderCounts[i];
+            slowCnt += slowBrokerCounts[i];
+        }
+        long[] allLatencies = new long[totalCnt];
+        int pos = 0;
+        for (int i = 0; i < senderCnt; i++) {
+            System.arraycopy(senderLatencies[i], 0, allLatencies, pos, senderCounts[i]);
+            pos += senderCounts[i];
+        }
+        Arrays.sort(allLatencies);
+        System.out.println(new StringBuilder(256).append(name)
+                .append(": sent=").append(totalCnt)
+                .append(", slow broker share=")
+                .append(totalCnt == 0 ? 0 : slowCnt * 100 / totalCnt).append("%")
+                .append(", p50=").append(percentileUs(allLatencies, 0.5)).append("us")
+                .append(", p99=").append(percentileUs(allLatencies, 0.99)).append("us")
+                .append(", p999=").append(percentileUs(allLatencies, 0.999)).append("us")
+                .toString());
+    }
+
+    private static long percentileUs(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0L;
+        }
+        int index = (int) Math.min(sortedLatencies.length - 1,
+                Math.floor(sortedLatencies.length * percentile));
+        return sortedLatencies[index] / 1000;
+    }
+}
@@ -17,10 +17,15 @@
 
 package org.apache.inlong.tubemq.corebase;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
 
 /**
@@ -50,6 +55,10 @@ public class Message implements Serializable {
     // message time
     private transient String msgTime;
     private transient String sysAttributes;
+    // the received attribute, decoded to string at the first access
+    private transient volatile byte[] attrData;
+    // the attribute key-value pairs, parsed at the first query
+    private transient volatile Map<String, String> attrMap;
 
     /**
      * init with topic and data body
@@ -80,11 +89,30 @@ public class Message implements Serializable {
         this.flag = flag;
     }
 
+    /**
+     * init with indexId topic data flag and the attribute data which is
+     * decoded when the attribute is accessed
+     *
+     * @param indexId
+     * @param topic
+     * @param data
+     * @param attrData
+     * @param flag
+     */
+    protected Message(long indexId, String topic, byte[] data, byte[] attrData, int flag) {
+        this.indexId = indexId;
+        this.topic = topic;
+        this.data = data;
+        this.attrData = attrData;
+        this.flag = flag;
+    }
+
     public int getFlag() {
         return this.flag;
     }
 
     public String getMsgType() {
+        decodeAttribute();
         if (TStringUtils.isBlank(this.msgType)) {
             if (TStringUtils.isNotBlank(this.attribute)
                     && attribute.contains(TokenConstants.TOKEN_MSG_TYPE)) {
@@ -95,6 +123,7 @@ public class Message implements Serializable {
     }
 
     public String getMsgTime() {
+        decodeAttribute();
         if (TStringUtils.isBlank(this.msgTime)) {
             if (TStringUtils.isNotBlank(this.attribute)
                     && attribute.contains(TokenConstants.TOKEN_MSG_TIME)) {
@@ -109,6 +138,7 @@ public class Message implements Serializable {
      * @param msgTime
      */
     public void putSystemHeader(final String msgType, final String msgTime) {
+        decodeAttribute();
         this.msgType = null;
         this.msgTime = null;
         this.sysAttributes = null;
@@ -153,10 +183,11 @@ public class Message implements Serializable {
             }
         }
         this.attribute = tmpAttributes;
+        this.attrMap = null;
     }
 
     public boolean hasAttribute() {
-        return this.attribute != null;
+        return this.attribute != null || this.attrData != null;
     }
 
     public long getIndexId() {
@@ -186,10 +217,13 @@ public class Message implements Serializable {
     }
 
     public void clearAttribute() {
+        this.attrData = null;
         this.attribute = "";
+        this.attrMap = null;
     }
 
     public String getAttribute() {
+        decodeAttribute();
         return this.attribute;
     }
 
@@ -201,21 +235,26 @@ public class Message implements Serializable {
         if (TStringUtils.isBlank(keyVal)) {
             throw new IllegalArgumentException("keyVal's value is blank!");
         }
+        decodeAttribute();
         if (TStringUtils.isBlank(this.attribute)) {
             return null;
         }
-        String[] strAttrs = this.attribute.split(TokenConstants.ARRAY_SEP);
-        for (String strAttrItem : strAttrs) {
-            if (TStringUtils.isNotBlank(strAttrItem)) {
-                String[] strItems = strAttrItem.split(TokenConstants.EQ);
-                if (strItems.length > 1 && !TStringUtils.isBlank(strItems[0])) {
-                    if (keyVal.equals(strItems[0])) {
-                        return strItems[1];
+        Map<String, String> tmpAttrMap = this.attrMap;
+        if (tmpAttrMap == null) {
+            tmpAttrMap = new HashMap<>();
+            String[] strAttrs = this.attribute.split(TokenConstants.ARRAY_SEP);
+            for (String strAttrItem : strAttrs) {
+                if (TStringUtils.isNotBlank(strAttrItem)) {
+                    String[] strItems = strAttrItem.split(TokenConstants.EQ);
+                    if (strItems.length > 1 && !TStringUtils.isBlank(strItems[0])
+                            && !tmpAttrMap.containsKey(strItems[0])) {
+                        tmpAttrMap.put(strItems[0], strItems[1]);
                     }
                 }
             }
+            this.attrMap = tmpAttrMap;
         }
-        return null;
+        return tmpAttrMap.get(keyVal);
     }
 
     /**
@@ -247,6 +286,8 @@ public class Message implements Serializable {
                     .append(TokenConstants.EQ).append(
                             ") are reserved tokens, can't include in keyVal or valueVal!").toString());
         }
+        decodeAttribute();
+        this.attrMap = null;
         if (TStringUtils.isBlank(this.attribute)) {
             this.attribute = keyVal + TokenConstants.EQ + valueVal;
             return;
@@ -276,10 +317,11 @@ public class Message implements Serializable {
 
     @Override
     public int hashCode() {
+        decodeAttribute();
         final int prime = 31;
         int result = 1;
         result = prime * result + (this.attribute == null ? 0 : this.attribute.hashCode());
-        result = prime * result + Arrays.hashCode(this.data);
+        result = prime * result + Arrays.hashCode(this.getData());
         result = prime * result + (int) (this.indexId ^ this.indexId >>> 32);
         result = prime * result + (this.topic == null ? 0 : this.topic.hashCode());
         return result;
@@ -297,6 +339,8 @@ public class Message implements Serializable {
             return false;
         }
         final Message other = (Message) obj;
+        this.decodeAttribute();
+        other.decodeAttribute();
         if (this.attribute == null) {
             if (other.attribute != null) {
                 return false;
@@ -304,7 +348,7 @@ public class Message implements Serializable {
         } else if (!this.attribute.equals(other.attribute)) {
             return false;
         }
-        if (!Arrays.equals(this.data, other.data)) {
+        if (!Arrays.equals(this.getData(), other.getData())) {
             return false;
         }
         if (this.indexId != other.indexId) {
@@ -320,6 +364,28 @@ public class Message implements Serializable {
         return true;
     }
 
+    private void decodeAttribute() {
+        if (this.attrData == null) {
+            return;
+        }
+        synchronized (this) {
+            if (this.attrData != null) {
+                try {
+                    this.attribute = new String(this.attrData,
+                            TBaseConstants.META_DEFAULT_CHARSET_NAME);
+                } catch (final UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                }
+                this.attrData = null;
+            }
+        }
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        decodeAttribute();
+        out.defaultWriteObject();
+    }
+
     private void parseSystemHeader() {
         if (TStringUtils.isBlank(this.attribute)) {
             return;
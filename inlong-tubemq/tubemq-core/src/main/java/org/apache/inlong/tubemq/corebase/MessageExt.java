@@ -17,10 +17,43 @@
 
 package org.apache.inlong.tubemq.corebase;
 
+import org.apache.inlong.tubemq.corebase.utils.MessageCompressUtils;
+import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
+
 public class MessageExt extends Message {
+    // the data is received compressed, and decompressed at the first access
+    private volatile boolean dataDecompressed;
 
     public MessageExt(long indexId, String topic, byte[] data, String attribute, int flag) {
         super(indexId, topic, data, attribute, flag);
+        this.dataDecompressed = !MessageFlagUtils.isCompressed(flag);
+    }
+
+    public MessageExt(long indexId, String topic, byte[] data, byte[] attrData, int flag) {
+        super(indexId, topic, data, attrData, flag);
+        this.dataDecompressed = !MessageFlagUtils.isCompressed(flag);
+    }
+
+    @Override
+    public byte[] getData() {
+        if (!this.dataDecompressed) {
+            synchronized (this) {
+                if (!this.dataDecompressed) {
+                    super.setData(MessageCompressUtils.decompress(
+                            MessageFlagUtils.getCompressCodec(this.flag), super.getData()));
+                    this.dataDecompressed = true;
+                }
+            }
+        }
+        return super.getData();
+    }
+
+    @Override
+    public void setData(final byte[] data) {
+        synchronized (this) {
+            super.setData(data);
+            this.dataDecompressed = true;
+        }
     }
 
 }
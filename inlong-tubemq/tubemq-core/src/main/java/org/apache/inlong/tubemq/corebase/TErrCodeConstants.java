@@ -24,6 +24,9 @@ import java.util.List;
 public class TErrCodeConstants {
     public static final int SUCCESS = 200;
     public static final int NOT_READY = 201;
+    // the message is stored by the broker but not acknowledged as the produce ack policy
+    // required in time, resending it may store it twice
+    public static final int STORED_NOT_ACKED = 202;
     public static final int MOVED = 301;
 
     public static final int BAD_REQUEST = 400;
@@ -17,9 +17,9 @@
 
 package org.apache.inlong.tubemq.corebase.utils;
 
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -199,41 +199,34 @@ public class DataConverterUtil {
         for (ClientBroker.TransferedMessage trsMessage : transferedMessageList) {
             final int flag = trsMessage.getFlag();
             int dataCheckSum = trsMessage.getCheckSum();
-            final ByteBuffer payloadData = ByteBuffer.allocate(trsMessage.getPayLoadData().size());
-            payloadData.put(trsMessage.getPayLoadData().toByteArray());
-            payloadData.flip();
-            int payloadDataLen = payloadData.array().length;
-            int currentChecksum = CheckSum.crc32(payloadData.array());
+            final byte[] payloadData = trsMessage.getPayLoadData().toByteArray();
+            int payloadDataLen = payloadData.length;
+            int currentChecksum = CheckSum.crc32(payloadData);
             if (dataCheckSum != currentChecksum) {
                 continue;
             }
             int readPos = 0;
-            String attribute = null;
+            // the attribute is decoded by the message when it is accessed
+            byte[] attrData = null;
             if (MessageFlagUtils.hasAttribute(flag)) {
                 if (payloadDataLen < 4) {
                     continue;
                 }
-                final int attrLen = payloadData.getInt(0);
+                final int attrLen = ByteBuffer.wrap(payloadData).getInt(0);
                 payloadDataLen -= 4;
                 readPos += 4;
                 if (attrLen > payloadDataLen) {
                     continue;
                 }
                 if (attrLen > 0) {
-                    final byte[] attrData = new byte[attrLen];
-                    System.arraycopy(payloadData.array(), readPos, attrData, 0, attrLen);
-                    try {
-                        attribute = new String(attrData, TBaseConstants.META_DEFAULT_CHARSET_NAME);
-                    } catch (final UnsupportedEncodingException e) {
-                        throw new RuntimeException(e);
-                    }
+                    attrData = Arrays.copyOfRange(payloadData, readPos, readPos + attrLen);
                     readPos += attrLen;
                     payloadDataLen -= attrLen;
                 }
             }
-            final byte[] payload = new byte[payloadDataLen];
-            System.arraycopy(payloadData.array(), readPos, payload, 0, payloadDataLen);
-            messageList.add(new MessageExt(trsMessage.getMessageId(), topicName, payload, attribute, flag));
+            final byte[] payload = (readPos == 0) ? payloadData
+                    : Arrays.copyOfRange(payloadData, readPos, readPos + payloadDataLen);
+            messageList.add(new MessageExt(trsMessage.getMessageId(), topicName, payload, attrData, flag));
         }
         return messageList;
     }
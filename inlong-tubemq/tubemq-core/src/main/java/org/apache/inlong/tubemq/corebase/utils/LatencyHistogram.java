@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corebase.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latency values with power-of-two buckets.
+ *
+ * Bucket 0 counts the value 0, bucket i counts the values in [2^(i-1), 2^i),
+ * so the percentiles are accurate within a factor of two. The unit of the values
+ * is decided by the caller.
+ */
+public class LatencyHistogram {
+    private static final int BUCKET_CNT = 64;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_CNT);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Record a latency value
+     *
+     * @param value  the latency value, the negative value is recorded as 0
+     */
+    public void update(long value) {
+        final long latency = Math.max(0, value);
+        buckets.incrementAndGet(BUCKET_CNT - Long.numberOfLeadingZeros(latency));
+        count.incrementAndGet();
+        sum.addAndGet(latency);
+        long curMax = max.get();
+        while (latency > curMax) {
+            if (max.compareAndSet(curMax, latency)) {
+                break;
+            }
+            curMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long curCount = count.get();
+        return curCount == 0 ? 0 : sum.get() / curCount;
+    }
+
+    /**
+     * Get the upper bound of the bucket the percentile falls in
+     *
+     * @param percent  the percentile, in (0, 100]
+     * @return the latency value, not greater than the max value
+     */
+    public long getPercentile(double percent) {
+        long curCount = 0;
+        long[] bucketCounts = new long[BUCKET_CNT];
+        for (int i = 0; i < BUCKET_CNT; i++) {
+            bucketCounts[i] = buckets.get(i);
+            curCount += bucketCounts[i];
+        }
+        if (curCount == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(curCount * Math.min(percent, 100.0) / 100.0);
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_CNT; i++) {
+            accumulated += bucketCounts[i];
+            if (accumulated >= Math.max(1, threshold)) {
+                long upperBound = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upperBound, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clear the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_CNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Append the statistics in json format, the values are in the unit of the recorded values
+     *
+     * @param strBuff  the string buffer
+     * @return the string buffer
+     */
+    public StringBuilder toJsonString(final StringBuilder strBuff) {
+        return strBuff.append("{\"count\":").append(getCount())
+                .append(",\"mean\":").append(getMean())
+                .append(",\"p50\":").append(getPercentile(50))
+                .append(",\"p99\":").append(getPercentile(99))
+                .append(",\"p999\":").append(getPercentile(99.9))
+                .append(",\"max\":").append(getMax()).append("}");
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corebase.utils;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.inlong.tubemq.corebase.TBaseConstants;
+
+/**
+ * Compress and decompress the message data with the codec kept in the message flag.
+ *
+ * The compressed data starts with the 4 bytes length of the original data,
+ * followed by the output of the codec.
+ */
+public class MessageCompressUtils {
+
+    public static boolean isSupportedCodec(final int compressCodec) {
+        return compressCodec == MessageFlagUtils.COMPRESS_CODEC_NONE
+                || compressCodec == MessageFlagUtils.COMPRESS_CODEC_DEFLATE;
+    }
+
+    /**
+     * Compress the data with the codec
+     *
+     * @param compressCodec  the codec in MessageFlagUtils
+     * @param data           the data to compress
+     * @return the compressed data
+     */
+    public static byte[] compress(final int compressCodec, final byte[] data) {
+        switch (compressCodec) {
+            case MessageFlagUtils.COMPRESS_CODEC_NONE:
+                return data;
+            case MessageFlagUtils.COMPRESS_CODEC_DEFLATE:
+                return deflate(data);
+            default:
+                throw new IllegalArgumentException(new StringBuilder(512)
+                        .append("Unsupported compress codec ").append(compressCodec).toString());
+        }
+    }
+
+    /**
+     * Decompress the data with the codec
+     *
+     * @param compressCodec  the codec in MessageFlagUtils
+     * @param data           the compressed data
+     * @return the original data
+     */
+    public static byte[] decompress(final int compressCodec, final byte[] data) {
+        switch (compressCodec) {
+            case MessageFlagUtils.COMPRESS_CODEC_NONE:
+                return data;
+            case MessageFlagUtils.COMPRESS_CODEC_DEFLATE:
+                return inflate(data);
+            default:
+                throw new IllegalArgumentException(new StringBuilder(512)
+                        .append("Unsupported compress codec ").append(compressCodec).toString());
+        }
+    }
+
+    private static byte[] deflate(final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            // the output may be a little larger than the input if the data can't be compressed
+            byte[] buffer = new byte[4 + data.length + (data.length >> 4) + 64];
+            int outLen = 4;
+            while (!deflater.finished()) {
+                if (outLen == buffer.length) {
+                    byte[] newBuffer = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, newBuffer, 0, outLen);
+                    buffer = newBuffer;
+                }
+                outLen += deflater.deflate(buffer, outLen, buffer.length - outLen);
+            }
+            ByteBuffer.wrap(buffer).putInt(data.length);
+            final byte[] result = new byte[outLen];
+            System.arraycopy(buffer, 0, result, 0, outLen);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(final byte[] data) {
+        if (data.length < 4) {
+            throw new IllegalArgumentException("Illegal compressed data: length less than 4!");
+        }
+        final int dataLen = ByteBuffer.wrap(data).getInt();
+        if (dataLen < 0) {
+            throw new IllegalArgumentException("Illegal compressed data: negative data length!");
+        }
+        // the length is read from the received data, check it before allocating the buffer
+        if (dataLen > TBaseConstants.META_MAX_MESSAGE_DATA_SIZE_UPPER_LIMIT) {
+            throw new IllegalArgumentException(new StringBuilder(512)
+                    .append("Illegal compressed data: data length ").append(dataLen)
+                    .append(" exceeds the max message size ")
+                    .append(TBaseConstants.META_MAX_MESSAGE_DATA_SIZE_UPPER_LIMIT).toString());
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 4, data.length - 4);
+            final byte[] result = new byte[dataLen];
+            int outLen = 0;
+            while (outLen < dataLen) {
+                int readLen = inflater.inflate(result, outLen, dataLen - outLen);
+                if (readLen == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                outLen += readLen;
+            }
+            if (outLen != dataLen) {
+                throw new IllegalArgumentException(new StringBuilder(512)
+                        .append("Illegal compressed data: expect ").append(dataLen)
+                        .append(" bytes, but got ").append(outLen).toString());
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Illegal compressed data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -20,6 +20,14 @@ package org.apache.inlong.tubemq.corebase.utils;
 import org.apache.inlong.tubemq.corebase.Message;
 
 public class MessageFlagUtils {
+    // the compression codec of the message data, kept in bits 1-3 of the flag
+    public static final int COMPRESS_CODEC_NONE = 0;
+    public static final int COMPRESS_CODEC_DEFLATE = 1;
+    private static final int COMPRESS_CODEC_SHIFT = 1;
+    private static final int COMPRESS_CODEC_MASK = 0x7;
+    // the stored message carries a binary system header extension before its data,
+    // set by broker in storage only and cleared before the message reaches the client
+    public static final int STORE_SYS_HEADER_EXT = 0x10;
 
     public static int getFlag(final Message message) {
         int flag = 0;
@@ -29,8 +37,33 @@ public class MessageFlagUtils {
         return flag;
     }
 
+    public static int getFlag(final Message message, final int compressCodec) {
+        return setCompressCodec(getFlag(message), compressCodec);
+    }
+
     public static boolean hasAttribute(final int flag) {
         return (flag & 0x1) == 1;
     }
 
+    public static int getCompressCodec(final int flag) {
+        return (flag >>> COMPRESS_CODEC_SHIFT) & COMPRESS_CODEC_MASK;
+    }
+
+    public static int setCompressCodec(final int flag, final int compressCodec) {
+        return (flag & ~(COMPRESS_CODEC_MASK << COMPRESS_CODEC_SHIFT))
+                | ((compressCodec & COMPRESS_CODEC_MASK) << COMPRESS_CODEC_SHIFT);
+    }
+
+    public static boolean isCompressed(final int flag) {
+        return getCompressCodec(flag) != COMPRESS_CODEC_NONE;
+    }
+
+    public static boolean hasSysHeaderExt(final int flag) {
+        return (flag & STORE_SYS_HEADER_EXT) != 0;
+    }
+
+    public static int clearSysHeaderExt(final int flag) {
+        return flag & ~STORE_SYS_HEADER_EXT;
+    }
+
 }
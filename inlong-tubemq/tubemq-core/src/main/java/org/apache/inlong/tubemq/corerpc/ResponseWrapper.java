@@ -18,6 +18,7 @@
 package org.apache.inlong.tubemq.corerpc;
 
 import java.io.Serializable;
+import java.util.List;
 import org.apache.inlong.tubemq.corerpc.exception.StandbyException;
 import org.apache.inlong.tubemq.corerpc.utils.MixUtils;
 
@@ -37,6 +38,7 @@ public class ResponseWrapper implements Serializable {
     private Object responseData;
     private String errMsg;
     private String stackTrace;
+    private transient List<RpcFileRegion> fileRegions;
 
 
     public ResponseWrapper(int flagId, int serialNo,
@@ -168,5 +170,13 @@ public class ResponseWrapper implements Serializable {
         this.stackTrace = stackTrace;
     }
 
+    public List<RpcFileRegion> getFileRegions() {
+        return fileRegions;
+    }
+
+    public void setFileRegions(List<RpcFileRegion> fileRegions) {
+        this.fileRegions = fileRegions;
+    }
+
 
 }
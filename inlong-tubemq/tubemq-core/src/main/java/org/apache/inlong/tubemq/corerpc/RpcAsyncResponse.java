@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corerpc;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.inlong.tubemq.corerpc.server.RequestContext;
+
+/***
+ * The response handle of the request being processed in current thread.
+ *
+ * A service method may call suspend() to hold its response, the invoker
+ * then skips the write after the method returns, and the response is
+ * written later through complete() from any thread.
+ */
+public class RpcAsyncResponse {
+    private static final ThreadLocal<RpcAsyncResponse> boundResponse =
+            new ThreadLocal<>();
+    private final RequestContext context;
+    private final int protocolVersion;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private volatile boolean suspended = false;
+
+    public RpcAsyncResponse(RequestContext context, int protocolVersion) {
+        this.context = context;
+        this.protocolVersion = protocolVersion;
+    }
+
+    /***
+     * Bind the response handle to current thread before the service method is invoked.
+     *
+     * @param response  the response handle
+     */
+    public static void bind(RpcAsyncResponse response) {
+        boundResponse.set(response);
+    }
+
+    /***
+     * Remove the response handle bound to current thread.
+     */
+    public static void unbind() {
+        boundResponse.remove();
+    }
+
+    /***
+     * Get the response handle of the request being processed in current thread.
+     *
+     * @return the response handle, or null if the service is not called by the rpc invoker
+     */
+    public static RpcAsyncResponse current() {
+        return boundResponse.get();
+    }
+
+    /***
+     * Hold the response, the invoker will not write the value returned by the service method.
+     */
+    public void suspend() {
+        this.suspended = true;
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /***
+     * Get the time left before the request times out at the client side.
+     *
+     * @return the remaining time in milliseconds
+     */
+    public long getRemainingTimeMs() {
+        return context.getReceiveTime() + context.getRequest().getTimeout()
+                - System.currentTimeMillis();
+    }
+
+    /***
+     * Mark the response as finished without writing it, called when
+     * the invoker answers the request itself.
+     *
+     * @return true if the response was not finished before
+     */
+    public boolean finish() {
+        return finished.compareAndSet(false, true);
+    }
+
+    /***
+     * Write the held response, only the first call takes effect.
+     *
+     * @param result       the response object
+     * @param fileRegions  the file regions sent after the response, may be null
+     * @return true if the response is written
+     */
+    public boolean complete(Object result, List<RpcFileRegion> fileRegions) {
+        if (!finish()) {
+            RpcFileRegion.releaseAll(fileRegions);
+            return false;
+        }
+        RequestWrapper request = context.getRequest();
+        ResponseWrapper response =
+                new ResponseWrapper(RpcConstants.RPC_FLAG_MSG_TYPE_RESPONSE,
+                        request.getSerialNo(), request.getServiceType(),
+                        protocolVersion, request.getMethodId(), result);
+        response.setFileRegions(fileRegions);
+        try {
+            context.write(response);
+        } catch (Throwable e) {
+            RpcFileRegion.releaseAll(fileRegions);
+            return false;
+        }
+        return true;
+    }
+}
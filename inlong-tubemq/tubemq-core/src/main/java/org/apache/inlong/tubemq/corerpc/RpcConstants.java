@@ -46,6 +46,9 @@ public final class RpcConstants {
     public static final String NETTY_WRITE_LOW_MARK = "rpc.netty.write.lowmark";
     public static final String NETTY_TCP_SENDBUF = "rpc.netty.send.buffer";
     public static final String NETTY_TCP_RECEIVEBUF = "rpc.netty.receive.buffer";
+    public static final String CLIENT_CONN_POOL_SIZE = "rpc.netty.client.conn.pool.size";
+    public static final String CLIENT_MAX_INFLIGHT_REQUESTS =
+            "rpc.netty.client.max.inflight.requests";
 
 
     public static final String TCP_NODELAY = "rpc.tcp.nodelay";
@@ -103,6 +106,7 @@ public final class RpcConstants {
     public static final int RPC_MSG_BROKER_CONSUMER_GETMESSAGE = 17;
     public static final int RPC_MSG_BROKER_CONSUMER_COMMIT = 18;
     public static final int RPC_MSG_BROKER_CONSUMER_CLOSE = 19;
+    public static final int RPC_MSG_BROKER_PRODUCER_SENDMESSAGES = 20;
     //public static final int RPC_MSG_BROKER_METHOD_END = 19;
 
     public static final int MSG_OPTYPE_REGISTER = 31;
@@ -130,5 +134,10 @@ public final class RpcConstants {
     public static final long CFG_UNAVAILABLE_FORBIDDEN_DURATION_MS = 50000;
     public static final long CFG_DEFAULT_NETTY_WRITEBUFFER_HIGH_MARK = 50 * 1024 * 1024;
     public static final long CFG_DEFAULT_NETTY_WRITEBUFFER_LOW_MARK = 5 * 1024 * 1024;
+    // more than one connection keeps no send order between the in-flight requests
+    public static final int CFG_DEFAULT_CLIENT_CONN_POOL_SIZE = 1;
+    public static final int CFG_MAX_CLIENT_CONN_POOL_SIZE = 16;
+    // 0 means the in-flight requests of a connection are not limited
+    public static final int CFG_DEFAULT_CLIENT_MAX_INFLIGHT_REQUESTS = 0;
 
 }
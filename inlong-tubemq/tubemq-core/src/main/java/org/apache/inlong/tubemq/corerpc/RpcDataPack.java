@@ -24,6 +24,8 @@ import java.util.List;
 public class RpcDataPack {
     private int serialNo;
     private List<ByteBuffer> dataLst;
+    // count of list items written separately after this pack
+    private int attachedListSize = 0;
 
     public RpcDataPack() {
 
@@ -50,4 +52,12 @@ public class RpcDataPack {
         this.dataLst = dataLst;
     }
 
+    public int getAttachedListSize() {
+        return attachedListSize;
+    }
+
+    public void setAttachedListSize(int attachedListSize) {
+        this.attachedListSize = attachedListSize;
+    }
+
 }
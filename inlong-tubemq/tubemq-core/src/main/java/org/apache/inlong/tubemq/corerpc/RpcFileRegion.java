@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corerpc;
+
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * A contiguous file range that is attached to a rpc response and sent
+ * to the socket directly from the file channel.
+ *
+ * The service method runs in the same thread as the response writer, so
+ * the regions are handed over through a thread-bound holder instead of
+ * changing the service interfaces.
+ */
+public class RpcFileRegion {
+    private static final ThreadLocal<List<RpcFileRegion>> attachedRegions =
+            new ThreadLocal<>();
+    private final FileChannel channel;
+    private final long position;
+    private final long count;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private final Runnable releaseHook;
+
+    public RpcFileRegion(FileChannel channel, long position, long count) {
+        this(channel, position, count, null);
+    }
+
+    public RpcFileRegion(FileChannel channel, long position,
+                         long count, Runnable releaseHook) {
+        this.channel = channel;
+        this.position = position;
+        this.count = count;
+        this.releaseHook = releaseHook;
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /***
+     * Release the resource held by this region, called once the region
+     * has been sent or discarded.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            if (releaseHook != null) {
+                releaseHook.run();
+            }
+        }
+    }
+
+    /***
+     * Release the given file regions.
+     *
+     * @param regions  the file regions, may be null
+     */
+    public static void releaseAll(List<RpcFileRegion> regions) {
+        if (regions == null) {
+            return;
+        }
+        for (RpcFileRegion region : regions) {
+            region.release();
+        }
+    }
+
+    /***
+     * Attach file regions to the response being built in current thread.
+     *
+     * @param regions  the file regions
+     */
+    public static void attach(List<RpcFileRegion> regions) {
+        attachedRegions.set(regions);
+    }
+
+    /***
+     * Take off the file regions attached in current thread.
+     *
+     * @return the attached regions, or null if none
+     */
+    public static List<RpcFileRegion> detach() {
+        List<RpcFileRegion> regions = attachedRegions.get();
+        attachedRegions.remove();
+        return regions;
+    }
+}
@@ -123,6 +123,19 @@ public class RpcServiceFactory {
         connectionManager.start();
     }
 
+    /**
+     * Get the statistics of the connections built by the client factory
+     *
+     * @param strBuff
+     * @return the string buffer, with the statistics in json format
+     */
+    public StringBuilder getClientStats(final StringBuilder strBuff) {
+        if (clientFactory == null) {
+            return strBuff.append("{}");
+        }
+        return clientFactory.getClientStats(strBuff);
+    }
+
     /**
      * check if the remote address is forbidden or not
      *
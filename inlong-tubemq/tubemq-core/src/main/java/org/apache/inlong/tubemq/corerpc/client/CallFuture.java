@@ -29,6 +29,7 @@ import java.util.concurrent.TimeoutException;
 public class CallFuture<T> implements Future<T>, Callback<T> {
     private final CountDownLatch latch = new CountDownLatch(1);
     private final Callback<T> chainedCallback;
+    private final long createTimeNs = System.nanoTime();
     private T result = null;
     private Throwable error = null;
 
@@ -103,6 +104,15 @@ public class CallFuture<T> implements Future<T>, Callback<T> {
         return error;
     }
 
+    /**
+     * Gets the time this CallFuture was created, in the unit of {@link System#nanoTime()}.
+     *
+     * @return the create time
+     */
+    public long getCreateTimeNs() {
+        return createTimeNs;
+    }
+
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
         return false;
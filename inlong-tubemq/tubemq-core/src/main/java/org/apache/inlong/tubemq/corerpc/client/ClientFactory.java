@@ -31,4 +31,14 @@ public interface ClientFactory {
 
     boolean isShutdown();
 
+    /**
+     * Get the statistics of the connections in json format
+     *
+     * @param strBuff
+     * @return the string buffer
+     */
+    default StringBuilder getClientStats(final StringBuilder strBuff) {
+        return strBuff.append("{}");
+    }
+
 }
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corerpc.codec;
+
+import com.google.protobuf.ByteString;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.inlong.tubemq.corebase.TBaseConstants;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
+import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
+
+/***
+ * Decode the stored records that broker attached after the GetMessage response body,
+ * and convert them to TransferedMessage as if they were carried in the response.
+ *
+ * The record layout is the broker's data file format:
+ *   msgLength(4) + dataToken(4) + checksum(4) + queueId(4) + queueLogicOffset(8)
+ *   + receivedTime(8) + reportAddr(4) + keyCode(4) + msgId(8) + flag(4) + data
+ * where msgLength counts the 48 bytes after itself plus the data length. If the flag
+ * has the system header extension, the data begins with extLength(4) + fields, which
+ * is only used by broker and skipped here.
+ */
+public class FileRegionMsgDecoder {
+    public static final int STORE_DATA_PREFX_LEN = 48;
+    public static final int STORE_DATA_TOKER_BEGIN_VALUE = 0x2C998B8;
+    private static final int MAX_MSG_DATA_STORE_SIZE =
+            TBaseConstants.META_MAX_MESSAGE_DATA_SIZE_UPPER_LIMIT
+                    + TBaseConstants.META_MB_UNIT_SIZE * 8;
+
+    /***
+     * Merge the attached stored records into the response's message list.
+     *
+     * @param response   the decoded response body
+     * @param in         the input stream positioned after the response body
+     * @return the response carrying all the messages
+     * @throws IOException if the attached data is not well-formed
+     */
+    public static ClientBroker.GetMessageResponseB2C mergeRegionMsgs(
+            ClientBroker.GetMessageResponseB2C response, InputStream in) throws IOException {
+        if (!response.hasFileRegionMsgCnt()
+                || response.getFileRegionMsgCnt() <= 0) {
+            return response;
+        }
+        DataInputStream dis = new DataInputStream(in);
+        ClientBroker.GetMessageResponseB2C.Builder builder = response.toBuilder();
+        ClientBroker.TransferedMessage.Builder dataBuilder =
+                ClientBroker.TransferedMessage.newBuilder();
+        for (int i = 0; i < response.getFileRegionMsgCnt(); i++) {
+            final int msgLen = dis.readInt();
+            final int msgToken = dis.readInt();
+            int payLoadLen = msgLen - STORE_DATA_PREFX_LEN;
+            if (msgToken != STORE_DATA_TOKER_BEGIN_VALUE
+                    || payLoadLen <= 0 || payLoadLen > MAX_MSG_DATA_STORE_SIZE) {
+                throw new IOException(new StringBuilder(256)
+                        .append("Illegal attached message, token=").append(msgToken)
+                        .append(", length=").append(msgLen).toString());
+            }
+            final int checkSum = dis.readInt();
+            // queueId, queueLogicOffset, receivedTime, reportAddr, keyCode
+            dis.readInt();
+            dis.readLong();
+            dis.readLong();
+            dis.readInt();
+            dis.readInt();
+            final long msgId = dis.readLong();
+            int flag = dis.readInt();
+            if (MessageFlagUtils.hasSysHeaderExt(flag)) {
+                final int extLen = dis.readInt();
+                if (extLen < 4 || extLen >= payLoadLen) {
+                    throw new IOException(new StringBuilder(256)
+                            .append("Illegal attached message, header extension length=")
+                            .append(extLen).append(", length=").append(msgLen).toString());
+                }
+                dis.readFully(new byte[extLen - 4]);
+                payLoadLen -= extLen;
+                flag = MessageFlagUtils.clearSysHeaderExt(flag);
+            }
+            final byte[] payLoadData = new byte[payLoadLen];
+            dis.readFully(payLoadData);
+            dataBuilder.setMessageId(msgId);
+            dataBuilder.setCheckSum(checkSum);
+            dataBuilder.setFlag(flag);
+            dataBuilder.setPayLoadData(ByteString.copyFrom(payLoadData));
+            builder.addMessages(dataBuilder.build());
+            dataBuilder.clear();
+        }
+        builder.clearFileRegionMsgCnt();
+        return builder.build();
+    }
+}
@@ -28,17 +28,22 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.inlong.tubemq.corebase.cluster.NodeAddrInfo;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.RPCProtos;
+import org.apache.inlong.tubemq.corebase.utils.LatencyHistogram;
 import org.apache.inlong.tubemq.corerpc.RequestWrapper;
 import org.apache.inlong.tubemq.corerpc.ResponseWrapper;
+import org.apache.inlong.tubemq.corerpc.RpcConstants;
 import org.apache.inlong.tubemq.corerpc.RpcDataPack;
 import org.apache.inlong.tubemq.corerpc.client.CallFuture;
 import org.apache.inlong.tubemq.corerpc.client.Callback;
 import org.apache.inlong.tubemq.corerpc.client.Client;
 import org.apache.inlong.tubemq.corerpc.client.ClientFactory;
+import org.apache.inlong.tubemq.corerpc.codec.FileRegionMsgDecoder;
 import org.apache.inlong.tubemq.corerpc.codec.PbEnDecoder;
 import org.apache.inlong.tubemq.corerpc.exception.ClientClosedException;
 import org.apache.inlong.tubemq.corerpc.exception.NetworkException;
+import org.apache.inlong.tubemq.corerpc.exception.OverflowException;
 import org.apache.inlong.tubemq.corerpc.utils.MixUtils;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
@@ -71,11 +76,16 @@ public class NettyClient implements Client {
             new ConcurrentHashMap<>();
     private final AtomicInteger serialNoGenerator =
             new AtomicInteger(0);
+    // the round trip time of the requests, in microseconds
+    private final LatencyHistogram rttHistogram = new LatencyHistogram();
     private AtomicBoolean released = new AtomicBoolean(false);
     private NodeAddrInfo addressInfo;
     private ClientFactory clientFactory;
     private Channel channel;
     private long connectTimeout;
+    // the key of this client in the factory, null if the client is not pooled
+    private String clientKey;
+    private int maxInflightRequests = RpcConstants.CFG_DEFAULT_CLIENT_MAX_INFLIGHT_REQUESTS;
     private volatile AtomicBoolean closed = new AtomicBoolean(true);
 
     /**
@@ -90,6 +100,19 @@ public class NettyClient implements Client {
         }
     }
 
+    /**
+     * @param clientFactory
+     * @param connectTimeout
+     * @param clientKey
+     * @param maxInflightRequests
+     */
+    public NettyClient(ClientFactory clientFactory, long connectTimeout,
+                       String clientKey, int maxInflightRequests) {
+        this(clientFactory, connectTimeout);
+        this.clientKey = clientKey;
+        this.maxInflightRequests = maxInflightRequests;
+    }
+
     public Channel getChannel() {
         return channel;
     }
@@ -117,6 +140,11 @@ public class NettyClient implements Client {
         if (closed.get()) {
             throw new ClientClosedException("Netty client has bean closed!");
         }
+        if (maxInflightRequests > 0 && requests.size() >= maxInflightRequests) {
+            throw new OverflowException(new StringBuilder(256)
+                    .append("The in-flight requests of the channel reach the limit ")
+                    .append(maxInflightRequests).append(", please try later!").toString());
+        }
         request.setSerialNo(serialNoGenerator.incrementAndGet());
         RPCProtos.RpcConnHeader.Builder builder =
                 RPCProtos.RpcConnHeader.newBuilder();
@@ -192,6 +220,23 @@ public class NettyClient implements Client {
     }
 
 
+    /**
+     * Get the number of the requests waiting for response
+     *
+     * @return the in-flight request count
+     */
+    public int getInflightCount() {
+        return requests.size();
+    }
+
+    public LatencyHistogram getRttHistogram() {
+        return rttHistogram;
+    }
+
+    public String getClientKey() {
+        return clientKey;
+    }
+
     @Override
     public NodeAddrInfo getServerAddressInfo() {
         return this.addressInfo;
@@ -244,7 +289,11 @@ public class NettyClient implements Client {
                 clientStr = this.addressInfo.getHostPortStr();
             }
             if (removeParent) {
-                this.clientFactory.removeClient(this.getServerAddressInfo());
+                if (clientKey != null && clientFactory instanceof NettyClientFactory) {
+                    ((NettyClientFactory) clientFactory).removeClient(clientKey, this);
+                } else {
+                    this.clientFactory.removeClient(this.getServerAddressInfo());
+                }
             }
             if (!requests.isEmpty()) {
                 ClientClosedException exception =
@@ -287,6 +336,10 @@ public class NettyClient implements Client {
                 RpcDataPack dataPack = (RpcDataPack) e.getMessage();
                 Callback callback = requests.remove(dataPack.getSerialNo());
                 if (callback != null) {
+                    if (callback instanceof CallFuture) {
+                        rttHistogram.update((System.nanoTime()
+                                - ((CallFuture) callback).getCreateTimeNs()) / 1000);
+                    }
                     Timeout timeout = timeouts.remove(dataPack.getSerialNo());
                     if (timeout != null) {
                         timeout.cancel();
@@ -320,6 +373,11 @@ public class NettyClient implements Client {
                             Object responseResult =
                                     PbEnDecoder.pbDecode(false, pbRpcResponse.getMethod(),
                                             pbRpcResponse.getData().toByteArray());
+                            if (responseResult instanceof ClientBroker.GetMessageResponseB2C) {
+                                // messages sent by file region follow the response body
+                                responseResult = FileRegionMsgDecoder.mergeRegionMsgs(
+                                        (ClientBroker.GetMessageResponseB2C) responseResult, in);
+                            }
 
                             responseWrapper =
                                     new ResponseWrapper(connHeader.getFlag(), dataPack.getSerialNo(),
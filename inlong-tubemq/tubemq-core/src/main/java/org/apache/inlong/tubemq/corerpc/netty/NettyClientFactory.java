@@ -18,6 +18,7 @@
 package org.apache.inlong.tubemq.corerpc.netty;
 
 import java.net.InetSocketAddress;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -26,6 +27,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.net.ssl.SSLEngine;
 import org.apache.inlong.tubemq.corebase.cluster.NodeAddrInfo;
+import org.apache.inlong.tubemq.corebase.utils.MixedUtils;
 import org.apache.inlong.tubemq.corerpc.RpcConfig;
 import org.apache.inlong.tubemq.corerpc.RpcConstants;
 import org.apache.inlong.tubemq.corerpc.client.Client;
@@ -69,6 +71,8 @@ public class NettyClientFactory implements ClientFactory {
     private ExecutorService workerExecutorService;
     private AtomicInteger workerIdCounter = new AtomicInteger(0);
     private RpcConfig factoryConf;
+    // the connection count to each address
+    private int connPoolSize = RpcConstants.CFG_DEFAULT_CLIENT_CONN_POOL_SIZE;
     // TSL encryption and need Two Way Authentic
     private boolean enableTLS = false;
     private boolean needTwoWayAuthentic = false;
@@ -112,6 +116,9 @@ public class NettyClientFactory implements ClientFactory {
                 trustStorePath = null;
                 trustStorePassword = null;
             }
+            connPoolSize = MixedUtils.mid(conf.getInt(RpcConstants.CLIENT_CONN_POOL_SIZE,
+                    RpcConstants.CFG_DEFAULT_CLIENT_CONN_POOL_SIZE),
+                    1, RpcConstants.CFG_MAX_CLIENT_CONN_POOL_SIZE);
             final int bossCount =
                     conf.getInt(RpcConstants.BOSS_COUNT,
                             RpcConstants.CFG_DEFAULT_BOSS_COUNT);
@@ -144,21 +151,58 @@ public class NettyClientFactory implements ClientFactory {
 
     @Override
     public Client getClient(NodeAddrInfo addressInfo, RpcConfig conf) throws Exception {
-        Client client = clients.get(addressInfo.getHostPortStr());
+        if (connPoolSize <= 1) {
+            return getClient(addressInfo.getHostPortStr(), addressInfo, conf);
+        }
+        // select the ready connection with the least in-flight requests,
+        // a free slot of the pool is connected only when all the connections are busy.
+        // The requests in flight at the same time may be sent over different connections
+        // and arrive out of order, so the pool keeps no send order within a partition
+        NettyClient selected = null;
+        int freeSlot = -1;
+        for (int i = 0; i < connPoolSize; i++) {
+            Client client = clients.get(getClientKey(addressInfo, i));
+            if (client instanceof NettyClient && client.isReady()) {
+                NettyClient nettyClient = (NettyClient) client;
+                if (selected == null
+                        || nettyClient.getInflightCount() < selected.getInflightCount()) {
+                    selected = nettyClient;
+                }
+            } else if (freeSlot < 0) {
+                freeSlot = i;
+            }
+        }
+        if (selected != null
+                && (freeSlot < 0 || selected.getInflightCount() == 0)) {
+            return selected;
+        }
+        try {
+            return getClient(getClientKey(addressInfo, freeSlot), addressInfo, conf);
+        } catch (Exception e) {
+            if (selected != null) {
+                return selected;
+            }
+            throw e;
+        }
+    }
+
+    private Client getClient(String clientKey, NodeAddrInfo addressInfo,
+                             RpcConfig conf) throws Exception {
+        Client client = clients.get(clientKey);
         // use the cache network client
         if (client != null && client.isReady()) {
             return client;
         }
         synchronized (this) {
             // check client has been build already
-            client = clients.get(addressInfo.getHostPortStr());
+            client = clients.get(clientKey);
             if (client != null && client.isReady()) {
                 return client;
             }
 
             // clean and build a new network client
             if (client != null) {
-                client = clients.remove(addressInfo.getHostPortStr());
+                client = clients.remove(clientKey);
                 if (client != null) {
                     client.close();
                 }
@@ -166,9 +210,9 @@ public class NettyClientFactory implements ClientFactory {
             }
             int connectTimeout = conf.getInt(RpcConstants.CONNECT_TIMEOUT, 3000);
             try {
-                client = createClient(addressInfo, connectTimeout, conf);
+                client = createClient(clientKey, addressInfo, connectTimeout, conf);
                 Client existClient =
-                        clients.putIfAbsent(addressInfo.getHostPortStr(), client);
+                        clients.putIfAbsent(clientKey, client);
                 if (existClient != null) {
                     client.close(false);
                     client = existClient;
@@ -193,11 +237,57 @@ public class NettyClientFactory implements ClientFactory {
         return client;
     }
 
+    /**
+     * Get the in-flight request count and the round trip time in microseconds
+     * of the connections
+     *
+     * @param strBuff
+     * @return the string buffer
+     */
+    @Override
+    public StringBuilder getClientStats(final StringBuilder strBuff) {
+        int count = 0;
+        strBuff.append("{");
+        for (Map.Entry<String, Client> entry : clients.entrySet()) {
+            if (!(entry.getValue() instanceof NettyClient)) {
+                continue;
+            }
+            NettyClient client = (NettyClient) entry.getValue();
+            if (count++ > 0) {
+                strBuff.append(",");
+            }
+            strBuff.append("\"").append(entry.getKey())
+                    .append("\":{\"inflight\":").append(client.getInflightCount())
+                    .append(",\"rttUs\":");
+            client.getRttHistogram().toJsonString(strBuff).append("}");
+        }
+        return strBuff.append("}");
+    }
+
+    private String getClientKey(NodeAddrInfo addressInfo, int slot) {
+        if (slot == 0) {
+            return addressInfo.getHostPortStr();
+        }
+        return new StringBuilder(128).append(addressInfo.getHostPortStr())
+                .append("#").append(slot).toString();
+    }
+
     @Override
     public Client removeClient(NodeAddrInfo addressInfo) {
         return clients.remove(addressInfo.getHostPortStr());
     }
 
+    /**
+     * Remove a pooled client if it is still the client of the key
+     *
+     * @param clientKey
+     * @param client
+     * @return true if the client is removed
+     */
+    public boolean removeClient(String clientKey, Client client) {
+        return clients.remove(clientKey, client);
+    }
+
     @Override
     public boolean isShutdown() {
         return this.shutdown.get();
@@ -241,16 +331,19 @@ public class NettyClientFactory implements ClientFactory {
     /**
      * create a netty client
      *
+     * @param clientKey
      * @param addressInfo
      * @param connectTimeout
      * @param conf
      * @return
      * @throws Exception
      */
-    private Client createClient(final NodeAddrInfo addressInfo,
+    private Client createClient(final String clientKey, final NodeAddrInfo addressInfo,
                                 int connectTimeout, final RpcConfig conf) throws Exception {
         final NettyClient client =
-                new NettyClient(this, connectTimeout);
+                new NettyClient(this, connectTimeout, clientKey,
+                        conf.getInt(RpcConstants.CLIENT_MAX_INFLIGHT_REQUESTS,
+                                RpcConstants.CFG_DEFAULT_CLIENT_MAX_INFLIGHT_REQUESTS));
         ClientBootstrap clientBootstrap = new ClientBootstrap();
         clientBootstrap.setOption("tcpNoDelay", true);
         clientBootstrap.setOption("reuseAddress", true);
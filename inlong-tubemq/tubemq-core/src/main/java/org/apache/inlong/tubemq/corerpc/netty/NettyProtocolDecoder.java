@@ -33,6 +33,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * Decode the RPC frames received by the Netty 3 transport.
+ *
+ * A frame is the begin token, the serial number and the segment count, then each segment
+ * after its length. The segments are slices of the received buffer instead of copies;
+ * the buffers are neither pooled nor reference counted, the transport stays on Netty 3
+ * and the wire format is unchanged, so the clients and servers of any version interoperate.
+ */
 public class NettyProtocolDecoder extends FrameDecoder {
     private static final Logger logger =
             LoggerFactory.getLogger(NettyProtocolDecoder.class);
@@ -76,9 +84,10 @@ public class NettyProtocolDecoder extends FrameDecoder {
             buffer.resetReaderIndex();
             return null;
         }
-        ByteBuffer bb = ByteBuffer.allocate(length);
-        buffer.readBytes(bb);
-        bb.flip();
+        // share the bytes of the frame instead of copying them out,
+        // the decoder never overwrites the bytes which have been read
+        ByteBuffer bb = buffer.toByteBuffer(buffer.readerIndex(), length).slice();
+        buffer.skipBytes(length);
         dataPack.getDataLst().add(bb);
         if (dataPack.getDataLst().size() == listSize) {
             packHeaderRead = false;
@@ -18,7 +18,6 @@
 package org.apache.inlong.tubemq.corerpc.netty;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.List;
 import org.apache.inlong.tubemq.corerpc.RpcConstants;
 import org.apache.inlong.tubemq.corerpc.RpcDataPack;
@@ -28,35 +27,41 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 
 
+/**
+ * Encode the RPC frames sent by the Netty 3 transport, see {@link NettyProtocolDecoder}
+ * for the frame format. The segments are wrapped as they are, only the headers are allocated.
+ */
 public class NettyProtocolEncoder extends OneToOneEncoder {
 
     @Override
     protected Object encode(ChannelHandlerContext ctx,
                             Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof RpcDataPack)) {
+            // attached length headers and file regions are written as is
+            return msg;
+        }
         RpcDataPack dataPack = (RpcDataPack) msg;
         List<ByteBuffer> origs = dataPack.getDataLst();
-        List<ByteBuffer> bbs = new ArrayList<>(origs.size() * 2 + 1);
-        bbs.add(getPackHeader(dataPack));
+        // the pack header and the length headers share one buffer
+        ByteBuffer headers = ByteBuffer.allocate(12 + origs.size() * 4);
+        headers.putInt(RpcConstants.RPC_PROTOCOL_BEGIN_TOKEN);
+        headers.putInt(dataPack.getSerialNo());
+        headers.putInt(origs.size() + dataPack.getAttachedListSize());
+        ByteBuffer[] bbs = new ByteBuffer[origs.size() * 2 + 1];
+        bbs[0] = sliceHeader(headers, 12);
+        int index = 1;
         for (ByteBuffer b : origs) {
-            bbs.add(getLengthHeader(b));
-            bbs.add(b);
+            headers.putInt(b.limit());
+            bbs[index++] = sliceHeader(headers, 4);
+            bbs[index++] = b;
         }
-        return ChannelBuffers.wrappedBuffer(bbs.toArray(new ByteBuffer[bbs.size()]));
-    }
-
-    private ByteBuffer getPackHeader(RpcDataPack dataPack) {
-        ByteBuffer header = ByteBuffer.allocate(12);
-        header.putInt(RpcConstants.RPC_PROTOCOL_BEGIN_TOKEN);
-        header.putInt(dataPack.getSerialNo());
-        header.putInt(dataPack.getDataLst().size());
-        header.flip();
-        return header;
+        return ChannelBuffers.wrappedBuffer(bbs);
     }
 
-    private ByteBuffer getLengthHeader(ByteBuffer buf) {
-        ByteBuffer header = ByteBuffer.allocate(4);
-        header.putInt(buf.limit());
-        header.flip();
-        return header;
+    private ByteBuffer sliceHeader(ByteBuffer headers, int headerLen) {
+        ByteBuffer header = headers.duplicate();
+        header.limit(headers.position());
+        header.position(headers.position() - headerLen);
+        return header.slice();
     }
 }
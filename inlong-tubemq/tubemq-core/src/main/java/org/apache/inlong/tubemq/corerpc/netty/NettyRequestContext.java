@@ -26,12 +26,18 @@ import java.util.List;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.RPCProtos;
 import org.apache.inlong.tubemq.corerpc.RequestWrapper;
 import org.apache.inlong.tubemq.corerpc.ResponseWrapper;
+import org.apache.inlong.tubemq.corerpc.RpcConstants;
 import org.apache.inlong.tubemq.corerpc.RpcDataPack;
+import org.apache.inlong.tubemq.corerpc.RpcFileRegion;
 import org.apache.inlong.tubemq.corerpc.codec.PbEnDecoder;
 import org.apache.inlong.tubemq.corerpc.server.RequestContext;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.handler.ssl.SslHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,10 +82,18 @@ public class NettyRequestContext implements RequestContext {
                         .append(System.currentTimeMillis() - receiveTime)
                         .append(",timeout:").append(request.getTimeout()).toString());
             }
+            RpcFileRegion.releaseAll(response.getFileRegions());
             return;
         }
         dataPack = new RpcDataPack(response.getSerialNo(), prepareResponse(response));
-        ChannelFuture wf = ctx.getChannel().write(dataPack);
+        ChannelFuture wf;
+        if (response.getFileRegions() == null
+                || response.getFileRegions().isEmpty()) {
+            wf = writeDataPack(ctx.getChannel(), dataPack);
+        } else {
+            wf = writeWithFileRegions(ctx.getChannel(),
+                    dataPack, response.getFileRegions());
+        }
         wf.addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
@@ -107,6 +121,97 @@ public class NettyRequestContext implements RequestContext {
         });
     }
 
+    /***
+     * Write a data pack to the channel. All the server side writes of a channel
+     * are serialized by the channel lock, so the multi-part writes of the file
+     * region responses can not be interleaved by other responses.
+     *
+     * @param channel    the channel to write
+     * @param dataPack   the data pack
+     * @return the write future
+     */
+    public static ChannelFuture writeDataPack(Channel channel, RpcDataPack dataPack) {
+        synchronized (channel) {
+            return channel.write(dataPack);
+        }
+    }
+
+    /***
+     * Write the response with the attached file regions. Each region is split into
+     * list items no larger than RPC_MAX_BUFFER_SIZE, so the frame format on the
+     * wire stays unchanged. The file data is sent by FileRegion except when the
+     * channel is over TLS, in which case it is read into heap buffers.
+     *
+     * @param channel    the channel to write
+     * @param dataPack   the data pack of the response body
+     * @param regions    the attached file regions
+     * @return the future of the last write operation
+     * @throws IOException
+     */
+    private ChannelFuture writeWithFileRegions(Channel channel, RpcDataPack dataPack,
+                                               final List<RpcFileRegion> regions) throws IOException {
+        if (channel.getPipeline().get(SslHandler.class) != null) {
+            try {
+                for (RpcFileRegion region : regions) {
+                    long readPos = region.getPosition();
+                    long endPos = region.getPosition() + region.getCount();
+                    while (readPos < endPos) {
+                        int itemSize = (int) Math.min(RpcConstants.RPC_MAX_BUFFER_SIZE, endPos - readPos);
+                        ByteBuffer itemBuf = ByteBuffer.allocate(itemSize);
+                        while (itemBuf.hasRemaining()) {
+                            if (region.getChannel().read(itemBuf, readPos + itemBuf.position()) < 0) {
+                                throw new IOException("File region is truncated while reading!");
+                            }
+                        }
+                        itemBuf.flip();
+                        dataPack.getDataLst().add(itemBuf);
+                        readPos += itemSize;
+                    }
+                }
+            } finally {
+                RpcFileRegion.releaseAll(regions);
+            }
+            return writeDataPack(channel, dataPack);
+        }
+        int itemCount = 0;
+        for (RpcFileRegion region : regions) {
+            itemCount += (int) ((region.getCount() + RpcConstants.RPC_MAX_BUFFER_SIZE - 1)
+                    / RpcConstants.RPC_MAX_BUFFER_SIZE);
+        }
+        dataPack.setAttachedListSize(itemCount);
+        ChannelFuture wf;
+        synchronized (channel) {
+            wf = channel.write(dataPack);
+            for (RpcFileRegion region : regions) {
+                long readPos = region.getPosition();
+                long endPos = region.getPosition() + region.getCount();
+                while (readPos < endPos) {
+                    int itemSize = (int) Math.min(RpcConstants.RPC_MAX_BUFFER_SIZE, endPos - readPos);
+                    channel.write(ChannelBuffers.wrappedBuffer(getLengthHeader(itemSize)));
+                    wf = channel.write(new DefaultFileRegion(region.getChannel(), readPos, itemSize, false));
+                    // a partially sent frame can not be recovered, close the connection
+                    wf.addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+                    readPos += itemSize;
+                }
+            }
+        }
+        // the writes are completed in order, release the regions after the last one
+        wf.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                RpcFileRegion.releaseAll(regions);
+            }
+        });
+        return wf;
+    }
+
+    private ByteBuffer getLengthHeader(int length) {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(length);
+        header.flip();
+        return header;
+    }
+
     protected List<ByteBuffer> prepareResponse(ResponseWrapper response) {
         ByteBufferOutputStream buf = new ByteBufferOutputStream();
         DataOutputStream out = new DataOutputStream(buf);
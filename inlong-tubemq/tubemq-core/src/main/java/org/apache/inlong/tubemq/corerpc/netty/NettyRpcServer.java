@@ -322,7 +322,7 @@ public class NettyRpcServer implements ServiceRpcServer {
                                         .append(e1.getMessage()).toString());
                 if (res != null) {
                     dataPack.setDataLst(res);
-                    channel.write(dataPack);
+                    NettyRequestContext.writeDataPack(channel, dataPack);
                 }
                 return;
             }
@@ -346,7 +346,7 @@ public class NettyRpcServer implements ServiceRpcServer {
                                         .append(ee.getMessage()).toString());
                 if (res != null) {
                     dataPack.setDataLst(res);
-                    ctx.getChannel().write(dataPack);
+                    NettyRequestContext.writeDataPack(ctx.getChannel(), dataPack);
                 }
                 return;
             }
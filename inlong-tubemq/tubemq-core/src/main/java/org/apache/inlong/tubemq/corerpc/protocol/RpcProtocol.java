@@ -24,8 +24,10 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.apache.inlong.tubemq.corebase.utils.ServiceStatusHolder;
 import org.apache.inlong.tubemq.corerpc.RequestWrapper;
+import org.apache.inlong.tubemq.corerpc.RpcAsyncResponse;
 import org.apache.inlong.tubemq.corerpc.ResponseWrapper;
 import org.apache.inlong.tubemq.corerpc.RpcConstants;
+import org.apache.inlong.tubemq.corerpc.RpcFileRegion;
 import org.apache.inlong.tubemq.corerpc.codec.PbEnDecoder;
 import org.apache.inlong.tubemq.corerpc.exception.ServiceStoppingException;
 import org.apache.inlong.tubemq.corerpc.exception.StandbyException;
@@ -126,6 +128,8 @@ public class RpcProtocol implements Protocol {
                     RPC_PROTOCOL_VERSION, new ServiceStoppingException("service is stopping...")));
         }
         Method method = null;
+        RpcAsyncResponse asyncResponse =
+                new RpcAsyncResponse(context, RPC_PROTOCOL_VERSION);
         StringBuilder sBuilder = new StringBuilder(512);
         try {
             if (!PbEnDecoder.isValidServiceTypeAndMethod(requestWrapper.getServiceType(),
@@ -146,13 +150,27 @@ public class RpcProtocol implements Protocol {
                         .append(requestWrapper.getServiceType())
                         .append(" found on the server").toString());
             }
-            Object result =
-                    method.invoke(processor, requestWrapper.getRequestData(), rmtAddress, isOverTLS);
+            RpcFileRegion.releaseAll(RpcFileRegion.detach());
+            RpcAsyncResponse.bind(asyncResponse);
+            Object result;
+            try {
+                result = method.invoke(processor,
+                        requestWrapper.getRequestData(), rmtAddress, isOverTLS);
+            } finally {
+                RpcAsyncResponse.unbind();
+            }
+            if (asyncResponse.isSuspended()) {
+                // the service writes the response itself later
+                RpcFileRegion.releaseAll(RpcFileRegion.detach());
+                return;
+            }
             responseWrapper =
                     new ResponseWrapper(RpcConstants.RPC_FLAG_MSG_TYPE_RESPONSE,
                             requestWrapper.getSerialNo(), requestWrapper.getServiceType(),
                             RPC_PROTOCOL_VERSION, requestWrapper.getMethodId(), result);
+            responseWrapper.setFileRegions(RpcFileRegion.detach());
         } catch (Throwable e2) {
+            RpcFileRegion.releaseAll(RpcFileRegion.detach());
             String errorClass = null;
             String errorInfo = null;
             if (e2.getCause() != null && e2.getCause() instanceof StandbyException) {
@@ -169,9 +187,14 @@ public class RpcProtocol implements Protocol {
                             requestWrapper.getSerialNo(), requestWrapper.getServiceType(),
                             RPC_PROTOCOL_VERSION, errorClass, errorInfo);
         }
+        if (!asyncResponse.finish()) {
+            RpcFileRegion.releaseAll(responseWrapper.getFileRegions());
+            return;
+        }
         try {
             context.write(responseWrapper);
         } catch (Exception e) {
+            RpcFileRegion.releaseAll(responseWrapper.getFileRegions());
             logger.error("Write response error!", e);
         }
     }
@@ -18,6 +18,7 @@
 package org.apache.inlong.tubemq.corerpc.service;
 
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
+import org.apache.inlong.tubemq.corerpc.client.Callback;
 
 
 public interface BrokerReadService {
@@ -34,4 +35,14 @@ public interface BrokerReadService {
     ClientBroker.CommitOffsetResponseB2C consumerCommitC2B(ClientBroker.CommitOffsetRequestC2B request,
                                                            String rmtAddress, boolean overtls) throws Throwable;
 
+    interface AsyncService extends BrokerReadService {
+
+        void getMessagesC2B(ClientBroker.GetMessageRequestC2B request, String rmtAddress,
+                            boolean overtls, Callback callback) throws Throwable;
+
+        void consumerCommitC2B(ClientBroker.CommitOffsetRequestC2B request, String rmtAddress,
+                               boolean overtls, Callback callback) throws Throwable;
+
+    }
+
 }
@@ -26,11 +26,17 @@ public interface BrokerWriteService {
     ClientBroker.SendMessageResponseB2P sendMessageP2B(ClientBroker.SendMessageRequestP2B request,
                                                        String rmtAddress, boolean overtls) throws Throwable;
 
+    ClientBroker.SendMessagesResponseB2P sendMessagesP2B(ClientBroker.SendMessagesRequestP2B request,
+                                                         String rmtAddress, boolean overtls) throws Throwable;
+
     interface AsyncService extends BrokerWriteService {
 
         void sendMessageP2B(ClientBroker.SendMessageRequestP2B request, String rmtAddress,
                             boolean overtls, Callback callback) throws Throwable;
 
+        void sendMessagesP2B(ClientBroker.SendMessagesRequestP2B request, String rmtAddress,
+                             boolean overtls, Callback callback) throws Throwable;
+
     }
 
 }
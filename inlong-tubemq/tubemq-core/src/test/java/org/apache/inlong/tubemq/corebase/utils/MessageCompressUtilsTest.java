@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corebase.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.inlong.tubemq.corebase.Message;
+import org.apache.inlong.tubemq.corebase.MessageExt;
+import org.apache.inlong.tubemq.corebase.TBaseConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageCompressUtilsTest {
+
+    @Test
+    public void testCompressAndDecompress() {
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 16);
+        }
+        byte[] compressedData =
+                MessageCompressUtils.compress(MessageFlagUtils.COMPRESS_CODEC_DEFLATE, data);
+        Assert.assertTrue(compressedData.length < data.length);
+        Assert.assertArrayEquals(data, MessageCompressUtils.decompress(
+                MessageFlagUtils.COMPRESS_CODEC_DEFLATE, compressedData));
+        // the codec bits don't change the attribute bit
+        Message message = new Message("test", data);
+        message.setAttrKeyVal("key", "value");
+        int flag = MessageFlagUtils.getFlag(message, MessageFlagUtils.COMPRESS_CODEC_DEFLATE);
+        Assert.assertTrue(MessageFlagUtils.hasAttribute(flag));
+        Assert.assertTrue(MessageFlagUtils.isCompressed(flag));
+        Assert.assertEquals(MessageFlagUtils.COMPRESS_CODEC_DEFLATE,
+                MessageFlagUtils.getCompressCodec(flag));
+        // the received message is decompressed when its data is read
+        MessageExt messageExt = new MessageExt(1L, "test",
+                Arrays.copyOf(compressedData, compressedData.length), "key=value", flag);
+        Assert.assertArrayEquals(data, messageExt.getData());
+    }
+
+    @Test
+    public void testDecompressIllegalLength() {
+        byte[] compressedData = MessageCompressUtils.compress(
+                MessageFlagUtils.COMPRESS_CODEC_DEFLATE, new byte[1024]);
+        // the length prefix is larger than the max message size
+        ByteBuffer.wrap(compressedData)
+                .putInt(TBaseConstants.META_MAX_MESSAGE_DATA_SIZE_UPPER_LIMIT + 1);
+        try {
+            MessageCompressUtils.decompress(MessageFlagUtils.COMPRESS_CODEC_DEFLATE, compressedData);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("exceeds the max message size"));
+        }
+        // the length prefix doesn't match the compressed data
+        ByteBuffer.wrap(compressedData).putInt(2048);
+        try {
+            MessageCompressUtils.decompress(MessageFlagUtils.COMPRESS_CODEC_DEFLATE, compressedData);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("expect 2048 bytes"));
+        }
+    }
+}
@@ -20,13 +20,18 @@ package org.apache.inlong.tubemq.corerpc.codec;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import org.apache.inlong.tubemq.corebase.Message;
 import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
 import org.apache.inlong.tubemq.corebase.cluster.Partition;
 import org.apache.inlong.tubemq.corebase.cluster.SubscribeInfo;
 import org.apache.inlong.tubemq.corebase.cluster.TopicInfo;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
+import org.apache.inlong.tubemq.corebase.utils.CheckSum;
 import org.apache.inlong.tubemq.corebase.utils.DataConverterUtil;
 import org.junit.Test;
 
@@ -69,6 +74,23 @@ public class DataConverterUtilTest {
         List<TopicInfo> topicList = DataConverterUtil.convertTopicInfo(brokerMap, strInfoList);
         assertEquals("topic should be equal", topic, topicList.get(0));
 
+        // message convert, the attribute is decoded when accessed
+        byte[] attribute = "$msgTime$=202110121200,key=value".getBytes();
+        ByteBuffer payLoad = ByteBuffer.allocate(4 + attribute.length + 3);
+        payLoad.putInt(attribute.length);
+        payLoad.put(attribute);
+        payLoad.put("abc".getBytes());
+        List<ClientBroker.TransferedMessage> transferedMessages = new ArrayList<>();
+        transferedMessages.add(ClientBroker.TransferedMessage.newBuilder()
+                .setMessageId(1L).setCheckSum(CheckSum.crc32(payLoad.array()))
+                .setFlag(1).setPayLoadData(ByteString.copyFrom(payLoad.array())).build());
+        List<Message> messages = DataConverterUtil.convertMessage("tube", transferedMessages);
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0).hasAttribute());
+        assertEquals("abc", new String(messages.get(0).getData()));
+        assertEquals("value", messages.get(0).getAttrValue("key"));
+        assertEquals("202110121200", messages.get(0).getMsgTime());
+        assertEquals(new String(attribute), messages.get(0).getAttribute());
     }
 
 }
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corerpc.codec;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
+import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * FileRegionMsgDecoder test.
+ */
+public class FileRegionMsgDecoderTest {
+
+    @Test
+    public void mergeRegionMsgs() throws Exception {
+        byte[] payLoad = "abc".getBytes();
+        // the second record carries the system header extension
+        ByteBuffer record = ByteBuffer.allocate(2 * (52 + payLoad.length) + 12);
+        record.putInt(FileRegionMsgDecoder.STORE_DATA_PREFX_LEN + payLoad.length);
+        record.putInt(FileRegionMsgDecoder.STORE_DATA_TOKER_BEGIN_VALUE);
+        record.putInt(12345);
+        record.putInt(0);
+        record.putLong(1L);
+        record.putLong(System.currentTimeMillis());
+        record.putInt(0);
+        record.putInt(0);
+        record.putLong(100L);
+        record.putInt(0);
+        record.put(payLoad);
+        record.putInt(FileRegionMsgDecoder.STORE_DATA_PREFX_LEN + 12 + payLoad.length);
+        record.putInt(FileRegionMsgDecoder.STORE_DATA_TOKER_BEGIN_VALUE);
+        record.putInt(12345);
+        record.putInt(0);
+        record.putLong(2L);
+        record.putLong(System.currentTimeMillis());
+        record.putInt(0);
+        record.putInt(0);
+        record.putLong(101L);
+        record.putInt(MessageFlagUtils.STORE_SYS_HEADER_EXT);
+        record.putInt(12);
+        record.putLong(202110121200L);
+        record.put(payLoad);
+        ClientBroker.GetMessageResponseB2C response =
+                ClientBroker.GetMessageResponseB2C.newBuilder()
+                        .setSuccess(true).setErrCode(200)
+                        .setFileRegionMsgCnt(2).build();
+        // merge the attached record
+        ClientBroker.GetMessageResponseB2C result =
+                FileRegionMsgDecoder.mergeRegionMsgs(response,
+                        new ByteArrayInputStream(record.array()));
+        Assert.assertFalse(result.hasFileRegionMsgCnt());
+        Assert.assertEquals(2, result.getMessagesCount());
+        Assert.assertEquals(100L, result.getMessages(0).getMessageId());
+        Assert.assertEquals(12345, result.getMessages(0).getCheckSum());
+        Assert.assertEquals("abc", result.getMessages(0).getPayLoadData().toStringUtf8());
+        Assert.assertEquals(101L, result.getMessages(1).getMessageId());
+        Assert.assertEquals(0, result.getMessages(1).getFlag());
+        Assert.assertEquals("abc", result.getMessages(1).getPayLoadData().toStringUtf8());
+    }
+}
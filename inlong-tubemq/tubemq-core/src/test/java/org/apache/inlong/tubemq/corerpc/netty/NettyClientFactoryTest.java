@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.corerpc.netty;
+
+import org.apache.inlong.tubemq.corebase.cluster.NodeAddrInfo;
+import org.apache.inlong.tubemq.corerpc.RpcConfig;
+import org.apache.inlong.tubemq.corerpc.RpcConstants;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * NettyClientFactory test.
+ */
+public class NettyClientFactoryTest {
+    // nothing listens on the port, the connection is refused
+    private final NodeAddrInfo addressInfo = new NodeAddrInfo("127.0.0.1", 1);
+    private NettyClientFactory factory;
+    private RpcConfig conf;
+
+    @After
+    public void tearDown() {
+        if (factory != null) {
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    public void selectLeastInflightClient() throws Exception {
+        createFactory(3);
+        factory.clients.put(getClientKey(0), new StubClient(true, 5));
+        StubClient leastBusyClient = new StubClient(true, 2);
+        factory.clients.put(getClientKey(1), leastBusyClient);
+        factory.clients.put(getClientKey(2), new StubClient(true, 7));
+        Assert.assertSame(leastBusyClient, factory.getClient(addressInfo, conf));
+        String clientStats = factory.getClientStats(new StringBuilder(512)).toString();
+        Assert.assertTrue(clientStats.contains("\"127.0.0.1:1#1\":{\"inflight\":2,"));
+    }
+
+    @Test
+    public void reuseIdleClient() throws Exception {
+        createFactory(3);
+        StubClient idleClient = new StubClient(true, 0);
+        factory.clients.put(getClientKey(0), idleClient);
+        // the idle connection is used without connecting a free slot
+        Assert.assertSame(idleClient, factory.getClient(addressInfo, conf));
+        Assert.assertEquals(1, factory.clients.size());
+    }
+
+    @Test
+    public void fallbackOnConnectFailure() throws Exception {
+        createFactory(3);
+        StubClient busyClient = new StubClient(true, 3);
+        factory.clients.put(getClientKey(0), busyClient);
+        factory.clients.put(getClientKey(1), new StubClient(false, 0));
+        // all the connections are busy, the free slot fails to connect
+        Assert.assertSame(busyClient, factory.getClient(addressInfo, conf));
+        // the broken connection is removed
+        Assert.assertNull(factory.clients.get(getClientKey(1)));
+        Assert.assertSame(busyClient, factory.clients.get(getClientKey(0)));
+    }
+
+    @Test(expected = Exception.class)
+    public void noReadyClient() throws Exception {
+        createFactory(3);
+        factory.getClient(addressInfo, conf);
+    }
+
+    @Test
+    public void singleClient() throws Exception {
+        createFactory(1);
+        StubClient busyClient = new StubClient(true, 3);
+        factory.clients.put(addressInfo.getHostPortStr(), busyClient);
+        // no pool, the only connection is used however busy
+        Assert.assertSame(busyClient, factory.getClient(addressInfo, conf));
+        Assert.assertEquals(1, factory.clients.size());
+    }
+
+    private void createFactory(int connPoolSize) {
+        conf = new RpcConfig();
+        conf.put(RpcConstants.CLIENT_CONN_POOL_SIZE, connPoolSize);
+        conf.put(RpcConstants.CONNECT_TIMEOUT, 1000);
+        factory = new NettyClientFactory();
+        factory.configure(conf);
+    }
+
+    private String getClientKey(int slot) {
+        if (slot == 0) {
+            return addressInfo.getHostPortStr();
+        }
+        return addressInfo.getHostPortStr() + "#" + slot;
+    }
+
+    private class StubClient extends NettyClient {
+        private final boolean ready;
+        private final int inflightCount;
+
+        StubClient(boolean ready, int inflightCount) {
+            super(factory, 1000);
+            this.ready = ready;
+            this.inflightCount = inflightCount;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public int getInflightCount() {
+            return inflightCount;
+        }
+    }
+}
@@ -54,4 +54,30 @@ public class NettyProtocolEncoderTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void encodeAndDecode() throws Exception {
+        RpcDataPack obj = new RpcDataPack();
+        obj.setSerialNo(456);
+        List<ByteBuffer> dataList = new LinkedList<>();
+        dataList.add(ByteBuffer.wrap("abc".getBytes()));
+        dataList.add(ByteBuffer.wrap("defgh".getBytes()));
+        obj.setDataLst(dataList);
+        ChannelBuffer buf =
+                (ChannelBuffer) new NettyProtocolEncoder().encode(null, null, obj);
+        Assert.assertEquals(12 + 4 + 3 + 4 + 5, buf.readableBytes());
+        // the frames decoded are the slices of the received buffer
+        NettyProtocolDecoder decoder = new NettyProtocolDecoder();
+        Assert.assertNull(decoder.decode(null, null, buf));
+        RpcDataPack result = (RpcDataPack) decoder.decode(null, null, buf);
+        Assert.assertEquals(456, result.getSerialNo());
+        Assert.assertEquals(2, result.getDataLst().size());
+        ByteBuffer frame = result.getDataLst().get(1);
+        Assert.assertEquals(0, frame.position());
+        Assert.assertEquals(5, frame.limit());
+        byte[] frameData = new byte[frame.remaining()];
+        frame.get(frameData);
+        Assert.assertEquals("defgh", new String(frameData));
+        Assert.assertFalse(buf.readable());
+    }
 }
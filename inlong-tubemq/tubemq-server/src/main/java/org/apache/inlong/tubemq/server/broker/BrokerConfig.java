@@ -24,6 +24,7 @@ import org.apache.inlong.tubemq.corebase.TBaseConstants;
 import org.apache.inlong.tubemq.corebase.config.TLSConfig;
 import org.apache.inlong.tubemq.corebase.utils.AddressUtils;
 import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
+import org.apache.inlong.tubemq.server.broker.msgstore.ProduceAckPolicy;
 import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
 import org.apache.inlong.tubemq.server.common.TServerConstants;
 import org.apache.inlong.tubemq.server.common.fileconfig.AbstractFileConfig;
@@ -105,6 +106,32 @@ public class BrokerConfig extends AbstractFileConfig {
     // row lock wait duration
     private int rowLockWaitDurMs =
             TServerConstants.CFG_ROWLOCK_DEFAULT_DURATION;
+    // whether transfer the messages in file to consumer by file region
+    private boolean enableFileRegionTransfer = false;
+    // whether keep the message time in the binary header extension of the stored messages
+    private boolean enableSysHeaderExt = false;
+    // directory of the local offset log, offsets are committed to ZooKeeper directly if blank
+    private String offsetLogPath = "";
+    // interval to checkpoint the offsets in local offset log to ZooKeeper
+    private long offsetCheckpointPeriodMs = 60000L;
+    // max threads that load the message stores of a data path on start
+    private int storeLoadThreadsPerPath = 4;
+    // whether read the immutable segments by memory-mapped buffer
+    private boolean enableMmapRead = false;
+    // max total bytes of the memory-mapped segments
+    private long maxMmapReadBytes = TServerConstants.CFG_DEFAULT_MAX_MMAP_READ_BYTES;
+    // max time a fetch request that found no message waits for new messages, 0 disables the wait
+    private int maxFetchWaitTimeMs = TServerConstants.CFG_DEFAULT_MAX_FETCH_WAIT_TIME_MS;
+    // thread count for answering the waiting fetch requests
+    private int pendingFetchThreadCnt = Runtime.getRuntime().availableProcessors();
+    // when the producer is answered, after the message is in memory, page cache or disk
+    private ProduceAckPolicy produceAckPolicy = ProduceAckPolicy.MEMORY;
+    // max time waiting the message to reach the produce ack policy
+    private int maxAckWaitTimeMs = TServerConstants.CFG_DEFAULT_MAX_ACK_WAIT_TIME_MS;
+    // disk usage percent of the primary path that starts evicting the oldest segments, 0 disables it
+    private int diskHighWatermarkPct = 0;
+    // disk usage percent of the primary path that the eviction stops at
+    private int diskLowWatermarkPct = 0;
     // zookeeper config
     private ZKConfig zkConfig = new ZKConfig();
     // tls config
@@ -317,6 +344,79 @@ public class BrokerConfig extends AbstractFileConfig {
         if (TStringUtils.isNotBlank(brokerSect.get("ioExcptStatsDurationMs"))) {
             this.ioExcptStatsDurationMs = getLong(brokerSect, "ioExcptStatsDurationMs");
         }
+        if (TStringUtils.isNotBlank(brokerSect.get("enableFileRegionTransfer"))) {
+            this.enableFileRegionTransfer = getBoolean(brokerSect, "enableFileRegionTransfer");
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("enableSysHeaderExt"))) {
+            this.enableSysHeaderExt = getBoolean(brokerSect, "enableSysHeaderExt");
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("offsetLogPath"))) {
+            this.offsetLogPath = brokerSect.get("offsetLogPath").trim();
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("offsetCheckpointPeriodMs"))) {
+            this.offsetCheckpointPeriodMs = getLong(brokerSect, "offsetCheckpointPeriodMs");
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("storeLoadThreadsPerPath"))) {
+            this.storeLoadThreadsPerPath = getInt(brokerSect, "storeLoadThreadsPerPath");
+            if (this.storeLoadThreadsPerPath <= 0) {
+                throw new IllegalArgumentException(new StringBuilder(256)
+                        .append("storeLoadThreadsPerPath must be greater than 0 in ")
+                        .append(SECT_TOKEN_BROKER).append(" section!").toString());
+            }
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("enableMmapRead"))) {
+            this.enableMmapRead = getBoolean(brokerSect, "enableMmapRead");
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("maxMmapReadBytes"))) {
+            this.maxMmapReadBytes = getLong(brokerSect, "maxMmapReadBytes");
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("maxFetchWaitTimeMs"))) {
+            this.maxFetchWaitTimeMs = getInt(brokerSect, "maxFetchWaitTimeMs");
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("pendingFetchThreadCnt"))) {
+            this.pendingFetchThreadCnt = getInt(brokerSect, "pendingFetchThreadCnt");
+            if (this.pendingFetchThreadCnt <= 0) {
+                throw new IllegalArgumentException(new StringBuilder(256)
+                        .append("pendingFetchThreadCnt must be greater than 0 in ")
+                        .append(SECT_TOKEN_BROKER).append(" section!").toString());
+            }
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("produceAckPolicy"))) {
+            try {
+                this.produceAckPolicy = ProduceAckPolicy.valueOf(
+                        brokerSect.get("produceAckPolicy").trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(new StringBuilder(256)
+                        .append("produceAckPolicy must be one of memory, pagecache and durable in ")
+                        .append(SECT_TOKEN_BROKER).append(" section!").toString());
+            }
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("maxAckWaitTimeMs"))) {
+            this.maxAckWaitTimeMs = getInt(brokerSect, "maxAckWaitTimeMs");
+            if (this.maxAckWaitTimeMs <= 0) {
+                throw new IllegalArgumentException(new StringBuilder(256)
+                        .append("maxAckWaitTimeMs must be greater than 0 in ")
+                        .append(SECT_TOKEN_BROKER).append(" section!").toString());
+            }
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("diskHighWatermarkPct"))) {
+            this.diskHighWatermarkPct = getInt(brokerSect, "diskHighWatermarkPct");
+            if (this.diskHighWatermarkPct < 0 || this.diskHighWatermarkPct > 100) {
+                throw new IllegalArgumentException(new StringBuilder(256)
+                        .append("diskHighWatermarkPct must be in [0, 100] in ")
+                        .append(SECT_TOKEN_BROKER).append(" section!").toString());
+            }
+            this.diskLowWatermarkPct = Math.max(0, this.diskHighWatermarkPct - 5);
+        }
+        if (TStringUtils.isNotBlank(brokerSect.get("diskLowWatermarkPct"))) {
+            this.diskLowWatermarkPct = getInt(brokerSect, "diskLowWatermarkPct");
+            if (this.diskLowWatermarkPct < 0
+                    || this.diskLowWatermarkPct > this.diskHighWatermarkPct) {
+                throw new IllegalArgumentException(new StringBuilder(256)
+                        .append("diskLowWatermarkPct must be in [0, diskHighWatermarkPct] in ")
+                        .append(SECT_TOKEN_BROKER).append(" section!").toString());
+            }
+        }
         if (TStringUtils.isNotBlank(brokerSect.get("visitMasterAuth"))) {
             this.visitMasterAuth = this.getBoolean(brokerSect, "visitMasterAuth");
         }
@@ -423,6 +523,58 @@ public class BrokerConfig extends AbstractFileConfig {
         return nettyWriteBufferHighWaterMark;
     }
 
+    public boolean isEnableFileRegionTransfer() {
+        return enableFileRegionTransfer;
+    }
+
+    public boolean isEnableSysHeaderExt() {
+        return enableSysHeaderExt;
+    }
+
+    public String getOffsetLogPath() {
+        return offsetLogPath;
+    }
+
+    public long getOffsetCheckpointPeriodMs() {
+        return offsetCheckpointPeriodMs;
+    }
+
+    public int getStoreLoadThreadsPerPath() {
+        return storeLoadThreadsPerPath;
+    }
+
+    public boolean isEnableMmapRead() {
+        return enableMmapRead;
+    }
+
+    public long getMaxMmapReadBytes() {
+        return maxMmapReadBytes;
+    }
+
+    public int getMaxFetchWaitTimeMs() {
+        return maxFetchWaitTimeMs;
+    }
+
+    public int getPendingFetchThreadCnt() {
+        return pendingFetchThreadCnt;
+    }
+
+    public ProduceAckPolicy getProduceAckPolicy() {
+        return produceAckPolicy;
+    }
+
+    public int getMaxAckWaitTimeMs() {
+        return maxAckWaitTimeMs;
+    }
+
+    public int getDiskHighWatermarkPct() {
+        return diskHighWatermarkPct;
+    }
+
+    public int getDiskLowWatermarkPct() {
+        return diskLowWatermarkPct;
+    }
+
     public boolean isVisitMasterAuth() {
         return visitMasterAuth;
     }
@@ -25,6 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.StringUtils;
@@ -34,6 +36,7 @@ import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
 import org.apache.inlong.tubemq.corebase.TokenConstants;
 import org.apache.inlong.tubemq.corebase.cluster.Partition;
 import org.apache.inlong.tubemq.corebase.config.TLSConfig;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.BatchMessageP2B;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.CommitOffsetRequestC2B;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.CommitOffsetResponseB2C;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.GetMessageRequestC2B;
@@ -44,14 +47,18 @@ import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.Registe
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.RegisterResponseB2C;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.SendMessageRequestP2B;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.SendMessageResponseB2P;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.SendMessagesRequestP2B;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.SendMessagesResponseB2P;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.TransferedMessage;
 import org.apache.inlong.tubemq.corebase.utils.AddressUtils;
 import org.apache.inlong.tubemq.corebase.utils.CheckSum;
 import org.apache.inlong.tubemq.corebase.utils.DataConverterUtil;
 import org.apache.inlong.tubemq.corebase.utils.ServiceStatusHolder;
 import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
+import org.apache.inlong.tubemq.corerpc.RpcAsyncResponse;
 import org.apache.inlong.tubemq.corerpc.RpcConfig;
 import org.apache.inlong.tubemq.corerpc.RpcConstants;
+import org.apache.inlong.tubemq.corerpc.RpcFileRegion;
 import org.apache.inlong.tubemq.corerpc.service.BrokerReadService;
 import org.apache.inlong.tubemq.corerpc.service.BrokerWriteService;
 import org.apache.inlong.tubemq.server.Server;
@@ -59,11 +66,15 @@ import org.apache.inlong.tubemq.server.broker.metadata.MetadataManager;
 import org.apache.inlong.tubemq.server.broker.metadata.TopicMetadata;
 import org.apache.inlong.tubemq.server.broker.msgstore.MessageStore;
 import org.apache.inlong.tubemq.server.broker.msgstore.MessageStoreManager;
+import org.apache.inlong.tubemq.server.broker.msgstore.PendingFetchManager;
+import org.apache.inlong.tubemq.server.broker.msgstore.ProduceAckPolicy;
+import org.apache.inlong.tubemq.server.broker.msgstore.ProduceAckQueue;
 import org.apache.inlong.tubemq.server.broker.msgstore.disk.GetMessageResult;
 import org.apache.inlong.tubemq.server.broker.nodeinfo.ConsumerNodeInfo;
 import org.apache.inlong.tubemq.server.broker.offset.OffsetService;
 import org.apache.inlong.tubemq.server.broker.stats.CountService;
 import org.apache.inlong.tubemq.server.broker.stats.GroupCountService;
+import org.apache.inlong.tubemq.server.broker.stats.MsgTimeCounter;
 import org.apache.inlong.tubemq.server.common.TServerConstants;
 import org.apache.inlong.tubemq.server.common.TStatusConstants;
 import org.apache.inlong.tubemq.server.common.aaaserver.CertificateBrokerHandler;
@@ -75,6 +86,7 @@ import org.apache.inlong.tubemq.server.common.heartbeat.TimeoutInfo;
 import org.apache.inlong.tubemq.server.common.heartbeat.TimeoutListener;
 import org.apache.inlong.tubemq.server.common.offsetstorage.OffsetStorageInfo;
 import org.apache.inlong.tubemq.server.common.paramcheck.PBParameterUtils;
+import org.apache.inlong.tubemq.server.common.utils.AppendMsgItem;
 import org.apache.inlong.tubemq.server.common.utils.AppendResult;
 import org.apache.inlong.tubemq.server.common.utils.ProcessResult;
 import org.apache.inlong.tubemq.server.common.utils.RowLock;
@@ -100,6 +112,8 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
     private final MessageStoreManager storeManager;
     // heartbeat manager.
     private final HeartbeatManager heartbeatManager;
+    // fetch requests waiting for new messages.
+    private final PendingFetchManager pendingFetchManager;
     // row lock.
     private final RowLock brokerRowLock;
     // statistics of produce.
@@ -128,6 +142,8 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
         this.putCounterGroup = new GroupCountService("PutCounterGroup", "Producer", 60 * 1000);
         this.getCounterGroup = new GroupCountService("GetCounterGroup", "Consumer", 60 * 1000);
         this.heartbeatManager = new HeartbeatManager();
+        this.pendingFetchManager =
+                new PendingFetchManager(this.tubeConfig.getPendingFetchThreadCnt());
         this.brokerRowLock =
                 new RowLock("Broker-RowLock", this.tubeConfig.getRowLockWaitDurMs());
         heartbeatManager.regConsumerCheckBusiness(
@@ -217,6 +233,7 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
         if (!started.compareAndSet(true, false)) {
             return;
         }
+        pendingFetchManager.close();
         heartbeatManager.stop();
         putCounterGroup.close(-1);
         getCounterGroup.close(-1);
@@ -259,9 +276,16 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
         return (timeoutInfo.getTimeoutTime() - heartbeatManager.getConsumerTimeoutDlt());
     }
 
+    public PendingFetchManager getPendingFetchManager() {
+        return pendingFetchManager;
+    }
+
     /***
      * Handle consumer's getMessageRequest.
      *
+     * If no message is found and the consumer allows to wait, the request is
+     * held until new messages are appended to the partition or the wait time expires.
+     *
      * @param request
      * @param rmtAddress
      * @param overtls
@@ -272,6 +296,94 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
     public GetMessageResponseB2C getMessagesC2B(GetMessageRequestC2B request,
                                                 final String rmtAddress,
                                                 boolean overtls) throws Throwable {
+        final RpcAsyncResponse asyncResponse = RpcAsyncResponse.current();
+        long waitTimeMs = getFetchWaitTimeMs(request, asyncResponse);
+        if (waitTimeMs <= 0) {
+            return fetchMessages(request, rmtAddress, overtls);
+        }
+        final String storeKey = PendingFetchManager.getStoreKey(
+                request.getTopicName().trim(), request.getPartitionId());
+        long arrivalSeq = pendingFetchManager.getArrivalSeq(storeKey);
+        GetMessageResponseB2C response = fetchMessages(request, rmtAddress, overtls);
+        if (!isWaitableResponse(response)) {
+            return response;
+        }
+        PendingFetchTask fetchTask = new PendingFetchTask(request, rmtAddress, overtls,
+                storeKey, System.currentTimeMillis() + waitTimeMs, asyncResponse);
+        if (pendingFetchManager.park(storeKey, arrivalSeq, fetchTask.deadline, fetchTask)) {
+            asyncResponse.suspend();
+            return null;
+        }
+        return fetchMessages(request, rmtAddress, overtls);
+    }
+
+    /***
+     * Get the time the fetch request may wait for new messages.
+     *
+     * @param request         the fetch request
+     * @param asyncResponse   the response handle of the request
+     * @return the wait time in milliseconds, 0 if the request should not wait
+     */
+    private long getFetchWaitTimeMs(GetMessageRequestC2B request,
+                                    RpcAsyncResponse asyncResponse) {
+        if (asyncResponse == null
+                || !request.hasMaxWaitTimeMs()
+                || request.getMaxWaitTimeMs() <= 0
+                || tubeConfig.getMaxFetchWaitTimeMs() <= 0) {
+            return 0;
+        }
+        // leave half of the remaining time for the response to reach the consumer
+        return Math.min(Math.min(request.getMaxWaitTimeMs(),
+                tubeConfig.getMaxFetchWaitTimeMs()), asyncResponse.getRemainingTimeMs() / 2);
+    }
+
+    private boolean isWaitableResponse(GetMessageResponseB2C response) {
+        return response.getErrCode() == TErrCodeConstants.NOT_FOUND
+                && response.getMinLimitTime() <= 0;
+    }
+
+    /***
+     * Fetch again for a held request, and write the response once messages
+     * are found or the wait time expires.
+     */
+    private class PendingFetchTask implements Runnable {
+        private final GetMessageRequestC2B request;
+        private final String rmtAddress;
+        private final boolean overtls;
+        private final String storeKey;
+        private final long deadline;
+        private final RpcAsyncResponse asyncResponse;
+
+        PendingFetchTask(GetMessageRequestC2B request, String rmtAddress,
+                         boolean overtls, String storeKey, long deadline,
+                         RpcAsyncResponse asyncResponse) {
+            this.request = request;
+            this.rmtAddress = rmtAddress;
+            this.overtls = overtls;
+            this.storeKey = storeKey;
+            this.deadline = deadline;
+            this.asyncResponse = asyncResponse;
+        }
+
+        @Override
+        public void run() {
+            RpcFileRegion.releaseAll(RpcFileRegion.detach());
+            long arrivalSeq = pendingFetchManager.getArrivalSeq(storeKey);
+            GetMessageResponseB2C response = fetchMessages(request, rmtAddress, overtls);
+            if (isWaitableResponse(response)
+                    && System.currentTimeMillis() < deadline) {
+                if (pendingFetchManager.park(storeKey, arrivalSeq, deadline, this)) {
+                    return;
+                }
+                response = fetchMessages(request, rmtAddress, overtls);
+            }
+            asyncResponse.complete(response, RpcFileRegion.detach());
+        }
+    }
+
+    private GetMessageResponseB2C fetchMessages(GetMessageRequestC2B request,
+                                                final String rmtAddress,
+                                                boolean overtls) {
         final GetMessageResponseB2C.Builder builder =
                 GetMessageResponseB2C.newBuilder();
         builder.setSuccess(false);
@@ -314,6 +426,9 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
         final String topicName = (String) result.retData1;
         final int partitionId = request.getPartitionId();
         boolean isEscFlowCtrl = request.hasEscFlowCtrl() && request.getEscFlowCtrl();
+        boolean useFileRegion = !overtls
+                && this.tubeConfig.isEnableFileRegionTransfer()
+                && request.hasSupportFileRegion() && request.getSupportFileRegion();
         String partStr = getPartStr(groupName, topicName, partitionId);
         String consumerId = null;
         ConsumerNodeInfo consumerNodeInfo = consumerRegisterMap.get(partStr);
@@ -371,12 +486,12 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
             GetMessageResult msgResult =
                     getMessages(dataStore, consumerNodeInfo, groupName, topicName, partitionId,
                             request.getLastPackConsumed(), request.getManualCommitOffset(),
-                            clientId, this.tubeConfig.getHostName(), rmtAddrInfo, isEscFlowCtrl, strBuffer);
+                            clientId, this.tubeConfig.getHostName(), rmtAddrInfo,
+                            isEscFlowCtrl, useFileRegion, strBuffer);
             if (msgResult.isSuccess) {
                 consumerNodeInfo.setLastProcInfo(System.currentTimeMillis(),
                         msgResult.lastRdDataOffset,
                         msgResult.totalMsgSize);
-                getCounterGroup.add(msgResult.tmpCounters);
                 builder.setEscFlowCtrl(false);
                 builder.setRequireSlow(msgResult.isSlowFreq);
                 builder.setSuccess(true);
@@ -386,8 +501,14 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
                 builder.setErrMsg("OK!");
                 builder.addAllMessages(msgResult.transferedMessageList);
                 builder.setMaxOffset(msgResult.getMaxOffset());
+                if (msgResult.fileRegionMsgCnt > 0) {
+                    // the stored messages are sent after the response body
+                    builder.setFileRegionMsgCnt(msgResult.fileRegionMsgCnt);
+                    RpcFileRegion.attach(msgResult.fileRegionList);
+                }
                 return builder.build();
             } else {
+                RpcFileRegion.releaseAll(msgResult.fileRegionList);
                 builder.setErrCode(msgResult.getRetCode());
                 builder.setErrMsg(msgResult.errInfo);
                 builder.setMinLimitTime((int) msgResult.waitTime);
@@ -427,6 +548,7 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
      * @param brokerAddr
      * @param rmtAddrInfo
      * @param isEscFlowCtrl
+     * @param useFileRegion
      * @param sb
      * @return
      * @throws IOException
@@ -437,7 +559,8 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
                                          final int partitionId, final boolean lastConsumed,
                                          final boolean isManualCommitOffset, final String sentAddr,
                                          final String brokerAddr, final String rmtAddrInfo,
-                                         boolean isEscFlowCtrl, final StringBuilder sb) throws IOException {
+                                         boolean isEscFlowCtrl, boolean useFileRegion,
+                                         final StringBuilder sb) throws IOException {
         long requestOffset =
                 offsetManager.getOffset(msgStore, group, topic,
                         partitionId, isManualCommitOffset, lastConsumed, sb);
@@ -466,10 +589,14 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
             sb.delete(0, sb.length());
             GetMessageResult msgQueryResult =
                     msgStore.getMessages(reqSwitch, requestOffset,
-                            partitionId, consumerNodeInfo, baseKey, msgDataSizeLimit);
+                            partitionId, consumerNodeInfo,
+                            msgDataSizeLimit, useFileRegion);
             offsetManager.bookOffset(group, topic, partitionId,
                     msgQueryResult.lastReadOffset, isManualCommitOffset,
-                    msgQueryResult.transferedMessageList.isEmpty(), sb);
+                    !msgQueryResult.hasMessages(), sb);
+            if (msgQueryResult.isSuccess) {
+                getCounterGroup.add(baseKey, msgQueryResult.tmpCounters);
+            }
             msgQueryResult.setWaitTime(maxDataOffset - msgQueryResult.lastRdDataOffset);
             return msgQueryResult;
         } catch (Throwable e1) {
@@ -665,7 +792,8 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
                     this.storeManager.getOrCreateMessageStore(topicName, partitionId);
             final AppendResult appendResult = new AppendResult();
             if (store.appendMsg(appendResult, dataLength, checkSum, msgData,
-                    msgTypeCode, request.getFlag(), partitionId, request.getSentAddr())) {
+                    msgType, msgTypeCode, request.getFlag(), MsgTimeCounter.parseMsgTime(request.getMsgTime()),
+                    partitionId, request.getSentAddr())) {
                 String baseKey = strBuffer.append(topicName)
                         .append("#").append(AddressUtils.intToIp(request.getSentAddr()))
                         .append("#").append(tubeConfig.getHostName())
@@ -681,7 +809,18 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
                 builder.setMessageId(appendResult.getMsgId());
                 builder.setAppendTime(appendResult.getAppendTime());
                 builder.setAppendOffset(appendResult.getAppendIndexOffset());
-                return builder.build();
+                pendingFetchManager.notifyArrival(
+                        PendingFetchManager.getStoreKey(topicName, partitionId));
+                final SendMessageResponseB2P ackedResponse = builder.build();
+                strBuffer.delete(0, strBuffer.length());
+                builder.setSuccess(false);
+                builder.setErrCode(TErrCodeConstants.STORED_NOT_ACKED);
+                builder.setErrMsg(strBuffer.append("Put message stored in ")
+                        .append(tubeConfig.getHostName())
+                        .append(" but wait produce ack timeout, ack policy is ")
+                        .append(tubeConfig.getProduceAckPolicy()).toString());
+                return answerOnAck(store, appendResult.getAppendIndexOffset(),
+                        ackedResponse, builder.build());
             } else {
                 builder.setErrCode(TErrCodeConstants.SERVER_RECEIVE_OVERFLOW);
                 builder.setErrMsg(strBuffer.append("Put message failed from ")
@@ -701,6 +840,220 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
         }
     }
 
+    /***
+     * Handle producer's batch sendMessage request, the messages of the batch
+     * belong to one partition and are appended to the store together.
+     *
+     * @param request
+     * @param rmtAddress
+     * @param overtls
+     * @return
+     * @throws Throwable
+     */
+    @Override
+    public SendMessagesResponseB2P sendMessagesP2B(SendMessagesRequestP2B request,
+                                                   final String rmtAddress,
+                                                   boolean overtls) throws Throwable {
+        ProcessResult result = new ProcessResult();
+        final StringBuilder strBuffer = new StringBuilder(512);
+        SendMessagesResponseB2P.Builder builder = SendMessagesResponseB2P.newBuilder();
+        builder.setSuccess(false);
+        if (!this.started.get()
+                || ServiceStatusHolder.isWriteServiceStop()) {
+            builder.setErrCode(TErrCodeConstants.SERVICE_UNAVAILABLE);
+            builder.setErrMsg("Write StoreService temporary unavailable!");
+            return builder.build();
+        }
+        CertifiedResult certResult =
+                serverAuthHandler.identityValidUserInfo(request.getAuthInfo(), true);
+        if (!certResult.result) {
+            builder.setErrCode(certResult.errCode);
+            builder.setErrMsg(certResult.errInfo);
+            return builder.build();
+        }
+        // get and check clientId field
+        if (!PBParameterUtils.getStringParameter(WebFieldDef.CLIENTID,
+                request.getClientId(), strBuffer, result)) {
+            builder.setErrCode(result.errCode);
+            builder.setErrMsg(result.errInfo);
+            return builder.build();
+        }
+        // get and check topicName and partitionId field
+        final int partitionId = request.getPartitionId();
+        if (!PBParameterUtils.getTopicNamePartIdInfo(request.getTopicName(),
+                partitionId, this.metadataManager, strBuffer, result)) {
+            builder.setErrCode(result.errCode);
+            builder.setErrMsg(result.errInfo);
+            return builder.build();
+        }
+        final TopicMetadata topicMetadata = (TopicMetadata) result.retData1;
+        final String topicName = topicMetadata.getTopic();
+        if (request.getMessagesCount() <= 0) {
+            builder.setErrCode(TErrCodeConstants.BAD_REQUEST);
+            builder.setErrMsg("message list is empty!");
+            return builder.build();
+        }
+        // check all messages before appending any of them
+        long totalDataSize = 0;
+        Set<String> checkedMsgTypes = new HashSet<>();
+        List<AppendMsgItem> msgItems = new ArrayList<>(request.getMessagesCount());
+        for (BatchMessageP2B message : request.getMessagesList()) {
+            String msgType = null;
+            int msgTypeCode = -1;
+            if (TStringUtils.isNotBlank(message.getMsgType())) {
+                msgType = message.getMsgType().trim();
+                msgTypeCode = msgType.hashCode();
+            }
+            final byte[] msgData = message.getData().toByteArray();
+            if (msgData.length <= 0) {
+                builder.setErrCode(TErrCodeConstants.BAD_REQUEST);
+                builder.setErrMsg("data length is zero!");
+                return builder.build();
+            }
+            if (msgData.length > topicMetadata.getMaxMsgSize()) {
+                builder.setErrCode(TErrCodeConstants.BAD_REQUEST);
+                builder.setErrMsg(strBuffer.append("data length over max length, allowed max length is ")
+                        .append(topicMetadata.getMaxMsgSize())
+                        .append(", data length is ").append(msgData.length).toString());
+                return builder.build();
+            }
+            int checkSum = CheckSum.crc32(msgData);
+            if (message.getCheckSum() != -1 && checkSum != message.getCheckSum()) {
+                builder.setErrCode(TErrCodeConstants.FORBIDDEN);
+                builder.setErrMsg(strBuffer.append("Checksum msg data failure: ")
+                        .append(message.getCheckSum()).append(" of ").append(topicName)
+                        .append(" not equal to the data's checksum of ")
+                        .append(checkSum).toString());
+                return builder.build();
+            }
+            if (checkedMsgTypes.add(String.valueOf(msgType))) {
+                CertifiedResult authorizeResult =
+                        serverAuthHandler.validProduceAuthorizeInfo(
+                                certResult.userName, topicName, msgType, rmtAddress);
+                if (!authorizeResult.result) {
+                    builder.setErrCode(authorizeResult.errCode);
+                    builder.setErrMsg(authorizeResult.errInfo);
+                    return builder.build();
+                }
+            }
+            totalDataSize += msgData.length;
+            msgItems.add(new AppendMsgItem(msgData, checkSum, msgType, msgTypeCode,
+                    message.getFlag(), MsgTimeCounter.parseMsgTime(message.getMsgTime())));
+        }
+        try {
+            final MessageStore store =
+                    this.storeManager.getOrCreateMessageStore(topicName, partitionId);
+            int appendedCnt = store.appendMsgs(msgItems, partitionId, request.getSentAddr());
+            MsgTimeCounter msgTimeCounter = new MsgTimeCounter();
+            for (int i = 0; i < appendedCnt; i++) {
+                AppendResult appendResult = msgItems.get(i).getAppendResult();
+                builder.addMessageIds(appendResult.getMsgId());
+                builder.addAppendOffsets(appendResult.getAppendIndexOffset());
+                msgTimeCounter.add(request.getMessages(i).getMsgTime(),
+                        1L, msgItems.get(i).getDataLength());
+            }
+            if (appendedCnt > 0) {
+                String baseKey = strBuffer.append(topicName)
+                        .append("#").append(AddressUtils.intToIp(request.getSentAddr()))
+                        .append("#").append(tubeConfig.getHostName())
+                        .append("#").append(partitionId).toString();
+                strBuffer.delete(0, strBuffer.length());
+                putCounterGroup.add(baseKey, msgTimeCounter);
+            }
+            if (appendedCnt > 0) {
+                builder.setAppendTime(msgItems.get(0).getAppendResult().getAppendTime());
+                pendingFetchManager.notifyArrival(
+                        PendingFetchManager.getStoreKey(topicName, partitionId));
+            }
+            builder.setRequireAuth(certResult.reAuth);
+            if (appendedCnt == msgItems.size()) {
+                builder.setSuccess(true);
+                builder.setErrCode(TErrCodeConstants.SUCCESS);
+                builder.setErrMsg("Ok");
+            } else {
+                builder.setErrCode(TErrCodeConstants.SERVER_RECEIVE_OVERFLOW);
+                builder.setErrMsg(strBuffer.append("Put message failed from ")
+                        .append(tubeConfig.getHostName())
+                        .append(", server receive message overflow, appended ")
+                        .append(appendedCnt).append(" of ").append(msgItems.size())
+                        .append(" messages, total data size is ").append(totalDataSize).toString());
+                strBuffer.delete(0, strBuffer.length());
+            }
+            if (appendedCnt <= 0) {
+                return builder.build();
+            }
+            final SendMessagesResponseB2P ackedResponse = builder.build();
+            builder.setSuccess(false);
+            builder.setErrCode(TErrCodeConstants.STORED_NOT_ACKED);
+            builder.setErrMsg(strBuffer.append("Put messages stored in ")
+                    .append(tubeConfig.getHostName())
+                    .append(" but wait produce ack timeout, ack policy is ")
+                    .append(tubeConfig.getProduceAckPolicy()).toString());
+            return answerOnAck(store,
+                    msgItems.get(appendedCnt - 1).getAppendResult().getAppendIndexOffset(),
+                    ackedResponse, builder.build());
+        } catch (final Throwable ex) {
+            logger.error("Put messages failed ", ex);
+            strBuffer.delete(0, strBuffer.length());
+            builder.setSuccess(false);
+            builder.setErrCode(TErrCodeConstants.INTERNAL_SERVER_ERROR);
+            builder.setErrMsg(strBuffer.append("Put messages failed from ")
+                    .append(tubeConfig.getHostName()).append(" ")
+                    .append((ex.getMessage() != null ? ex.getMessage() : " ")).toString());
+            return builder.build();
+        }
+    }
+
+    /***
+     * Answer the produce request once the appended messages are acknowledged as
+     * the produce ack policy required, the rpc thread is not held while waiting.
+     * The messages are stored even if the wait times out, so the unacked response
+     * carries STORED_NOT_ACKED instead of a rejection.
+     *
+     * @param store            the store of the appended messages
+     * @param indexOffset      the index offset of the last appended message
+     * @param ackedResponse    the response if the messages are acknowledged
+     * @param unackedResponse  the response if the wait times out
+     * @return the response, or null if it is written after the acknowledgement
+     * @throws InterruptedException
+     */
+    private <T> T answerOnAck(final MessageStore store, final long indexOffset,
+                              final T ackedResponse, final T unackedResponse)
+            throws InterruptedException {
+        if (tubeConfig.getProduceAckPolicy() == ProduceAckPolicy.MEMORY) {
+            return ackedResponse;
+        }
+        final RpcAsyncResponse asyncResponse = RpcAsyncResponse.current();
+        if (asyncResponse == null) {
+            // not called by the rpc invoker, wait in place
+            final CountDownLatch ackLatch = new CountDownLatch(1);
+            final AtomicBoolean acked = new AtomicBoolean(false);
+            store.waitForAck(indexOffset, new ProduceAckQueue.AckCallback() {
+                @Override
+                public void onAckResult(boolean isAcked) {
+                    acked.set(isAcked);
+                    ackLatch.countDown();
+                }
+            });
+            ackLatch.await(tubeConfig.getMaxAckWaitTimeMs(), TimeUnit.MILLISECONDS);
+            return acked.get() ? ackedResponse : unackedResponse;
+        }
+        asyncResponse.suspend();
+        try {
+            store.waitForAck(indexOffset, new ProduceAckQueue.AckCallback() {
+                @Override
+                public void onAckResult(boolean isAcked) {
+                    asyncResponse.complete(isAcked ? ackedResponse : unackedResponse, null);
+                }
+            });
+        } catch (Throwable e) {
+            // the response is held, answer it here
+            logger.error("Wait produce ack failed ", e);
+            asyncResponse.complete(unackedResponse, null);
+        }
+        return null;
+    }
+
     /***
      * Handle consumer register request.
      *
@@ -865,13 +1218,27 @@ public class BrokerServiceServer implements BrokerReadService, BrokerWriteServic
                         .append(e0.getMessage()).toString());
                 return builder.build();
             }
+            final long reqStartTime = request.hasStartTime() ? request.getStartTime() : -1;
+            long initOffset = reqOffset;
+            if (initOffset < 0 && reqStartTime >= 0) {
+                // consume from the messages received since the required time
+                try {
+                    initOffset = dataStore.getIndexOffsetByTime(reqStartTime);
+                } catch (Throwable e1) {
+                    logger.warn(strBuffer.append("[Consumer Register] query offset by time ")
+                            .append(reqStartTime).append(" failure, ").append(partStr).toString(), e1);
+                    strBuffer.delete(0, strBuffer.length());
+                }
+            }
             OffsetStorageInfo offsetInfo =
                     offsetManager.loadOffset(dataStore, groupName, topicName,
-                            request.getPartitionId(), request.getReadStatus(), reqOffset, strBuffer);
+                            request.getPartitionId(), request.getReadStatus(), initOffset, strBuffer);
             logger.info(strBuffer.append("[Consumer Register]").append(clientId)
                     .append(TokenConstants.SEGMENT_SEP).append(partStr)
                     .append(TokenConstants.SEGMENT_SEP).append(offsetInfo)
                     .append(", reqOffset=").append(reqOffset)
+                    .append(", reqStartTime=").append(reqStartTime)
+                    .append(", initOffset=").append(initOffset)
                     .append(", reqQryPriorityId=").append(reqQryPriorityId)
                     .append(", isOverTLS=").append(overtls).toString());
             builder.setSuccess(true);
@@ -23,6 +23,8 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -32,15 +34,19 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.commons.codec.binary.StringUtils;
 import org.apache.inlong.tubemq.corebase.TBaseConstants;
 import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
+import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
 import org.apache.inlong.tubemq.corebase.utils.MixedUtils;
 import org.apache.inlong.tubemq.corebase.utils.ThreadUtils;
 import org.apache.inlong.tubemq.server.broker.BrokerConfig;
 import org.apache.inlong.tubemq.server.broker.metadata.ClusterConfigHolder;
 import org.apache.inlong.tubemq.server.broker.metadata.TopicMetadata;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.DiskFlushService;
 import org.apache.inlong.tubemq.server.broker.msgstore.disk.GetMessageResult;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.MmapReadController;
 import org.apache.inlong.tubemq.server.broker.msgstore.disk.MsgFileStatisInfo;
 import org.apache.inlong.tubemq.server.broker.msgstore.disk.MsgFileStore;
 import org.apache.inlong.tubemq.server.broker.msgstore.disk.Segment;
@@ -48,8 +54,10 @@ import org.apache.inlong.tubemq.server.broker.msgstore.mem.GetCacheMsgResult;
 import org.apache.inlong.tubemq.server.broker.msgstore.mem.MsgMemStatisInfo;
 import org.apache.inlong.tubemq.server.broker.msgstore.mem.MsgMemStore;
 import org.apache.inlong.tubemq.server.broker.nodeinfo.ConsumerNodeInfo;
-import org.apache.inlong.tubemq.server.broker.stats.CountItem;
+import org.apache.inlong.tubemq.server.broker.stats.MsgTimeCounter;
 import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
+import org.apache.inlong.tubemq.server.broker.utils.ReadBufferPool;
+import org.apache.inlong.tubemq.server.common.utils.AppendMsgItem;
 import org.apache.inlong.tubemq.server.common.utils.AppendResult;
 import org.apache.inlong.tubemq.server.common.utils.IdWorker;
 import org.slf4j.Logger;
@@ -75,11 +83,26 @@ public class MessageStore implements Closeable {
     private final MsgMemStatisInfo msgMemStatisInfo = new MsgMemStatisInfo();
     private final MsgFileStatisInfo msgFileStatisInfo = new MsgFileStatisInfo();
     private final MsgFileStore msgFileStore;
+    // the group commit flusher of the data directory, null if not managed
+    private final DiskFlushService diskFlushService;
+    // the produce requests waiting for the flushes required by the ack policy
+    private final ProduceAckQueue produceAckQueue = new ProduceAckQueue();
+    private final ReentrantLock ackCheckMutex = new ReentrantLock();
+    private final ProduceAckQueue.AckChecker produceAckChecker =
+            new ProduceAckQueue.AckChecker() {
+                @Override
+                public boolean isAcked(long requiredOffset) {
+                    return checkAcked(requiredOffset);
+                }
+            };
     private final ReentrantReadWriteLock writeCacheMutex = new ReentrantReadWriteLock();
     private final Condition flushWriteCacheCondition = writeCacheMutex.writeLock().newCondition();
     private final AtomicBoolean isFlushOngoing = new AtomicBoolean(false);
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    // partition id, the data size appended to the partition
+    private final ConcurrentHashMap<Integer, AtomicLong> partInDataSize =
+            new ConcurrentHashMap<>();
     private volatile int partitionNum;
     private AtomicInteger unflushInterval = new AtomicInteger(0);
     private AtomicInteger unflushThreshold = new AtomicInteger(0);
@@ -88,6 +111,8 @@ public class MessageStore implements Closeable {
     private volatile int writeCacheMaxCnt;
     private volatile int writeCacheFlushIntvl;
     private AtomicLong maxFileValidDurMs = new AtomicLong(0);
+    // max data size of the store, 0 means no size limit
+    private AtomicLong maxFileValidSize = new AtomicLong(0);
     private int maxAllowRdSize = 262144;
     private AtomicInteger memMaxIndexReadCnt = new AtomicInteger(6000);
     private AtomicInteger fileMaxIndexReadCnt = new AtomicInteger(8000);
@@ -128,6 +153,7 @@ public class MessageStore implements Closeable {
         this.partitionNum = topicMetadata.getNumPartitions();
         this.unflushInterval.set(topicMetadata.getUnflushInterval());
         this.maxFileValidDurMs.set(parseDeletePolicy(topicMetadata.getDeletePolicy()));
+        this.maxFileValidSize.set(parseDeleteSize(topicMetadata));
         this.unflushThreshold.set(topicMetadata.getUnflushThreshold());
         this.unflushDataHold.set(topicMetadata.getUnflushDataHold());
         this.writeCacheMaxCnt = topicMetadata.getMemCacheMsgCnt();
@@ -143,6 +169,8 @@ public class MessageStore implements Closeable {
         fileMaxFilterIndexReadSize.set(this.fileMaxFilterIndexReadCnt.get() * DataStoreUtils.STORE_INDEX_HEAD_LEN);
         fileLowReqMaxFilterIndexReadSize.set(
                 this.fileLowReqMaxFilterIndexReadCnt.get() * DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        this.diskFlushService = (msgStoreMgr == null)
+                ? null : msgStoreMgr.getDiskFlushService(this.primStorePath);
         this.msgFileStore = new MsgFileStore(this, this.tubeConfig, this.primStorePath, offsetIfCreate);
         this.msgMemStore = new MsgMemStore(this.writeCacheMaxSize, this.writeCacheMaxCnt, this.tubeConfig);
         this.msgMemStore.resetStartPos(this.msgFileStore.getDataMaxOffset(), this.msgFileStore.getIndexMaxOffset());
@@ -159,17 +187,50 @@ public class MessageStore implements Closeable {
      * @param requestOffset
      * @param partitionId
      * @param consumerNodeInfo
-     * @param statisKeyBase
      * @param msgSizeLimit
      * @return
      * @throws IOException
      */
+    public DiskFlushService getDiskFlushService() {
+        return this.diskFlushService;
+    }
+
+    public MmapReadController getMmapReadController() {
+        return (msgStoreMgr == null) ? null : msgStoreMgr.getMmapReadController();
+    }
+
+    public ReadBufferPool getReadBufferPool() {
+        return (msgStoreMgr == null) ? null : msgStoreMgr.getReadBufferPool();
+    }
+
     public GetMessageResult getMessages(int reqSwitch,
                                         final long requestOffset,
                                         final int partitionId,
                                         final ConsumerNodeInfo consumerNodeInfo,
-                                        final String statisKeyBase,
                                         int msgSizeLimit) throws IOException {
+        return getMessages(reqSwitch, requestOffset, partitionId,
+                consumerNodeInfo, msgSizeLimit, false);
+    }
+
+    /***
+     * Get message from message store, the messages read from file are returned
+     * as file regions if useFileRegion is true.
+     *
+     * @param reqSwitch
+     * @param requestOffset
+     * @param partitionId
+     * @param consumerNodeInfo
+     * @param msgSizeLimit
+     * @param useFileRegion
+     * @return
+     * @throws IOException
+     */
+    public GetMessageResult getMessages(int reqSwitch,
+                                        final long requestOffset,
+                                        final int partitionId,
+                                        final ConsumerNodeInfo consumerNodeInfo,
+                                        int msgSizeLimit,
+                                        boolean useFileRegion) throws IOException {
         // #lizard forgives
         if (this.closed.get()) {
             throw new IllegalStateException(new StringBuilder(512)
@@ -221,17 +282,15 @@ public class MessageStore implements Closeable {
             if (inMemCache) {
                 // return not found when data is under memory sink operation.
                 if (memMsgRlt.isSuccess) {
-                    HashMap<String, CountItem> countMap =
-                            new HashMap<>();
+                    MsgTimeCounter countMap = new MsgTimeCounter();
                     List<ClientBroker.TransferedMessage> transferedMessageList =
                             new ArrayList<>();
                     if (!memMsgRlt.cacheMsgList.isEmpty()) {
-                        final StringBuilder strBuffer = new StringBuilder(512);
                         for (ByteBuffer dataBuffer : memMsgRlt.cacheMsgList) {
                             ClientBroker.TransferedMessage transferedMessage =
                                     DataStoreUtils.getTransferMsg(dataBuffer,
                                             dataBuffer.array().length,
-                                            countMap, statisKeyBase, strBuffer);
+                                            countMap);
                             if (transferedMessage != null) {
                                 transferedMessageList.add(transferedMessage);
                             }
@@ -257,9 +316,14 @@ public class MessageStore implements Closeable {
         }
         maxIndexReadLength = consumerNodeInfo.isFilterConsume()
                 ? fileMaxFilterIndexReadSize.get() : fileMaxIndexReadSize.get();
-        final ByteBuffer indexBuffer = ByteBuffer.allocate(maxIndexReadLength);
+        // skip the index blocks without any subscribed key of filter consume
+        long readStartOffset = reqNewOffset;
+        if (consumerNodeInfo.isFilterConsume()) {
+            readStartOffset = this.msgFileStore.skipUnmatchedIndex(reqNewOffset,
+                    consumerNodeInfo.getFilterCondCodeSet(), fileLowReqMaxFilterIndexReadSize.get());
+        }
         Segment indexRecordView =
-                this.msgFileStore.indexSlice(reqNewOffset, maxIndexReadLength);
+                this.msgFileStore.indexSlice(readStartOffset, maxIndexReadLength);
         if (indexRecordView == null) {
             if (reqNewOffset < this.msgFileStore.getIndexMinOffset()) {
                 return new GetMessageResult(false, TErrCodeConstants.MOVED,
@@ -269,20 +333,35 @@ public class MessageStore implements Closeable {
                         reqNewOffset, 0, "current offset is exceed max offset!");
             }
         }
-        indexRecordView.read(indexBuffer, reqNewOffset);
-        indexBuffer.flip();
-        indexRecordView.relViewRef();
-        if ((msgFileStore.getDataHighMaxOffset() - consumerNodeInfo.getLastDataRdOffset()
-            >= this.tubeConfig.getDoubleDefaultDeduceReadSize())
-            && msgSizeLimit > this.maxAllowRdSize) {
-            msgSizeLimit = this.maxAllowRdSize;
-        }
-        GetMessageResult retResult =
-            msgFileStore.getMessages(partitionId,
-                consumerNodeInfo.getLastDataRdOffset(), reqNewOffset,
-                indexBuffer, consumerNodeInfo.isFilterConsume(),
-                consumerNodeInfo.getFilterCondCodeSet(),
-                statisKeyBase, msgSizeLimit);
+        final ReadBufferPool bufferPool = getReadBufferPool();
+        final ByteBuffer indexBuffer = (bufferPool == null)
+                ? ByteBuffer.allocate(maxIndexReadLength)
+                : bufferPool.borrowBuffer(ReadBufferPool.BufferType.INDEX, maxIndexReadLength);
+        GetMessageResult retResult;
+        try {
+            try {
+                indexRecordView.read(indexBuffer, readStartOffset);
+            } finally {
+                indexRecordView.relViewRef();
+            }
+            indexBuffer.flip();
+            if ((msgFileStore.getDataHighMaxOffset() - consumerNodeInfo.getLastDataRdOffset()
+                >= this.tubeConfig.getDoubleDefaultDeduceReadSize())
+                && msgSizeLimit > this.maxAllowRdSize) {
+                msgSizeLimit = this.maxAllowRdSize;
+            }
+            retResult =
+                msgFileStore.getMessages(partitionId,
+                    consumerNodeInfo.getLastDataRdOffset(), reqNewOffset,
+                    indexBuffer, consumerNodeInfo.isFilterConsume(),
+                    consumerNodeInfo.getFilterCondCodeSet(),
+                    msgSizeLimit, useFileRegion);
+            retResult.lastReadOffset += (int) (readStartOffset - reqNewOffset);
+        } finally {
+            if (bufferPool != null) {
+                bufferPool.returnBuffer(ReadBufferPool.BufferType.INDEX, indexBuffer);
+            }
+        }
         if (reqSwitch <= 1) {
             retResult.setMaxOffset(getFileIndexMaxOffset());
         } else {
@@ -307,16 +386,18 @@ public class MessageStore implements Closeable {
      * @param dataLength
      * @param dataCheckSum
      * @param data
+     * @param msgType       the message type, null if there is none
      * @param msgTypeCode
      * @param msgFlag
+     * @param msgTime       the numeric message time, negative if there is none
      * @param partitionId
      * @param sentAddr
      * @return
      * @throws IOException
      */
     public boolean appendMsg(final AppendResult appendResult, final int dataLength,
-                             final int dataCheckSum, final byte[] data,
-                             final int msgTypeCode, final int msgFlag,
+                             final int dataCheckSum, final byte[] data, final String msgType,
+                             final int msgTypeCode, final int msgFlag, final long msgTime,
                              final int partitionId, final int sentAddr) throws IOException {
         if (this.closed.get()) {
             throw new IllegalStateException(new StringBuilder(512)
@@ -324,22 +405,11 @@ public class MessageStore implements Closeable {
                     .append(this.storeKey).toString());
         }
         long messageId = this.idWorker.nextId();
-        int msgBufLen = DataStoreUtils.STORE_DATA_HEADER_LEN + dataLength;
         final long receivedTime = System.currentTimeMillis();
-        final ByteBuffer buffer = ByteBuffer.allocate(msgBufLen);
-        buffer.putInt(DataStoreUtils.STORE_DATA_PREFX_LEN + dataLength);
-        buffer.putInt(DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE);
-        buffer.putInt(dataCheckSum);
-        buffer.putInt(partitionId);
-        buffer.putLong(-1L);
-        buffer.putLong(receivedTime);
-        buffer.putInt(sentAddr);
-        buffer.putInt(msgTypeCode);
-        buffer.putLong(messageId);
-        buffer.putInt(msgFlag);
-        buffer.put(data);
-        buffer.flip();
+        final ByteBuffer buffer = buildStoreEntry(dataLength, dataCheckSum, data, msgType,
+                msgTypeCode, msgFlag, msgTime, partitionId, sentAddr, messageId, receivedTime);
         appendResult.putReceivedInfo(messageId, receivedTime);
+        int msgBufLen = buffer.limit();
         int count = 3;
         do {
             this.writeCacheMutex.readLock().lock();
@@ -347,6 +417,7 @@ public class MessageStore implements Closeable {
                 if (this.msgMemStore.appendMsg(msgMemStatisInfo,
                         partitionId, msgTypeCode, receivedTime,
                         msgBufLen, buffer, appendResult)) {
+                    addPartInDataSize(partitionId, msgBufLen);
                     return true;
                 }
             } finally {
@@ -355,6 +426,7 @@ public class MessageStore implements Closeable {
             if (triggerFlushAndAddMsg(partitionId, msgTypeCode,
                     receivedTime, msgBufLen, true,
                     buffer, false, appendResult)) {
+                addPartInDataSize(partitionId, msgBufLen);
                 return true;
             }
             ThreadUtils.sleep(1);
@@ -363,6 +435,145 @@ public class MessageStore implements Closeable {
         return false;
     }
 
+    /***
+     * Append a batch of messages of one partition, the messages are written
+     * into the memory cache under one lock acquisition as far as the cache allows.
+     *
+     * @param msgItems      the messages, the append result is set in each item
+     * @param partitionId
+     * @param sentAddr
+     * @return the count of appended messages, the messages are appended in order
+     * @throws IOException
+     */
+    public int appendMsgs(final List<AppendMsgItem> msgItems,
+                          final int partitionId, final int sentAddr) throws IOException {
+        if (this.closed.get()) {
+            throw new IllegalStateException(new StringBuilder(512)
+                    .append("[Data Store] Closed MessageStore for storeKey ")
+                    .append(this.storeKey).toString());
+        }
+        final int msgCnt = msgItems.size();
+        final long receivedTime = System.currentTimeMillis();
+        final int[] keyCodes = new int[msgCnt];
+        final ByteBuffer[] entries = new ByteBuffer[msgCnt];
+        final AppendResult[] appendResults = new AppendResult[msgCnt];
+        for (int i = 0; i < msgCnt; i++) {
+            AppendMsgItem msgItem = msgItems.get(i);
+            long messageId = this.idWorker.nextId();
+            keyCodes[i] = msgItem.getMsgTypeCode();
+            entries[i] = buildStoreEntry(msgItem.getDataLength(), msgItem.getCheckSum(),
+                    msgItem.getData(), msgItem.getMsgType(), msgItem.getMsgTypeCode(), msgItem.getMsgFlag(),
+                    msgItem.getMsgTime(), partitionId, sentAddr, messageId, receivedTime);
+            appendResults[i] = msgItem.getAppendResult();
+            appendResults[i].putReceivedInfo(messageId, receivedTime);
+        }
+        int appendedCnt = 0;
+        int count = 3;
+        do {
+            final int lastAppendedCnt = appendedCnt;
+            this.writeCacheMutex.readLock().lock();
+            try {
+                appendedCnt += this.msgMemStore.appendMsgs(msgMemStatisInfo,
+                        partitionId, receivedTime, keyCodes, entries, appendedCnt, appendResults);
+            } finally {
+                this.writeCacheMutex.readLock().unlock();
+            }
+            if (appendedCnt >= msgCnt) {
+                break;
+            }
+            appendedCnt += triggerFlushAndAddMsgs(partitionId,
+                    receivedTime, keyCodes, entries, appendedCnt, appendResults);
+            if (appendedCnt >= msgCnt) {
+                break;
+            }
+            // only count the rounds without progress
+            if (appendedCnt == lastAppendedCnt) {
+                count--;
+                ThreadUtils.sleep(1);
+            }
+        } while (count >= 0);
+        if (appendedCnt < msgCnt) {
+            msgMemStatisInfo.addWriteFailCount();
+        }
+        int appendedSize = 0;
+        for (int i = 0; i < appendedCnt; i++) {
+            appendedSize += entries[i].limit();
+        }
+        addPartInDataSize(partitionId, appendedSize);
+        return appendedCnt;
+    }
+
+    /***
+     * Get the total size of the data appended to each partition since the store started.
+     *
+     * @return partition id, the appended data size
+     */
+    public Map<Integer, Long> getPartInDataSizeMap() {
+        Map<Integer, Long> partDataSizeMap = new HashMap<>();
+        for (Map.Entry<Integer, AtomicLong> entry : partInDataSize.entrySet()) {
+            partDataSizeMap.put(entry.getKey(), entry.getValue().get());
+        }
+        return partDataSizeMap;
+    }
+
+    private void addPartInDataSize(final int partitionId, final int dataSize) {
+        if (dataSize <= 0) {
+            return;
+        }
+        AtomicLong partDataSize = partInDataSize.get(partitionId);
+        if (partDataSize == null) {
+            AtomicLong newDataSize = new AtomicLong(0);
+            partDataSize = partInDataSize.putIfAbsent(partitionId, newDataSize);
+            if (partDataSize == null) {
+                partDataSize = newDataSize;
+            }
+        }
+        partDataSize.addAndGet(dataSize);
+    }
+
+    private ByteBuffer buildStoreEntry(final int dataLength, final int dataCheckSum,
+                                       final byte[] data, final String msgType,
+                                       final int msgTypeCode, final int msgFlag,
+                                       final long msgTime, final int partitionId,
+                                       final int sentAddr, final long messageId,
+                                       final long receivedTime) {
+        // keep the message time and type in the system header extension, so that
+        // the readers need not parse them from the attribute
+        int extLength = 0;
+        byte[] msgTypeBytes = null;
+        if (msgTime >= 0 && tubeConfig.isEnableSysHeaderExt()) {
+            extLength = DataStoreUtils.STORE_EXT_HEADER_LEN;
+            if (msgType != null && !msgType.isEmpty()) {
+                msgTypeBytes = StringUtils.getBytesUtf8(msgType);
+                extLength += msgTypeBytes.length;
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                DataStoreUtils.STORE_DATA_HEADER_LEN + extLength + dataLength);
+        buffer.putInt(DataStoreUtils.STORE_DATA_PREFX_LEN + extLength + dataLength);
+        buffer.putInt(DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE);
+        buffer.putInt(dataCheckSum);
+        buffer.putInt(partitionId);
+        buffer.putLong(-1L);
+        buffer.putLong(receivedTime);
+        buffer.putInt(sentAddr);
+        buffer.putInt(msgTypeCode);
+        buffer.putLong(messageId);
+        if (extLength > 0) {
+            buffer.putInt(msgFlag | MessageFlagUtils.STORE_SYS_HEADER_EXT);
+            buffer.putInt(extLength);
+            buffer.putLong(msgTime);
+            if (msgTypeBytes != null) {
+                buffer.put(msgTypeBytes);
+            }
+        } else {
+            buffer.putInt(MessageFlagUtils.clearSysHeaderExt(msgFlag));
+        }
+        buffer.put(data);
+        buffer.flip();
+        return buffer;
+    }
+
     public String getCurMemMsgSizeStatisInfo(boolean needRefresh) {
         return msgMemStatisInfo.getCurMsgSizeStatisInfo(needRefresh);
     }
@@ -390,6 +601,56 @@ public class MessageStore implements Closeable {
         return msgFileStore.runClearupPolicy(onlyCheck);
     }
 
+    /***
+     * Expire the oldest sealed data file of the store, used when the disk usage is above the watermark.
+     *
+     * @return the size of the expired data file
+     */
+    public long expireOldestSegment() {
+        if (this.closed.get()) {
+            throw new IllegalStateException(new StringBuilder(512)
+                    .append("[Data Store] Closed MessageStore for storeKey ")
+                    .append(this.storeKey).toString());
+        }
+        return msgFileStore.expireOldestSegment();
+    }
+
+    public long getOldestSealedTime() {
+        return msgFileStore.getOldestSealedTime();
+    }
+
+    public long getExpiredSizeInBytes() {
+        return msgFileStore.getExpiredSizeInBytes();
+    }
+
+    public long getTimeExpiredBytes() {
+        return msgFileStore.getTimeExpiredBytes();
+    }
+
+    public long getSizeExpiredBytes() {
+        return msgFileStore.getSizeExpiredBytes();
+    }
+
+    public long getDiskExpiredBytes() {
+        return msgFileStore.getDiskExpiredBytes();
+    }
+
+    public long getLastExpiredTime() {
+        return msgFileStore.getLastExpiredTime();
+    }
+
+    public long getRecoverDurMs() {
+        return msgFileStore.getRecoverDurMs();
+    }
+
+    public long getRecoverScannedBytes() {
+        return msgFileStore.getRecoverScannedBytes();
+    }
+
+    public long getRecoverTruncatedBytes() {
+        return msgFileStore.getRecoverTruncatedBytes();
+    }
+
     /***
      * Refresh unflush threshold
      *
@@ -406,6 +667,7 @@ public class MessageStore implements Closeable {
         unflushThreshold.set(topicMetadata.getUnflushThreshold());
         unflushDataHold.set(topicMetadata.getUnflushDataHold());
         maxFileValidDurMs.set(parseDeletePolicy(topicMetadata.getDeletePolicy()));
+        maxFileValidSize.set(parseDeleteSize(topicMetadata));
         int tmpIndexReadCnt = tubeConfig.getIndexTransCount() * partitionNum;
         memMaxIndexReadCnt.set(MixedUtils.mid(tmpIndexReadCnt, 6000, 10000));
         fileMaxIndexReadCnt.set(MixedUtils.mid(tmpIndexReadCnt, 8000, 13500));
@@ -471,6 +733,7 @@ public class MessageStore implements Closeable {
             this.msgMemStoreBeingFlush.close();
             this.executor.shutdown();
             this.msgFileStore.close();
+            this.produceAckQueue.failAll();
             logger.info(strBuffer.append("[Data Store] Message store stopped")
                     .append(this.storeKey).toString());
         }
@@ -504,6 +767,10 @@ public class MessageStore implements Closeable {
         return maxFileValidDurMs.get();
     }
 
+    public long getMaxFileValidSize() {
+        return maxFileValidSize.get();
+    }
+
     public int getUnflushThreshold() {
         return this.unflushThreshold.get();
     }
@@ -527,6 +794,34 @@ public class MessageStore implements Closeable {
         return lastOffset;
     }
 
+    /***
+     * Get the index offset of the first message received at or after the timestamp,
+     * the files are searched first, then the memory caches.
+     *
+     * @param timestamp   the timestamp in milliseconds
+     * @return the index offset, the max index offset if all messages are received before the timestamp
+     * @throws IOException
+     */
+    public long getIndexOffsetByTime(final long timestamp) throws IOException {
+        long offset = this.msgFileStore.getIndexOffsetByTime(timestamp);
+        if (offset >= 0) {
+            return offset;
+        }
+        this.writeCacheMutex.readLock().lock();
+        try {
+            offset = this.msgMemStoreBeingFlush.getIndexOffsetByTime(timestamp);
+            if (offset < 0) {
+                offset = this.msgMemStore.getIndexOffsetByTime(timestamp);
+            }
+            if (offset < 0) {
+                offset = this.msgMemStore.getIndexLastWritePos();
+            }
+        } finally {
+            this.writeCacheMutex.readLock().unlock();
+        }
+        return offset;
+    }
+
     public long getIndexMinOffset() {
         return this.msgFileStore.getIndexMinOffset();
     }
@@ -582,7 +877,7 @@ public class MessageStore implements Closeable {
 
     private long parseDeletePolicy(String delPolicy) {
         String[] tmpStrs = delPolicy.split(",");
-        if (tmpStrs.length != 2) {
+        if (tmpStrs.length != 2 && tmpStrs.length != 3) {
             return DataStoreUtils.MAX_FILE_VALID_DURATION;
         }
         String validValStr = tmpStrs[1];
@@ -601,6 +896,25 @@ public class MessageStore implements Closeable {
         }
     }
 
+    /***
+     * Parse the optional size quota of the delete policy, like delete,168h,100g,
+     * the quota of the topic is shared by its stores on this broker.
+     *
+     * @param topicMetadata
+     * @return the max data size of the store, 0 if not limited
+     */
+    private long parseDeleteSize(TopicMetadata topicMetadata) {
+        String[] tmpStrs = topicMetadata.getDeletePolicy().split(",");
+        if (tmpStrs.length != 3) {
+            return 0L;
+        }
+        long topicMaxSize = DataStoreUtils.parseDeleteSize(tmpStrs[2]);
+        if (topicMaxSize <= 0) {
+            return 0L;
+        }
+        return topicMaxSize / Math.max(1, topicMetadata.getNumTopicStores());
+    }
+
     private int validAndGetMemCacheSize(TopicMetadata topicMetadata) {
         int memCacheSize = topicMetadata.getMemCacheMsgSize();
         if (memCacheSize <= topicMetadata.getMinMemCacheSize()) {
@@ -634,32 +948,7 @@ public class MessageStore implements Closeable {
                                           final AppendResult appendResult) throws IOException {
         writeCacheMutex.writeLock().lock();
         try {
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                this.executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            final StringBuilder strBuffer = new StringBuilder(512);
-                            flush(strBuffer);
-                        } catch (Throwable e) {
-                            logger.error("[Data Store] Error during flush", e);
-                        }
-                    }
-                });
-                msgMemStatisInfo.addMemFlushCount(isTimeTrigger);
-            }
-            long startTime = System.currentTimeMillis();
-            long timeoutNs = TimeUnit.MILLISECONDS.toNanos(100);
-            while (hasFlushBeenTriggered.get()) {
-                flushWriteCacheCondition.awaitNanos(timeoutNs);
-                if (System.currentTimeMillis() - startTime > 2000) {
-                    logger.warn(new StringBuilder(512)
-                            .append("[Data Store] StoreKey=").append(storeKey)
-                            .append(" Wait Cache flush write too long! wait time is ")
-                            .append(System.currentTimeMillis() - startTime).toString());
-                    break;
-                }
-            }
+            triggerFlushAndWait(isTimeTrigger);
             if (needAdd) {
                 return msgMemStore.appendMsg(msgMemStatisInfo,
                         partitionId, keyCode, receivedTime,
@@ -677,6 +966,149 @@ public class MessageStore implements Closeable {
         return false;
     }
 
+    private int triggerFlushAndAddMsgs(final int partitionId, final long receivedTime,
+                                       final int[] keyCodes, final ByteBuffer[] entries,
+                                       final int startIndex,
+                                       final AppendResult[] appendResults) throws IOException {
+        writeCacheMutex.writeLock().lock();
+        try {
+            triggerFlushAndWait(false);
+            return msgMemStore.appendMsgs(msgMemStatisInfo, partitionId,
+                    receivedTime, keyCodes, entries, startIndex, appendResults);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(new StringBuilder(512)
+                    .append("[Data Store] StoreKey=").append(storeKey)
+                    .append(" Interrupted when triggerFlushAndAddMsgs process for storekey ")
+                    .append(storeKey).toString());
+        } finally {
+            writeCacheMutex.writeLock().unlock();
+        }
+    }
+
+    /***
+     * Answer the callback once the appended message is acknowledged as the produce ack
+     * policy required, or the wait times out. The caller is not blocked, the callback is
+     * run by the thread finding the message acknowledged or expired.
+     *
+     * @param indexOffset    the index offset of the appended message
+     * @param callback       the callback of the produce request
+     */
+    public void waitForAck(final long indexOffset,
+                           final ProduceAckQueue.AckCallback callback) {
+        if (tubeConfig.getProduceAckPolicy() == ProduceAckPolicy.MEMORY || indexOffset < 0) {
+            callback.onAckResult(true);
+            return;
+        }
+        final long requiredOffset = indexOffset + DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        if (checkAcked(requiredOffset)) {
+            callback.onAckResult(true);
+            return;
+        }
+        produceAckQueue.add(requiredOffset,
+                System.currentTimeMillis() + tubeConfig.getMaxAckWaitTimeMs(), callback);
+        // the expired requests are answered by the periodic check of the store manager
+        msgStoreMgr.addAckWaitingStore(this);
+        // check again, the flush may have finished before the request was queued
+        checkPendingAcks();
+    }
+
+    /***
+     * Answer the acknowledged and the expired produce requests.
+     *
+     * @return true if there are requests still waiting
+     */
+    public boolean checkPendingAcks() {
+        if (produceAckQueue.isEmpty()) {
+            return false;
+        }
+        if (ackCheckMutex.isHeldByCurrentThread()) {
+            // notified by the flush the running check triggered in place
+            return true;
+        }
+        ackCheckMutex.lock();
+        try {
+            if (this.closed.get()) {
+                produceAckQueue.failAll();
+                return false;
+            }
+            return produceAckQueue.check(produceAckChecker, System.currentTimeMillis()) > 0;
+        } finally {
+            ackCheckMutex.unlock();
+        }
+    }
+
+    public int getAckWaitingCnt() {
+        return produceAckQueue.size();
+    }
+
+    /***
+     * Check the produce requests waiting for acknowledgement,
+     * called when the memory cache or the disk files are flushed.
+     */
+    public void notifyAckWaiters() {
+        if (tubeConfig.getProduceAckPolicy() == ProduceAckPolicy.MEMORY) {
+            return;
+        }
+        checkPendingAcks();
+    }
+
+    // check if the offset is acknowledged, and trigger the flush it is waiting for if not
+    private boolean checkAcked(final long requiredOffset) {
+        if (msgFileStore.getIndexMaxOffset() < requiredOffset) {
+            requestMemFlush(false);
+            return false;
+        }
+        if (tubeConfig.getProduceAckPolicy() == ProduceAckPolicy.PAGECACHE
+                || msgFileStore.getIndexMaxHighOffset() >= requiredOffset) {
+            return true;
+        }
+        try {
+            msgFileStore.requestFlush();
+        } catch (IOException e) {
+            logger.warn(new StringBuilder(512).append("[Data Store] StoreKey=")
+                    .append(storeKey).append(" request flush failure").toString(), e);
+        }
+        // the flush is done in place if the store has no disk flusher
+        return msgFileStore.getIndexMaxHighOffset() >= requiredOffset;
+    }
+
+    // trigger the flush of memory cache if it is not ongoing
+    private void requestMemFlush(final boolean isTimeTrigger) {
+        if (!isFlushOngoing.get() && !this.closed.get()
+                && hasFlushBeenTriggered.compareAndSet(false, true)) {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final StringBuilder strBuffer = new StringBuilder(512);
+                        flush(strBuffer);
+                    } catch (Throwable e) {
+                        logger.error("[Data Store] Error during flush", e);
+                    }
+                }
+            });
+            msgMemStatisInfo.addMemFlushCount(isTimeTrigger);
+        }
+    }
+
+    // trigger the flush of memory cache and wait it done, called with the write lock held
+    private void triggerFlushAndWait(final boolean isTimeTrigger) throws InterruptedException {
+        requestMemFlush(isTimeTrigger);
+        long startTime = System.currentTimeMillis();
+        long timeoutNs = TimeUnit.MILLISECONDS.toNanos(100);
+        while (hasFlushBeenTriggered.get()) {
+            flushWriteCacheCondition.awaitNanos(timeoutNs);
+            if (System.currentTimeMillis() - startTime > 2000) {
+                logger.warn(new StringBuilder(512)
+                        .append("[Data Store] StoreKey=").append(storeKey)
+                        .append(" Wait Cache flush write too long! wait time is ")
+                        .append(System.currentTimeMillis() - startTime).toString());
+                break;
+            }
+        }
+    }
+
     private void flush(final StringBuilder strBuffer) throws IOException {
         long startTime = System.currentTimeMillis();
         flushMutex.lock();
@@ -701,6 +1133,7 @@ public class MessageStore implements Closeable {
         } finally {
             try {
                 isFlushOngoing.set(false);
+                notifyAckWaiters();
             } finally {
                 flushMutex.unlock();
                 msgMemStatisInfo.addFlushTimeStatis(System.currentTimeMillis() - startTime);
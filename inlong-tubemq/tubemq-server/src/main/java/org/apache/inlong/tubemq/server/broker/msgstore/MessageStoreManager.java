@@ -29,12 +29,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -49,10 +52,14 @@ import org.apache.inlong.tubemq.server.broker.TubeBroker;
 import org.apache.inlong.tubemq.server.broker.exception.StartupException;
 import org.apache.inlong.tubemq.server.broker.metadata.MetadataManager;
 import org.apache.inlong.tubemq.server.broker.metadata.TopicMetadata;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.DiskFlushService;
 import org.apache.inlong.tubemq.server.broker.msgstore.disk.GetMessageResult;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.MmapReadController;
 import org.apache.inlong.tubemq.server.broker.nodeinfo.ConsumerNodeInfo;
 import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
+import org.apache.inlong.tubemq.server.broker.utils.ReadBufferPool;
 import org.apache.inlong.tubemq.server.broker.utils.TopicPubStoreInfo;
+import org.apache.inlong.tubemq.server.common.TServerConstants;
 import org.apache.inlong.tubemq.server.common.TStatusConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,8 +85,21 @@ public class MessageStoreManager implements StoreService {
     private final ScheduledExecutorService unFlushDiskScheduler;
     // message on memory sink to disk operation scheduler.
     private final ScheduledExecutorService unFlushMemScheduler;
+    // expired produce ack check operation scheduler.
+    private final ScheduledExecutorService ackCheckScheduler;
+    // store key, the store having produce requests waiting for acknowledgement
+    private final ConcurrentHashMap<String, MessageStore> ackWaitingStores =
+            new ConcurrentHashMap<>();
     // max transfer size.
     private int maxMsgTransferSize;
+    // memory-mapped read control of immutable segments.
+    private final MmapReadController mmapReadController;
+    // read buffers reused by the fetch path.
+    private final ReadBufferPool readBufferPool =
+            new ReadBufferPool(TServerConstants.CFG_STORE_MAX_POOLED_READ_BUF_SIZE);
+    // data directory, group commit flusher of the directory.
+    private final ConcurrentHashMap<String, DiskFlushService> diskFlushServices =
+            new ConcurrentHashMap<>();
     // the status that is deleting topic.
     private AtomicBoolean isRemovingTopic = new AtomicBoolean(false);
 
@@ -93,6 +113,8 @@ public class MessageStoreManager implements StoreService {
         this.isRemovingTopic.set(false);
         this.maxMsgTransferSize =
                 Math.min(tubeConfig.getTransferSize(), DataStoreUtils.MAX_MSG_TRANSFER_SIZE);
+        this.mmapReadController = new MmapReadController(
+                tubeConfig.isEnableMmapRead(), tubeConfig.getMaxMmapReadBytes());
         this.metadataManager.addPropertyChangeListener("topicConfigMap", new PropertyChangeListener() {
             @Override
             public void propertyChange(final PropertyChangeEvent evt) {
@@ -125,6 +147,13 @@ public class MessageStoreManager implements StoreService {
                         return new Thread(r, "Broker Log Mem Flush Thread");
                     }
                 });
+        this.ackCheckScheduler =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "Broker Produce Ack Check Thread");
+                    }
+                });
 
     }
 
@@ -153,6 +182,13 @@ public class MessageStoreManager implements StoreService {
                 tubeConfig.getLogFlushMemDurMs(),
                 TimeUnit.MILLISECONDS);
 
+        if (tubeConfig.getProduceAckPolicy() != ProduceAckPolicy.MEMORY) {
+            this.ackCheckScheduler.scheduleWithFixedDelay(new AckCheckRunner(),
+                    TServerConstants.CFG_STORE_ACK_CHECK_DUR_MS,
+                    TServerConstants.CFG_STORE_ACK_CHECK_DUR_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+
     }
 
     @Override
@@ -165,6 +201,7 @@ public class MessageStoreManager implements StoreService {
             this.logClearScheduler.shutdownNow();
             this.unFlushDiskScheduler.shutdownNow();
             this.unFlushMemScheduler.shutdownNow();
+            this.ackCheckScheduler.shutdownNow();
             for (Map.Entry<String, ConcurrentHashMap<Integer, MessageStore>> entry :
                     this.dataStores.entrySet()) {
                 if (entry.getValue() != null) {
@@ -183,6 +220,9 @@ public class MessageStoreManager implements StoreService {
                 }
             }
             this.dataStores.clear();
+            for (DiskFlushService diskFlushService : this.diskFlushServices.values()) {
+                diskFlushService.close();
+            }
             logger.info("[Store Manager] Store Manager stopped!");
         }
     }
@@ -367,13 +407,54 @@ public class MessageStoreManager implements StoreService {
             }
             requestOffset = maxOffset - maxIndexReadSize < 0 ? 0L : maxOffset - maxIndexReadSize;
             return msgStore.getMessages(303, requestOffset, partitionId,
-                    consumerNodeInfo, topic, this.maxMsgTransferSize);
+                    consumerNodeInfo, this.maxMsgTransferSize);
         } catch (Throwable e1) {
             return new GetMessageResult(false, TErrCodeConstants.INTERNAL_SERVER_ERROR,
                     requestOffset, 0, "Get message failure, errMsg=" + e1.getMessage());
         }
     }
 
+    public MmapReadController getMmapReadController() {
+        return mmapReadController;
+    }
+
+    public ReadBufferPool getReadBufferPool() {
+        return readBufferPool;
+    }
+
+    /***
+     * Get the group commit flusher of the data directory, create and start it if not exists.
+     *
+     * @param dataDir    the data directory
+     * @return the flusher of the directory
+     */
+    public DiskFlushService getDiskFlushService(final String dataDir) {
+        DiskFlushService diskFlushService = this.diskFlushServices.get(dataDir);
+        if (diskFlushService == null) {
+            DiskFlushService newService = new DiskFlushService(dataDir);
+            diskFlushService = this.diskFlushServices.putIfAbsent(dataDir, newService);
+            if (diskFlushService == null) {
+                diskFlushService = newService;
+                diskFlushService.start();
+            }
+        }
+        return diskFlushService;
+    }
+
+    /***
+     * Register a store having produce requests waiting for acknowledgement,
+     * the expired requests of the store are answered by the periodic check.
+     *
+     * @param msgStore    the store
+     */
+    public void addAckWaitingStore(final MessageStore msgStore) {
+        this.ackWaitingStores.put(msgStore.getStoreKey(), msgStore);
+    }
+
+    public Collection<DiskFlushService> getDiskFlushServices() {
+        return this.diskFlushServices.values();
+    }
+
     public MetadataManager getMetadataManager() {
         return tubeBroker.getMetadataManager();
     }
@@ -488,7 +569,8 @@ public class MessageStoreManager implements StoreService {
         final long start = System.currentTimeMillis();
         final AtomicInteger errCnt = new AtomicInteger(0);
         final AtomicInteger finishCnt = new AtomicInteger(0);
-        List<Callable<MessageStore>> tasks = new ArrayList<>();
+        // the load tasks grouped by data path, each path is loaded by its own thread pool
+        Map<File, List<Callable<MessageStore>>> pathTasks = new HashMap<>();
         for (final File dir : this.getLogDirSet(tubeConfig)) {
             if (dir == null) {
                 continue;
@@ -497,6 +579,8 @@ public class MessageStoreManager implements StoreService {
             if (ls == null) {
                 continue;
             }
+            List<Callable<MessageStore>> tasks = new ArrayList<>();
+            pathTasks.put(dir, tasks);
             for (final File subDir : ls) {
                 if (subDir == null) {
                     continue;
@@ -565,8 +649,8 @@ public class MessageStoreManager implements StoreService {
                 });
             }
         }
-        this.loadStoresInParallel(tasks);
-        tasks.clear();
+        this.loadStoresInParallel(pathTasks);
+        pathTasks.clear();
         if (errCnt.get() > 0) {
             throw new RuntimeException(
                     "[Store Manager] failure to load message stores, please check load logger and fix first!");
@@ -576,27 +660,47 @@ public class MessageStoreManager implements StoreService {
     }
 
     /***
-     * Load stores in parallel.
+     * Load stores in parallel, the concurrent loads of each data path are bounded
+     * so that the recover scans on a disk don't contend with each other.
      *
-     * @param tasks
+     * @param pathTasks  the load tasks of each data path
      * @throws InterruptedException
      */
-    private void loadStoresInParallel(List<Callable<MessageStore>> tasks) throws InterruptedException {
-        ExecutorService executor =
-                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
-        CompletionService<MessageStore> completionService =
-                new ExecutorCompletionService<>(executor);
-        for (Callable<MessageStore> task : tasks) {
-            completionService.submit(task);
-        }
-        for (int i = 0; i < tasks.size(); i++) {
+    private void loadStoresInParallel(Map<File, List<Callable<MessageStore>>> pathTasks)
+            throws InterruptedException {
+        int taskCnt = 0;
+        List<ExecutorService> executors = new ArrayList<>();
+        BlockingQueue<Future<MessageStore>> completionQueue = new LinkedBlockingQueue<>();
+        for (List<Callable<MessageStore>> tasks : pathTasks.values()) {
+            if (tasks.isEmpty()) {
+                continue;
+            }
+            ExecutorService loadExecutor = Executors.newFixedThreadPool(
+                    Math.min(tasks.size(), tubeConfig.getStoreLoadThreadsPerPath()));
+            executors.add(loadExecutor);
+            CompletionService<MessageStore> completionService =
+                    new ExecutorCompletionService<>(loadExecutor, completionQueue);
+            for (Callable<MessageStore> task : tasks) {
+                completionService.submit(task);
+                taskCnt++;
+            }
+        }
+        for (int i = 0; i < taskCnt; i++) {
             try {
-                completionService.take().get();
+                completionQueue.take().get();
+            } catch (InterruptedException e) {
+                // stop the loads still running, the broker start is aborted
+                for (ExecutorService executor : executors) {
+                    executor.shutdownNow();
+                }
+                throw e;
             } catch (Throwable e) {
                 //
             }
         }
-        executor.shutdown();
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
     }
 
     private void delTopicFiles(String filepath) throws IOException {
@@ -649,6 +753,52 @@ public class MessageStoreManager implements StoreService {
         }
     }
 
+    /***
+     * Expire the oldest sealed data files across the stores, oldest first, until the
+     * expired bytes reach the required size or no store has a sealed data file.
+     *
+     * @param candidateStores the stores to evict, the stores without sealed files are removed
+     * @param requiredSize    the bytes required to release
+     * @param evictedCnt      the count of the expired files
+     * @param sb              string buffer
+     * @return the expired bytes
+     */
+    static long evictOldestSegments(final List<MessageStore> candidateStores,
+                                    final long requiredSize,
+                                    final AtomicInteger evictedCnt,
+                                    final StringBuilder sb) {
+        long evictedSize = 0L;
+        while (evictedSize < requiredSize && !candidateStores.isEmpty()) {
+            MessageStore oldestStore = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (MessageStore msgStore : candidateStores) {
+                long sealedTime = msgStore.getOldestSealedTime();
+                if (sealedTime < oldestTime) {
+                    oldestTime = sealedTime;
+                    oldestStore = msgStore;
+                }
+            }
+            if (oldestStore == null) {
+                break;
+            }
+            long expiredSize = 0L;
+            try {
+                expiredSize = oldestStore.expireOldestSegment();
+            } catch (final Throwable e) {
+                logger.error(sb.append("Try to evict the oldest file of ")
+                        .append(oldestStore.getStoreKey()).append(" failed").toString(), e);
+                sb.delete(0, sb.length());
+            }
+            if (expiredSize <= 0) {
+                candidateStores.remove(oldestStore);
+                continue;
+            }
+            evictedSize += expiredSize;
+            evictedCnt.incrementAndGet();
+        }
+        return evictedSize;
+    }
+
     private class LogClearRunner implements Runnable {
 
         public LogClearRunner() {
@@ -659,6 +809,7 @@ public class MessageStoreManager implements StoreService {
         public void run() {
             StringBuilder sBuilder = new StringBuilder(256);
             long startTime = System.currentTimeMillis();
+            checkDiskWatermark(sBuilder);
             Set<String> expiredTopic = getExpiredTopicSet(sBuilder);
             if (!expiredTopic.isEmpty()) {
                 logger.info(sBuilder.append("Found ").append(expiredTopic.size())
@@ -697,6 +848,51 @@ public class MessageStoreManager implements StoreService {
             }
         }
 
+        /***
+         * Evict the oldest sealed data files across all the stores when the disk usage of
+         * the primary path is above the high watermark, until it is below the low watermark.
+         * The files expired but not deleted yet are regarded as released.
+         *
+         * @param sb string buffer
+         */
+        private void checkDiskWatermark(final StringBuilder sb) {
+            if (tubeConfig.getDiskHighWatermarkPct() <= 0) {
+                return;
+            }
+            final File primaryDir = new File(tubeConfig.getPrimaryPath());
+            final long totalSpace = primaryDir.getTotalSpace();
+            if (totalSpace <= 0) {
+                return;
+            }
+            long pendingSize = 0L;
+            List<MessageStore> candidateStores = new ArrayList<>();
+            for (Map<Integer, MessageStore> storeMap : dataStores.values()) {
+                if (storeMap == null || storeMap.isEmpty()) {
+                    continue;
+                }
+                for (MessageStore msgStore : storeMap.values()) {
+                    if (msgStore == null) {
+                        continue;
+                    }
+                    pendingSize += msgStore.getExpiredSizeInBytes();
+                    candidateStores.add(msgStore);
+                }
+            }
+            long usedSpace = totalSpace - primaryDir.getUsableSpace() - pendingSize;
+            if (usedSpace * 100 < totalSpace * tubeConfig.getDiskHighWatermarkPct()) {
+                return;
+            }
+            final long targetSpace = totalSpace / 100 * tubeConfig.getDiskLowWatermarkPct();
+            final AtomicInteger evictedCnt = new AtomicInteger(0);
+            long evictedSize = evictOldestSegments(candidateStores,
+                    usedSpace - targetSpace, evictedCnt, sb);
+            logger.warn(sb.append("Disk usage of ").append(tubeConfig.getPrimaryPath())
+                    .append(" is above the watermark ").append(tubeConfig.getDiskHighWatermarkPct())
+                    .append("%, evicted ").append(evictedCnt.get()).append(" files with ")
+                    .append(evictedSize).append(" bytes").toString());
+            sb.delete(0, sb.length());
+        }
+
         private Set<String> getExpiredTopicSet(final StringBuilder sb) {
             Set<String> expiredTopic = new HashSet<>();
             for (Map<Integer, MessageStore> storeMap : dataStores.values()) {
@@ -783,4 +979,31 @@ public class MessageStoreManager implements StoreService {
         }
     }
 
+    private class AckCheckRunner implements Runnable {
+
+        public AckCheckRunner() {
+            //
+        }
+
+        @Override
+        public void run() {
+            for (MessageStore msgStore : ackWaitingStores.values()) {
+                try {
+                    if (msgStore.checkPendingAcks()) {
+                        continue;
+                    }
+                    ackWaitingStores.remove(msgStore.getStoreKey(), msgStore);
+                    // register again if a request was added after the check
+                    if (msgStore.getAckWaitingCnt() > 0) {
+                        ackWaitingStores.put(msgStore.getStoreKey(), msgStore);
+                    }
+                } catch (final Throwable e) {
+                    logger.error(new StringBuilder(256).append("[Store Manager] Try to check ")
+                            .append(msgStore.getStoreKey())
+                            .append("'s produce acks failed : ").toString(), e);
+                }
+            }
+        }
+    }
+
 }
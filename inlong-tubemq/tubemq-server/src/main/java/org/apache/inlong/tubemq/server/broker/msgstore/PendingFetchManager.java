@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.inlong.tubemq.corebase.TokenConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/***
+ * Pending fetch manager, holds the fetch requests that found no message
+ * until new messages are appended to the partition or the wait time expires.
+ */
+public class PendingFetchManager {
+    private static final Logger logger =
+            LoggerFactory.getLogger(PendingFetchManager.class);
+    // store key, pending fetches of the partition
+    private final ConcurrentHashMap<String, PendingQueue> pendingQueues =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCnt = new AtomicInteger(0);
+    private final AtomicLong wakeupCnt = new AtomicLong(0);
+    private final AtomicLong expiredCnt = new AtomicLong(0);
+    private final ScheduledThreadPoolExecutor expireScheduler;
+    private final ExecutorService fetchExecutor;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+    public PendingFetchManager(int fetchThreadCnt) {
+        this.expireScheduler =
+                new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "Broker Pending Fetch Expire Thread");
+                    }
+                });
+        this.expireScheduler.setRemoveOnCancelPolicy(true);
+        this.fetchExecutor =
+                Executors.newFixedThreadPool(fetchThreadCnt, new ThreadFactory() {
+                    private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "Broker Pending Fetch Thread-"
+                                + threadIndex.incrementAndGet());
+                    }
+                });
+    }
+
+    public static String getStoreKey(String topicName, int partitionId) {
+        return topicName + TokenConstants.HYPHEN + partitionId;
+    }
+
+    /***
+     * Get the message arrival sequence of the partition, the value
+     * must be taken before the fetch whose result may be parked.
+     *
+     * @param storeKey    the store key of the partition
+     * @return the arrival sequence
+     */
+    public long getArrivalSeq(String storeKey) {
+        return getOrCreateQueue(storeKey).arrivalSeq.get();
+    }
+
+    /***
+     * Park a fetch until new messages arrive or the deadline is reached,
+     * the retry task is run in the pending fetch thread pool then.
+     *
+     * @param storeKey     the store key of the partition
+     * @param arrivalSeq   the arrival sequence taken before the fetch
+     * @param deadline     the time to give up waiting
+     * @param retryTask    the task to fetch again
+     * @return false if messages arrived after the fetch, the caller should fetch again directly
+     */
+    public boolean park(String storeKey, long arrivalSeq,
+                        long deadline, Runnable retryTask) {
+        if (stopped.get()) {
+            return false;
+        }
+        final PendingQueue pendingQueue = getOrCreateQueue(storeKey);
+        final PendingFetch pendingFetch = new PendingFetch(retryTask);
+        pendingQueue.fetches.add(pendingFetch);
+        pendingCnt.incrementAndGet();
+        // check again after registering, so an arrival between the fetch
+        // and the registering is not lost
+        if (pendingQueue.arrivalSeq.get() != arrivalSeq) {
+            if (pendingFetch.tryFire()) {
+                if (pendingQueue.fetches.remove(pendingFetch)) {
+                    pendingCnt.decrementAndGet();
+                }
+                return false;
+            }
+            return true;
+        }
+        long waitTimeMs = Math.max(0, deadline - System.currentTimeMillis());
+        pendingFetch.expireFuture =
+                expireScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (pendingFetch.tryFire()) {
+                            if (pendingQueue.fetches.remove(pendingFetch)) {
+                                pendingCnt.decrementAndGet();
+                            }
+                            expiredCnt.incrementAndGet();
+                            runFetch(pendingFetch);
+                        }
+                    }
+                }, waitTimeMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /***
+     * Notify that messages are appended to the partition.
+     *
+     * @param storeKey    the store key of the partition
+     */
+    public void notifyArrival(String storeKey) {
+        PendingQueue pendingQueue = pendingQueues.get(storeKey);
+        if (pendingQueue == null) {
+            return;
+        }
+        pendingQueue.arrivalSeq.incrementAndGet();
+        PendingFetch pendingFetch;
+        while ((pendingFetch = pendingQueue.fetches.poll()) != null) {
+            pendingCnt.decrementAndGet();
+            if (pendingFetch.tryFire()) {
+                ScheduledFuture<?> expireFuture = pendingFetch.expireFuture;
+                if (expireFuture != null) {
+                    expireFuture.cancel(false);
+                }
+                wakeupCnt.incrementAndGet();
+                runFetch(pendingFetch);
+            }
+        }
+    }
+
+    public int getPendingCnt() {
+        return pendingCnt.get();
+    }
+
+    public long getWakeupCnt() {
+        return wakeupCnt.get();
+    }
+
+    public long getExpiredCnt() {
+        return expiredCnt.get();
+    }
+
+    public void close() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        // answer the pending fetches before stopping the threads
+        for (String storeKey : pendingQueues.keySet()) {
+            notifyArrival(storeKey);
+        }
+        expireScheduler.shutdownNow();
+        fetchExecutor.shutdown();
+    }
+
+    private PendingQueue getOrCreateQueue(String storeKey) {
+        PendingQueue pendingQueue = pendingQueues.get(storeKey);
+        if (pendingQueue == null) {
+            PendingQueue newQueue = new PendingQueue();
+            pendingQueue = pendingQueues.putIfAbsent(storeKey, newQueue);
+            if (pendingQueue == null) {
+                pendingQueue = newQueue;
+            }
+        }
+        return pendingQueue;
+    }
+
+    private void runFetch(PendingFetch pendingFetch) {
+        try {
+            fetchExecutor.execute(pendingFetch.retryTask);
+        } catch (RejectedExecutionException e) {
+            logger.warn("[Pending Fetch] the fetch executor is stopped, run fetch directly");
+            pendingFetch.retryTask.run();
+        }
+    }
+
+    private static class PendingQueue {
+        private final AtomicLong arrivalSeq = new AtomicLong(0);
+        private final ConcurrentLinkedQueue<PendingFetch> fetches =
+                new ConcurrentLinkedQueue<>();
+    }
+
+    private static class PendingFetch {
+        private final Runnable retryTask;
+        private final AtomicBoolean fired = new AtomicBoolean(false);
+        private volatile ScheduledFuture<?> expireFuture;
+
+        PendingFetch(Runnable retryTask) {
+            this.retryTask = retryTask;
+        }
+
+        boolean tryFire() {
+            return fired.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/***
+ * The produce requests of a store waiting for acknowledgement. The requests are
+ * not held by any thread, they are answered through their callbacks when a check
+ * finds them acknowledged or expired.
+ */
+public class ProduceAckQueue {
+    private static final Logger logger =
+            LoggerFactory.getLogger(ProduceAckQueue.class);
+    private final ConcurrentLinkedQueue<PendingAck> pendingAcks =
+            new ConcurrentLinkedQueue<>();
+
+    /***
+     * Add a request waiting for acknowledgement.
+     *
+     * @param requiredOffset  the index offset to be acknowledged
+     * @param deadline        the time to give up waiting
+     * @param callback        the callback of the request
+     */
+    public void add(long requiredOffset, long deadline, AckCallback callback) {
+        pendingAcks.add(new PendingAck(requiredOffset, deadline, callback));
+    }
+
+    /***
+     * Answer the acknowledged and the expired requests.
+     *
+     * @param ackChecker    the checker of the acknowledged offset
+     * @param currentTime   the current time
+     * @return the count of the requests still waiting
+     */
+    public int check(AckChecker ackChecker, long currentTime) {
+        int waitingCnt = 0;
+        Iterator<PendingAck> iterator = pendingAcks.iterator();
+        while (iterator.hasNext()) {
+            PendingAck pendingAck = iterator.next();
+            if (ackChecker.isAcked(pendingAck.requiredOffset)) {
+                iterator.remove();
+                pendingAck.fire(true);
+            } else if (currentTime >= pendingAck.deadline) {
+                iterator.remove();
+                pendingAck.fire(false);
+            } else {
+                waitingCnt++;
+            }
+        }
+        return waitingCnt;
+    }
+
+    /***
+     * Answer all the waiting requests as not acknowledged, called when the store is closed.
+     */
+    public void failAll() {
+        PendingAck pendingAck;
+        while ((pendingAck = pendingAcks.poll()) != null) {
+            pendingAck.fire(false);
+        }
+    }
+
+    public boolean isEmpty() {
+        return pendingAcks.isEmpty();
+    }
+
+    public int size() {
+        return pendingAcks.size();
+    }
+
+    /***
+     * The callback of a request waiting for acknowledgement.
+     */
+    public interface AckCallback {
+
+        void onAckResult(boolean isAcked);
+    }
+
+    /***
+     * The checker of the acknowledged offset, it may trigger the flushes
+     * the offset is waiting for.
+     */
+    public interface AckChecker {
+
+        boolean isAcked(long requiredOffset);
+    }
+
+    private static class PendingAck {
+        private final long requiredOffset;
+        private final long deadline;
+        private final AckCallback callback;
+        private final AtomicBoolean fired = new AtomicBoolean(false);
+
+        PendingAck(long requiredOffset, long deadline, AckCallback callback) {
+            this.requiredOffset = requiredOffset;
+            this.deadline = deadline;
+            this.callback = callback;
+        }
+
+        // the concurrent checks may both see the request, only the first one answers it
+        void fire(boolean isAcked) {
+            if (!fired.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                callback.onAckResult(isAcked);
+            } catch (Throwable e) {
+                logger.warn("[Produce Ack] answer the produce request failure", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore.disk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.inlong.tubemq.corebase.utils.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/***
+ * Disk flusher of a data directory. The fsync requests of all the stores on the directory
+ * are coalesced into group commits, each round forces the stores requested since the last round,
+ * so the writers never wait for the disk.
+ */
+public class DiskFlushService {
+    private static final Logger logger = LoggerFactory.getLogger(DiskFlushService.class);
+    private final String dataDir;
+    // the stores waiting to be flushed, each store is queued once until it is flushed
+    private final LinkedBlockingQueue<MsgFileStore> flushQueue = new LinkedBlockingQueue<>();
+    // fsync latency of each store in microseconds
+    private final LatencyHistogram fsyncLatency = new LatencyHistogram();
+    private final AtomicLong flushRoundCnt = new AtomicLong(0);
+    private final AtomicLong flushStoreCnt = new AtomicLong(0);
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final Thread flushThread;
+
+    public DiskFlushService(final String dataDir) {
+        this.dataDir = dataDir;
+        this.flushThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runFlush();
+            }
+        }, "Broker Disk Flusher-" + dataDir);
+        this.flushThread.setDaemon(true);
+    }
+
+    public void start() {
+        this.flushThread.start();
+    }
+
+    /***
+     * Stop the flusher, the queued stores are flushed before return.
+     *
+     * The flush thread is not interrupted, an interrupt during force() closes the file channel
+     * with ClosedByInterruptException, it sees the stopped flag within one poll instead.
+     */
+    public void close() {
+        if (this.stopped.compareAndSet(false, true)) {
+            try {
+                this.flushThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<MsgFileStore> flushStores = new ArrayList<>();
+            this.flushQueue.drainTo(flushStores);
+            flushStores(flushStores);
+        }
+    }
+
+    /***
+     * Queue a store to be flushed in the next round.
+     *
+     * @param msgFileStore the store to be flushed
+     */
+    public void requestFlush(final MsgFileStore msgFileStore) {
+        this.flushQueue.offer(msgFileStore);
+    }
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    public int getPendingStoreCnt() {
+        return flushQueue.size();
+    }
+
+    public long getFlushRoundCnt() {
+        return flushRoundCnt.get();
+    }
+
+    public long getFlushStoreCnt() {
+        return flushStoreCnt.get();
+    }
+
+    public LatencyHistogram getFsyncLatency() {
+        return fsyncLatency;
+    }
+
+    private void runFlush() {
+        final List<MsgFileStore> flushStores = new ArrayList<>();
+        while (!this.stopped.get()) {
+            try {
+                MsgFileStore msgFileStore = this.flushQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (msgFileStore == null) {
+                    continue;
+                }
+                // coalesce all the requests arrived while the last round was running
+                flushStores.add(msgFileStore);
+                this.flushQueue.drainTo(flushStores);
+                flushStores(flushStores);
+                this.flushRoundCnt.incrementAndGet();
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                flushStores.clear();
+            }
+        }
+    }
+
+    private void flushStores(final List<MsgFileStore> flushStores) {
+        for (MsgFileStore msgFileStore : flushStores) {
+            final long startTime = System.nanoTime();
+            try {
+                msgFileStore.forceFlush();
+            } catch (Throwable e) {
+                logger.warn(new StringBuilder(512).append("[Disk Flusher] flush ")
+                        .append(msgFileStore.getStoreKey()).append(" in ")
+                        .append(dataDir).append(" failure").toString(), e);
+            }
+            this.fsyncLatency.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+            this.flushStoreCnt.incrementAndGet();
+        }
+    }
+}
@@ -20,11 +20,20 @@ package org.apache.inlong.tubemq.server.broker.msgstore.disk;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.inlong.tubemq.corebase.utils.CheckSum;
+import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
 import org.apache.inlong.tubemq.corebase.utils.ServiceStatusHolder;
 import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
 import org.slf4j.Logger;
@@ -37,6 +46,11 @@ import org.slf4j.LoggerFactory;
 public class FileSegment implements Segment {
     private static final Logger logger =
             LoggerFactory.getLogger(FileSegment.class);
+    // Unsafe.invokeCleaner() unmaps the buffer on JDK 9+, null on JDK 8
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    // warn once if the buffer can not be unmapped at once
+    private static final AtomicBoolean unmapFailWarned = new AtomicBoolean(false);
     private final long start;
     private final File file;
     private RandomAccessFile randFile;
@@ -48,7 +62,44 @@ public class FileSegment implements Segment {
     private long expiredTime = 0;
     private AtomicBoolean expired = new AtomicBoolean(false);
     private AtomicBoolean closed = new AtomicBoolean(false);
-
+    // view reference count, the segment list holds one reference
+    private final AtomicInteger viewRefCnt = new AtomicInteger(1);
+    // whether the reference of the segment list has been released by close or delete
+    private final AtomicBoolean ownerRefReleased = new AtomicBoolean(false);
+    private final AtomicBoolean deleted = new AtomicBoolean(false);
+    // memory-mapped read of immutable segment
+    private final Object mmapLock = new Object();
+    private volatile MmapReadController mmapReadController = null;
+    private volatile MappedByteBuffer mappedBuffer = null;
+    private volatile boolean mmapDisabled = false;
+    private long mappedSize = 0L;
+    // sparse time index of index segment
+    private final SegmentTimeIndex timeIndex;
+    // key code summary of index segment
+    private final SegmentKeyIndex keyIndex;
+    // checkpoint of the mutable segment, the size flushed to disk and known valid,
+    // it equals the file size if the segment is closed cleanly
+    private final File checkpointFile;
+    private long checkpointedSize = 0L;
+    // recover statistics of the mutable segment
+    private long recoverScannedBytes = 0L;
+    private long recoverTruncatedBytes = 0L;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafe = unsafeField.get(null);
+        } catch (Throwable e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
 
     public FileSegment(final long start, final File file, SegmentType type) throws IOException {
         this(start, file, true, type, Long.MAX_VALUE);
@@ -69,8 +120,12 @@ public class FileSegment implements Segment {
                         final long checkOffset) throws IOException {
         super();
         this.segmentType = type;
+        this.timeIndex = (type == SegmentType.INDEX) ? new SegmentTimeIndex(false) : null;
+        this.keyIndex = (type == SegmentType.INDEX) ? new SegmentKeyIndex(false) : null;
         this.start = start;
         this.file = file;
+        this.checkpointFile =
+                new File(file.getParentFile(), file.getName() + DataStoreUtils.CHECKPOINT_FILE_SUFFIX);
         this.mutable = mutable;
         this.cachedSize = new AtomicLong(0);
         this.flushedSize = new AtomicLong(0);
@@ -79,34 +134,26 @@ public class FileSegment implements Segment {
         if (mutable) {
             final long startMs = System.currentTimeMillis();
             long remaining = checkOffset == Long.MAX_VALUE ? -1 : (checkOffset - this.start);
+            RecoverResult recoverResult;
             if (this.segmentType == SegmentType.DATA) {
-                RecoverResult recoverResult = this.recoverData(remaining);
-                if (recoverResult.isEqual()) {
-                    logger.info(
-                            "[File Store] Data Segment recover success, ignore content check!");
-                } else {
-                    if (recoverResult.getTruncated() > 0) {
-                        logger.info(new StringBuilder(512)
-                                .append("[File Store] Recover DATA Segment succeeded in ")
-                                .append((System.currentTimeMillis() - startMs) / 1000)
-                                .append(" seconds. ").append(recoverResult.getTruncated())
-                                .append(" bytes truncated.").toString());
-                    }
-                }
+                recoverResult = this.recoverData(remaining);
             } else {
-                RecoverResult recoverResult = this.recoverIndex(remaining);
-                if (recoverResult.isEqual()) {
-                    logger.info(
-                            "[File Store] Index Segment recover success, ignore content check!");
-                } else {
-                    if (recoverResult.getTruncated() > 0) {
-                        logger.info(new StringBuilder(512)
-                                .append("[File Store] Recover Index Segment succeeded in ")
-                                .append((System.currentTimeMillis() - startMs) / 1000)
-                                .append(" seconds. ").append(recoverResult.getTruncated())
-                                .append(" bytes truncated.").toString());
-                    }
-                }
+                recoverResult = this.recoverIndex(remaining);
+            }
+            this.recoverTruncatedBytes = recoverResult.getTruncated();
+            if (recoverResult.isEqual()) {
+                logger.info(new StringBuilder(512).append("[File Store] ")
+                        .append(this.segmentType).append(" Segment ")
+                        .append(this.file.getAbsolutePath())
+                        .append(" recover success, ignore content check!").toString());
+            } else {
+                logger.info(new StringBuilder(512)
+                        .append("[File Store] Recover ").append(this.segmentType)
+                        .append(" Segment ").append(this.file.getAbsolutePath())
+                        .append(" succeeded in ").append(System.currentTimeMillis() - startMs)
+                        .append(" ms, ").append(this.recoverScannedBytes)
+                        .append(" bytes scanned, ").append(recoverResult.getTruncated())
+                        .append(" bytes truncated.").toString());
             }
         } else {
             try {
@@ -132,6 +179,7 @@ public class FileSegment implements Segment {
                 if (this.channel.isOpen()) {
                     if (this.mutable) {
                         flush(true);
+                        writeCheckpoint(this.flushedSize.get());
                     }
                     this.channel.close();
                 }
@@ -144,36 +192,24 @@ public class FileSegment implements Segment {
                         .append(this.file.getAbsoluteFile().toString())
                         .append("'s ").append(segmentType).append(" file failure").toString(), ee);
             }
+            // the mapping is released by the last reader
+            releaseOwnerRef();
         }
     }
 
+    /***
+     * Delete the segment file. The file is closed and deleted after all the
+     * view references are released.
+     */
     @Override
     public void deleteFile() {
-        this.closed.set(true);
-        try {
-            if (this.channel.isOpen()) {
-                if (this.mutable) {
-                    flush(true);
-                }
-                this.channel.close();
-            }
-            this.randFile.close();
-        } catch (Throwable e1) {
-            if (e1 instanceof IOException) {
-                ServiceStatusHolder.addReadIOErrCnt();
-            }
-            logger.error("[File Store] failure to close channel ", e1);
+        if (!this.deleted.compareAndSet(false, true)) {
+            return;
         }
-        try {
-            logger.info(new StringBuilder(512)
-                    .append("[File Store] delete file ")
-                    .append(file.getAbsoluteFile()).toString());
-            this.file.delete();
-        } catch (Throwable ee) {
-            if (ee instanceof IOException) {
-                ServiceStatusHolder.addReadIOErrCnt();
-            }
-            logger.error("[File Store] failure to delete file ", ee);
+        this.closed.set(true);
+        if (!releaseOwnerRef() && this.viewRefCnt.get() <= 0) {
+            // released by close already, no reader left to delete the file
+            deleteSegmentFile();
         }
     }
 
@@ -197,13 +233,17 @@ public class FileSegment implements Segment {
         if (this.closed.get()) {
             throw new UnsupportedOperationException("[File Store] Segment is closed!");
         }
-        final long offset = this.cachedSize.get();
-        int sizeInBytes = 0;
-        while (buf.hasRemaining()) {
-            sizeInBytes += this.channel.write(buf);
+        if (this.timeIndex == null) {
+            return writeBuffer(buf);
+        }
+        // the index builder reads the records under the cached size with the same lock,
+        // so each record is indexed either by the builder or by the append, not both
+        synchronized (this.timeIndex) {
+            if (this.timeIndex.isBuilt()) {
+                addRecordIndexes(buf, this.start + this.cachedSize.get());
+            }
+            return writeBuffer(buf);
         }
-        this.cachedSize.addAndGet(sizeInBytes);
-        return this.start + offset;
     }
 
     /***
@@ -215,8 +255,21 @@ public class FileSegment implements Segment {
      */
     @Override
     public long flush(boolean force) throws IOException {
+        // only the size written before the force is flushed, the appends may go on meanwhile
+        final long writtenSize = this.cachedSize.get();
         this.channel.force(force);
-        this.flushedSize.set(this.cachedSize.get());
+        while (true) {
+            final long curFlushedSize = this.flushedSize.get();
+            if (curFlushedSize >= writtenSize
+                    || this.flushedSize.compareAndSet(curFlushedSize, writtenSize)) {
+                break;
+            }
+        }
+        // record the flushed size now and then, the recovery scans only the part after it
+        if (this.mutable && !this.closed.get()
+                && writtenSize - this.checkpointedSize >= DataStoreUtils.CHECKPOINT_INTERVAL_BYTES) {
+            writeCheckpoint(writtenSize);
+        }
         return this.start + this.flushedSize.get();
     }
 
@@ -244,12 +297,37 @@ public class FileSegment implements Segment {
                 && offset <= this.start + this.getCachedSize() - 1);
     }
 
+    /***
+     * Acquire reference to this FileSegment before reading it.
+     *
+     * @return false if the segment has been released
+     */
+    @Override
+    public boolean acquireViewRef() {
+        while (true) {
+            int curRefCnt = this.viewRefCnt.get();
+            if (curRefCnt <= 0) {
+                return false;
+            }
+            if (this.viewRefCnt.compareAndSet(curRefCnt, curRefCnt + 1)) {
+                return true;
+            }
+        }
+    }
+
     /***
      * Release reference to this FileSegment. File's channel will be closed when the reference decreased to 0.
      */
     @Override
     public void relViewRef() {
+        if (this.viewRefCnt.decrementAndGet() == 0) {
+            releaseFile();
+        }
+    }
 
+    @Override
+    public void setMmapReadController(MmapReadController mmapReadController) {
+        this.mmapReadController = mmapReadController;
     }
 
     @Override
@@ -285,6 +363,18 @@ public class FileSegment implements Segment {
     @Override
     public void setMutable(boolean mutable) {
         this.mutable = mutable;
+        if (!mutable) {
+            // the immutable segment is never recovered
+            deleteCheckpoint();
+        }
+    }
+
+    public long getRecoverScannedBytes() {
+        return recoverScannedBytes;
+    }
+
+    public long getRecoverTruncatedBytes() {
+        return recoverTruncatedBytes;
     }
 
     @Override
@@ -307,6 +397,19 @@ public class FileSegment implements Segment {
         if (this.isExpired()) {
             //Todo: conduct file closed and expired cases.
         }
+        final MappedByteBuffer mappedBuf = getMappedBuffer();
+        if (mappedBuf != null) {
+            // read from page cache directly
+            final int readPos = (int) (reqOffset - start);
+            if (readPos < 0 || readPos >= this.mappedSize) {
+                return;
+            }
+            final ByteBuffer readView = mappedBuf.duplicate();
+            readView.position(readPos);
+            readView.limit(readPos + Math.min(bf.remaining(), readView.remaining()));
+            bf.put(readView);
+            return;
+        }
         int size = 0;
         while (bf.hasRemaining()) {
             final int l = this.channel.read(bf, reqOffset - start + size);
@@ -317,6 +420,84 @@ public class FileSegment implements Segment {
         }
     }
 
+    /***
+     * Return the channel of segment file, used to transfer file data to socket directly.
+     *
+     * @return the file channel
+     */
+    @Override
+    public FileChannel getFileChannel() {
+        return this.channel;
+    }
+
+    /***
+     * Return the offset of the first index record received at or after the timestamp.
+     * The time index of the segment loaded without recovery is built from the file at the first call.
+     *
+     * @param timestamp the timestamp in milliseconds
+     * @return the record offset, or -1 if all records are received before the timestamp
+     * @throws IOException
+     */
+    @Override
+    public long getOffsetByTime(final long timestamp) throws IOException {
+        if (this.timeIndex == null) {
+            throw new UnsupportedOperationException(
+                    "[File Store] Only Index Segment supports time query!");
+        }
+        if (!this.timeIndex.isBuilt()) {
+            buildRecordIndexes();
+        }
+        long scanOffset = this.timeIndex.getScanStartOffset(timestamp);
+        if (scanOffset < 0) {
+            return -1;
+        }
+        final long lastOffset = getLast();
+        final ByteBuffer readBuf = ByteBuffer.allocate(
+                SegmentTimeIndex.SAMPLE_INTERVAL * DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        while (scanOffset < lastOffset) {
+            readBuf.clear();
+            readBuf.limit((int) Math.min(readBuf.capacity(), lastOffset - scanOffset));
+            read(readBuf, scanOffset);
+            readBuf.flip();
+            int readPos = 0;
+            for (; readPos + DataStoreUtils.STORE_INDEX_HEAD_LEN <= readBuf.limit();
+                 readPos += DataStoreUtils.STORE_INDEX_HEAD_LEN) {
+                if (readBuf.getLong(readPos + DataStoreUtils.INDEX_POS_TIME_RECV) >= timestamp) {
+                    return scanOffset + readPos;
+                }
+            }
+            if (readPos == 0) {
+                break;
+            }
+            scanOffset += readPos;
+        }
+        return -1;
+    }
+
+    /***
+     * Return the offset of the first index record at or after the offset that may hold
+     * one of the key codes, the blocks without any of the key codes are skipped.
+     * The key index of the segment loaded without recovery is built from the file at the first call.
+     *
+     * @param offset    the record offset to start
+     * @param keyCodes  the key codes to match
+     * @return the record offset to start reading
+     * @throws IOException
+     */
+    @Override
+    public long skipUnmatchedRecords(final long offset, final Set<Integer> keyCodes) throws IOException {
+        if (this.keyIndex == null) {
+            throw new UnsupportedOperationException(
+                    "[File Store] Only Index Segment supports key code query!");
+        }
+        if (!this.keyIndex.isBuilt()) {
+            buildRecordIndexes();
+        }
+        final long startRecord = (offset - this.start) / DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        return this.start + this.keyIndex.skipUnmatchedBlocks(startRecord,
+                keyCodes, !this.mutable) * DataStoreUtils.STORE_INDEX_HEAD_LEN;
+    }
+
     /***
      * Check whether this FileSegment is expired, and set expire status. The last FileSegment cannot be marked expired.
      *
@@ -343,64 +524,275 @@ public class FileSegment implements Segment {
         return 0;
     }
 
+    /***
+     * Mark this FileSegment expired regardless of its age, used by the size based retention.
+     * The mutable FileSegment cannot be marked expired.
+     *
+     * @return true if the FileSegment is marked expired by this call.
+     */
+    @Override
+    public boolean setExpired() {
+        if (expired.get() || closed.get() || mutable) {
+            return false;
+        }
+        if (expired.compareAndSet(false, true)) {
+            expiredTime = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /***
+     * Map the immutable segment file into memory on first read if allowed.
+     *
+     * @return the mapped buffer, or null if read from file channel
+     */
+    private MappedByteBuffer getMappedBuffer() {
+        MappedByteBuffer mappedBuf = this.mappedBuffer;
+        if (mappedBuf != null || this.mmapDisabled) {
+            return mappedBuf;
+        }
+        final MmapReadController controller = this.mmapReadController;
+        if (this.mutable || this.closed.get()
+                || controller == null || !controller.isEnableMmapRead()) {
+            return null;
+        }
+        synchronized (this.mmapLock) {
+            if (this.mappedBuffer != null || this.mmapDisabled || this.closed.get()) {
+                return this.mappedBuffer;
+            }
+            final long fileSize = this.cachedSize.get();
+            if (fileSize <= 0 || fileSize > Integer.MAX_VALUE) {
+                this.mmapDisabled = true;
+                return null;
+            }
+            if (!controller.tryAcquire(fileSize)) {
+                return null;
+            }
+            try {
+                this.mappedBuffer =
+                        this.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+                this.mappedSize = fileSize;
+            } catch (Throwable e) {
+                controller.release(fileSize);
+                this.mmapDisabled = true;
+                logger.warn(new StringBuilder(512).append("[File Store] Map ")
+                        .append(this.file.getAbsoluteFile().toString())
+                        .append(" failure, read from file channel").toString(), e);
+            }
+            return this.mappedBuffer;
+        }
+    }
+
+    private long writeBuffer(final ByteBuffer buf) throws IOException {
+        final long offset = this.cachedSize.get();
+        int sizeInBytes = 0;
+        while (buf.hasRemaining()) {
+            sizeInBytes += this.channel.write(buf);
+        }
+        this.cachedSize.addAndGet(sizeInBytes);
+        return this.start + offset;
+    }
+
+    private void addRecordIndexes(final ByteBuffer buf, final long startOffset) {
+        for (int readPos = buf.position();
+             readPos + DataStoreUtils.STORE_INDEX_HEAD_LEN <= buf.limit();
+             readPos += DataStoreUtils.STORE_INDEX_HEAD_LEN) {
+            this.timeIndex.addRecord(startOffset + readPos - buf.position(),
+                    buf.getLong(readPos + DataStoreUtils.INDEX_POS_TIME_RECV));
+            this.keyIndex.addRecord(buf.getInt(readPos + DataStoreUtils.INDEX_POS_KEY_CODE));
+        }
+    }
+
+    /***
+     * Build the time index and the key index from the file, for the segment loaded
+     * without recovery or recovered from a checkpoint.
+     */
+    private void buildRecordIndexes() throws IOException {
+        synchronized (this.timeIndex) {
+            if (this.timeIndex.isBuilt()) {
+                return;
+            }
+            this.timeIndex.clear();
+            this.keyIndex.clear();
+            final long totalBytes = this.cachedSize.get();
+            final ByteBuffer readBuf = ByteBuffer.allocate(
+                    SegmentTimeIndex.SAMPLE_INTERVAL * DataStoreUtils.STORE_INDEX_HEAD_LEN);
+            long readOffset = 0L;
+            while (readOffset < totalBytes) {
+                readBuf.clear();
+                readBuf.limit((int) Math.min(readBuf.capacity(), totalBytes - readOffset));
+                read(readBuf, this.start + readOffset);
+                readBuf.flip();
+                if (readBuf.limit() < DataStoreUtils.STORE_INDEX_HEAD_LEN) {
+                    break;
+                }
+                addRecordIndexes(readBuf, this.start + readOffset);
+                readOffset += readBuf.limit() - readBuf.limit() % DataStoreUtils.STORE_INDEX_HEAD_LEN;
+            }
+            this.keyIndex.setBuilt();
+            this.timeIndex.setBuilt();
+        }
+    }
+
+    private void unmapFile() {
+        MappedByteBuffer mappedBuf;
+        synchronized (this.mmapLock) {
+            mappedBuf = this.mappedBuffer;
+            if (mappedBuf == null) {
+                return;
+            }
+            this.mappedBuffer = null;
+            this.mmapDisabled = true;
+        }
+        // the mapped bytes are returned only if unmapped, otherwise the mapping
+        // is alive until the buffer is collected and still counts to the bound
+        if (unmapBuffer(mappedBuf)) {
+            this.mmapReadController.release(this.mappedSize);
+        }
+    }
+
+    private static boolean unmapBuffer(final MappedByteBuffer mappedBuf) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, mappedBuf);
+                return true;
+            }
+            Method cleanerMethod = mappedBuf.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mappedBuf);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+            return true;
+        } catch (Throwable e) {
+            if (unmapFailWarned.compareAndSet(false, true)) {
+                logger.warn("[File Store] Unmap the mapped segment failure, the mapped bytes"
+                        + " are kept until the buffers are collected", e);
+            }
+            return false;
+        }
+    }
+
+    // release the reference of the segment list once, return false if released before
+    private boolean releaseOwnerRef() {
+        if (!this.ownerRefReleased.compareAndSet(false, true)) {
+            return false;
+        }
+        relViewRef();
+        return true;
+    }
+
+    private void releaseFile() {
+        unmapFile();
+        try {
+            if (this.channel.isOpen()) {
+                if (this.mutable) {
+                    flush(true);
+                }
+                this.channel.close();
+            }
+            this.randFile.close();
+        } catch (Throwable e1) {
+            if (e1 instanceof IOException) {
+                ServiceStatusHolder.addReadIOErrCnt();
+            }
+            logger.error("[File Store] failure to close channel ", e1);
+        }
+        if (this.deleted.get()) {
+            deleteSegmentFile();
+        }
+    }
+
+    private void deleteSegmentFile() {
+        try {
+            logger.info(new StringBuilder(512)
+                    .append("[File Store] delete file ")
+                    .append(file.getAbsoluteFile()).toString());
+            this.file.delete();
+            deleteCheckpoint();
+        } catch (Throwable ee) {
+            if (ee instanceof IOException) {
+                ServiceStatusHolder.addReadIOErrCnt();
+            }
+            logger.error("[File Store] failure to delete file ", ee);
+        }
+    }
+
     private RecoverResult recoverData(final long checkOffset) throws IOException {
         if (!this.mutable) {
             throw new UnsupportedOperationException(
                     "[File Store] The Data Segment must be mutable!");
         }
         final long totalBytes = this.channel.size();
-        if (totalBytes == checkOffset || checkOffset == -1) {
+        long validBytes = getRecoverFrom(totalBytes, checkOffset);
+        if (validBytes == totalBytes) {
             this.cachedSize.set(totalBytes);
             this.flushedSize.set(totalBytes);
             this.channel.position(totalBytes);
-            return new RecoverResult(0, totalBytes == checkOffset);
+            return new RecoverResult(0, true);
         }
-        long validBytes = 0L;
-        long next = 0L;
-        long itemRead = 0L;
+        final long scanFrom = validBytes;
+        int itemPos = 0;
         int itemMsglen = 0;
-        int itemMsgToken = 0;
-        int itemCheckSum = 0;
-        long itemNext = 0L;
-        final ByteBuffer itemBuf = ByteBuffer.allocate(DataStoreUtils.STORE_DATA_HEADER_LEN);
-        do {
-            do {
-                itemBuf.rewind();
-                itemRead = this.channel.read(itemBuf);
-                if (itemRead < DataStoreUtils.STORE_DATA_HEADER_LEN) {
-                    next = -1;
+        int itemDataOffset = 0;
+        ByteBuffer readBuf = ByteBuffer.allocate(DataStoreUtils.STORE_RECOVER_READ_SIZE);
+        readBuf.flip();
+        long readPos = validBytes;
+        while (true) {
+            if (readBuf.remaining() < DataStoreUtils.STORE_DATA_HEADER_LEN) {
+                readPos += fillRecoverBuffer(readBuf, readPos);
+                if (readBuf.remaining() < DataStoreUtils.STORE_DATA_HEADER_LEN) {
                     break;
                 }
-                itemBuf.flip();
-                itemMsglen = itemBuf.getInt() - DataStoreUtils.STORE_DATA_PREFX_LEN;
-                itemMsgToken = itemBuf.getInt();
-                itemCheckSum = itemBuf.getInt();
-                itemNext = validBytes + DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen;
-                if ((itemMsgToken != DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE)
-                        || (itemMsglen <= 0)
-                        || (itemMsglen > DataStoreUtils.MAX_MSG_DATA_STORE_SIZE)
-                        || (itemNext > totalBytes)) {
-                    next = -1;
-                    break;
+            }
+            itemPos = readBuf.position();
+            itemMsglen = readBuf.getInt(itemPos) - DataStoreUtils.STORE_DATA_PREFX_LEN;
+            if ((readBuf.getInt(itemPos + DataStoreUtils.STORE_HEADER_POS_DATATYPE)
+                    != DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE)
+                    || (itemMsglen <= 0)
+                    || (itemMsglen > DataStoreUtils.MAX_MSG_DATA_STORE_SIZE)
+                    || (validBytes + DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen > totalBytes)) {
+                break;
+            }
+            if (readBuf.remaining() < DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen) {
+                if (readBuf.capacity() < DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen) {
+                    // enlarge the buffer for the message larger than it
+                    ByteBuffer newBuf = ByteBuffer.allocate(
+                            DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen);
+                    newBuf.put(readBuf);
+                    newBuf.flip();
+                    readBuf = newBuf;
                 }
-                final ByteBuffer messageBuffer = ByteBuffer.allocate(itemMsglen);
-                while (messageBuffer.hasRemaining()) {
-                    itemRead = this.channel.read(messageBuffer);
-                    if (itemRead < 0) {
-                        throw new IOException(
-                                "[File Store] The Data Segment is changing in recover processing!");
-                    }
+                readPos += fillRecoverBuffer(readBuf, readPos);
+                itemPos = readBuf.position();
+                if (readBuf.remaining() < DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen) {
+                    throw new IOException(
+                            "[File Store] The Data Segment is changing in recover processing!");
                 }
-                if (CheckSum.crc32(messageBuffer.array()) != itemCheckSum) {
-                    next = -1;
+            }
+            // the checksum covers the message data only, not the system header extension
+            itemDataOffset = DataStoreUtils.STORE_DATA_HEADER_LEN;
+            if (MessageFlagUtils.hasSysHeaderExt(
+                    readBuf.getInt(itemPos + DataStoreUtils.STORE_HEADER_POS_MSGFLAG))) {
+                itemDataOffset += readBuf.getInt(itemPos + DataStoreUtils.STORE_DATA_HEADER_LEN
+                        + DataStoreUtils.STORE_EXT_POS_LENGTH);
+                if (itemDataOffset < DataStoreUtils.STORE_DATA_HEADER_LEN
+                        || itemDataOffset > DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen) {
                     break;
                 }
-                next = itemNext;
-            } while (false);
-            if (next >= 0) {
-                validBytes = next;
             }
-        } while (next >= 0);
+            if (CheckSum.crc32(readBuf.array(), readBuf.arrayOffset() + itemPos + itemDataOffset,
+                    DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen - itemDataOffset)
+                    != readBuf.getInt(itemPos + DataStoreUtils.STORE_HEADER_POS_CHECKSUM)) {
+                break;
+            }
+            readBuf.position(itemPos + DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen);
+            validBytes += DataStoreUtils.STORE_DATA_HEADER_LEN + itemMsglen;
+        }
+        this.recoverScannedBytes = readPos - scanFrom;
         if (totalBytes != validBytes) {
             this.channel.truncate(validBytes);
         }
@@ -416,60 +808,136 @@ public class FileSegment implements Segment {
                     "[File Store] The Index Segment must be mutable!");
         }
         final long totalBytes = this.channel.size();
-        if (totalBytes == checkOffset) {
+        long validBytes = getRecoverFrom(totalBytes, checkOffset);
+        validBytes -= validBytes % DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        if (validBytes == totalBytes) {
             this.cachedSize.set(totalBytes);
             this.flushedSize.set(totalBytes);
             this.channel.position(totalBytes);
+            // the indexes of the mutable segment are built before any append
+            buildRecordIndexes();
             return new RecoverResult(0, true);
         }
-        long validBytes = 0L;
-        long next = 0L;
-        long itemRead = 0L;
-        int itemMsgPartId = 0;
-        long itemMsgOffset = 0L;
+        // the time and key index are built in recovery if the whole segment is scanned,
+        // otherwise they are built from the file after the scan
+        final long scanFrom = validBytes;
+        final boolean buildIndex = (scanFrom == 0);
+        int itemPos = 0;
         int itemMsglen = 0;
-        int itemKeyCode = 0;
-        long itemTimeRecv = 0;
-        long itemNext = 0L;
-        final ByteBuffer itemBuf = ByteBuffer.allocate(DataStoreUtils.STORE_INDEX_HEAD_LEN);
-        do {
-            do {
-                itemBuf.rewind();
-                itemRead = this.channel.read(itemBuf);
-                if (itemRead < DataStoreUtils.STORE_INDEX_HEAD_LEN) {
-                    next = -1;
-                    break;
-                }
-                itemBuf.flip();
-                itemMsgPartId = itemBuf.getInt();
-                itemMsgOffset = itemBuf.getLong();
-                itemMsglen = itemBuf.getInt();
-                itemKeyCode = itemBuf.getInt();
-                itemTimeRecv = itemBuf.getLong();
-                itemNext = validBytes + DataStoreUtils.STORE_INDEX_HEAD_LEN;
-                if ((itemMsgPartId < 0)
-                        || (itemMsgOffset < 0)
-                        || (itemMsglen <= 0)
-                        || (itemMsglen > DataStoreUtils.STORE_MAX_MESSAGE_STORE_LEN)
-                        || (itemNext > totalBytes)) {
-                    next = -1;
+        final ByteBuffer readBuf = ByteBuffer.allocate(DataStoreUtils.STORE_RECOVER_READ_SIZE
+                - DataStoreUtils.STORE_RECOVER_READ_SIZE % DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        readBuf.flip();
+        long readPos = validBytes;
+        while (true) {
+            if (readBuf.remaining() < DataStoreUtils.STORE_INDEX_HEAD_LEN) {
+                readPos += fillRecoverBuffer(readBuf, readPos);
+                if (readBuf.remaining() < DataStoreUtils.STORE_INDEX_HEAD_LEN) {
                     break;
                 }
-                next = itemNext;
-            } while (false);
-            if (next >= 0) {
-                validBytes = next;
             }
-        } while (next >= 0);
+            itemPos = readBuf.position();
+            itemMsglen = readBuf.getInt(itemPos + DataStoreUtils.INDEX_POS_MSG_SIZE);
+            if ((readBuf.getInt(itemPos + DataStoreUtils.INDEX_POS_PARTITIONID) < 0)
+                    || (readBuf.getLong(itemPos + DataStoreUtils.INDEX_POS_DATAOFFSET) < 0)
+                    || (itemMsglen <= 0)
+                    || (itemMsglen > DataStoreUtils.STORE_MAX_MESSAGE_STORE_LEN)) {
+                break;
+            }
+            if (buildIndex) {
+                this.timeIndex.addRecord(this.start + validBytes,
+                        readBuf.getLong(itemPos + DataStoreUtils.INDEX_POS_TIME_RECV));
+                this.keyIndex.addRecord(
+                        readBuf.getInt(itemPos + DataStoreUtils.INDEX_POS_KEY_CODE));
+            }
+            readBuf.position(itemPos + DataStoreUtils.STORE_INDEX_HEAD_LEN);
+            validBytes += DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        }
+        if (buildIndex) {
+            this.keyIndex.setBuilt();
+            this.timeIndex.setBuilt();
+        }
+        this.recoverScannedBytes = readPos - scanFrom;
         if (totalBytes != validBytes) {
             channel.truncate(validBytes);
         }
         this.cachedSize.set(validBytes);
         this.flushedSize.set(validBytes);
         this.channel.position(validBytes);
+        if (!buildIndex) {
+            buildRecordIndexes();
+        }
         return new RecoverResult(totalBytes - validBytes, false);
     }
 
+    /***
+     * Get the size known valid before recover scanning.
+     *
+     * @param totalBytes   the file size
+     * @param checkOffset  the size given by caller, -1 if not given
+     * @return the size of the file if no scan is required, otherwise the position the scan starts
+     */
+    private long getRecoverFrom(long totalBytes, long checkOffset) {
+        if (checkOffset >= 0) {
+            return (totalBytes == checkOffset) ? totalBytes : 0L;
+        }
+        if (!this.checkpointFile.exists()) {
+            return 0L;
+        }
+        try {
+            long validSize = Long.parseLong(new String(Files.readAllBytes(
+                    this.checkpointFile.toPath()), StandardCharsets.UTF_8).trim());
+            if (validSize > totalBytes) {
+                return 0L;
+            }
+            this.checkpointedSize = validSize;
+            return validSize;
+        } catch (Throwable e) {
+            logger.warn(new StringBuilder(512)
+                    .append("[File Store] Read checkpoint ")
+                    .append(this.checkpointFile.getAbsolutePath())
+                    .append(" failure, scan the whole segment").toString(), e);
+            return 0L;
+        }
+    }
+
+    // read the file sequentially into the buffer, return the read bytes
+    private int fillRecoverBuffer(final ByteBuffer readBuf, long readPos) throws IOException {
+        readBuf.compact();
+        int totalRead = 0;
+        int readCnt = 0;
+        while (readBuf.hasRemaining()) {
+            readCnt = this.channel.read(readBuf, readPos + totalRead);
+            if (readCnt <= 0) {
+                break;
+            }
+            totalRead += readCnt;
+        }
+        readBuf.flip();
+        return totalRead;
+    }
+
+    private synchronized void writeCheckpoint(long validSize) {
+        File tmpFile = new File(this.checkpointFile.getParentFile(),
+                this.checkpointFile.getName() + ".tmp");
+        try {
+            Files.write(tmpFile.toPath(),
+                    String.valueOf(validSize).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpFile.toPath(), this.checkpointFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.checkpointedSize = validSize;
+        } catch (Throwable e) {
+            logger.warn(new StringBuilder(512).append("[File Store] Write checkpoint ")
+                    .append(this.checkpointFile.getAbsolutePath()).append(" failure").toString(), e);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        if (this.checkpointFile.exists() && !this.checkpointFile.delete()) {
+            logger.warn(new StringBuilder(512).append("[File Store] Delete checkpoint ")
+                    .append(this.checkpointFile.getAbsolutePath()).append(" failure").toString());
+        }
+    }
+
     private static class RecoverResult {
         private long truncated;
         private boolean isEqual;
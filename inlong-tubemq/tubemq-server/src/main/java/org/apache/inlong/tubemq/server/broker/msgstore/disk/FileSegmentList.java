@@ -57,7 +57,8 @@ public class FileSegmentList implements SegmentList {
     }
 
     /***
-     * Return segment by the given offset.
+     * Return segment by the given offset, the caller must call relViewRef()
+     * of the returned segment after reading.
      *
      * @param offset
      * @return
@@ -66,12 +67,44 @@ public class FileSegmentList implements SegmentList {
     @Override
     public Segment getRecordSeg(final long offset) throws IOException {
         Segment tmpSeg = this.findSegment(offset);
-        if (tmpSeg != null && tmpSeg.isExpired()) {
+        if (tmpSeg == null || tmpSeg.isExpired()) {
+            return null;
+        }
+        if (!tmpSeg.acquireViewRef()) {
             return null;
         }
         return tmpSeg;
     }
 
+    /***
+     * Return the offset of the first record received at or after the timestamp,
+     * only used for index segments.
+     *
+     * @param timestamp   the timestamp in milliseconds
+     * @return the record offset, or -1 if all records are received before the timestamp
+     * @throws IOException
+     */
+    @Override
+    public long getOffsetByTime(final long timestamp) throws IOException {
+        for (Segment segment : segmentList.get()) {
+            if (segment == null || segment.isExpired()) {
+                continue;
+            }
+            if (!segment.acquireViewRef()) {
+                continue;
+            }
+            try {
+                final long offset = segment.getOffsetByTime(timestamp);
+                if (offset >= 0) {
+                    return offset;
+                }
+            } finally {
+                segment.relViewRef();
+            }
+        }
+        return -1;
+    }
+
     @Override
     public void append(final Segment segment) {
         while (true) {
@@ -107,6 +140,87 @@ public class FileSegmentList implements SegmentList {
         return hasExpired;
     }
 
+    /***
+     * Mark the oldest sealed FileSegments expired until the total size is not greater than the limit.
+     *
+     * @param maxSizeInBytes the max total size of the unexpired FileSegments
+     * @return the size of the FileSegments marked expired
+     */
+    @Override
+    public long expireSegmentsBySize(final long maxSizeInBytes) {
+        long expiredSize = 0L;
+        long overSize = getSizeInBytes() - maxSizeInBytes;
+        for (Segment segment : segmentList.get()) {
+            if (overSize <= 0) {
+                break;
+            }
+            if (segment == null || segment.isExpired()) {
+                continue;
+            }
+            if (!segment.setExpired()) {
+                break;
+            }
+            overSize -= segment.getCachedSize();
+            expiredSize += segment.getCachedSize();
+        }
+        return expiredSize;
+    }
+
+    /***
+     * Mark the oldest sealed FileSegment expired.
+     *
+     * @return the size of the FileSegment marked expired, 0 if there is no sealed FileSegment
+     */
+    @Override
+    public long expireOldestSegment() {
+        for (Segment segment : segmentList.get()) {
+            if (segment == null || segment.isExpired()) {
+                continue;
+            }
+            if (segment.setExpired()) {
+                return segment.getCachedSize();
+            }
+            break;
+        }
+        return 0L;
+    }
+
+    /***
+     * Return the last modified time of the oldest sealed FileSegment.
+     *
+     * @return the last modified time, Long.MAX_VALUE if there is no sealed FileSegment
+     */
+    @Override
+    public long getOldestSealedTime() {
+        for (Segment segment : segmentList.get()) {
+            if (segment == null || segment.isExpired()) {
+                continue;
+            }
+            if (segment.isMutable() || segment.isClosed()) {
+                break;
+            }
+            return segment.getFile().lastModified();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /***
+     * Return the size of the FileSegments that are expired but not deleted yet.
+     *
+     * @return the size in bytes
+     */
+    @Override
+    public long getExpiredSizeInBytes() {
+        long sum = 0L;
+        for (Segment segment : segmentList.get()) {
+            if (segment == null || !segment.isExpired()) {
+                continue;
+            }
+            sum += segment.getCachedSize();
+        }
+        return sum;
+    }
+
     /***
      * Check FileSegments whether is expired, close all expired FileSegments, and then delete these files.
      *
@@ -18,11 +18,11 @@
 package org.apache.inlong.tubemq.server.broker.msgstore.disk;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import org.apache.inlong.tubemq.corebase.TBaseConstants;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker.TransferedMessage;
-import org.apache.inlong.tubemq.server.broker.stats.CountItem;
+import org.apache.inlong.tubemq.corerpc.RpcFileRegion;
+import org.apache.inlong.tubemq.server.broker.stats.MsgTimeCounter;
 
 /***
  * Broker's reply to Consumer's GetMessage request.
@@ -38,15 +38,18 @@ public class GetMessageResult {
     public long waitTime = -1;
     public boolean isSlowFreq = false;
     public boolean isFromSsdFile = false;
-    public HashMap<String, CountItem> tmpCounters = new HashMap<>();
+    public MsgTimeCounter tmpCounters = new MsgTimeCounter();
     public List<TransferedMessage> transferedMessageList = new ArrayList<>();
+    // the messages transferred from file directly
+    public List<RpcFileRegion> fileRegionList = new ArrayList<>();
+    public int fileRegionMsgCnt = 0;
     public long maxOffset = TBaseConstants.META_VALUE_UNDEFINED;
 
 
     public GetMessageResult(boolean isSuccess, int retCode, final String errInfo,
                             final long reqOffset, final int lastReadOffset,
                             final long lastRdDataOffset, final int totalSize,
-                            HashMap<String, CountItem> tmpCounters,
+                            MsgTimeCounter tmpCounters,
                             List<TransferedMessage> transferedMessageList) {
         this(isSuccess, retCode, errInfo, reqOffset, lastReadOffset,
                 lastRdDataOffset, totalSize, tmpCounters, transferedMessageList, false);
@@ -56,7 +59,7 @@ public class GetMessageResult {
     public GetMessageResult(boolean isSuccess, int retCode, final String errInfo,
                             final long reqOffset, final int lastReadOffset,
                             final long lastRdDataOffset, final int totalSize,
-                            HashMap<String, CountItem> tmpCounters,
+                            MsgTimeCounter tmpCounters,
                             List<TransferedMessage> transferedMessageList,
                             boolean isFromSsdFile) {
         this.isSuccess = isSuccess;
@@ -110,11 +113,11 @@ public class GetMessageResult {
         this.waitTime = waitTime;
     }
 
-    public HashMap<String, CountItem> getTmpCounters() {
+    public MsgTimeCounter getTmpCounters() {
         return tmpCounters;
     }
 
-    public void setTmpCounters(HashMap<String, CountItem> tmpCounters) {
+    public void setTmpCounters(MsgTimeCounter tmpCounters) {
         this.tmpCounters = tmpCounters;
     }
 
@@ -126,6 +129,24 @@ public class GetMessageResult {
         this.transferedMessageList = transferedMessageList;
     }
 
+    public List<RpcFileRegion> getFileRegionList() {
+        return fileRegionList;
+    }
+
+    public int getFileRegionMsgCnt() {
+        return fileRegionMsgCnt;
+    }
+
+    public void setFileRegions(List<RpcFileRegion> fileRegionList, int fileRegionMsgCnt) {
+        this.fileRegionList = fileRegionList;
+        this.fileRegionMsgCnt = fileRegionMsgCnt;
+    }
+
+    public boolean hasMessages() {
+        return (fileRegionMsgCnt > 0
+                || (transferedMessageList != null && !transferedMessageList.isEmpty()));
+    }
+
     public boolean isFromSsdFile() {
         return isFromSsdFile;
     }
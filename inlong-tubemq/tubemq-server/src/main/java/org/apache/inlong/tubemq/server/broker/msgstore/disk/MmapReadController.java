@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore.disk;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Memory-mapped read control of the immutable FileSegments. The total bytes
+ * mapped by all the segments of the broker is bounded by maxMappedBytes.
+ */
+public class MmapReadController {
+    private final boolean enableMmapRead;
+    private final long maxMappedBytes;
+    // the bytes mapped currently
+    private final AtomicLong mappedBytes = new AtomicLong(0);
+    // the count of segments mapped currently
+    private final AtomicInteger mappedSegCnt = new AtomicInteger(0);
+
+    public MmapReadController(boolean enableMmapRead, long maxMappedBytes) {
+        this.enableMmapRead = enableMmapRead;
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    public boolean isEnableMmapRead() {
+        return enableMmapRead;
+    }
+
+    public long getMaxMappedBytes() {
+        return maxMappedBytes;
+    }
+
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    public int getMappedSegCnt() {
+        return mappedSegCnt.get();
+    }
+
+    /***
+     * Reserve mapped bytes for a segment.
+     *
+     * @param size  the size to be mapped
+     * @return true if reserved, false if disabled or exceed the max mapped bytes
+     */
+    public boolean tryAcquire(long size) {
+        if (!enableMmapRead || size <= 0) {
+            return false;
+        }
+        while (true) {
+            long curMapped = mappedBytes.get();
+            if (curMapped + size > maxMappedBytes) {
+                return false;
+            }
+            if (mappedBytes.compareAndSet(curMapped, curMapped + size)) {
+                mappedSegCnt.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /***
+     * Return the mapped bytes after the segment is unmapped.
+     *
+     * @param size  the size that has been mapped
+     */
+    public void release(long size) {
+        mappedBytes.addAndGet(-size);
+        mappedSegCnt.decrementAndGet();
+    }
+}
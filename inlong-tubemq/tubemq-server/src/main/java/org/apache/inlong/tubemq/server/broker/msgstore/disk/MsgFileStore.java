@@ -24,7 +24,6 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -34,11 +33,13 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
 import org.apache.inlong.tubemq.corebase.utils.ServiceStatusHolder;
+import org.apache.inlong.tubemq.corerpc.RpcFileRegion;
 import org.apache.inlong.tubemq.server.broker.BrokerConfig;
 import org.apache.inlong.tubemq.server.broker.msgstore.MessageStore;
-import org.apache.inlong.tubemq.server.broker.stats.CountItem;
+import org.apache.inlong.tubemq.server.broker.stats.MsgTimeCounter;
 import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
 import org.apache.inlong.tubemq.server.broker.utils.DiskSamplePrint;
+import org.apache.inlong.tubemq.server.broker.utils.ReadBufferPool;
 import org.apache.inlong.tubemq.server.common.TServerConstants;
 import org.apache.inlong.tubemq.server.common.utils.FileUtil;
 import org.slf4j.Logger;
@@ -79,6 +80,19 @@ public class MsgFileStore implements Closeable {
     private SegmentList indexSegments;
     // close status
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    // disk flusher of the data directory, the fsync is done by the writer if it is null
+    private final DiskFlushService diskFlushService;
+    // whether the store is queued in the disk flusher
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    // retention statistics: data bytes expired by valid duration, by size quota and by disk watermark
+    private final AtomicLong timeExpiredBytes = new AtomicLong(0);
+    private final AtomicLong sizeExpiredBytes = new AtomicLong(0);
+    private final AtomicLong diskExpiredBytes = new AtomicLong(0);
+    private final AtomicLong lastExpiredTime = new AtomicLong(0);
+    // recover statistics on load: the duration, the bytes scanned and truncated
+    private long recoverDurMs = 0L;
+    private long recoverScannedBytes = 0L;
+    private long recoverTruncatedBytes = 0L;
 
 
     public MsgFileStore(final MessageStore messageStore,
@@ -89,6 +103,7 @@ public class MsgFileStore implements Closeable {
         this.tubeConfig = tubeConfig;
         this.messageStore = messageStore;
         this.storeKey = messageStore.getStoreKey();
+        this.diskFlushService = messageStore.getDiskFlushService();
         this.dataDir = new File(sBuilder.append(baseStorePath)
                 .append(File.separator).append(this.storeKey).toString());
         sBuilder.delete(0, sBuilder.length());
@@ -98,8 +113,15 @@ public class MsgFileStore implements Closeable {
         sBuilder.delete(0, sBuilder.length());
         FileUtil.checkDir(this.dataDir);
         FileUtil.checkDir(this.indexDir);
+        final long startTime = System.currentTimeMillis();
         loadSegments(SegmentType.DATA, offsetIfCreate, sBuilder);
         loadSegments(SegmentType.INDEX, offsetIfCreate, sBuilder);
+        this.recoverDurMs = System.currentTimeMillis() - startTime;
+        logger.info(sBuilder.append("[File Store] Recovered store ").append(this.storeKey)
+                .append(" in ").append(this.recoverDurMs).append(" ms, ")
+                .append(this.recoverScannedBytes).append(" bytes scanned, ")
+                .append(this.recoverTruncatedBytes).append(" bytes truncated").toString());
+        sBuilder.delete(0, sBuilder.length());
         this.lastFlushTime.set(System.currentTimeMillis());
     }
 
@@ -147,7 +169,10 @@ public class MsgFileStore implements Closeable {
                 logger.info(sb.append("[File Store] Created data segment ")
                     .append(newDataFile.getAbsolutePath()).toString());
                 sb.delete(0, sb.length());
-                this.dataSegments.append(new FileSegment(newDataOffset, newDataFile, SegmentType.DATA));
+                final Segment newDataSeg =
+                    new FileSegment(newDataOffset, newDataFile, SegmentType.DATA);
+                newDataSeg.setMmapReadController(messageStore.getMmapReadController());
+                this.dataSegments.append(newDataSeg);
             }
             // filling index data.
             final long inDataOffset = indexBuffer.getLong(DataStoreUtils.INDEX_POS_DATAOFFSET);
@@ -165,8 +190,10 @@ public class MsgFileStore implements Closeable {
                 logger.info(sb.append("[File Store] Created index segment ")
                     .append(newIndexFile.getAbsolutePath()).toString());
                 sb.delete(0, sb.length());
-                this.indexSegments.append(new FileSegment(newIndexOffset,
-                    newIndexFile, SegmentType.INDEX));
+                final Segment newIndexSeg =
+                    new FileSegment(newIndexOffset, newIndexFile, SegmentType.INDEX);
+                newIndexSeg.setMmapReadController(messageStore.getMmapReadController());
+                this.indexSegments.append(newIndexSeg);
             }
             // check whether need to flush to disk.
             long currTime = System.currentTimeMillis();
@@ -175,13 +202,21 @@ public class MsgFileStore implements Closeable {
             if ((isMsgCntFlushed = this.curUnflushed.addAndGet(msgCnt) >= messageStore.getUnflushThreshold())
                 || (isMsgTimeFushed = currTime - this.lastFlushTime.get() >= messageStore.getUnflushInterval())
                 || isDataFlushed || isDataSegFlushed || isIndexFlushed) {
-                boolean forceMetadata = (isDataSegFlushed || isIndexFlushed
-                    || (currTime - this.lastMetaFlushTime.get() > MAX_META_REFRESH_DUR));
-                if (!isDataSegFlushed) {
-                    curDataSeg.flush(forceMetadata);
-                }
-                if (!isIndexFlushed) {
-                    curIndexSeg.flush(forceMetadata);
+                if (this.diskFlushService == null) {
+                    boolean forceMetadata = (isDataSegFlushed || isIndexFlushed
+                        || (currTime - this.lastMetaFlushTime.get() > MAX_META_REFRESH_DUR));
+                    if (!isDataSegFlushed) {
+                        curDataSeg.flush(forceMetadata);
+                    }
+                    if (!isIndexFlushed) {
+                        curIndexSeg.flush(forceMetadata);
+                    }
+                    if (forceMetadata) {
+                        this.lastMetaFlushTime.set(System.currentTimeMillis());
+                    }
+                } else {
+                    // the fsync is done by the disk flusher out of the write lock
+                    requestFlush();
                 }
                 // add statistics.
                 msgFileStatisInfo.addFullTypeCount(currTime,
@@ -190,9 +225,6 @@ public class MsgFileStore implements Closeable {
                 this.curUnflushSize.set(0);
                 this.curUnflushed.set(0);
                 this.lastFlushTime.set(System.currentTimeMillis());
-                if (forceMetadata) {
-                    this.lastMetaFlushTime.set(System.currentTimeMillis());
-                }
             }
             // print abnormal information
             if (inIndexOffset != indexOffset || inDataOffset != dataOffset) {
@@ -226,7 +258,6 @@ public class MsgFileStore implements Closeable {
      * @param indexBuffer
      * @param isFilterConsume
      * @param filterKeySet
-     * @param statisKeyBase
      * @param maxMsgTransferSize
      * @return
      */
@@ -234,8 +265,31 @@ public class MsgFileStore implements Closeable {
                                         final long reqOffset, final ByteBuffer indexBuffer,
                                         final boolean isFilterConsume,
                                         final Set<Integer> filterKeySet,
-                                        final String statisKeyBase,
                                         final int maxMsgTransferSize) {
+        return getMessages(partitionId, lastRdOffset, reqOffset, indexBuffer,
+                isFilterConsume, filterKeySet, maxMsgTransferSize, false);
+    }
+
+    /***
+     * Get message from data file by index, if useFileRegion is true, the
+     * messages are returned as file regions and sent to socket from file directly.
+     *
+     * @param partitionId          the partition id
+     * @param lastRdOffset         the last read data offset
+     * @param reqOffset            the request index offset
+     * @param indexBuffer          the index data
+     * @param isFilterConsume      whether is filter consume
+     * @param filterKeySet         the filter key set
+     * @param maxMsgTransferSize   the max transfer size
+     * @param useFileRegion        whether return messages as file regions
+     * @return the query result
+     */
+    public GetMessageResult getMessages(final int partitionId, final long lastRdOffset,
+                                        final long reqOffset, final ByteBuffer indexBuffer,
+                                        final boolean isFilterConsume,
+                                        final Set<Integer> filterKeySet,
+                                        final int maxMsgTransferSize,
+                                        final boolean useFileRegion) {
         // #lizard forgives
         //　Orderly read from index file, then random read from data file.
         int retCode = 0;
@@ -253,14 +307,23 @@ public class MsgFileStore implements Closeable {
         long recvTimeInMillsec = 0L;
         long maxDataLimitOffset = 0L;
         long lastRdDataOffset = 0L;
+        int readSize = 0;
+        int fileRegionMsgCnt = 0;
+        Segment regionSeg = null;
+        long regionStartOffset = 0L;
+        long regionEndOffset = 0L;
         final StringBuilder sBuilder = new StringBuilder(512);
         final long curDataMaxOffset = getDataMaxOffset();
         final long curDataMinOffset = getDataMinOffset();
-        HashMap<String, CountItem> countMap = new HashMap<>();
-        ByteBuffer dataBuffer =
-                ByteBuffer.allocate(TServerConstants.CFG_STORE_DEFAULT_MSG_READ_UNIT);
+        final MsgTimeCounter countMap = new MsgTimeCounter();
+        final ReadBufferPool bufferPool = messageStore.getReadBufferPool();
+        ByteBuffer dataBuffer = (bufferPool == null)
+                ? ByteBuffer.allocate(TServerConstants.CFG_STORE_DEFAULT_MSG_READ_UNIT)
+                : bufferPool.borrowBuffer(ReadBufferPool.BufferType.DATA,
+                        TServerConstants.CFG_STORE_DEFAULT_MSG_READ_UNIT);
         List<ClientBroker.TransferedMessage> transferedMessageList =
                 new ArrayList<>();
+        List<RpcFileRegion> fileRegionList = new ArrayList<>();
         // read data file by index.
         for (curIndexOffset = 0; curIndexOffset < indexBuffer.remaining();
              curIndexOffset += DataStoreUtils.STORE_INDEX_HEAD_LEN) {
@@ -309,15 +372,20 @@ public class MsgFileStore implements Closeable {
                         throw new Exception("Read Service has closed!");
                     }
                 }
-                if (dataBuffer.capacity() < curIndexDataSize) {
-                    dataBuffer = ByteBuffer.allocate(curIndexDataSize);
+                // only read the message head when transfer from file directly
+                readSize = useFileRegion
+                        ? Math.min(curIndexDataSize, DataStoreUtils.STORE_DATA_PEEK_LEN)
+                        : curIndexDataSize;
+                dataBuffer = readData(recordSeg, dataBuffer, curIndexDataOffset, readSize);
+                if (useFileRegion && dataBuffer.limit() == readSize) {
+                    int peekSize = DataStoreUtils.getMsgPeekSize(dataBuffer, curIndexDataSize);
+                    if (peekSize > readSize) {
+                        readSize = peekSize;
+                        dataBuffer = readData(recordSeg, dataBuffer, curIndexDataOffset, readSize);
+                    }
                 }
-                dataBuffer.clear();
-                dataBuffer.limit(curIndexDataSize);
-                recordSeg.read(dataBuffer, curIndexDataOffset);
-                dataBuffer.flip();
                 dataRealLimit = dataBuffer.limit();
-                if (dataRealLimit < curIndexDataSize) {
+                if (dataRealLimit < readSize) {
                     lastRdDataOffset = curIndexDataOffset;
                     readedOffset = curIndexOffset + DataStoreUtils.STORE_INDEX_HEAD_LEN;
                     continue;
@@ -339,25 +407,49 @@ public class MsgFileStore implements Closeable {
             // build query result.
             readedOffset = curIndexOffset + DataStoreUtils.STORE_INDEX_HEAD_LEN;
             lastRdDataOffset = maxDataLimitOffset;
-            ClientBroker.TransferedMessage transferedMessage =
-                    DataStoreUtils.getTransferMsg(dataBuffer,
-                            curIndexDataSize, countMap, statisKeyBase, sBuilder);
-            if (transferedMessage == null) {
-                continue;
+            if (useFileRegion) {
+                if (!DataStoreUtils.countRegionMsg(dataBuffer,
+                        curIndexDataSize, countMap)) {
+                    continue;
+                }
+                // merge the adjacent messages into one file region
+                if (regionSeg == recordSeg && regionEndOffset == curIndexDataOffset) {
+                    regionEndOffset = maxDataLimitOffset;
+                } else {
+                    addFileRegion(fileRegionList, regionSeg, regionStartOffset, regionEndOffset);
+                    // the region holds the segment until it has been sent,
+                    // always succeed as recordSeg is held by current read
+                    recordSeg.acquireViewRef();
+                    regionSeg = recordSeg;
+                    regionStartOffset = curIndexDataOffset;
+                    regionEndOffset = maxDataLimitOffset;
+                }
+                fileRegionMsgCnt++;
+            } else {
+                ClientBroker.TransferedMessage transferedMessage =
+                        DataStoreUtils.getTransferMsg(dataBuffer,
+                                curIndexDataSize, countMap);
+                if (transferedMessage == null) {
+                    continue;
+                }
+                transferedMessageList.add(transferedMessage);
             }
-            transferedMessageList.add(transferedMessage);
             totalSize += curIndexDataSize;
             // break when exceed the max transfer size.
             if (totalSize >= maxMsgTransferSize) {
                 break;
             }
         }
+        addFileRegion(fileRegionList, regionSeg, regionStartOffset, regionEndOffset);
         // release resource
         if (recordSeg != null) {
             recordSeg.relViewRef();
         }
+        if (bufferPool != null) {
+            bufferPool.returnBuffer(ReadBufferPool.BufferType.DATA, dataBuffer);
+        }
         if (retCode != 0) {
-            if (!transferedMessageList.isEmpty()) {
+            if (!transferedMessageList.isEmpty() || fileRegionMsgCnt > 0) {
                 retCode = 0;
                 errInfo = "Ok";
             }
@@ -366,9 +458,39 @@ public class MsgFileStore implements Closeable {
             lastRdDataOffset = lastRdOffset;
         }
         // return result.
-        return new GetMessageResult(result, retCode, errInfo,
+        GetMessageResult getResult = new GetMessageResult(result, retCode, errInfo,
                 reqOffset, readedOffset, lastRdDataOffset,
                 totalSize, countMap, transferedMessageList);
+        getResult.setFileRegions(fileRegionList, fileRegionMsgCnt);
+        return getResult;
+    }
+
+    private ByteBuffer readData(final Segment recordSeg, ByteBuffer dataBuffer,
+                                final long dataOffset, final int readSize) throws IOException {
+        if (dataBuffer.capacity() < readSize) {
+            dataBuffer = ByteBuffer.allocate(readSize);
+        }
+        dataBuffer.clear();
+        dataBuffer.limit(readSize);
+        recordSeg.read(dataBuffer, dataOffset);
+        dataBuffer.flip();
+        return dataBuffer;
+    }
+
+    private void addFileRegion(final List<RpcFileRegion> fileRegionList,
+                               final Segment regionSeg, final long startOffset,
+                               final long endOffset) {
+        if (regionSeg == null) {
+            return;
+        }
+        fileRegionList.add(new RpcFileRegion(regionSeg.getFileChannel(),
+                startOffset - regionSeg.getStart(), endOffset - startOffset,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        regionSeg.relViewRef();
+                    }
+                }));
     }
 
     @Override
@@ -386,6 +508,7 @@ public class MsgFileStore implements Closeable {
 
     /***
      * Clean expired data files and index files.
+     * The sealed files are expired by the valid duration first, then by the size quota of the store.
      *
      * @param onlyCheck
      * @return
@@ -393,10 +516,26 @@ public class MsgFileStore implements Closeable {
     public boolean runClearupPolicy(boolean onlyCheck) {
         final StringBuilder sBuilder = new StringBuilder(512);
         final long start = System.currentTimeMillis();
+        final long beforeDataSize = dataSegments.getSizeInBytes();
         boolean hasExpiredDataSegs =
                 dataSegments.checkExpiredSegments(start, messageStore.getMaxFileValidDurMs());
         boolean hasExpiredIndexSegs =
                 indexSegments.checkExpiredSegments(start, messageStore.getMaxFileValidDurMs());
+        final long afterDataSize = dataSegments.getSizeInBytes();
+        if (afterDataSize < beforeDataSize) {
+            timeExpiredBytes.addAndGet(beforeDataSize - afterDataSize);
+            lastExpiredTime.set(start);
+        }
+        final long maxFileValidSize = messageStore.getMaxFileValidSize();
+        if (maxFileValidSize > 0) {
+            long expiredSize = dataSegments.expireSegmentsBySize(maxFileValidSize);
+            if (expiredSize > 0) {
+                sizeExpiredBytes.addAndGet(expiredSize);
+                lastExpiredTime.set(start);
+                hasExpiredDataSegs = true;
+                hasExpiredIndexSegs |= expireIndexSegmentsByData();
+            }
+        }
         if (onlyCheck) {
             return (hasExpiredDataSegs || hasExpiredIndexSegs);
         }
@@ -409,6 +548,103 @@ public class MsgFileStore implements Closeable {
         return (hasExpiredDataSegs || hasExpiredIndexSegs);
     }
 
+    /***
+     * Expire the oldest sealed data file and the index files only referring to it,
+     * used when the disk usage is above the watermark.
+     *
+     * @return the size of the expired data file, 0 if there is no sealed data file
+     */
+    public long expireOldestSegment() {
+        long expiredSize = dataSegments.expireOldestSegment();
+        if (expiredSize > 0) {
+            diskExpiredBytes.addAndGet(expiredSize);
+            lastExpiredTime.set(System.currentTimeMillis());
+            expireIndexSegmentsByData();
+        }
+        return expiredSize;
+    }
+
+    /***
+     * Expire the sealed index files whose records all refer to the expired data files.
+     *
+     * @return true if any index file is expired
+     */
+    private boolean expireIndexSegmentsByData() {
+        boolean hasExpired = false;
+        final long dataMinOffset = dataSegments.getMinOffset();
+        final ByteBuffer lastIndexBuf =
+                ByteBuffer.allocate(DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        for (Segment segment : indexSegments.getView()) {
+            if (segment == null || segment.isExpired()) {
+                continue;
+            }
+            if (segment.isMutable()
+                    || segment.getCachedSize() < DataStoreUtils.STORE_INDEX_HEAD_LEN
+                    || !segment.acquireViewRef()) {
+                break;
+            }
+            try {
+                lastIndexBuf.clear();
+                segment.read(lastIndexBuf,
+                        segment.getCommitLast() - DataStoreUtils.STORE_INDEX_HEAD_LEN);
+                lastIndexBuf.flip();
+                if (lastIndexBuf.remaining() < DataStoreUtils.STORE_INDEX_HEAD_LEN) {
+                    break;
+                }
+                long lastDataOffset = lastIndexBuf.getLong(DataStoreUtils.INDEX_POS_DATAOFFSET);
+                int lastDataSize = lastIndexBuf.getInt(DataStoreUtils.INDEX_POS_MSG_SIZE);
+                if (lastDataOffset + lastDataSize > dataMinOffset) {
+                    break;
+                }
+            } catch (Throwable e) {
+                logger.warn(new StringBuilder(512).append("[File Store] ")
+                        .append(storeKey).append(" read last index record failure!").toString(), e);
+                break;
+            } finally {
+                segment.relViewRef();
+            }
+            hasExpired |= segment.setExpired();
+        }
+        return hasExpired;
+    }
+
+    public long getOldestSealedTime() {
+        return dataSegments.getOldestSealedTime();
+    }
+
+    public long getExpiredSizeInBytes() {
+        return dataSegments.getExpiredSizeInBytes()
+                + indexSegments.getExpiredSizeInBytes();
+    }
+
+    public long getTimeExpiredBytes() {
+        return timeExpiredBytes.get();
+    }
+
+    public long getSizeExpiredBytes() {
+        return sizeExpiredBytes.get();
+    }
+
+    public long getDiskExpiredBytes() {
+        return diskExpiredBytes.get();
+    }
+
+    public long getLastExpiredTime() {
+        return lastExpiredTime.get();
+    }
+
+    public long getRecoverDurMs() {
+        return recoverDurMs;
+    }
+
+    public long getRecoverScannedBytes() {
+        return recoverScannedBytes;
+    }
+
+    public long getRecoverTruncatedBytes() {
+        return recoverTruncatedBytes;
+    }
+
     /***
      * Flush data to disk at interval.
      *
@@ -424,12 +660,10 @@ public class MsgFileStore implements Closeable {
                 checkTimestamp = System.currentTimeMillis();
                 if (curUnflushed.get() >= 0
                         && checkTimestamp - lastFlushTime.get() >= messageStore.getUnflushInterval()) {
-                    boolean forceMetadata =
-                            checkTimestamp - lastMetaFlushTime.get() > MAX_META_REFRESH_DUR;
-                    dataSegments.flushLast(forceMetadata);
-                    indexSegments.flushLast(forceMetadata);
-                    if (forceMetadata) {
-                        this.lastMetaFlushTime.set(checkTimestamp);
+                    if (this.diskFlushService == null) {
+                        forceFlush();
+                    } else {
+                        requestFlush();
                     }
                     msgFileStatisInfo.addFullTypeCount(checkTimestamp, false, false,
                             false, false, false, curUnflushSize.get(), curUnflushed.get());
@@ -444,6 +678,48 @@ public class MsgFileStore implements Closeable {
         return;
     }
 
+    /***
+     * Request to force the written data to disk, the request is coalesced
+     * with the other stores of the data directory by the disk flusher.
+     *
+     * @throws IOException
+     */
+    public void requestFlush() throws IOException {
+        if (this.diskFlushService == null) {
+            forceFlush();
+            return;
+        }
+        if (this.flushRequested.compareAndSet(false, true)) {
+            this.diskFlushService.requestFlush(this);
+        }
+    }
+
+    /***
+     * Force the written data and index to disk, the data is forced before the index,
+     * so the flushed index never refers to the unflushed data.
+     *
+     * @throws IOException
+     */
+    public void forceFlush() throws IOException {
+        this.flushRequested.set(false);
+        if (this.closed.get()) {
+            return;
+        }
+        final long checkTimestamp = System.currentTimeMillis();
+        final boolean forceMetadata =
+                checkTimestamp - lastMetaFlushTime.get() > MAX_META_REFRESH_DUR;
+        dataSegments.flushLast(forceMetadata);
+        indexSegments.flushLast(forceMetadata);
+        if (forceMetadata) {
+            this.lastMetaFlushTime.set(checkTimestamp);
+        }
+        messageStore.notifyAckWaiters();
+    }
+
+    public String getStoreKey() {
+        return storeKey;
+    }
+
     public long getDataSizeInBytes() {
         return dataSegments.getSizeInBytes();
     }
@@ -476,6 +752,55 @@ public class MsgFileStore implements Closeable {
         return this.indexSegments.getMinOffset();
     }
 
+    /***
+     * Get the offset of the first index record received at or after the timestamp.
+     *
+     * @param timestamp   the timestamp in milliseconds
+     * @return the index offset, or -1 if all stored records are received before the timestamp
+     * @throws IOException
+     */
+    public long getIndexOffsetByTime(final long timestamp) throws IOException {
+        return this.indexSegments.getOffsetByTime(timestamp);
+    }
+
+    /***
+     * Skip the index blocks that hold none of the filter key codes, so a filter consume
+     * starts reading from the first block that may hold the subscribed messages.
+     *
+     * @param offset        the index offset to start
+     * @param keyCodes      the filter key codes
+     * @param maxSkipSize   the max bytes to skip
+     * @return the index offset to start reading, always less than the flushed index offset
+     * @throws IOException
+     */
+    public long skipUnmatchedIndex(final long offset, final Set<Integer> keyCodes,
+                                   final int maxSkipSize) throws IOException {
+        long curOffset = offset;
+        final long maxOffset = Math.min(getIndexMaxHighOffset(),
+                offset + maxSkipSize - maxSkipSize % DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        while (curOffset < maxOffset) {
+            final Segment recordSeg = indexSegments.getRecordSeg(curOffset);
+            if (recordSeg == null) {
+                break;
+            }
+            long nextOffset;
+            try {
+                nextOffset = recordSeg.skipUnmatchedRecords(curOffset, keyCodes);
+            } finally {
+                recordSeg.relViewRef();
+            }
+            if (nextOffset <= curOffset) {
+                break;
+            }
+            curOffset = nextOffset;
+        }
+        // keep at least one record to read, so the read offset always moves on
+        if (curOffset >= maxOffset) {
+            curOffset = Math.max(offset, maxOffset - DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        }
+        return curOffset;
+    }
+
     public Segment indexSlice(final long offset, final int maxSize) throws IOException {
         return indexSegments.getRecordSeg(offset);
     }
@@ -560,9 +885,14 @@ public class MsgFileStore implements Closeable {
                 sBuilder.delete(0, sBuilder.length());
                 final FileSegment mutable =
                         new FileSegment(last.getStart(), last.getFile(), segType, Long.MAX_VALUE);
+                this.recoverScannedBytes += mutable.getRecoverScannedBytes();
+                this.recoverTruncatedBytes += mutable.getRecoverTruncatedBytes();
                 accum.add(mutable);
             }
         }
+        for (Segment segment : accum) {
+            segment.setMmapReadController(messageStore.getMmapReadController());
+        }
         if (segType == SegmentType.DATA) {
             this.dataSegments = new FileSegmentList(accum.toArray(new Segment[accum.size()]));
         } else {
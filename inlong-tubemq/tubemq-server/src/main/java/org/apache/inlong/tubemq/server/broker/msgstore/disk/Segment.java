@@ -20,6 +20,8 @@ package org.apache.inlong.tubemq.server.broker.msgstore.disk;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
 
 /***
  * Storage segment, usually implemented in file format.
@@ -34,6 +36,8 @@ public interface Segment {
 
     int checkAndSetExpired(long checkTimestamp, long maxValidTimeMs);
 
+    boolean setExpired();
+
     boolean isClosed();
 
     boolean needDelete();
@@ -60,8 +64,18 @@ public interface Segment {
 
     void setMutable(boolean mutable);
 
+    boolean acquireViewRef();
+
     void relViewRef();
 
+    void setMmapReadController(MmapReadController mmapReadController);
+
     void read(ByteBuffer bf, long offset) throws IOException;
 
+    FileChannel getFileChannel();
+
+    long getOffsetByTime(long timestamp) throws IOException;
+
+    long skipUnmatchedRecords(long offset, Set<Integer> keyCodes) throws IOException;
+
 }
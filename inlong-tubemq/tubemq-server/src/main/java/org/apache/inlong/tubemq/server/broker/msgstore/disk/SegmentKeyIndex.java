@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore.disk;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/***
+ * Key code summary of an index segment, kept in memory.
+ *
+ * The index records are grouped into blocks of BLOCK_RECORD_CNT records, each block
+ * keeps a bloom filter of the key codes of its records. A filter consume skips the
+ * blocks whose filters contain none of the subscribed key codes without reading them.
+ */
+public class SegmentKeyIndex {
+    // record count of a block
+    public static final int BLOCK_RECORD_CNT = 1024;
+    // bloom filter size of a block, in bits and in longs
+    private static final int BLOCK_FILTER_BITS = 1024;
+    private static final int BLOCK_FILTER_LONGS = BLOCK_FILTER_BITS / 64;
+    private static final int HASH_FUNC_CNT = 3;
+    private long[] filterBits = new long[BLOCK_FILTER_LONGS * 16];
+    private long recordCnt = 0;
+    private volatile boolean built;
+
+    public SegmentKeyIndex(boolean built) {
+        this.built = built;
+    }
+
+    /***
+     * Add the key code of an index record appended to the segment.
+     *
+     * @param keyCode   the key code of the message
+     */
+    public synchronized void addRecord(int keyCode) {
+        final int filterBase = (int) (recordCnt / BLOCK_RECORD_CNT) * BLOCK_FILTER_LONGS;
+        if (filterBase + BLOCK_FILTER_LONGS > filterBits.length) {
+            filterBits = Arrays.copyOf(filterBits, filterBits.length * 2);
+        }
+        final int hash1 = mixHash(keyCode);
+        final int hash2 = (hash1 >>> 16) | 1;
+        for (int i = 0; i < HASH_FUNC_CNT; i++) {
+            int bitPos = ((hash1 + i * hash2) & Integer.MAX_VALUE) % BLOCK_FILTER_BITS;
+            filterBits[filterBase + (bitPos >>> 6)] |= 1L << bitPos;
+        }
+        recordCnt++;
+    }
+
+    /***
+     * Skip the blocks that hold none of the key codes, starting from the record.
+     *
+     * @param startRecord   the sequence of the record in the segment to start
+     * @param keyCodes      the key codes to match
+     * @param isSealed      whether the segment is sealed, the last block of a
+     *                      sealed segment can be skipped even if not full
+     * @return the sequence of the first record may match the key codes
+     */
+    public synchronized long skipUnmatchedBlocks(long startRecord,
+                                                 Set<Integer> keyCodes,
+                                                 boolean isSealed) {
+        if (keyCodes == null || keyCodes.isEmpty()) {
+            return startRecord;
+        }
+        int index = 0;
+        final int[] bitPositions = new int[keyCodes.size() * HASH_FUNC_CNT];
+        for (Integer keyCode : keyCodes) {
+            final int hash1 = mixHash(keyCode);
+            final int hash2 = (hash1 >>> 16) | 1;
+            for (int i = 0; i < HASH_FUNC_CNT; i++) {
+                bitPositions[index++] = ((hash1 + i * hash2) & Integer.MAX_VALUE) % BLOCK_FILTER_BITS;
+            }
+        }
+        long curRecord = startRecord;
+        while (curRecord < recordCnt) {
+            final long blockEndRecord = (curRecord / BLOCK_RECORD_CNT + 1) * BLOCK_RECORD_CNT;
+            if ((blockEndRecord > recordCnt && !isSealed)
+                    || mightContain((int) (curRecord / BLOCK_RECORD_CNT), bitPositions)) {
+                break;
+            }
+            curRecord = Math.min(blockEndRecord, recordCnt);
+        }
+        return curRecord;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public void setBuilt() {
+        this.built = true;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(filterBits, 0L);
+        recordCnt = 0;
+    }
+
+    private boolean mightContain(int block, int[] bitPositions) {
+        final int filterBase = block * BLOCK_FILTER_LONGS;
+        for (int i = 0; i < bitPositions.length; i += HASH_FUNC_CNT) {
+            boolean allSet = true;
+            for (int j = i; j < i + HASH_FUNC_CNT; j++) {
+                if ((filterBits[filterBase + (bitPositions[j] >>> 6)] & (1L << bitPositions[j])) == 0) {
+                    allSet = false;
+                    break;
+                }
+            }
+            if (allSet) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int mixHash(int keyCode) {
+        int hash = keyCode * 0x9E3779B9;
+        return hash ^ (hash >>> 15);
+    }
+}
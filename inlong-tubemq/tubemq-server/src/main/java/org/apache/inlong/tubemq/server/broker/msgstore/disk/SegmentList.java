@@ -38,6 +38,14 @@ public interface SegmentList {
 
     boolean checkExpiredSegments(long checkTimestamp, long fileValidTimeMs);
 
+    long expireSegmentsBySize(long maxSizeInBytes);
+
+    long expireOldestSegment();
+
+    long getOldestSealedTime();
+
+    long getExpiredSizeInBytes();
+
     void delExpiredSegments(StringBuilder sb);
 
     void flushLast(boolean force) throws IOException;
@@ -52,4 +60,6 @@ public interface SegmentList {
 
     Segment getRecordSeg(long offset) throws IOException;
 
+    long getOffsetByTime(long timestamp) throws IOException;
+
 }
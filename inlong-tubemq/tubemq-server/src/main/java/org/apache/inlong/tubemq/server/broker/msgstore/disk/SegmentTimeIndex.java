@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore.disk;
+
+import java.util.Arrays;
+
+/***
+ * Sparse time index of an index segment, kept in memory.
+ *
+ * One sample is taken every SAMPLE_INTERVAL index records, holding the record's
+ * offset and the max receive time of the records before it. The receive time of
+ * records is nearly increasing, so a lookup finds the sample just before the
+ * timestamp, and only scans the records after the sample.
+ */
+public class SegmentTimeIndex {
+    // record count between two samples
+    public static final int SAMPLE_INTERVAL = 64;
+    private long[] sampleOffsets = new long[16];
+    private long[] sampleTimes = new long[16];
+    private int sampleCnt = 0;
+    private long recordCnt = 0;
+    private long maxTimeRecv = Long.MIN_VALUE;
+    private volatile boolean built;
+
+    public SegmentTimeIndex(boolean built) {
+        this.built = built;
+    }
+
+    /***
+     * Add an index record appended to the segment.
+     *
+     * @param recordOffset   the offset of the index record
+     * @param timeRecv       the receive time of the message
+     */
+    public synchronized void addRecord(long recordOffset, long timeRecv) {
+        if (recordCnt++ % SAMPLE_INTERVAL == 0) {
+            if (sampleCnt == sampleOffsets.length) {
+                sampleOffsets = Arrays.copyOf(sampleOffsets, sampleCnt * 2);
+                sampleTimes = Arrays.copyOf(sampleTimes, sampleCnt * 2);
+            }
+            sampleOffsets[sampleCnt] = recordOffset;
+            sampleTimes[sampleCnt] = maxTimeRecv;
+            sampleCnt++;
+        }
+        maxTimeRecv = Math.max(maxTimeRecv, timeRecv);
+    }
+
+    /***
+     * Find the offset to start scanning for the first record received at or after the timestamp.
+     *
+     * @param timestamp   the timestamp in milliseconds
+     * @return the offset of the record to start scanning, or -1 if all records are received before it
+     */
+    public synchronized long getScanStartOffset(long timestamp) {
+        if (sampleCnt == 0 || maxTimeRecv < timestamp) {
+            return -1;
+        }
+        // the last sample whose preceding records are all received before the timestamp
+        int low = 0;
+        int high = sampleCnt - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (sampleTimes[mid] < timestamp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return sampleOffsets[low];
+    }
+
+    public synchronized long getMaxTimeRecv() {
+        return maxTimeRecv;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public void setBuilt() {
+        this.built = true;
+    }
+
+    public synchronized void clear() {
+        sampleCnt = 0;
+        recordCnt = 0;
+        maxTimeRecv = Long.MIN_VALUE;
+    }
+}
@@ -25,9 +25,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
-import org.apache.inlong.tubemq.corebase.TBaseConstants;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.inlong.tubemq.corebase.TErrCodeConstants;
+import org.apache.inlong.tubemq.corebase.utils.CheckSum;
 import org.apache.inlong.tubemq.server.broker.BrokerConfig;
 import org.apache.inlong.tubemq.server.broker.metadata.ClusterConfigHolder;
 import org.apache.inlong.tubemq.server.broker.msgstore.disk.MsgFileStore;
@@ -42,23 +43,24 @@ import sun.nio.ch.DirectBuffer;
  */
 public class MsgMemStore implements Closeable {
     private static final Logger logger = LoggerFactory.getLogger(MsgMemStore.class);
-    //　statistics of memory store
-    private final AtomicInteger cacheDataOffset = new AtomicInteger(0);
-    private final AtomicInteger cacheIndexOffset = new AtomicInteger(0);
-    private final AtomicInteger curMessageCount = new AtomicInteger(0);
-    private final ReentrantLock writeLock = new ReentrantLock();
+    //　reserved position of memory store, message count in the high 32 bits and data size in the low 32 bits
+    private final AtomicLong reservedPos = new AtomicLong(0);
+    //　published position, the records before it are fully written and visible to readers
+    private final AtomicLong publishedPos = new AtomicLong(0);
+    //　data size of each committed record, 0 means the record is not committed yet
+    private final AtomicIntegerArray committedSizes;
     //　partitionId to index position, accelerate query
-    private final ConcurrentHashMap<Integer, Integer> queuesMap =
+    private final ConcurrentHashMap<Integer, AtomicInteger> queuesMap =
             new ConcurrentHashMap<>(20);
     //　key to index position, used for filter consume
-    private final ConcurrentHashMap<Integer, Integer> keysMap =
+    private final ConcurrentHashMap<Integer, AtomicInteger> keysMap =
             new ConcurrentHashMap<>(100);
     //　where messages in memory will sink to disk
     private int maxDataCacheSize;
-    private long writeDataStartPos = -1;
+    private volatile long writeDataStartPos = -1;
     private ByteBuffer cacheDataSegment;
     private int maxIndexCacheSize;
-    private long writeIndexStartPos = -1;
+    private volatile long writeIndexStartPos = -1;
     private ByteBuffer cachedIndexSegment;
     private int maxAllowedMsgCount;
 
@@ -69,6 +71,7 @@ public class MsgMemStore implements Closeable {
         this.maxIndexCacheSize = this.maxAllowedMsgCount * DataStoreUtils.STORE_INDEX_HEAD_LEN;
         this.cacheDataSegment = ByteBuffer.allocateDirect(this.maxDataCacheSize);
         this.cachedIndexSegment = ByteBuffer.allocateDirect(this.maxIndexCacheSize);
+        this.committedSizes = new AtomicIntegerArray(this.maxAllowedMsgCount);
     }
 
     public void resetStartPos(long writeDataStartPos, long writeIndexStartPos) {
@@ -77,6 +80,20 @@ public class MsgMemStore implements Closeable {
         this.writeIndexStartPos = writeIndexStartPos;
     }
 
+    /***
+     * Append a message without lock. The data and index space is reserved by CAS,
+     * then the message is copied and committed, the committed records are published in the
+     * reserved order by whichever writer finds them contiguous, so no writer waits for another.
+     *
+     * @param msgMemStatisInfo
+     * @param partitionId
+     * @param keyCode
+     * @param timeRecv
+     * @param entryLength
+     * @param entry
+     * @param appendResult
+     * @return false if the memory store is full
+     */
     public boolean appendMsg(final MsgMemStatisInfo msgMemStatisInfo,
                              final int partitionId, final int keyCode,
                              final long timeRecv, final int entryLength,
@@ -84,43 +101,242 @@ public class MsgMemStore implements Closeable {
         boolean fullDataSize = false;
         boolean fullIndexSize = false;
         boolean fullCount = false;
-        long indexOffset = TBaseConstants.META_VALUE_UNDEFINED;
-        long dataOffset = TBaseConstants.META_VALUE_UNDEFINED;
-        this.writeLock.lock();
-        try {
+        long curPos;
+        long newPos;
+        do {
+            curPos = this.reservedPos.get();
+            final int curDataSize = getDataSize(curPos);
+            final int curMsgCount = getMsgCount(curPos);
             //　judge whether can write to memory or not.
-            if ((fullDataSize = (this.cacheDataOffset.get() + entryLength > this.maxDataCacheSize))
+            if ((fullDataSize = (curDataSize + entryLength > this.maxDataCacheSize))
                 || (fullIndexSize =
-                (this.cacheIndexOffset.get() + DataStoreUtils.STORE_INDEX_HEAD_LEN > this.maxIndexCacheSize))
-                || (fullCount = (this.curMessageCount.get() + 1 > maxAllowedMsgCount))) {
+                ((curMsgCount + 1) * DataStoreUtils.STORE_INDEX_HEAD_LEN > this.maxIndexCacheSize))
+                || (fullCount = (curMsgCount + 1 > maxAllowedMsgCount))) {
                 msgMemStatisInfo.addFullTypeCount(timeRecv, fullDataSize, fullIndexSize, fullCount);
                 return false;
             }
-            // conduct message with filling process
-            indexOffset = this.writeIndexStartPos + this.cacheIndexOffset.get();
-            dataOffset = this.writeDataStartPos + this.cacheDataOffset.get();
-            entry.putLong(DataStoreUtils.STORE_HEADER_POS_QUEUE_LOGICOFF, indexOffset);
-            this.cacheDataSegment.position(this.cacheDataOffset.get());
-            this.cacheDataSegment.put(entry.array());
-            this.cachedIndexSegment.position(this.cacheIndexOffset.get());
-            this.cachedIndexSegment.putInt(partitionId);
-            this.cachedIndexSegment.putLong(dataOffset);
-            this.cachedIndexSegment.putInt(entryLength);
-            this.cachedIndexSegment.putInt(keyCode);
-            this.cachedIndexSegment.putLong(timeRecv);
-            this.cacheDataOffset.getAndAdd(entryLength);
-            Integer indexSizePos = this.cacheIndexOffset.getAndAdd(DataStoreUtils.STORE_INDEX_HEAD_LEN);
-            this.queuesMap.put(partitionId, indexSizePos);
-            this.keysMap.put(keyCode, indexSizePos);
-            this.curMessageCount.getAndAdd(1);
-            msgMemStatisInfo.addMsgSizeStatis(timeRecv, entryLength);
+            newPos = toPosition(curMsgCount + 1, curDataSize + entryLength);
+        } while (!this.reservedPos.compareAndSet(curPos, newPos));
+        // conduct message with filling process
+        final int dataPos = getDataSize(curPos);
+        final int indexPos = getMsgCount(curPos) * DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        final long indexOffset = this.writeIndexStartPos + indexPos;
+        final long dataOffset = this.writeDataStartPos + dataPos;
+        boolean isWritten = false;
+        try {
+            writeRecord(partitionId, keyCode, timeRecv, entryLength,
+                    entry, indexOffset, dataOffset, indexPos, dataPos);
+            isWritten = true;
         } finally {
-            this.writeLock.unlock();
+            if (!isWritten) {
+                writeTombstone(timeRecv, entryLength, indexOffset, dataOffset, indexPos, dataPos);
+            }
+            commitRecord(indexPos, entryLength);
+            publishCommitted();
         }
+        updateLastWritePos(this.queuesMap, partitionId, indexPos);
+        updateLastWritePos(this.keysMap, keyCode, indexPos);
+        msgMemStatisInfo.addMsgSizeStatis(timeRecv, entryLength);
         appendResult.putAppendResult(indexOffset, dataOffset);
         return true;
     }
 
+    /***
+     * Append a batch of messages of one partition with a single space reservation.
+     * The messages are appended in order until the cache is full.
+     *
+     * @param msgMemStatisInfo
+     * @param partitionId
+     * @param timeRecv
+     * @param keyCodes        the key code of each message
+     * @param entries         the store entry of each message
+     * @param startIndex      the index of the first message to append
+     * @param appendResults   the append result of each message
+     * @return the count of appended messages, start from startIndex
+     */
+    public int appendMsgs(final MsgMemStatisInfo msgMemStatisInfo,
+                          final int partitionId, final long timeRecv,
+                          final int[] keyCodes, final ByteBuffer[] entries,
+                          final int startIndex, final AppendResult[] appendResults) {
+        boolean fullDataSize = false;
+        boolean fullIndexSize = false;
+        boolean fullCount = false;
+        int appendCnt;
+        long curPos;
+        long newPos;
+        do {
+            fullDataSize = false;
+            fullIndexSize = false;
+            fullCount = false;
+            curPos = this.reservedPos.get();
+            int curDataSize = getDataSize(curPos);
+            int curMsgCount = getMsgCount(curPos);
+            for (appendCnt = 0; startIndex + appendCnt < entries.length; appendCnt++) {
+                int entryLength = entries[startIndex + appendCnt].limit();
+                if ((fullDataSize = (curDataSize + entryLength > this.maxDataCacheSize))
+                    || (fullIndexSize =
+                    ((curMsgCount + 1) * DataStoreUtils.STORE_INDEX_HEAD_LEN > this.maxIndexCacheSize))
+                    || (fullCount = (curMsgCount + 1 > maxAllowedMsgCount))) {
+                    break;
+                }
+                curDataSize += entryLength;
+                curMsgCount++;
+            }
+            newPos = toPosition(curMsgCount, curDataSize);
+        } while (appendCnt > 0 && !this.reservedPos.compareAndSet(curPos, newPos));
+        if (fullDataSize || fullIndexSize || fullCount) {
+            msgMemStatisInfo.addFullTypeCount(timeRecv, fullDataSize, fullIndexSize, fullCount);
+        }
+        if (appendCnt == 0) {
+            return 0;
+        }
+        int dataPos = getDataSize(curPos);
+        int indexPos = getMsgCount(curPos) * DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        int index = startIndex;
+        try {
+            for (; index < startIndex + appendCnt; index++) {
+                final int entryLength = entries[index].limit();
+                final long indexOffset = this.writeIndexStartPos + indexPos;
+                final long dataOffset = this.writeDataStartPos + dataPos;
+                writeRecord(partitionId, keyCodes[index], timeRecv, entryLength,
+                        entries[index], indexOffset, dataOffset, indexPos, dataPos);
+                appendResults[index].putAppendResult(indexOffset, dataOffset);
+                commitRecord(indexPos, entryLength);
+                dataPos += entryLength;
+                indexPos += DataStoreUtils.STORE_INDEX_HEAD_LEN;
+            }
+        } finally {
+            // replace the records not written with tombstones and commit them if failed
+            for (; index < startIndex + appendCnt; index++) {
+                final int entryLength = entries[index].limit();
+                writeTombstone(timeRecv, entryLength, this.writeIndexStartPos + indexPos,
+                        this.writeDataStartPos + dataPos, indexPos, dataPos);
+                commitRecord(indexPos, entryLength);
+                dataPos += entryLength;
+                indexPos += DataStoreUtils.STORE_INDEX_HEAD_LEN;
+            }
+            publishCommitted();
+        }
+        indexPos = getMsgCount(curPos) * DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        for (index = startIndex; index < startIndex + appendCnt; index++) {
+            updateLastWritePos(this.keysMap, keyCodes[index], indexPos);
+            msgMemStatisInfo.addMsgSizeStatis(timeRecv, entries[index].limit());
+            indexPos += DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        }
+        updateLastWritePos(this.queuesMap, partitionId,
+                indexPos - DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        return appendCnt;
+    }
+
+    private void writeRecord(final int partitionId, final int keyCode,
+                             final long timeRecv, final int entryLength,
+                             final ByteBuffer entry, final long indexOffset,
+                             final long dataOffset, final int indexPos, final int dataPos) {
+        entry.putLong(DataStoreUtils.STORE_HEADER_POS_QUEUE_LOGICOFF, indexOffset);
+        final ByteBuffer dataWriteBuf = this.cacheDataSegment.duplicate();
+        dataWriteBuf.position(dataPos);
+        dataWriteBuf.put(entry.array(), 0, entryLength);
+        this.cachedIndexSegment.putInt(indexPos + DataStoreUtils.INDEX_POS_PARTITIONID, partitionId);
+        this.cachedIndexSegment.putLong(indexPos + DataStoreUtils.INDEX_POS_DATAOFFSET, dataOffset);
+        this.cachedIndexSegment.putInt(indexPos + DataStoreUtils.INDEX_POS_MSG_SIZE, entryLength);
+        this.cachedIndexSegment.putInt(indexPos + DataStoreUtils.INDEX_POS_KEY_CODE, keyCode);
+        this.cachedIndexSegment.putLong(indexPos + DataStoreUtils.INDEX_POS_TIME_RECV, timeRecv);
+    }
+
+    /***
+     * Fill a reserved record not written with a tombstone. The reserved space is published
+     * and flushed as the other records, so the tombstone keeps a valid data header and index
+     * record for the recovery, and belongs to no partition so that the readers skip it.
+     *
+     * @param timeRecv     the received time
+     * @param entryLength  the reserved data length, larger than the data header
+     * @param indexOffset  the index offset of the record
+     * @param dataOffset   the data offset of the record
+     * @param indexPos     the index position of the record in the cache
+     * @param dataPos      the data position of the record in the cache
+     */
+    private void writeTombstone(final long timeRecv, final int entryLength,
+                                final long indexOffset, final long dataOffset,
+                                final int indexPos, final int dataPos) {
+        final ByteBuffer tombstone = ByteBuffer.allocate(entryLength);
+        tombstone.putInt(entryLength - DataStoreUtils.STORE_DATA_HEADER_LEN
+                + DataStoreUtils.STORE_DATA_PREFX_LEN);
+        tombstone.putInt(DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE);
+        tombstone.putInt(CheckSum.crc32(tombstone.array(), DataStoreUtils.STORE_DATA_HEADER_LEN,
+                entryLength - DataStoreUtils.STORE_DATA_HEADER_LEN));
+        tombstone.putInt(DataStoreUtils.STORE_TOMBSTONE_PARTITIONID);
+        tombstone.putLong(indexOffset);
+        tombstone.putLong(timeRecv);
+        tombstone.putInt(0);
+        tombstone.putInt(0);
+        tombstone.putLong(-1L);
+        tombstone.putInt(0);
+        final ByteBuffer dataWriteBuf = this.cacheDataSegment.duplicate();
+        dataWriteBuf.position(dataPos);
+        dataWriteBuf.put(tombstone.array(), 0, entryLength);
+        this.cachedIndexSegment.putInt(indexPos + DataStoreUtils.INDEX_POS_PARTITIONID,
+                DataStoreUtils.STORE_TOMBSTONE_PARTITIONID);
+        this.cachedIndexSegment.putLong(indexPos + DataStoreUtils.INDEX_POS_DATAOFFSET, dataOffset);
+        this.cachedIndexSegment.putInt(indexPos + DataStoreUtils.INDEX_POS_MSG_SIZE, entryLength);
+        this.cachedIndexSegment.putInt(indexPos + DataStoreUtils.INDEX_POS_KEY_CODE, 0);
+        this.cachedIndexSegment.putLong(indexPos + DataStoreUtils.INDEX_POS_TIME_RECV, timeRecv);
+    }
+
+    private void commitRecord(final int indexPos, final int entryLength) {
+        this.committedSizes.set(indexPos / DataStoreUtils.STORE_INDEX_HEAD_LEN, entryLength);
+    }
+
+    /***
+     * Move the published position over the contiguous committed records.
+     * The writer of a record before them will publish them if it is not committed yet.
+     */
+    private void publishCommitted() {
+        while (true) {
+            final long curPos = this.publishedPos.get();
+            final int curMsgCount = getMsgCount(curPos);
+            if (curMsgCount >= this.maxAllowedMsgCount) {
+                return;
+            }
+            final int recordSize = this.committedSizes.get(curMsgCount);
+            if (recordSize <= 0) {
+                return;
+            }
+            this.publishedPos.compareAndSet(curPos,
+                    toPosition(curMsgCount + 1, getDataSize(curPos) + recordSize));
+        }
+    }
+
+    private void updateLastWritePos(final ConcurrentHashMap<Integer, AtomicInteger> posMap,
+                                    final int key, final int indexPos) {
+        AtomicInteger lastWritePos = posMap.get(key);
+        if (lastWritePos == null) {
+            final AtomicInteger newWritePos = new AtomicInteger(indexPos);
+            lastWritePos = posMap.putIfAbsent(key, newWritePos);
+            if (lastWritePos == null) {
+                return;
+            }
+        }
+        while (true) {
+            final int curWritePos = lastWritePos.get();
+            if (curWritePos >= indexPos
+                    || lastWritePos.compareAndSet(curWritePos, indexPos)) {
+                return;
+            }
+        }
+    }
+
+    private static long toPosition(final int msgCount, final int dataSize) {
+        return ((long) msgCount << 32) | (dataSize & 0xFFFFFFFFL);
+    }
+
+    private static int getMsgCount(final long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int getDataSize(final long position) {
+        return (int) position;
+    }
+
     /***
      * Read from memory, read index, then data.
      *
@@ -140,7 +356,6 @@ public class MsgMemStore implements Closeable {
                                          final boolean isFilterConsume,
                                          final Set<Integer> filterKeySet) {
         // #lizard forgives
-        Integer lastWritePos = 0;
         boolean hasMsg = false;
         //　judge memory contains the given offset or not.
         List<ByteBuffer> cacheMsgList = new ArrayList<>();
@@ -148,41 +363,36 @@ public class MsgMemStore implements Closeable {
             return new GetCacheMsgResult(false, TErrCodeConstants.MOVED,
                     lstRdIndexOffset, "Request offset lower than cache minOffset");
         }
-        if (lstRdIndexOffset >= this.writeIndexStartPos + this.cacheIndexOffset.get()) {
+        if (lstRdIndexOffset >= this.writeIndexStartPos + getIndexCacheSize()) {
             return new GetCacheMsgResult(false, TErrCodeConstants.NOT_FOUND,
                     lstRdIndexOffset, "Request offset reached cache maxOffset");
         }
         int totalReadSize = 0;
-        int currIndexOffset;
-        int currDataOffset;
-        long lastDataRdOff = lstRdDataOffset;
         int startReadOff = (int) (lstRdIndexOffset - this.writeIndexStartPos);
-        this.writeLock.lock();
-        try {
-            if (isFilterConsume) {
-                //　filter conduct. accelerate by keysMap.
-                for (Integer keyCode : filterKeySet) {
-                    if (keyCode != null) {
-                        lastWritePos = this.keysMap.get(keyCode);
-                        if ((lastWritePos != null) && (lastWritePos >= startReadOff)) {
-                            hasMsg = true;
-                            break;
-                        }
+        AtomicInteger lastWritePos = null;
+        if (isFilterConsume) {
+            //　filter conduct. accelerate by keysMap.
+            for (Integer keyCode : filterKeySet) {
+                if (keyCode != null) {
+                    lastWritePos = this.keysMap.get(keyCode);
+                    if ((lastWritePos != null) && (lastWritePos.get() >= startReadOff)) {
+                        hasMsg = true;
+                        break;
                     }
                 }
-            } else {
-                // orderly consume by partition id.
-                lastWritePos = this.queuesMap.get(partitionId);
-                if ((lastWritePos != null) && (lastWritePos >= startReadOff)) {
-                    hasMsg = true;
-                }
             }
-            currDataOffset = this.cacheDataOffset.get();
-            currIndexOffset = this.cacheIndexOffset.get();
-            lastDataRdOff = this.writeDataStartPos + currDataOffset;
-        } finally {
-            this.writeLock.unlock();
+        } else {
+            // orderly consume by partition id.
+            lastWritePos = this.queuesMap.get(partitionId);
+            if ((lastWritePos != null) && (lastWritePos.get() >= startReadOff)) {
+                hasMsg = true;
+            }
         }
+        // only read the published records
+        final long curPublishedPos = this.publishedPos.get();
+        final int currDataOffset = getDataSize(curPublishedPos);
+        final int currIndexOffset = getMsgCount(curPublishedPos) * DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        long lastDataRdOff = this.writeDataStartPos + currDataOffset;
         int limitReadSize = currIndexOffset - startReadOff;
         // cannot find message, return not found
         if (!hasMsg) {
@@ -265,28 +475,31 @@ public class MsgMemStore implements Closeable {
      */
     public boolean batchFlush(MsgFileStore msgFileStore,
                               final StringBuilder strBuffer) throws Throwable {
-        if (this.curMessageCount.get() == 0) {
+        final long curPublishedPos = this.publishedPos.get();
+        if (getMsgCount(curPublishedPos) == 0) {
             return true;
         }
+        final int indexCacheSize = getMsgCount(curPublishedPos) * DataStoreUtils.STORE_INDEX_HEAD_LEN;
+        final int dataCacheSize = getDataSize(curPublishedPos);
         ByteBuffer tmpIndexBuffer = this.cachedIndexSegment.asReadOnlyBuffer();
         final ByteBuffer tmpDataReadBuf = this.cacheDataSegment.asReadOnlyBuffer();
-        tmpIndexBuffer.flip();
-        tmpDataReadBuf.flip();
-        msgFileStore.batchAppendMsg(strBuffer, curMessageCount.get(),
-            cacheIndexOffset.get(), tmpIndexBuffer, cacheDataOffset.get(), tmpDataReadBuf);
+        tmpIndexBuffer.limit(indexCacheSize).position(0);
+        tmpDataReadBuf.limit(dataCacheSize).position(0);
+        msgFileStore.batchAppendMsg(strBuffer, getMsgCount(curPublishedPos),
+            indexCacheSize, tmpIndexBuffer, dataCacheSize, tmpDataReadBuf);
         return true;
     }
 
     public int getCurMsgCount() {
-        return this.curMessageCount.get();
+        return getMsgCount(this.publishedPos.get());
     }
 
     public int getCurDataCacheSize() {
-        return this.cacheDataOffset.get();
+        return getDataSize(this.publishedPos.get());
     }
 
     public int getIndexCacheSize() {
-        return this.cacheIndexOffset.get();
+        return getMsgCount(this.publishedPos.get()) * DataStoreUtils.STORE_INDEX_HEAD_LEN;
     }
 
     public int getMaxDataCacheSize() {
@@ -300,26 +513,51 @@ public class MsgMemStore implements Closeable {
     public int isOffsetInHold(long requestOffset) {
         if (requestOffset < this.writeIndexStartPos) {
             return -1;
-        } else if (requestOffset >= this.writeIndexStartPos + this.cacheIndexOffset.get()) {
+        } else if (requestOffset >= this.writeIndexStartPos + getIndexCacheSize()) {
             return 1;
         }
         return 0;
     }
 
+    /***
+     * Get the offset of the first cached index record received at or after the timestamp.
+     *
+     * @param timestamp   the timestamp in milliseconds
+     * @return the index offset, or -1 if not found in cache
+     */
+    public long getIndexOffsetByTime(final long timestamp) {
+        if (this.writeIndexStartPos < 0) {
+            return -1;
+        }
+        final int currIndexOffset = getIndexCacheSize();
+        final ByteBuffer tmpIndexRdBuf = this.cachedIndexSegment.asReadOnlyBuffer();
+        for (int readPos = 0;
+             readPos + DataStoreUtils.STORE_INDEX_HEAD_LEN <= currIndexOffset;
+             readPos += DataStoreUtils.STORE_INDEX_HEAD_LEN) {
+            if (tmpIndexRdBuf.getLong(readPos + DataStoreUtils.INDEX_POS_TIME_RECV) >= timestamp) {
+                return this.writeIndexStartPos + readPos;
+            }
+        }
+        return -1;
+    }
+
     public long getDataLastWritePos() {
-        return this.writeDataStartPos + this.cacheDataOffset.get();
+        return this.writeDataStartPos + getCurDataCacheSize();
     }
 
     public long getIndexLastWritePos() {
-        return this.writeIndexStartPos + this.cacheIndexOffset.get();
+        return this.writeIndexStartPos + getIndexCacheSize();
     }
 
     public void clear() {
+        final int reservedCount = getMsgCount(this.reservedPos.get());
+        for (int i = 0; i < reservedCount; i++) {
+            this.committedSizes.set(i, 0);
+        }
         this.writeDataStartPos = -1;
         this.writeIndexStartPos = -1;
-        this.cacheDataOffset.set(0);
-        this.cacheIndexOffset.set(0);
-        this.curMessageCount.set(0);
+        this.reservedPos.set(0);
+        this.publishedPos.set(0);
         this.queuesMap.clear();
         this.keysMap.clear();
     }
@@ -27,4 +27,12 @@ public interface CountService {
     void add(Map<String, CountItem> counterGroup);
 
     void add(String name, Long delta, int msgSize);
+
+    /***
+     * Add the statistic of a request, counted by message time.
+     *
+     * @param baseKey       the statistic key without message time
+     * @param msgTimeCounter the message count and size by message time
+     */
+    void add(String baseKey, MsgTimeCounter msgTimeCounter);
 }
@@ -30,6 +30,10 @@ import org.slf4j.LoggerFactory;
  * Statistics of broker. It use two CountSet alternatively print statistics to log.
  */
 public class GroupCountService extends AbstractDaemonService implements CountService {
+    // the low bits of a counter key keep the message time, the high bits keep the key id
+    private static final int MSG_TIME_BITS = 40;
+    private static final long MSG_TIME_MASK = (1L << MSG_TIME_BITS) - 1;
+    private static final int MAX_KEY_ID = (1 << (63 - MSG_TIME_BITS)) - 1;
     private final Logger logger;
     private final String cntHdr;
     private final CountSet[] countSets = new CountSet[2];
@@ -54,7 +58,6 @@ public class GroupCountService extends AbstractDaemonService implements CountSer
         int tmpIndex = 0;
         int befIndex = 0;
         AtomicLong curRunCnt;
-        ConcurrentHashMap<String, CountItem> counters;
         while (!super.isStopped()) {
             try {
                 Thread.sleep(intervalMs);
@@ -68,14 +71,7 @@ public class GroupCountService extends AbstractDaemonService implements CountSer
                             return;
                         }
                     } while (curRunCnt.get() > 0);
-                    counters = countSets[befIndex].counterItem;
-                    if (counters != null) {
-                        for (Map.Entry<String, CountItem> entry : counters.entrySet()) {
-                            logger.info("{}#{}#{}#{}", new Object[]{cntHdr, entry.getKey(),
-                                    entry.getValue().getMsgCount(), entry.getValue().getMsgSize()});
-                        }
-                        counters.clear();
-                    }
+                    printAndClear(countSets[befIndex]);
                 }
             } catch (InterruptedException e) {
                 return;
@@ -91,16 +87,8 @@ public class GroupCountService extends AbstractDaemonService implements CountSer
             return;
         }
         int befIndex = index.get();
-        ConcurrentHashMap<String, CountItem> counters;
         for (int i = 0; i < countSets.length; i++) {
-            counters = countSets[(++befIndex) % 2].counterItem;
-            if (counters != null) {
-                for (Map.Entry<String, CountItem> entry : counters.entrySet()) {
-                    logger.info("{}#{}#{}#{}", new Object[]{cntHdr, entry.getKey(),
-                            entry.getValue().getMsgCount(), entry.getValue().getMsgSize()});
-                }
-                counters.clear();
-            }
+            printAndClear(countSets[(++befIndex) % 2]);
         }
     }
 
@@ -139,9 +127,108 @@ public class GroupCountService extends AbstractDaemonService implements CountSer
         countSet.refCnt.decrementAndGet();
     }
 
+    @Override
+    public void add(String baseKey, MsgTimeCounter msgTimeCounter) {
+        if (msgTimeCounter == null || msgTimeCounter.isEmpty()) {
+            return;
+        }
+        CountSet countSet = countSets[index.get()];
+        countSet.refCnt.incrementAndGet();
+        int keyId = countSet.getKeyId(baseKey);
+        if (keyId > 0) {
+            for (int i = 0; i < msgTimeCounter.size(); i++) {
+                countSet.counterTable.add(buildCounterKey(keyId, msgTimeCounter.getMsgTime(i)),
+                        msgTimeCounter.getMsgCount(i), msgTimeCounter.getMsgSize(i));
+            }
+        } else {
+            StringBuilder sBuilder = new StringBuilder(512);
+            for (int i = 0; i < msgTimeCounter.size(); i++) {
+                String name = MsgTimeCounter.appendMsgTime(sBuilder.append(baseKey).append("#"),
+                        msgTimeCounter.getMsgTime(i)).toString();
+                sBuilder.delete(0, sBuilder.length());
+                countSet.addItem(name, msgTimeCounter.getMsgCount(i), msgTimeCounter.getMsgSize(i));
+            }
+        }
+        if (msgTimeCounter.getStrTimeCounts() != null) {
+            for (Entry<String, CountItem> entry : msgTimeCounter.getStrTimeCounts().entrySet()) {
+                countSet.addItem(baseKey + "#" + entry.getKey(),
+                        entry.getValue().getMsgCount(), entry.getValue().getMsgSize());
+            }
+        }
+        countSet.refCnt.decrementAndGet();
+    }
+
+    private void printAndClear(final CountSet countSet) {
+        for (Map.Entry<String, CountItem> entry : countSet.counterItem.entrySet()) {
+            logger.info("{}#{}#{}#{}", new Object[]{cntHdr, entry.getKey(),
+                    entry.getValue().getMsgCount(), entry.getValue().getMsgSize()});
+        }
+        countSet.counterItem.clear();
+        final String[] baseKeys = new String[countSet.keyIdGen.get() + 1];
+        for (Map.Entry<String, Integer> entry : countSet.keyIds.entrySet()) {
+            baseKeys[entry.getValue()] = entry.getKey();
+        }
+        final StringBuilder sBuilder = new StringBuilder(512);
+        countSet.counterTable.visit(new StripedCounterTable.CounterVisitor() {
+            @Override
+            public void visit(long key, long msgCount, long msgSize) {
+                int keyId = (int) (key >>> MSG_TIME_BITS);
+                if (keyId >= baseKeys.length || baseKeys[keyId] == null) {
+                    return;
+                }
+                String name = MsgTimeCounter.appendMsgTime(
+                        sBuilder.append(baseKeys[keyId]).append("#"),
+                        (key & MSG_TIME_MASK) - 1).toString();
+                sBuilder.delete(0, sBuilder.length());
+                logger.info("{}#{}#{}#{}", new Object[]{cntHdr, name, msgCount, msgSize});
+            }
+        });
+        countSet.counterTable.clear();
+        countSet.keyIds.clear();
+        countSet.keyIdGen.set(0);
+    }
+
+    private static long buildCounterKey(int keyId, long msgTime) {
+        // the message time is stored plus 1, so NO_MSG_TIME is kept too
+        return ((long) keyId << MSG_TIME_BITS) | (msgTime + 1);
+    }
+
     private static class CountSet {
         public AtomicLong refCnt = new AtomicLong(0);
         public ConcurrentHashMap<String, CountItem> counterItem =
                 new ConcurrentHashMap<>();
+        // the statistic keys are interned in the count interval
+        public ConcurrentHashMap<String, Integer> keyIds =
+                new ConcurrentHashMap<>();
+        public AtomicInteger keyIdGen = new AtomicInteger(0);
+        public StripedCounterTable counterTable = new StripedCounterTable();
+
+        // get the id of a statistic key, 0 if the ids are used up
+        int getKeyId(String baseKey) {
+            Integer keyId = keyIds.get(baseKey);
+            if (keyId == null) {
+                if (keyIdGen.get() >= MAX_KEY_ID) {
+                    return 0;
+                }
+                Integer newKeyId = keyIdGen.incrementAndGet();
+                keyId = keyIds.putIfAbsent(baseKey, newKeyId);
+                if (keyId == null) {
+                    keyId = newKeyId;
+                }
+            }
+            return keyId;
+        }
+
+        void addItem(String name, long msgCount, long msgSize) {
+            CountItem currData = counterItem.get(name);
+            if (currData == null) {
+                CountItem tmpData = new CountItem(0L, 0L);
+                currData = counterItem.putIfAbsent(name, tmpData);
+                if (currData == null) {
+                    currData = tmpData;
+                }
+            }
+            currData.appendMsg(msgCount, msgSize);
+        }
     }
 }
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.stats;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.codec.binary.StringUtils;
+import org.apache.inlong.tubemq.corebase.TokenConstants;
+
+/***
+ * Message count and size of a request, grouped by the message time. The numeric
+ * message times are kept in primitive arrays, the others are kept by string.
+ */
+public class MsgTimeCounter {
+    // the message time of the messages without msgTime attribute
+    public static final long NO_MSG_TIME = -1L;
+    // the message time which can't be kept as a number
+    public static final long UNPARSED_MSG_TIME = -2L;
+    // the max numeric message time, it fits in 40 bits
+    public static final long MAX_MSG_TIME = (1L << 40) - 2;
+    private static final byte[] MSG_TIME_TOKEN =
+            StringUtils.getBytesUtf8(TokenConstants.TOKEN_MSG_TIME);
+    private long[] msgTimes = new long[4];
+    private long[] msgCounts = new long[4];
+    private long[] msgSizes = new long[4];
+    private int size = 0;
+    private int lastIndex = 0;
+    // message time string, the statistic
+    private Map<String, CountItem> strTimeCounts = null;
+
+    /***
+     * Parse the message time string as a number.
+     *
+     * @param msgTime   the message time string
+     * @return the message time, NO_MSG_TIME if blank,
+     *         UNPARSED_MSG_TIME if it can't be kept as a number
+     */
+    public static long parseMsgTime(final String msgTime) {
+        if (msgTime == null || msgTime.isEmpty()) {
+            return NO_MSG_TIME;
+        }
+        long value = 0;
+        final int length = msgTime.length();
+        // the leading zeros would be lost in the printed key
+        if (length > 13 || msgTime.charAt(0) == '0') {
+            return UNPARSED_MSG_TIME;
+        }
+        for (int i = 0; i < length; i++) {
+            char ch = msgTime.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return UNPARSED_MSG_TIME;
+            }
+            value = value * 10 + (ch - '0');
+        }
+        return value > MAX_MSG_TIME ? UNPARSED_MSG_TIME : value;
+    }
+
+    /***
+     * Parse the message time from the attribute bytes of a stored message,
+     * without decoding the attribute as a string.
+     *
+     * @param data     the data which holds the attribute
+     * @param offset   the offset of the attribute
+     * @param length   the length of the attribute
+     * @return the message time, NO_MSG_TIME if the attribute has no message time,
+     *         UNPARSED_MSG_TIME if the attribute should be parsed as a string
+     */
+    public static long parseMsgTime(final byte[] data, int offset, int length) {
+        final int endPos = offset + length;
+        int tokenPos = -1;
+        for (int i = offset; i <= endPos - MSG_TIME_TOKEN.length; i++) {
+            if (isMsgTimeToken(data, i)) {
+                if (tokenPos >= 0) {
+                    return UNPARSED_MSG_TIME;
+                }
+                tokenPos = i;
+            }
+        }
+        if (tokenPos < 0) {
+            return NO_MSG_TIME;
+        }
+        // only the item formatted as $msgTime$=digits is parsed here
+        int pos = tokenPos + MSG_TIME_TOKEN.length;
+        if ((tokenPos != offset && data[tokenPos - 1] != ',')
+                || pos >= endPos || data[pos] != '=') {
+            return UNPARSED_MSG_TIME;
+        }
+        final int valueStart = ++pos;
+        long value = 0;
+        for (; pos < endPos && data[pos] != ','; pos++) {
+            if (data[pos] < '0' || data[pos] > '9' || pos - valueStart >= 13) {
+                return UNPARSED_MSG_TIME;
+            }
+            value = value * 10 + (data[pos] - '0');
+        }
+        if (pos == valueStart || data[valueStart] == '0' || value > MAX_MSG_TIME) {
+            return UNPARSED_MSG_TIME;
+        }
+        return value;
+    }
+
+    private static boolean isMsgTimeToken(final byte[] data, int offset) {
+        for (int i = 0; i < MSG_TIME_TOKEN.length; i++) {
+            if (data[offset + i] != MSG_TIME_TOKEN[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Add the statistic of a numeric message time.
+     *
+     * @param msgTime   the message time, NO_MSG_TIME or between 0 and MAX_MSG_TIME
+     * @param msgCount  the message count
+     * @param msgSize   the message size
+     */
+    public void add(long msgTime, long msgCount, long msgSize) {
+        int index = lastIndex;
+        if (index >= size || msgTimes[index] != msgTime) {
+            index = -1;
+            for (int i = 0; i < size; i++) {
+                if (msgTimes[i] == msgTime) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                if (size == msgTimes.length) {
+                    msgTimes = Arrays.copyOf(msgTimes, size * 2);
+                    msgCounts = Arrays.copyOf(msgCounts, size * 2);
+                    msgSizes = Arrays.copyOf(msgSizes, size * 2);
+                }
+                index = size++;
+                msgTimes[index] = msgTime;
+                msgCounts[index] = 0;
+                msgSizes[index] = 0;
+            }
+            lastIndex = index;
+        }
+        msgCounts[index] += msgCount;
+        msgSizes[index] += msgSize;
+    }
+
+    /***
+     * Add the statistic of a message time string.
+     *
+     * @param msgTime   the message time string
+     * @param msgCount  the message count
+     * @param msgSize   the message size
+     */
+    public void add(final String msgTime, long msgCount, long msgSize) {
+        long numTime = parseMsgTime(msgTime);
+        if (numTime != UNPARSED_MSG_TIME) {
+            add(numTime, msgCount, msgSize);
+            return;
+        }
+        if (strTimeCounts == null) {
+            strTimeCounts = new HashMap<>();
+        }
+        CountItem countItem = strTimeCounts.get(msgTime);
+        if (countItem == null) {
+            strTimeCounts.put(msgTime, new CountItem(msgCount, msgSize));
+        } else {
+            countItem.appendMsg(msgCount, msgSize);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && (strTimeCounts == null || strTimeCounts.isEmpty());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getMsgTime(int index) {
+        return msgTimes[index];
+    }
+
+    public long getMsgCount(int index) {
+        return msgCounts[index];
+    }
+
+    public long getMsgSize(int index) {
+        return msgSizes[index];
+    }
+
+    /***
+     * Get the statistic of the message times which can't be kept as a number.
+     *
+     * @return message time string, the statistic; null if there is none
+     */
+    public Map<String, CountItem> getStrTimeCounts() {
+        return strTimeCounts;
+    }
+
+    /***
+     * Append the message time to the statistic key, as it was printed by string.
+     *
+     * @param sBuilder   the string buffer
+     * @param msgTime    the numeric message time
+     * @return the string buffer
+     */
+    public static StringBuilder appendMsgTime(final StringBuilder sBuilder, long msgTime) {
+        if (msgTime == NO_MSG_TIME) {
+            return sBuilder;
+        }
+        return sBuilder.append(msgTime);
+    }
+}
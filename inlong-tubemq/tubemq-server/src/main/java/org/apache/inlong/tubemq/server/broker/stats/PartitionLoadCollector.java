@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.inlong.tubemq.corebase.TokenConstants;
+import org.apache.inlong.tubemq.server.broker.msgstore.MessageStore;
+import org.apache.inlong.tubemq.server.broker.nodeinfo.ConsumerNodeInfo;
+
+/***
+ * Collect the load of the partitions on this broker, reported to master by heartbeat.
+ * The ingest rate is smoothed between two collections, and the backlog is the largest
+ * data lag among the consume groups, shared out to the partitions of a store by ingest.
+ */
+public class PartitionLoadCollector {
+    // weight of the latest sample in the smoothed ingest rate
+    private static final double INGEST_RATE_ALPHA = 0.3;
+    // topic:partitionId, the appended data size at the last collection
+    private final Map<String, Long> lastPartInDataSize = new HashMap<>();
+    // topic:partitionId, the smoothed ingest bytes per second
+    private final Map<String, Double> partIngestRate = new HashMap<>();
+    private long lastCollectTime = 0;
+
+    /***
+     * Collect the partition load info.
+     *
+     * @param messageStores          the message stores of the broker
+     * @param consumerRegisterMap    the registered consumers of the broker
+     * @return the load info list, formatted as topic:partitionId:ingestBytesPerSec:backlogBytes
+     */
+    public List<String> collect(
+            Map<String, ConcurrentHashMap<Integer, MessageStore>> messageStores,
+            Map<String, ConsumerNodeInfo> consumerRegisterMap) {
+        return collect(messageStores, consumerRegisterMap, System.currentTimeMillis());
+    }
+
+    // collect the partition load info at the given time
+    synchronized List<String> collect(
+            Map<String, ConcurrentHashMap<Integer, MessageStore>> messageStores,
+            Map<String, ConsumerNodeInfo> consumerRegisterMap, long curTime) {
+        final long elapsedMs = curTime - lastCollectTime;
+        final boolean firstCollect = (lastCollectTime == 0);
+        lastCollectTime = curTime;
+        Map<String, Long> curPartInDataSize = new HashMap<>();
+        Map<String, MessageStore> partStoreMap = new HashMap<>();
+        Map<String, Double> partShareMap = new HashMap<>();
+        for (Map.Entry<String, ConcurrentHashMap<Integer, MessageStore>> topicEntry
+                : messageStores.entrySet()) {
+            for (MessageStore store : topicEntry.getValue().values()) {
+                Map<Integer, Long> partDataSizeMap = store.getPartInDataSizeMap();
+                long storeDataSize = 0;
+                for (Long dataSize : partDataSizeMap.values()) {
+                    storeDataSize += dataSize;
+                }
+                for (Map.Entry<Integer, Long> partEntry : partDataSizeMap.entrySet()) {
+                    String partKey = buildPartKey(topicEntry.getKey(), partEntry.getKey());
+                    curPartInDataSize.put(partKey, partEntry.getValue());
+                    partStoreMap.put(partKey, store);
+                    partShareMap.put(partKey, storeDataSize <= 0
+                            ? 0.0 : (double) partEntry.getValue() / storeDataSize);
+                }
+            }
+        }
+        // update the smoothed ingest rates
+        Map<String, Double> newIngestRate = new HashMap<>();
+        for (Map.Entry<String, Long> entry : curPartInDataSize.entrySet()) {
+            double sampleRate = 0;
+            if (!firstCollect && elapsedMs > 0) {
+                Long lastDataSize = lastPartInDataSize.get(entry.getKey());
+                long deltaSize = entry.getValue() - (lastDataSize == null ? 0 : lastDataSize);
+                sampleRate = Math.max(0, deltaSize) * 1000.0 / elapsedMs;
+            }
+            Double lastRate = partIngestRate.get(entry.getKey());
+            newIngestRate.put(entry.getKey(), lastRate == null ? sampleRate
+                    : INGEST_RATE_ALPHA * sampleRate + (1 - INGEST_RATE_ALPHA) * lastRate);
+        }
+        lastPartInDataSize.clear();
+        lastPartInDataSize.putAll(curPartInDataSize);
+        partIngestRate.clear();
+        partIngestRate.putAll(newIngestRate);
+        // the largest backlog among the consume groups of each partition
+        Map<String, Long> partBacklogMap = new HashMap<>();
+        for (ConsumerNodeInfo consumerNodeInfo : consumerRegisterMap.values()) {
+            String[] partStrs = consumerNodeInfo.getPartStr().split(TokenConstants.ATTR_SEP);
+            if (partStrs.length < 3 || consumerNodeInfo.getLastDataRdOffset() < 0) {
+                continue;
+            }
+            String partKey = partStrs[1] + TokenConstants.ATTR_SEP + partStrs[2];
+            MessageStore store = partStoreMap.get(partKey);
+            if (store == null) {
+                continue;
+            }
+            long storeLag = store.getDataMaxOffset() - consumerNodeInfo.getLastDataRdOffset();
+            long partLag = (long) (Math.max(0, storeLag) * partShareMap.get(partKey));
+            Long curBacklog = partBacklogMap.get(partKey);
+            if (curBacklog == null || curBacklog < partLag) {
+                partBacklogMap.put(partKey, partLag);
+            }
+        }
+        List<String> partLoadInfos = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : partIngestRate.entrySet()) {
+            long ingestRate = Math.round(entry.getValue());
+            Long backlog = partBacklogMap.get(entry.getKey());
+            long backlogSize = (backlog == null) ? 0 : backlog;
+            if (ingestRate <= 0 && backlogSize <= 0) {
+                continue;
+            }
+            partLoadInfos.add(new StringBuilder(128).append(entry.getKey())
+                    .append(TokenConstants.ATTR_SEP).append(ingestRate)
+                    .append(TokenConstants.ATTR_SEP).append(backlogSize).toString());
+        }
+        return partLoadInfos;
+    }
+
+    private String buildPartKey(String topic, int partitionId) {
+        return new StringBuilder(64).append(topic)
+                .append(TokenConstants.ATTR_SEP).append(partitionId).toString();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.stats;
+
+import java.util.Arrays;
+
+/***
+ * Message count and size by long key. The keys are spread over the stripes that are
+ * locked separately, each stripe keeps its keys and counters in primitive arrays,
+ * so no object is allocated to count a message of a known key.
+ */
+public class StripedCounterTable {
+    private static final int STRIPE_CNT = 16;
+    private static final int INIT_STRIPE_CAPACITY = 64;
+    private final Stripe[] stripes = new Stripe[STRIPE_CNT];
+
+    public StripedCounterTable() {
+        for (int i = 0; i < STRIPE_CNT; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /***
+     * Add message count and size to a key.
+     *
+     * @param key       the counter key, must not be 0
+     * @param msgCount  the message count
+     * @param msgSize   the message size
+     */
+    public void add(long key, long msgCount, long msgSize) {
+        long hash = mixHash(key);
+        stripes[(int) (hash >>> 60) & (STRIPE_CNT - 1)].add(key, hash, msgCount, msgSize);
+    }
+
+    /***
+     * Visit all the counters.
+     *
+     * @param visitor  the counter visitor
+     */
+    public void visit(CounterVisitor visitor) {
+        for (Stripe stripe : stripes) {
+            stripe.visit(visitor);
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private static long mixHash(long key) {
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public interface CounterVisitor {
+
+        void visit(long key, long msgCount, long msgSize);
+    }
+
+    private static class Stripe {
+        // open addressing table, key 0 marks the empty slot
+        private long[] keys = new long[INIT_STRIPE_CAPACITY];
+        private long[] msgCounts = new long[INIT_STRIPE_CAPACITY];
+        private long[] msgSizes = new long[INIT_STRIPE_CAPACITY];
+        private int size = 0;
+
+        synchronized void add(long key, long hash, long msgCount, long msgSize) {
+            int index = findSlot(keys, key, hash);
+            if (keys[index] == 0) {
+                if ((size + 1) * 2 > keys.length) {
+                    resize();
+                    index = findSlot(keys, key, hash);
+                }
+                keys[index] = key;
+                size++;
+            }
+            msgCounts[index] += msgCount;
+            msgSizes[index] += msgSize;
+        }
+
+        synchronized void visit(CounterVisitor visitor) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    visitor.visit(keys[i], msgCounts[i], msgSizes[i]);
+                }
+            }
+        }
+
+        synchronized void clear() {
+            Arrays.fill(keys, 0L);
+            Arrays.fill(msgCounts, 0L);
+            Arrays.fill(msgSizes, 0L);
+            size = 0;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldCounts = msgCounts;
+            long[] oldSizes = msgSizes;
+            keys = new long[oldKeys.length * 2];
+            msgCounts = new long[oldKeys.length * 2];
+            msgSizes = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int index = findSlot(keys, oldKeys[i], mixHash(oldKeys[i]));
+                    keys[index] = oldKeys[i];
+                    msgCounts[index] = oldCounts[i];
+                    msgSizes[index] = oldSizes[i];
+                }
+            }
+        }
+
+        private static int findSlot(long[] keys, long key, long hash) {
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            while (keys[index] != 0 && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
+}
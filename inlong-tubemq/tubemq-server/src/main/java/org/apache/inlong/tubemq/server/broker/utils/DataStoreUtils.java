@@ -21,13 +21,12 @@ import com.google.protobuf.ByteString;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.text.NumberFormat;
-import java.util.HashMap;
 import org.apache.inlong.tubemq.corebase.TBaseConstants;
 import org.apache.inlong.tubemq.corebase.TokenConstants;
 import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
 import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
 import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
-import org.apache.inlong.tubemq.server.broker.stats.CountItem;
+import org.apache.inlong.tubemq.server.broker.stats.MsgTimeCounter;
 
 /***
  * Storage util. Used for data and index file storage format.
@@ -48,6 +47,12 @@ public class DataStoreUtils {
     // + flag               4
     // + data               0
     //
+    // System header extension, kept before the data if the flag has
+    // MessageFlagUtils.STORE_SYS_HEADER_EXT, the message length counts it in
+    // extLength            4    (the length of the extension, including itself)
+    // + msgTime            8    (the numeric message time)
+    // + msgType            0    (the UTF-8 message type, fills the rest of the extension)
+    //
     public static final int MAX_MSG_TRANSFER_SIZE = 1024 * 1024;
 
     public static final int STORE_DATA_PREFX_LEN = 48;
@@ -63,8 +68,14 @@ public class DataStoreUtils {
     public static final int STORE_HEADER_POS_MSGID = 40;
     public static final int STORE_HEADER_POS_MSGFLAG = 48;
     public static final int STORE_HEADER_POS_MSGDATA = 52;
+    public static final int STORE_EXT_POS_LENGTH = 0;
+    public static final int STORE_EXT_POS_MSGTIME = 4;
+    public static final int STORE_EXT_POS_MSGTYPE = 12;
+    public static final int STORE_EXT_HEADER_LEN = 12;
     public static final int STORE_DATA_TOKER_BEGIN_VALUE = 0x2C998B8;
     public static final int STORE_DATA_TOKER_BLANK_VALUE = 0x2C99B5E;
+    // the default length peeked from a message that is transferred from file directly
+    public static final int STORE_DATA_PEEK_LEN = 512;
     public static final long MAX_FILE_ROLL_CHECK_DURATION = 1 * 3600 * 1000;
     public static final long MAX_FILE_NO_WRITE_DURATION = 2 * 24 * 3600 * 1000;
     public static final long MAX_FILE_VALID_DURATION = 168 * 3600L * 1000L;
@@ -81,6 +92,9 @@ public class DataStoreUtils {
     public static final int INDEX_POS_MSG_SIZE = 12;
     public static final int INDEX_POS_KEY_CODE = 16;
     public static final int INDEX_POS_TIME_RECV = 20;
+    // the partition id of the record written in place of a failed append,
+    // the record is valid for the recovery and skipped by the readers of any partition
+    public static final int STORE_TOMBSTONE_PARTITIONID = Integer.MAX_VALUE;
 
     public static final int MAX_MSG_DATA_STORE_SIZE =
             TBaseConstants.META_MAX_MESSAGE_DATA_SIZE_UPPER_LIMIT
@@ -90,6 +104,11 @@ public class DataStoreUtils {
 
     public static final String DATA_FILE_SUFFIX = ".tube";
     public static final String INDEX_FILE_SUFFIX = ".index";
+    public static final String CHECKPOINT_FILE_SUFFIX = ".chk";
+    // the read size of recover scanning
+    public static final int STORE_RECOVER_READ_SIZE = 4 * 1024 * 1024;
+    // the flushed bytes between two checkpoints of the mutable segment
+    public static final long CHECKPOINT_INTERVAL_BYTES = 64 * 1024 * 1024L;
 
 
     public static int getInt(final int offset, final byte[] data) {
@@ -104,20 +123,59 @@ public class DataStoreUtils {
         return nf.format(offset) + fileSuffix;
     }
 
+    /***
+     * Parse the size quota part of the delete policy, the value must like {digital}[k|m|g|t],
+     * a value without unit is in bytes.
+     *
+     * @param sizeStr the size quota string
+     * @return the size in bytes, -1 if the value is illegal
+     */
+    public static long parseDeleteSize(final String sizeStr) {
+        if (sizeStr == null || sizeStr.trim().isEmpty()) {
+            return -1L;
+        }
+        String validValStr = sizeStr.trim().toLowerCase();
+        long unitSize = 1L;
+        switch (validValStr.charAt(validValStr.length() - 1)) {
+            case 'k':
+                unitSize = 1024L;
+                break;
+            case 'm':
+                unitSize = 1024L * 1024L;
+                break;
+            case 'g':
+                unitSize = 1024L * 1024L * 1024L;
+                break;
+            case 't':
+                unitSize = 1024L * 1024L * 1024L * 1024L;
+                break;
+            default:
+                break;
+        }
+        if (unitSize > 1L) {
+            validValStr = validValStr.substring(0, validValStr.length() - 1);
+        }
+        try {
+            long sizeVal = Long.parseLong(validValStr);
+            if (sizeVal <= 0 || sizeVal > Long.MAX_VALUE / unitSize) {
+                return -1L;
+            }
+            return sizeVal * unitSize;
+        } catch (Throwable e) {
+            return -1L;
+        }
+    }
+
     /***
      * Convert inner message to protobuf format, then reply to client.
      *
      * @param dataBuffer
      * @param dataTotalSize
      * @param countMap
-     * @param statisKeyBase
-     * @param sBuilder
      * @return
      */
     public static ClientBroker.TransferedMessage getTransferMsg(final ByteBuffer dataBuffer, int dataTotalSize,
-                                                                final HashMap<String, CountItem> countMap,
-                                                                final String statisKeyBase,
-                                                                final StringBuilder sBuilder) {
+                                                                final MsgTimeCounter countMap) {
         if (dataBuffer.array().length < dataTotalSize) {
             return null;
         }
@@ -128,46 +186,183 @@ public class DataStoreUtils {
         final int checkSum =
                 dataBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_CHECKSUM);
         int payLoadLen = msgLen - DataStoreUtils.STORE_DATA_PREFX_LEN;
-        int payLoadOffset = DataStoreUtils.STORE_DATA_HEADER_LEN;
         if ((msgToken != DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE)
                 || (payLoadLen <= 0)
                 || (payLoadLen > dataTotalSize - DataStoreUtils.STORE_DATA_HEADER_LEN)) {
             return null;
         }
+        int payLoadOffset = DataStoreUtils.STORE_DATA_HEADER_LEN;
         final long msgId = dataBuffer.getLong(DataStoreUtils.STORE_HEADER_POS_MSGID);
         final int flag = dataBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_MSGFLAG);
+        final int extLen = getSysHeaderExtLen(dataBuffer, flag, payLoadLen);
+        if (extLen < 0) {
+            return null;
+        }
+        payLoadOffset += extLen;
+        payLoadLen -= extLen;
         final int payLoadLen2 = payLoadLen;
-        final byte[] payLoadData = new byte[payLoadLen];
-        System.arraycopy(dataBuffer.array(), payLoadOffset, payLoadData, 0, payLoadLen);
         ClientBroker.TransferedMessage.Builder dataBuilder =
                 ClientBroker.TransferedMessage.newBuilder();
         dataBuilder.setMessageId(msgId);
         dataBuilder.setCheckSum(checkSum);
-        dataBuilder.setFlag(flag);
-        dataBuilder.setPayLoadData(ByteString.copyFrom(payLoadData));
+        dataBuilder.setFlag(MessageFlagUtils.clearSysHeaderExt(flag));
+        // copy the payload from read buffer once, the buffer will be reused
+        dataBuilder.setPayLoadData(ByteString.copyFrom(dataBuffer.array(), payLoadOffset, payLoadLen));
         // get statistic data
-        int attrLen = 0;
-        String attribute = null;
-        if (MessageFlagUtils.hasAttribute(flag)) {
+        if (extLen > 0) {
+            countMap.add(dataBuffer.getLong(DataStoreUtils.STORE_DATA_HEADER_LEN
+                    + DataStoreUtils.STORE_EXT_POS_MSGTIME), 1L, payLoadLen2);
+        } else if (MessageFlagUtils.hasAttribute(flag)) {
             if (payLoadLen < 4) {
                 return null;
             }
-            attrLen = dataBuffer.getInt(DataStoreUtils.STORE_DATA_HEADER_LEN);
+            final int attrLen = dataBuffer.getInt(payLoadOffset);
             payLoadOffset += 4;
             payLoadLen -= 4;
             if (attrLen > payLoadLen) {
                 return null;
             }
-            if (attrLen > 0) {
-                final byte[] attrData = new byte[attrLen];
-                System.arraycopy(dataBuffer.array(), payLoadOffset, attrData, 0, attrLen);
-                try {
-                    attribute = new String(attrData, TBaseConstants.META_DEFAULT_CHARSET_NAME);
-                } catch (final UnsupportedEncodingException e) {
-                    throw new RuntimeException(e);
-                }
+            countMsgStatisInfo(countMap, dataBuffer.array(),
+                    payLoadOffset, attrLen, payLoadLen2);
+        } else {
+            countMap.add(MsgTimeCounter.NO_MSG_TIME, 1L, payLoadLen2);
+        }
+        ClientBroker.TransferedMessage transferedMessage = dataBuilder.build();
+        dataBuilder.clear();
+        return transferedMessage;
+    }
+
+    /***
+     * Get the length to be peeked from the head of a stored message, the peeked
+     * data covers the message header and the header extension or the attribute of the message.
+     *
+     * @param peekBuffer     the buffer that holds the head of the stored message
+     * @param dataTotalSize  the total size of the stored message
+     * @return the length need to be peeked
+     */
+    public static int getMsgPeekSize(final ByteBuffer peekBuffer, int dataTotalSize) {
+        if (peekBuffer.limit() < DataStoreUtils.STORE_DATA_HEADER_LEN + 4) {
+            return dataTotalSize;
+        }
+        final int flag = peekBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_MSGFLAG);
+        if (MessageFlagUtils.hasSysHeaderExt(flag)) {
+            final int extLen = peekBuffer.getInt(DataStoreUtils.STORE_DATA_HEADER_LEN);
+            return Math.min(dataTotalSize,
+                    DataStoreUtils.STORE_DATA_HEADER_LEN + Math.max(extLen, 0));
+        }
+        if (!MessageFlagUtils.hasAttribute(flag)) {
+            return Math.min(dataTotalSize, DataStoreUtils.STORE_DATA_HEADER_LEN);
+        }
+        final int attrLen = peekBuffer.getInt(DataStoreUtils.STORE_DATA_HEADER_LEN);
+        return Math.min(dataTotalSize,
+                DataStoreUtils.STORE_DATA_HEADER_LEN + 4 + Math.max(attrLen, 0));
+    }
+
+    /***
+     * Check the stored message which will be transferred from file directly,
+     * and count its statistic data.
+     *
+     * @param peekBuffer     the buffer that holds the header and attribute of the message
+     * @param dataTotalSize  the total size of the stored message
+     * @param countMap       the statistic data
+     * @return whether the message is valid
+     */
+    public static boolean countRegionMsg(final ByteBuffer peekBuffer, int dataTotalSize,
+                                         final MsgTimeCounter countMap) {
+        if (peekBuffer.limit() < DataStoreUtils.STORE_DATA_HEADER_LEN) {
+            return false;
+        }
+        final int msgLen =
+                peekBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_LENGTH);
+        final int msgToken =
+                peekBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_DATATYPE);
+        int payLoadLen = msgLen - DataStoreUtils.STORE_DATA_PREFX_LEN;
+        if ((msgToken != DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE)
+                || (payLoadLen <= 0)
+                || (payLoadLen != dataTotalSize - DataStoreUtils.STORE_DATA_HEADER_LEN)) {
+            return false;
+        }
+        final int flag = peekBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_MSGFLAG);
+        if (MessageFlagUtils.hasSysHeaderExt(flag)) {
+            final int extLen = getSysHeaderExtLen(peekBuffer, flag, payLoadLen);
+            if (extLen < 0 || peekBuffer.limit() < DataStoreUtils.STORE_DATA_HEADER_LEN + extLen) {
+                return false;
+            }
+            countMap.add(peekBuffer.getLong(DataStoreUtils.STORE_DATA_HEADER_LEN
+                    + DataStoreUtils.STORE_EXT_POS_MSGTIME), 1L, payLoadLen - extLen);
+        } else if (MessageFlagUtils.hasAttribute(flag)) {
+            if (payLoadLen < 4
+                    || peekBuffer.limit() < DataStoreUtils.STORE_DATA_HEADER_LEN + 4) {
+                return false;
             }
+            final int attrLen = peekBuffer.getInt(DataStoreUtils.STORE_DATA_HEADER_LEN);
+            final int attrOffset = DataStoreUtils.STORE_DATA_HEADER_LEN + 4;
+            if (attrLen > payLoadLen - 4
+                    || attrOffset + attrLen > peekBuffer.limit()) {
+                return false;
+            }
+            countMsgStatisInfo(countMap, peekBuffer.array(),
+                    attrOffset, attrLen, payLoadLen);
+        } else {
+            countMap.add(MsgTimeCounter.NO_MSG_TIME, 1L, payLoadLen);
+        }
+        return true;
+    }
+
+    /***
+     * Get the message type kept in the system header extension of a stored message.
+     *
+     * @param dataBuffer   the buffer that holds the stored message from its head
+     * @return the message type, null if the message has no extension or
+     *         the extension has no message type
+     */
+    public static String getStoreMsgType(final ByteBuffer dataBuffer) {
+        if (dataBuffer.limit() < DataStoreUtils.STORE_DATA_HEADER_LEN) {
+            return null;
+        }
+        final int payLoadLen = dataBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_LENGTH)
+                - DataStoreUtils.STORE_DATA_PREFX_LEN;
+        final int flag = dataBuffer.getInt(DataStoreUtils.STORE_HEADER_POS_MSGFLAG);
+        final int extLen = getSysHeaderExtLen(dataBuffer, flag, payLoadLen);
+        final int msgTypeLen = extLen - DataStoreUtils.STORE_EXT_POS_MSGTYPE;
+        if (msgTypeLen <= 0
+                || dataBuffer.limit() < DataStoreUtils.STORE_DATA_HEADER_LEN + extLen) {
+            return null;
+        }
+        try {
+            return new String(dataBuffer.array(), DataStoreUtils.STORE_DATA_HEADER_LEN
+                    + DataStoreUtils.STORE_EXT_POS_MSGTYPE, msgTypeLen,
+                    TBaseConstants.META_DEFAULT_CHARSET_NAME);
+        } catch (final UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
         }
+    }
+
+    /***
+     * Get the length of the system header extension of a stored message.
+     *
+     * @param dataBuffer   the buffer that holds the stored message from its head
+     * @param flag         the flag of the stored message
+     * @param payLoadLen   the data length of the stored message
+     * @return the extension length, 0 if there is no extension, -1 if the extension is illegal
+     */
+    private static int getSysHeaderExtLen(final ByteBuffer dataBuffer, int flag, int payLoadLen) {
+        if (!MessageFlagUtils.hasSysHeaderExt(flag)) {
+            return 0;
+        }
+        if (payLoadLen < DataStoreUtils.STORE_EXT_HEADER_LEN
+                || dataBuffer.limit() < DataStoreUtils.STORE_DATA_HEADER_LEN + 4) {
+            return -1;
+        }
+        final int extLen = dataBuffer.getInt(DataStoreUtils.STORE_DATA_HEADER_LEN
+                + DataStoreUtils.STORE_EXT_POS_LENGTH);
+        if (extLen < DataStoreUtils.STORE_EXT_HEADER_LEN || extLen >= payLoadLen) {
+            return -1;
+        }
+        return extLen;
+    }
+
+    private static String getMsgTime(final String attribute) {
         String messageTime = "";
         if (TStringUtils.isNotBlank(attribute)) {
             if (attribute.contains(TokenConstants.TOKEN_MSG_TIME)) {
@@ -185,17 +380,30 @@ public class DataStoreUtils {
                 }
             }
         }
-        String baseKey = sBuilder.append(statisKeyBase)
-                .append("#").append(messageTime).toString();
-        sBuilder.delete(0, sBuilder.length());
-        CountItem getCount = countMap.get(baseKey);
-        if (getCount == null) {
-            countMap.put(baseKey, new CountItem(1L, payLoadLen2));
-        } else {
-            getCount.appendMsg(1L, payLoadLen2);
+        return messageTime;
+    }
+
+    private static void countMsgStatisInfo(final MsgTimeCounter countMap,
+                                           final byte[] data, int attrOffset,
+                                           int attrLen, int payLoadLen) {
+        if (attrLen <= 0) {
+            countMap.add(MsgTimeCounter.NO_MSG_TIME, 1L, payLoadLen);
+            return;
         }
-        ClientBroker.TransferedMessage transferedMessage = dataBuilder.build();
-        dataBuilder.clear();
-        return transferedMessage;
+        // parse the message time from attribute bytes, decode the attribute
+        // as string only when it is not in the common format
+        long msgTime = MsgTimeCounter.parseMsgTime(data, attrOffset, attrLen);
+        if (msgTime != MsgTimeCounter.UNPARSED_MSG_TIME) {
+            countMap.add(msgTime, 1L, payLoadLen);
+            return;
+        }
+        String attribute;
+        try {
+            attribute = new String(data, attrOffset,
+                    attrLen, TBaseConstants.META_DEFAULT_CHARSET_NAME);
+        } catch (final UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        countMap.add(getMsgTime(attribute), 1L, payLoadLen);
     }
 }
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Per-thread read buffer pool of the broker fetch path. Each read thread keeps
+ * one buffer for each buffer type, the buffer is borrowed at the beginning of
+ * a read and returned when the read finishes, so that the index and data
+ * buffers are not allocated for every GetMessage request.
+ */
+public class ReadBufferPool {
+
+    public enum BufferType {
+        // index slice read buffer
+        INDEX,
+        // data file read buffer
+        DATA
+    }
+
+    private final int maxCachedBufSize;
+    private final ThreadLocal<ByteBuffer[]> threadBuffers =
+            new ThreadLocal<ByteBuffer[]>() {
+                @Override
+                protected ByteBuffer[] initialValue() {
+                    return new ByteBuffer[BufferType.values().length];
+                }
+            };
+    private final AtomicLong[] hitCounters = new AtomicLong[BufferType.values().length];
+    private final AtomicLong[] missCounters = new AtomicLong[BufferType.values().length];
+    private final AtomicLong[] allocBytes = new AtomicLong[BufferType.values().length];
+
+    /***
+     * Create a buffer pool.
+     *
+     * @param maxCachedBufSize  the buffer larger than this size is not kept by the pool
+     */
+    public ReadBufferPool(int maxCachedBufSize) {
+        this.maxCachedBufSize = maxCachedBufSize;
+        for (int i = 0; i < BufferType.values().length; i++) {
+            hitCounters[i] = new AtomicLong(0);
+            missCounters[i] = new AtomicLong(0);
+            allocBytes[i] = new AtomicLong(0);
+        }
+    }
+
+    /***
+     * Borrow a buffer with at least the required capacity, the returned
+     * buffer is cleared and its limit is set to the required size.
+     *
+     * @param type      the buffer type
+     * @param reqSize   the required size
+     * @return the buffer
+     */
+    public ByteBuffer borrowBuffer(BufferType type, int reqSize) {
+        ByteBuffer[] buffers = threadBuffers.get();
+        ByteBuffer buffer = buffers[type.ordinal()];
+        buffers[type.ordinal()] = null;
+        if (buffer == null || buffer.capacity() < reqSize) {
+            missCounters[type.ordinal()].incrementAndGet();
+            allocBytes[type.ordinal()].addAndGet(reqSize);
+            buffer = ByteBuffer.allocate(reqSize);
+        } else {
+            hitCounters[type.ordinal()].incrementAndGet();
+        }
+        buffer.clear();
+        buffer.limit(reqSize);
+        return buffer;
+    }
+
+    /***
+     * Return the buffer to the pool of current thread.
+     *
+     * @param type      the buffer type
+     * @param buffer    the buffer borrowed or grown from a borrowed one
+     */
+    public void returnBuffer(BufferType type, ByteBuffer buffer) {
+        if (buffer == null
+                || !buffer.hasArray()
+                || buffer.capacity() > maxCachedBufSize) {
+            return;
+        }
+        ByteBuffer[] buffers = threadBuffers.get();
+        ByteBuffer cached = buffers[type.ordinal()];
+        if (cached == null || cached.capacity() < buffer.capacity()) {
+            buffers[type.ordinal()] = buffer;
+        }
+    }
+
+    public long getHitCount(BufferType type) {
+        return hitCounters[type.ordinal()].get();
+    }
+
+    public long getMissCount(BufferType type) {
+        return missCounters[type.ordinal()].get();
+    }
+
+    public long getAllocatedBytes(BufferType type) {
+        return allocBytes[type.ordinal()].get();
+    }
+
+    public int getMaxCachedBufSize() {
+        return maxCachedBufSize;
+    }
+}
@@ -36,9 +36,11 @@ import org.apache.inlong.tubemq.server.broker.TubeBroker;
 import org.apache.inlong.tubemq.server.broker.metadata.TopicMetadata;
 import org.apache.inlong.tubemq.server.broker.msgstore.MessageStore;
 import org.apache.inlong.tubemq.server.broker.msgstore.MessageStoreManager;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.DiskFlushService;
 import org.apache.inlong.tubemq.server.broker.nodeinfo.ConsumerNodeInfo;
 import org.apache.inlong.tubemq.server.broker.offset.OffsetService;
 import org.apache.inlong.tubemq.server.broker.utils.GroupOffsetInfo;
+import org.apache.inlong.tubemq.server.broker.utils.ReadBufferPool;
 import org.apache.inlong.tubemq.server.broker.utils.TopicPubStoreInfo;
 import org.apache.inlong.tubemq.server.common.fielddef.WebFieldDef;
 import org.apache.inlong.tubemq.server.common.utils.ProcessResult;
@@ -99,6 +101,15 @@ public class BrokerAdminServlet extends AbstractWebHandler {
         // remove group's offset info
         innRegisterWebMethod("admin_rmv_offset",
                 "adminRemoveGroupOffSet", false);
+        // query read buffer pool status info
+        innRegisterWebMethod("admin_query_read_buffer_pool",
+                "adminQueryReadBufferPoolInfo", false);
+        // query the offset of the messages received since the timestamp
+        innRegisterWebMethod("admin_query_offset_by_time",
+                "adminQueryOffsetByTime", false);
+        // query disk flusher status info
+        innRegisterWebMethod("admin_query_disk_flush_info",
+                "adminQueryDiskFlushInfo", false);
     }
 
     public void adminQueryAllMethods(HttpServletRequest req,
@@ -253,7 +264,19 @@ public class BrokerAdminServlet extends AbstractWebHandler {
                             .append(",\"minDataOffset\":").append(msgStore.getDataMinOffset())
                             .append(",\"maxDataOffset\":").append(msgStore.getDataMaxOffset())
                             .append(",\"sizeInBytes\":").append(msgStore.getDataStoreSize())
-                            .append(",\"partitionInfo\":[");
+                            .append(",\"retentionInfo\":{\"validDurMs\":")
+                            .append(msgStore.getMaxFileValidDurMs())
+                            .append(",\"validSizeInBytes\":").append(msgStore.getMaxFileValidSize())
+                            .append(",\"timeExpiredBytes\":").append(msgStore.getTimeExpiredBytes())
+                            .append(",\"sizeExpiredBytes\":").append(msgStore.getSizeExpiredBytes())
+                            .append(",\"diskExpiredBytes\":").append(msgStore.getDiskExpiredBytes())
+                            .append(",\"pendingDeleteBytes\":").append(msgStore.getExpiredSizeInBytes())
+                            .append(",\"lastExpiredTime\":").append(msgStore.getLastExpiredTime())
+                            .append("},\"recoverInfo\":{\"recoverDurMs\":")
+                            .append(msgStore.getRecoverDurMs())
+                            .append(",\"scannedBytes\":").append(msgStore.getRecoverScannedBytes())
+                            .append(",\"truncatedBytes\":").append(msgStore.getRecoverTruncatedBytes())
+                            .append("},\"partitionInfo\":[");
                     for (int partitionId = 0; partitionId < numPartId; partitionId++) {
                         if (partitionId > 0) {
                             sBuilder.append(",");
@@ -331,6 +354,59 @@ public class BrokerAdminServlet extends AbstractWebHandler {
         sBuilder.append("],\"totalCount\":").append(recordId).append("}");
     }
 
+    /***
+     * Query the hit and miss statistics of the read buffer pool.
+     *
+     * @param req
+     * @param sBuilder process result
+     */
+    public void adminQueryReadBufferPoolInfo(HttpServletRequest req,
+                                             StringBuilder sBuilder) {
+        int index = 0;
+        ReadBufferPool bufferPool = broker.getStoreManager().getReadBufferPool();
+        sBuilder.append("{\"result\":true,\"errCode\":0,\"errMsg\":\"Success!\"")
+                .append(",\"maxCachedBufSize\":").append(bufferPool.getMaxCachedBufSize())
+                .append(",\"dataSet\":[");
+        for (ReadBufferPool.BufferType bufferType : ReadBufferPool.BufferType.values()) {
+            if (index++ > 0) {
+                sBuilder.append(",");
+            }
+            sBuilder.append("{\"bufferType\":\"").append(bufferType.name())
+                    .append("\",\"hitCount\":").append(bufferPool.getHitCount(bufferType))
+                    .append(",\"missCount\":").append(bufferPool.getMissCount(bufferType))
+                    .append(",\"allocatedBytes\":").append(bufferPool.getAllocatedBytes(bufferType))
+                    .append("}");
+        }
+        sBuilder.append("],\"totalCnt\":").append(index).append("}");
+    }
+
+    /***
+     * Query the group commit statistics and the fsync latency of each data directory.
+     *
+     * @param req
+     * @param sBuilder process result
+     */
+    public void adminQueryDiskFlushInfo(HttpServletRequest req,
+                                        StringBuilder sBuilder) {
+        int index = 0;
+        sBuilder.append("{\"result\":true,\"errCode\":0,\"errMsg\":\"Success!\"")
+                .append(",\"produceAckPolicy\":\"")
+                .append(broker.getTubeConfig().getProduceAckPolicy().name())
+                .append("\",\"dataSet\":[");
+        for (DiskFlushService flushService : broker.getStoreManager().getDiskFlushServices()) {
+            if (index++ > 0) {
+                sBuilder.append(",");
+            }
+            sBuilder.append("{\"dataDir\":\"").append(flushService.getDataDir())
+                    .append("\",\"pendingStoreCnt\":").append(flushService.getPendingStoreCnt())
+                    .append(",\"flushRoundCnt\":").append(flushService.getFlushRoundCnt())
+                    .append(",\"flushStoreCnt\":").append(flushService.getFlushStoreCnt())
+                    .append(",\"fsyncLatencyUs\":");
+            flushService.getFsyncLatency().toJsonString(sBuilder).append("}");
+        }
+        sBuilder.append("],\"totalCnt\":").append(index).append("}");
+    }
+
     /***
      * Manual set offset.
      *
@@ -465,6 +541,62 @@ public class BrokerAdminServlet extends AbstractWebHandler {
                 .getMessageSnapshot(topicName, partitionId, msgCount, filterCondStrSet, sBuilder);
     }
 
+    /***
+     * Query the index offset of the first message received at or after the timestamp.
+     *
+     * @param req
+     * @param sBuilder process result
+     */
+    public void adminQueryOffsetByTime(HttpServletRequest req,
+                                       StringBuilder sBuilder) {
+        ProcessResult result = new ProcessResult();
+        if (!WebParameterUtils.getStringParamValue(req,
+                WebFieldDef.TOPICNAME, true, null, result)) {
+            WebParameterUtils.buildFailResult(sBuilder, result.errInfo);
+            return;
+        }
+        final String topicName = (String) result.retData1;
+        if (!WebParameterUtils.getIntParamValue(req,
+                WebFieldDef.PARTITIONID, true, -1, 0, result)) {
+            WebParameterUtils.buildFailResult(sBuilder, result.errInfo);
+            return;
+        }
+        final int partitionId = (Integer) result.retData1;
+        if (!WebParameterUtils.getLongParamValue(req,
+                WebFieldDef.MSGTIMESTAMP, true, -1, result)) {
+            WebParameterUtils.buildFailResult(sBuilder, result.errInfo);
+            return;
+        }
+        final long timestamp = (Long) result.retData1;
+        MessageStore store = null;
+        try {
+            store = broker.getStoreManager().getOrCreateMessageStore(topicName, partitionId);
+        } catch (Throwable e) {
+            //
+        }
+        if (store == null) {
+            sBuilder.append("{\"result\":false,\"errCode\":400,\"errMsg\":\"")
+                    .append("Invalid parameter: not found the store by topicName!")
+                    .append("\"}");
+            return;
+        }
+        long offset;
+        try {
+            offset = store.getIndexOffsetByTime(timestamp);
+        } catch (Throwable e) {
+            sBuilder.append("{\"result\":false,\"errCode\":500,\"errMsg\":\"")
+                    .append("Query offset by time failure: ").append(e.getMessage())
+                    .append("\"}");
+            return;
+        }
+        sBuilder.append("{\"result\":true,\"errCode\":0,\"errMsg\":\"OK!\"")
+                .append(",\"timestamp\":").append(timestamp)
+                .append(",\"offset\":").append(offset)
+                .append(",\"minOffset\":").append(store.getIndexMinOffset())
+                .append(",\"maxOffset\":").append(store.getIndexMaxOffset())
+                .append("}");
+    }
+
     /***
      * Query consumer group offset.
      *
@@ -34,7 +34,11 @@ public final class TServerConstants {
     public static final int CFG_ROWLOCK_DEFAULT_DURATION = 30000;
     public static final int CFG_ZK_COMMIT_DEFAULT_RETRIES = 10;
     public static final int CFG_STORE_DEFAULT_MSG_READ_UNIT = 327680;
+    public static final int CFG_STORE_MAX_POOLED_READ_BUF_SIZE = 8 * 1024 * 1024;
+    public static final long CFG_STORE_ACK_CHECK_DUR_MS = 10;
     public static final int CFG_BATCH_BROKER_OPERATE_MAX_COUNT = 50;
+    public static final int CFG_DEFAULT_MAX_FETCH_WAIT_TIME_MS = 5000;
+    public static final int CFG_DEFAULT_MAX_ACK_WAIT_TIME_MS = 3000;
     public static final int CFG_BATCH_RECORD_OPERATE_MAX_COUNT = 100;
 
     public static final int CFG_DEFAULT_DATA_UNFLUSH_HOLD = 0;
@@ -46,5 +50,6 @@ public final class TServerConstants {
 
     public static final long CFG_REPORT_DEFAULT_SYNC_DURATION = 2 * 3600 * 1000;
     public static final long CFG_STORE_STATS_MAX_REFRESH_DURATION = 20 * 60 * 1000;
+    public static final long CFG_DEFAULT_MAX_MMAP_READ_BYTES = 4L * 1024 * 1024 * 1024;
 
 }
@@ -171,7 +171,9 @@ public enum WebFieldDef {
     CONDSTATUS(56, "condStatus", "condStatus", WebFieldType.INT,
             "Group control rule status id", RegexDef.TMP_NUMBER),
     FILTERJSONSET(57, "filterCondJsonSet", "filterJsonSet",
-            WebFieldType.JSONSET, "The batch filter condition configure json array");
+            WebFieldType.JSONSET, "The batch filter condition configure json array"),
+    MSGTIMESTAMP(58, "timestamp", "ts", WebFieldType.LONG,
+            "Message received timestamp in milliseconds", RegexDef.TMP_NUMBER);
 
 
 
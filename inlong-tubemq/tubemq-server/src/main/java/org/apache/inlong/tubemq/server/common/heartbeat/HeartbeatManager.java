@@ -17,13 +17,11 @@
 
 package org.apache.inlong.tubemq.server.common.heartbeat;
 
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import org.apache.inlong.tubemq.corebase.utils.TStringUtils;
 import org.apache.inlong.tubemq.server.common.exception.HeartbeatException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +30,9 @@ import org.slf4j.LoggerFactory;
 public class HeartbeatManager {
 
     private static final Logger logger = LoggerFactory.getLogger(HeartbeatManager.class);
+    // the tick of the timing wheels, the same as the interval of the former full scans
+    private static final long TIMEOUT_CHECK_TICK_MS = 1000L;
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
 
     private final ConcurrentHashMap<String, TimeoutInfo> brokerRegMap =
             new ConcurrentHashMap<>();
@@ -39,6 +40,12 @@ public class HeartbeatManager {
             new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, TimeoutInfo> consumerRegMap =
             new ConcurrentHashMap<>();
+    private final TimeoutWheel brokerTimeoutWheel =
+            new TimeoutWheel(TIMEOUT_CHECK_TICK_MS, TIMEOUT_WHEEL_SIZE);
+    private final TimeoutWheel producerTimeoutWheel =
+            new TimeoutWheel(TIMEOUT_CHECK_TICK_MS, TIMEOUT_WHEEL_SIZE);
+    private final TimeoutWheel consumerTimeoutWheel =
+            new TimeoutWheel(TIMEOUT_CHECK_TICK_MS, TIMEOUT_WHEEL_SIZE);
     private final ExecutorService timeoutScanService = Executors.newCachedThreadPool();
     private long brokerTimeoutDlt = 0;
     private long producerTimeoutDlt = 0;
@@ -93,7 +100,8 @@ public class HeartbeatManager {
      */
     public void regBrokerCheckBusiness(final long timeout, final TimeoutListener listener) {
         this.brokerTimeoutDlt = timeout;
-        this.registerCheckBusiness("Broker Node", this.brokerRegMap, listener);
+        this.registerCheckBusiness("Broker Node",
+                this.brokerRegMap, this.brokerTimeoutWheel, listener);
     }
 
     /**
@@ -104,7 +112,8 @@ public class HeartbeatManager {
      */
     public void regProducerCheckBusiness(final long timeout, final TimeoutListener listener) {
         this.producerTimeoutDlt = timeout;
-        this.registerCheckBusiness("Producer Node", this.producerRegMap, listener);
+        this.registerCheckBusiness("Producer Node",
+                this.producerRegMap, this.producerTimeoutWheel, listener);
     }
 
     /**
@@ -115,41 +124,33 @@ public class HeartbeatManager {
      */
     public void regConsumerCheckBusiness(final long timeout, final TimeoutListener listener) {
         this.consumerTimeoutDlt = timeout;
-        this.registerCheckBusiness("Consumer Node", this.consumerRegMap, listener);
+        this.registerCheckBusiness("Consumer Node",
+                this.consumerRegMap, this.consumerTimeoutWheel, listener);
     }
 
     private void registerCheckBusiness(final String businessType,
                                        final Map<String, TimeoutInfo> nodeMap,
+                                       final TimeoutWheel timeoutWheel,
                                        final TimeoutListener listener) {
 
         timeoutScanService.submit(new Runnable() {
             @Override
             public void run() {
+                Map<String, TimeoutInfo> expiredNodes = new HashMap<>();
                 while (!isStopped) {
                     try {
-                        long currentTime = System.currentTimeMillis();
-                        Set<String> removedNodeKey = new HashSet<>();
-                        for (Map.Entry<String, TimeoutInfo> entry : nodeMap.entrySet()) {
-                            if (TStringUtils.isBlank(entry.getKey()) || entry.getValue() == null) {
-                                continue;
-                            }
-                            if (currentTime >= entry.getValue().getTimeoutTime()) {
-                                removedNodeKey.add(entry.getKey());
-                            }
-                        }
-                        if (!removedNodeKey.isEmpty()) {
-                            for (String nodeKey : removedNodeKey) {
-                                TimeoutInfo timeoutInfo = nodeMap.get(nodeKey);
-                                if (timeoutInfo == null) {
-                                    continue;
-                                }
-                                if (currentTime >= timeoutInfo.getTimeoutTime()) {
-                                    nodeMap.remove(nodeKey);
-                                    listener.onTimeout(nodeKey, timeoutInfo);
-                                }
+                        timeoutWheel.advance(System.currentTimeMillis(), nodeMap, expiredNodes);
+                        for (Map.Entry<String, TimeoutInfo> entry : expiredNodes.entrySet()) {
+                            try {
+                                listener.onTimeout(entry.getKey(), entry.getValue());
+                            } catch (Throwable t) {
+                                logger.error(new StringBuilder(256).append(businessType)
+                                        .append(" timeout process error, nodeId=")
+                                        .append(entry.getKey()).toString(), t);
                             }
                         }
-                        Thread.sleep(1000 * 1);
+                        expiredNodes.clear();
+                        Thread.sleep(TIMEOUT_CHECK_TICK_MS);
                     } catch (Throwable t) {
                         logger.error(new StringBuilder(256)
                                 .append(businessType).append(" heartbeat scan error!").toString(), t);
@@ -166,7 +167,10 @@ public class HeartbeatManager {
      * @return the timeout info for the registered node
      */
     public TimeoutInfo regBrokerNode(final String nodeId) {
-        return this.brokerRegMap.put(nodeId, new TimeoutInfo(this.brokerTimeoutDlt));
+        TimeoutInfo timeoutInfo = new TimeoutInfo(this.brokerTimeoutDlt);
+        TimeoutInfo oldTimeoutInfo = this.brokerRegMap.put(nodeId, timeoutInfo);
+        this.brokerTimeoutWheel.add(nodeId, timeoutInfo);
+        return oldTimeoutInfo;
     }
 
     /**
@@ -176,7 +180,10 @@ public class HeartbeatManager {
      * @return the timeout info of the registered node
      */
     public TimeoutInfo regProducerNode(final String nodeId) {
-        return this.producerRegMap.put(nodeId, new TimeoutInfo(this.producerTimeoutDlt));
+        TimeoutInfo timeoutInfo = new TimeoutInfo(this.producerTimeoutDlt);
+        TimeoutInfo oldTimeoutInfo = this.producerRegMap.put(nodeId, timeoutInfo);
+        this.producerTimeoutWheel.add(nodeId, timeoutInfo);
+        return oldTimeoutInfo;
     }
 
     /**
@@ -186,7 +193,10 @@ public class HeartbeatManager {
      * @return the timeout info of the registered node
      */
     public TimeoutInfo regConsumerNode(final String nodeId) {
-        return this.consumerRegMap.put(nodeId, new TimeoutInfo(this.consumerTimeoutDlt));
+        TimeoutInfo timeoutInfo = new TimeoutInfo(this.consumerTimeoutDlt);
+        TimeoutInfo oldTimeoutInfo = this.consumerRegMap.put(nodeId, timeoutInfo);
+        this.consumerTimeoutWheel.add(nodeId, timeoutInfo);
+        return oldTimeoutInfo;
     }
 
     /**
@@ -200,8 +210,11 @@ public class HeartbeatManager {
     public TimeoutInfo regConsumerNode(final String nodeId,
                                        final String consumerId,
                                        final String partStr) {
-        return this.consumerRegMap.put(nodeId,
-                new TimeoutInfo(consumerId, partStr, this.consumerTimeoutDlt));
+        TimeoutInfo timeoutInfo =
+                new TimeoutInfo(consumerId, partStr, this.consumerTimeoutDlt);
+        TimeoutInfo oldTimeoutInfo = this.consumerRegMap.put(nodeId, timeoutInfo);
+        this.consumerTimeoutWheel.add(nodeId, timeoutInfo);
+        return oldTimeoutInfo;
     }
 
     /**
@@ -296,5 +309,8 @@ public class HeartbeatManager {
         brokerRegMap.clear();
         producerRegMap.clear();
         consumerRegMap.clear();
+        brokerTimeoutWheel.clear();
+        producerTimeoutWheel.clear();
+        consumerTimeoutWheel.clear();
     }
 }
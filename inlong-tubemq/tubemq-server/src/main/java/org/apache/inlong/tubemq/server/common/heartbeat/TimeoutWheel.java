@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.common.heartbeat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel of the heartbeat timeouts.
+ *
+ * A registered node is put into the bucket of its timeout time. The heartbeat only
+ * refreshes the timeout time of the node, the node is moved to the bucket of its new
+ * timeout time when its old bucket expires, so each node is visited once per timeout
+ * period instead of in every scan.
+ */
+public class TimeoutWheel {
+    private final long tickMs;
+    private final int wheelSize;
+    private final List<ConcurrentLinkedQueue<WheelEntry>> buckets;
+    // the first tick not expired, only accessed by the expiring thread
+    private long nextTick;
+
+    /**
+     * Create a timing wheel.
+     *
+     * @param tickMs     the time span of a bucket
+     * @param wheelSize  the bucket count
+     */
+    public TimeoutWheel(long tickMs, int wheelSize) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            this.buckets.add(new ConcurrentLinkedQueue<WheelEntry>());
+        }
+        this.nextTick = System.currentTimeMillis() / tickMs;
+    }
+
+    /**
+     * Add a node to the bucket of its timeout time.
+     *
+     * @param nodeId       the id of the node
+     * @param timeoutInfo  the timeout info of the node
+     */
+    public void add(final String nodeId, final TimeoutInfo timeoutInfo) {
+        addEntry(new WheelEntry(nodeId, timeoutInfo));
+    }
+
+    /**
+     * Expire the buckets passed by the current time.
+     *
+     * The node is removed from the node map if it's timeout, and moved to another bucket
+     * if its timeout time has been refreshed. The node unregistered or registered again
+     * is dropped from the old bucket.
+     *
+     * @param currentTime   the current time
+     * @param nodeMap       the registered nodes
+     * @param expiredNodes  the nodes removed for timeout
+     * @return the count of the nodes visited
+     */
+    public int advance(long currentTime, final Map<String, TimeoutInfo> nodeMap,
+                       final Map<String, TimeoutInfo> expiredNodes) {
+        final long curTick = currentTime / tickMs;
+        if (curTick <= nextTick) {
+            return 0;
+        }
+        int visitCnt = 0;
+        WheelEntry entry;
+        List<WheelEntry> refreshedEntries = new ArrayList<>();
+        long endTick = Math.min(curTick, nextTick + wheelSize);
+        for (long tick = nextTick; tick < endTick; tick++) {
+            ConcurrentLinkedQueue<WheelEntry> bucket = buckets.get((int) (tick % wheelSize));
+            while ((entry = bucket.poll()) != null) {
+                visitCnt++;
+                if (nodeMap.get(entry.nodeId) != entry.timeoutInfo) {
+                    continue;
+                }
+                if (currentTime >= entry.timeoutInfo.getTimeoutTime()) {
+                    if (nodeMap.remove(entry.nodeId, entry.timeoutInfo)) {
+                        expiredNodes.put(entry.nodeId, entry.timeoutInfo);
+                    }
+                } else {
+                    refreshedEntries.add(entry);
+                }
+            }
+        }
+        nextTick = curTick;
+        for (WheelEntry refreshedEntry : refreshedEntries) {
+            addEntry(refreshedEntry);
+        }
+        return visitCnt;
+    }
+
+    /**
+     * Clear all the buckets.
+     */
+    public void clear() {
+        for (ConcurrentLinkedQueue<WheelEntry> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    private void addEntry(final WheelEntry entry) {
+        buckets.get((int) ((entry.timeoutInfo.getTimeoutTime() / tickMs) % wheelSize))
+                .offer(entry);
+    }
+
+    private static class WheelEntry {
+        private final String nodeId;
+        private final TimeoutInfo timeoutInfo;
+
+        WheelEntry(String nodeId, TimeoutInfo timeoutInfo) {
+            this.nodeId = nodeId;
+            this.timeoutInfo = timeoutInfo;
+        }
+    }
+}
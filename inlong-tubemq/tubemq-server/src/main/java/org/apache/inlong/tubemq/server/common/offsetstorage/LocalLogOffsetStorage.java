@@ -0,0 +1,424 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.common.offsetstorage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.inlong.tubemq.corebase.TokenConstants;
+import org.apache.inlong.tubemq.corebase.daemon.AbstractDaemonService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A offset storage implementation with a local offset log on broker.
+ * <p/>
+ * The committed offsets are appended to the local log and kept in memory, the log is
+ * compacted into a snapshot file periodically. The offsets changed since the last
+ * checkpoint are written to the backing storage in background, so ZooKeeper only
+ * receives the latest offset of each partition once per checkpoint period.
+ */
+public class LocalLogOffsetStorage extends AbstractDaemonService implements OffsetStorage {
+    private static final Logger logger = LoggerFactory.getLogger(LocalLogOffsetStorage.class);
+    private static final String SNAPSHOT_FILE_NAME = "offsets.snapshot";
+    private static final String LOG_FILE_NAME = "offsets.log";
+    private static final String RECORD_COMMIT = "C";
+    private static final String RECORD_DELETE = "D";
+    // the min record count of the log before it is compacted
+    private static final int MIN_COMPACT_RECORD_CNT = 1024;
+
+    private final int brokerId;
+    private final OffsetStorage backingStorage;
+    private final File snapshotFile;
+    private final File logFile;
+    // group:topic:partitionId, the latest offset
+    private final ConcurrentHashMap<String, OffsetEntry> offsetMap =
+            new ConcurrentHashMap<>();
+    // group:topic:partitionId, the offset not checkpointed to the backing storage
+    private final ConcurrentHashMap<String, OffsetEntry> dirtyMap =
+            new ConcurrentHashMap<>();
+    private OutputStream logStream;
+    private int logRecordCnt = 0;
+
+    public LocalLogOffsetStorage(final String logPath, int brokerId,
+                                 final OffsetStorage backingStorage,
+                                 long checkpointPeriodMs) throws IOException {
+        super("[Offset Log]", checkpointPeriodMs);
+        this.brokerId = brokerId;
+        this.backingStorage = backingStorage;
+        File logDir = new File(logPath);
+        if (!logDir.exists() && !logDir.mkdirs()) {
+            throw new IOException(new StringBuilder(256)
+                    .append("[Offset Log] Could not make offset log directory ")
+                    .append(logDir.getAbsolutePath()).toString());
+        }
+        this.snapshotFile = new File(logDir, SNAPSHOT_FILE_NAME);
+        this.logFile = new File(logDir, LOG_FILE_NAME);
+        recover();
+        super.start();
+        logger.info(new StringBuilder(256)
+                .append("[Offset Log] Local offset log initiated, path=")
+                .append(logDir.getAbsolutePath()).append(", offset count=")
+                .append(offsetMap.size()).toString());
+    }
+
+    @Override
+    protected void loopProcess(long intervalMs) {
+        while (!super.isStopped()) {
+            try {
+                Thread.sleep(intervalMs);
+                checkpoint(false);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                logger.error("[Offset Log] Daemon checkpoint thread throw error ", t);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (super.stop()) {
+            return;
+        }
+        checkpoint(true);
+        synchronized (this) {
+            try {
+                logStream.close();
+            } catch (IOException e) {
+                logger.error("[Offset Log] Close offset log failure", e);
+            }
+        }
+        backingStorage.close();
+        logger.info("[Offset Log] Local offset log closed!");
+    }
+
+    @Override
+    public OffsetStorageInfo loadOffset(final String group, final String topic, int partitionId) {
+        OffsetEntry entry = offsetMap.get(buildOffsetKey(group, topic, partitionId));
+        if (entry == null) {
+            return backingStorage.loadOffset(group, topic, partitionId);
+        }
+        return new OffsetStorageInfo(topic, brokerId, partitionId,
+                entry.offset, entry.messageId, false);
+    }
+
+    @Override
+    public void commitOffset(final String group,
+                             final Collection<OffsetStorageInfo> offsetInfoList,
+                             boolean isFailRetry) {
+        if (offsetInfoList == null || offsetInfoList.isEmpty()) {
+            return;
+        }
+        StringBuilder sBuilder = new StringBuilder(512);
+        synchronized (this) {
+            for (final OffsetStorageInfo info : offsetInfoList) {
+                long newOffset;
+                long msgId;
+                synchronized (info) {
+                    if (!info.isModified()) {
+                        continue;
+                    }
+                    newOffset = info.getOffset();
+                    msgId = info.getMessageId();
+                    info.setModified(false);
+                }
+                OffsetEntry entry = new OffsetEntry(group,
+                        info.getTopic(), info.getPartitionId(), newOffset, msgId);
+                String offsetKey = buildOffsetKey(group, entry.topic, entry.partitionId);
+                offsetMap.put(offsetKey, entry);
+                dirtyMap.put(offsetKey, entry);
+                appendRecord(sBuilder.append(RECORD_COMMIT)
+                        .append(TokenConstants.ATTR_SEP).append(offsetKey)
+                        .append(TokenConstants.ATTR_SEP).append(msgId)
+                        .append(TokenConstants.ATTR_SEP).append(newOffset).toString());
+                sBuilder.delete(0, sBuilder.length());
+            }
+            flushLog(false);
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> queryZkAllGroupTopicInfos() {
+        return mergeGroupTopicInfo(backingStorage.queryZkAllGroupTopicInfos(), null);
+    }
+
+    @Override
+    public Map<String, Set<String>> queryZKGroupTopicInfo(List<String> groupSet) {
+        return mergeGroupTopicInfo(backingStorage.queryZKGroupTopicInfo(groupSet), groupSet);
+    }
+
+    @Override
+    public Map<Integer, Long> queryGroupOffsetInfo(String group, String topic,
+                                                  Set<Integer> partitionIds) {
+        Map<Integer, Long> offsetMap =
+                backingStorage.queryGroupOffsetInfo(group, topic, partitionIds);
+        for (Integer partitionId : partitionIds) {
+            OffsetEntry entry = this.offsetMap.get(buildOffsetKey(group, topic, partitionId));
+            if (entry != null) {
+                offsetMap.put(partitionId, entry.offset);
+            }
+        }
+        return offsetMap;
+    }
+
+    @Override
+    public void deleteGroupOffsetInfo(
+            Map<String, Map<String, Set<Integer>>> groupTopicPartMap) {
+        StringBuilder sBuilder = new StringBuilder(512);
+        synchronized (this) {
+            for (Map.Entry<String, Map<String, Set<Integer>>> entry
+                    : groupTopicPartMap.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    continue;
+                }
+                for (Map.Entry<String, Set<Integer>> topicEntry : entry.getValue().entrySet()) {
+                    if (topicEntry.getKey() == null || topicEntry.getValue() == null) {
+                        continue;
+                    }
+                    for (Integer partitionId : topicEntry.getValue()) {
+                        String offsetKey =
+                                buildOffsetKey(entry.getKey(), topicEntry.getKey(), partitionId);
+                        dirtyMap.remove(offsetKey);
+                        if (offsetMap.remove(offsetKey) != null) {
+                            appendRecord(sBuilder.append(RECORD_DELETE)
+                                    .append(TokenConstants.ATTR_SEP).append(offsetKey).toString());
+                            sBuilder.delete(0, sBuilder.length());
+                        }
+                    }
+                }
+            }
+            flushLog(false);
+        }
+        backingStorage.deleteGroupOffsetInfo(groupTopicPartMap);
+    }
+
+    /***
+     * Write the offsets changed since the last checkpoint to the backing storage,
+     * and compact the local log if it has grown enough.
+     *
+     * @param isFinal   whether the storage is closing
+     */
+    void checkpoint(boolean isFinal) {
+        synchronized (this) {
+            flushLog(true);
+        }
+        // group the changed offsets
+        Map<String, List<OffsetEntry>> groupEntries = new HashMap<>();
+        for (OffsetEntry offsetEntry : dirtyMap.values()) {
+            List<OffsetEntry> entries = groupEntries.get(offsetEntry.group);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                groupEntries.put(offsetEntry.group, entries);
+            }
+            entries.add(offsetEntry);
+        }
+        int failCnt = 0;
+        for (Map.Entry<String, List<OffsetEntry>> entry : groupEntries.entrySet()) {
+            List<OffsetStorageInfo> offsetInfoList = new ArrayList<>(entry.getValue().size());
+            for (OffsetEntry offsetEntry : entry.getValue()) {
+                offsetInfoList.add(new OffsetStorageInfo(offsetEntry.topic, brokerId,
+                        offsetEntry.partitionId, offsetEntry.offset, offsetEntry.messageId, true));
+            }
+            backingStorage.commitOffset(entry.getKey(), offsetInfoList, isFinal);
+            // the backing storage clears the modified flag of the offsets it has stored,
+            // the others and the entries committed meanwhile stay dirty for the next checkpoint
+            for (int i = 0; i < offsetInfoList.size(); i++) {
+                OffsetEntry offsetEntry = entry.getValue().get(i);
+                if (offsetInfoList.get(i).isModified()) {
+                    failCnt++;
+                } else {
+                    dirtyMap.remove(buildOffsetKey(offsetEntry.group,
+                            offsetEntry.topic, offsetEntry.partitionId), offsetEntry);
+                }
+            }
+        }
+        if (failCnt > 0) {
+            logger.warn(new StringBuilder(256).append("[Offset Log] ").append(failCnt)
+                    .append(" offsets failed to checkpoint, retry in the next checkpoint")
+                    .toString());
+        }
+        synchronized (this) {
+            if (isFinal || logRecordCnt >= Math.max(MIN_COMPACT_RECORD_CNT, 2 * offsetMap.size())) {
+                try {
+                    writeSnapshot();
+                } catch (IOException e) {
+                    logger.error("[Offset Log] Compact offset log failure", e);
+                }
+            }
+        }
+    }
+
+    /***
+     * Load the snapshot and replay the log, then compact them into a new snapshot.
+     *
+     * @throws IOException  if the snapshot can't be written
+     */
+    private void recover() throws IOException {
+        int recordCnt = replay(snapshotFile) + replay(logFile);
+        // whether the recovered offsets reached the backing storage is unknown
+        dirtyMap.putAll(offsetMap);
+        synchronized (this) {
+            writeSnapshot();
+        }
+        logger.info(new StringBuilder(256)
+                .append("[Offset Log] Recovered offsets from ").append(recordCnt)
+                .append(" records").toString());
+    }
+
+    private int replay(final File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int recordCnt = 0;
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        // the last record may be partly written when the broker crashed, only the
+        // records terminated by the line separator are complete
+        int lineEnd = content.lastIndexOf('\n');
+        if (lineEnd < content.length() - 1) {
+            logger.warn(new StringBuilder(256)
+                    .append("[Offset Log] Drop torn record ").append(content.substring(lineEnd + 1))
+                    .append(" in ").append(file.getAbsolutePath()).toString());
+        }
+        if (lineEnd < 0) {
+            return 0;
+        }
+        for (String line : content.substring(0, lineEnd).split("\n")) {
+            String[] items = line.split(TokenConstants.ATTR_SEP);
+            try {
+                if (RECORD_COMMIT.equals(items[0]) && items.length == 6) {
+                    int partitionId = Integer.parseInt(items[3]);
+                    offsetMap.put(buildOffsetKey(items[1], items[2], partitionId),
+                            new OffsetEntry(items[1], items[2], partitionId,
+                                    Long.parseLong(items[5]), Long.parseLong(items[4])));
+                } else if (RECORD_DELETE.equals(items[0]) && items.length == 4) {
+                    offsetMap.remove(buildOffsetKey(items[1],
+                            items[2], Integer.parseInt(items[3])));
+                } else {
+                    continue;
+                }
+                recordCnt++;
+            } catch (NumberFormatException e) {
+                logger.warn(new StringBuilder(256)
+                        .append("[Offset Log] Skip illegal record ").append(line)
+                        .append(" in ").append(file.getAbsolutePath()).toString());
+            }
+        }
+        return recordCnt;
+    }
+
+    // write all the offsets to a new snapshot, then start a new log
+    private void writeSnapshot() throws IOException {
+        File tmpFile = new File(snapshotFile.getParentFile(), SNAPSHOT_FILE_NAME + ".tmp");
+        StringBuilder sBuilder = new StringBuilder(512);
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            OutputStream bufStream = new BufferedOutputStream(out, 64 * 1024);
+            for (Map.Entry<String, OffsetEntry> entry : offsetMap.entrySet()) {
+                sBuilder.append(RECORD_COMMIT)
+                        .append(TokenConstants.ATTR_SEP).append(entry.getKey())
+                        .append(TokenConstants.ATTR_SEP).append(entry.getValue().messageId)
+                        .append(TokenConstants.ATTR_SEP).append(entry.getValue().offset)
+                        .append("\n");
+                bufStream.write(sBuilder.toString().getBytes(StandardCharsets.UTF_8));
+                sBuilder.delete(0, sBuilder.length());
+            }
+            bufStream.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (logStream != null) {
+            logStream.close();
+        }
+        logStream = new FileOutputStream(logFile, false);
+        logRecordCnt = 0;
+    }
+
+    private void appendRecord(final String record) {
+        try {
+            logStream.write((record + "\n").getBytes(StandardCharsets.UTF_8));
+            logRecordCnt++;
+        } catch (IOException e) {
+            logger.error("[Offset Log] Append offset log failure", e);
+        }
+    }
+
+    private void flushLog(boolean force) {
+        try {
+            logStream.flush();
+            if (force) {
+                ((FileOutputStream) logStream).getFD().sync();
+            }
+        } catch (IOException e) {
+            logger.error("[Offset Log] Flush offset log failure", e);
+        }
+    }
+
+    private Map<String, Set<String>> mergeGroupTopicInfo(
+            final Map<String, Set<String>> groupTopicMap, final List<String> groupSet) {
+        Set<String> qryGroups = (groupSet == null) ? null : new HashSet<>(groupSet);
+        for (OffsetEntry entry : offsetMap.values()) {
+            if (qryGroups != null && !qryGroups.contains(entry.group)) {
+                continue;
+            }
+            Set<String> topicSet = groupTopicMap.get(entry.group);
+            if (topicSet == null) {
+                topicSet = new HashSet<>();
+                groupTopicMap.put(entry.group, topicSet);
+            }
+            topicSet.add(entry.topic);
+        }
+        return groupTopicMap;
+    }
+
+    private String buildOffsetKey(final String group, final String topic, int partitionId) {
+        return new StringBuilder(256).append(group)
+                .append(TokenConstants.ATTR_SEP).append(topic)
+                .append(TokenConstants.ATTR_SEP).append(partitionId).toString();
+    }
+
+    private static class OffsetEntry {
+        private final String group;
+        private final String topic;
+        private final int partitionId;
+        private final long offset;
+        private final long messageId;
+
+        OffsetEntry(String group, String topic, int partitionId,
+                    long offset, long messageId) {
+            this.group = group;
+            this.topic = topic;
+            this.partitionId = partitionId;
+            this.offset = offset;
+            this.messageId = messageId;
+        }
+    }
+}
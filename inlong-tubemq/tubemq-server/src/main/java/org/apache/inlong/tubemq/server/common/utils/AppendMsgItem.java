@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.common.utils;
+
+// a message of a batch append, with its append result
+public class AppendMsgItem {
+    private final byte[] data;
+    private final int checkSum;
+    // the message type, null if there is none
+    private final String msgType;
+    private final int msgTypeCode;
+    private final int msgFlag;
+    // the numeric message time, negative if there is none
+    private final long msgTime;
+    private final AppendResult appendResult = new AppendResult();
+
+    public AppendMsgItem(byte[] data, int checkSum, String msgType,
+                         int msgTypeCode, int msgFlag, long msgTime) {
+        this.data = data;
+        this.checkSum = checkSum;
+        this.msgType = msgType;
+        this.msgTypeCode = msgTypeCode;
+        this.msgFlag = msgFlag;
+        this.msgTime = msgTime;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getDataLength() {
+        return data.length;
+    }
+
+    public int getCheckSum() {
+        return checkSum;
+    }
+
+    public String getMsgType() {
+        return msgType;
+    }
+
+    public int getMsgTypeCode() {
+        return msgTypeCode;
+    }
+
+    public int getMsgFlag() {
+        return msgFlag;
+    }
+
+    public long getMsgTime() {
+        return msgTime;
+    }
+
+    public AppendResult getAppendResult() {
+        return appendResult;
+    }
+}
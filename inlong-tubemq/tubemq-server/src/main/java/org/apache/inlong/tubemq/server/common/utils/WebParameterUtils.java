@@ -822,7 +822,8 @@ public class WebParameterUtils {
 
     /**
      * Decode the deletePolicy parameter value from an object value
-     * the value must like {method},{digital}[s|m|h]
+     * the value must like {method},{digital}[s|m|h], or {method},{digital}[s|m|h],{digital}[k|m|g|t]
+     * with the max data size of the topic on each broker
      *
      * @param paramName    the parameter name
      * @param paramValue   the parameter value which is an object for parsing
@@ -852,12 +853,23 @@ public class WebParameterUtils {
                     .append(" parameter is ").append(paramMaxLen)
                     .append(" characters").toString());
         }
-        String[] tmpStrs = inDelPolicy.split(",");
-        if (tmpStrs.length != 2) {
+        // keep the trailing empty parts, so a policy ending with a comma is rejected
+        String[] tmpStrs = inDelPolicy.split(",", -1);
+        if (tmpStrs.length != 2 && tmpStrs.length != 3) {
             throw new Exception(new StringBuilder(512)
-                    .append("Illegal value: must include one and only one comma character,")
+                    .append("Illegal value: must include one or two comma characters,")
                     .append(" the format of ").append(paramName)
-                    .append(" must like {method},{digital}[m|s|h]").toString());
+                    .append(" must like {method},{digital}[m|s|h] or")
+                    .append(" {method},{digital}[m|s|h],{digital}[k|m|g|t]").toString());
+        }
+        String sizePolicy = "";
+        if (tmpStrs.length == 3) {
+            if (DataStoreUtils.parseDeleteSize(tmpStrs[2]) <= 0) {
+                throw new Exception(new StringBuilder(512)
+                        .append("Illegal value: the value of max data size must be")
+                        .append(" positive digits with optional [k|m|g|t] unit!").toString());
+            }
+            sizePolicy = "," + tmpStrs[2].trim().toLowerCase();
         }
         if (TStringUtils.isBlank(tmpStrs[0])) {
             throw new Exception(new StringBuilder(512)
@@ -869,7 +881,11 @@ public class WebParameterUtils {
             throw new Exception(new StringBuilder(512)
                     .append("Illegal value: only support delete method now!").toString());
         }
-        String validValStr = tmpStrs[1];
+        String validValStr = tmpStrs[1].trim();
+        if (validValStr.isEmpty()) {
+            throw new Exception(new StringBuilder(512)
+                    .append("Illegal value: the value of valid duration must not be blank!").toString());
+        }
         String timeUnit = validValStr.substring(validValStr.length() - 1).toLowerCase();
         if (Character.isLetter(timeUnit.charAt(0))) {
             if (!allowedDelUnits.contains(timeUnit)) {
@@ -901,10 +917,10 @@ public class WebParameterUtils {
         if (Character.isLetter(timeUnit.charAt(0))) {
             return new StringBuilder(512).append("delete,")
                     .append(validValStr.substring(0, validValStr.length() - 1))
-                    .append(timeUnit).toString();
+                    .append(timeUnit).append(sizePolicy).toString();
         } else {
             return new StringBuilder(512).append("delete,")
-                    .append(validValStr).append("h").toString();
+                    .append(validValStr).append("h").append(sizePolicy).toString();
         }
     }
 
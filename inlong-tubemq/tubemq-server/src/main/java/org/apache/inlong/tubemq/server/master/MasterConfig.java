@@ -81,6 +81,7 @@ public class MasterConfig extends AbstractFileConfig {
     private String visitPassword = "";
     private long authValidTimeStampPeriodMs = TBaseConstants.CFG_DEFAULT_AUTH_TIMESTAMP_VALID_INTERVAL;
     private int rebalanceParallel = 4;
+    private boolean enableWeightedBalance = false;
 
     /**
      * getters
@@ -259,6 +260,10 @@ public class MasterConfig extends AbstractFileConfig {
         return rebalanceParallel;
     }
 
+    public boolean isEnableWeightedBalance() {
+        return enableWeightedBalance;
+    }
+
     /**
      * Load file section attributes
      *
@@ -470,6 +475,9 @@ public class MasterConfig extends AbstractFileConfig {
             int tmpParallel = this.getInt(masterConf, "rebalanceParallel");
             this.rebalanceParallel = MixedUtils.mid(tmpParallel, 1, 20);
         }
+        if (TStringUtils.isNotBlank(masterConf.get("enableWeightedBalance"))) {
+            this.enableWeightedBalance = this.getBoolean(masterConf, "enableWeightedBalance");
+        }
     }
 
     /**
@@ -617,6 +625,7 @@ public class MasterConfig extends AbstractFileConfig {
                 .append("visitName", visitName)
                 .append("visitPassword", visitPassword)
                 .append("rebalanceParallel", rebalanceParallel)
+                .append("enableWeightedBalance", enableWeightedBalance)
                 .append(",").append(replicationConfig.toString())
                 .append(",").append(tlsConfig.toString())
                 .append(",").append(zkConfig.toString())
@@ -100,6 +100,7 @@ import org.apache.inlong.tubemq.server.common.utils.RowLock;
 import org.apache.inlong.tubemq.server.common.utils.Sleeper;
 import org.apache.inlong.tubemq.server.master.balance.DefaultLoadBalancer;
 import org.apache.inlong.tubemq.server.master.balance.LoadBalancer;
+import org.apache.inlong.tubemq.server.master.balance.TrafficPartitionWeigher;
 import org.apache.inlong.tubemq.server.master.bdbstore.DefaultBdbStoreService;
 import org.apache.inlong.tubemq.server.master.bdbstore.bdbentitys.BdbBrokerConfEntity;
 import org.apache.inlong.tubemq.server.master.bdbstore.bdbentitys.BdbClusterSettingEntity;
@@ -138,6 +139,7 @@ public class TMaster extends HasThread implements MasterService, Stoppable {
     private final RowLock masterRowLock;                        //lock
     private final WebServer webServer;                          //web server
     private final LoadBalancer loadBalancer;                    //load balance
+    private TrafficPartitionWeigher partitionWeigher = null;    //partition weigher
     private final MasterConfig masterConfig;                    //master config
     private final NodeAddrInfo masterAddInfo;                   //master address info
     private final HeartbeatManager heartbeatManager;            //heartbeat manager
@@ -178,6 +180,10 @@ public class TMaster extends HasThread implements MasterService, Stoppable {
         this.consumerEventManager = new ConsumerEventManager(consumerHolder);
         this.topicPSInfoManager = new TopicPSInfoManager(this);
         this.loadBalancer = new DefaultLoadBalancer();
+        if (masterConfig.isEnableWeightedBalance()) {
+            this.partitionWeigher = new TrafficPartitionWeigher();
+            this.loadBalancer.setPartitionWeigher(this.partitionWeigher);
+        }
         this.zkOffsetStorage = new ZkOffsetStorage(this.masterConfig.getZkConfig(),
                 false, TBaseConstants.META_VALUE_UNDEFINED);
         this.heartbeatManager = new HeartbeatManager();
@@ -1226,6 +1232,10 @@ public class TMaster extends HasThread implements MasterService, Stoppable {
         }
         brokerHolder.updateBrokerReportStatus(brokerInfo.getBrokerId(),
                 request.getReadStatusRpt(), request.getWriteStatusRpt());
+        if (partitionWeigher != null) {
+            partitionWeigher.updateBrokerPartLoads(brokerInfo.getBrokerId(),
+                    request.getPartLoadInfoList());
+        }
         long reFlowCtrlId = request.hasFlowCheckId()
                 ? request.getFlowCheckId() : TBaseConstants.META_VALUE_UNDEFINED;
         int qryPriorityId = request.hasQryPriorityId()
@@ -1953,9 +1963,26 @@ public class TMaster extends HasThread implements MasterService, Stoppable {
 
     // process unReset group rebalance
     public void processRebalance(long rebalanceId, boolean isFirstReb, List<String> groups) {
+        final StringBuilder strBuffer = new StringBuilder(512);
+        // the groups are balanced independently, balance them one by one
+        // to record the cost of each group
+        for (String group : groups) {
+            if (group == null) {
+                continue;
+            }
+            processGroupRebalance(rebalanceId, isFirstReb, group, strBuffer);
+        }
+    }
+
+    private void processGroupRebalance(long rebalanceId, boolean isFirstReb,
+                                       String group, final StringBuilder strBuffer) {
         // #lizard forgives
+        final long startTime = System.currentTimeMillis();
+        // the load balancer may remove the group from the list
+        final List<String> groups = new ArrayList<>();
+        groups.add(group);
         Map<String, Map<String, List<Partition>>> finalSubInfoMap = null;
-        final StringBuilder strBuffer = new StringBuilder(512);
+        int movedPartCnt = 0;
         // choose different load balance strategy
         if (isFirstReb) {
             finalSubInfoMap = this.loadBalancer.bukAssign(consumerHolder,
@@ -2067,6 +2094,7 @@ public class TMaster extends HasThread implements MasterService, Stoppable {
                 }
             }
             if (addedSubInfoList.size() > 0) {
+                movedPartCnt += addedSubInfoList.size();
                 EventType opType =
                         deletedSubInfoList.size() > 0
                                 ? EventType.CONNECT : EventType.ONLY_CONNECT;
@@ -2081,6 +2109,16 @@ public class TMaster extends HasThread implements MasterService, Stoppable {
                 }
             }
         }
+        // record the rebalance statistics of the group
+        final long rebalanceDurMs = System.currentTimeMillis() - startTime;
+        consumerHolder.setRebalanceStats(group, rebalanceDurMs, movedPartCnt);
+        if (movedPartCnt > 0) {
+            logger.info(strBuffer.append("[Rebalance Stats] ").append(rebalanceId)
+                    .append(", group=").append(group).append(", moved partitions=")
+                    .append(movedPartCnt).append(", cost=").append(rebalanceDurMs)
+                    .append("ms").toString());
+            strBuffer.delete(0, strBuffer.length());
+        }
     }
 
     /**
@@ -2518,6 +2556,9 @@ public class TMaster extends HasThread implements MasterService, Stoppable {
         void run(String arg) {
             int brokerId = Integer.parseInt(arg);
             BrokerInfo broker = brokerHolder.removeBroker(brokerId);
+            if (partitionWeigher != null) {
+                partitionWeigher.removeBroker(brokerId);
+            }
             if (broker != null) {
                 List<TopicInfo> topicInfoList =
                         topicPSInfoManager.getBrokerPubInfoList(broker);
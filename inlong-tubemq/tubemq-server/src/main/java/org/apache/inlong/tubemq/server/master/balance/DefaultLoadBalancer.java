@@ -19,8 +19,11 @@ package org.apache.inlong.tubemq.server.master.balance;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -28,7 +31,6 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.inlong.tubemq.corebase.TokenConstants;
 import org.apache.inlong.tubemq.corebase.cluster.ConsumerInfo;
@@ -51,6 +53,9 @@ import org.slf4j.LoggerFactory;
 public class DefaultLoadBalancer implements LoadBalancer {
     private static final Logger logger = LoggerFactory.getLogger(LoadBalancer.class);
     private static final Random RANDOM = new Random(System.currentTimeMillis());
+    // the load of a consumer may exceed the average weight by this percent
+    private static final int WEIGHT_BALANCE_TOLERANCE_PCT = 10;
+    private volatile PartitionWeigher partitionWeigher = null;
 
     public DefaultLoadBalancer() {
 
@@ -197,11 +202,11 @@ public class DefaultLoadBalancer implements LoadBalancer {
                     }
                 }
             }
-            //　random allocate
+            // allocate the partitions without consumer
             if (psMap.size() > 0) {
                 onlineOfflineGroupSet.add(group);
                 if (!newConsumerList2.isEmpty()) {
-                    this.randomAssign(psMap, newConsumerList2,
+                    this.leastLoadAssign(psMap, newConsumerList2,
                             finalSubInfoMap, clusterState, rebProcessInfo.needProcessList);
                 }
             }
@@ -285,65 +290,51 @@ public class DefaultLoadBalancer implements LoadBalancer {
             if (CollectionUtils.isEmpty(consumerList)) {
                 continue;
             }
-            // sort consumer and partitions, then mod
+            if (partitionWeigher != null) {
+                weightedBalance(consumerList, clusterState);
+                continue;
+            }
+            // sticky balance: the consumers with heavier load keep the extra partitions,
+            // only the partitions exceeding the quota of each consumer are moved
             Set<String> topics = consumerBandInfo.getTopicSet();
             Map<String, Partition> psPartMap = topicPSInfoManager.getPartitionMap(topics);
             int min = psPartMap.size() / consumerList.size();
-            int max = psPartMap.size() % consumerList.size() == 0 ? min : min + 1;
             int serverNumToLoadMax = psPartMap.size() % consumerList.size();
-            Queue<Partition> partitionToMove = new LinkedBlockingQueue<>();
-            Map<String, Integer> serverToTake = new HashMap<>();
+            final Map<String, Integer> consumerLoadMap = new HashMap<>();
             for (ConsumerInfo consumer : consumerList) {
-                Map<String, List<Partition>> partitions =
-                        clusterState.get(consumer.getConsumerId());
-                if (partitions == null) {
-                    partitions = new HashMap<>();
-                }
-                int load = 0;
-                for (List<Partition> entry : partitions.values()) {
-                    load += entry.size();
-                }
-                if (load < max) {
-                    if (load == 0) {
-                        serverToTake.put(consumer.getConsumerId(), max - load);
-                    } else if (load < min) {
-                        serverToTake.put(consumer.getConsumerId(), max - load);
-                    }
-                    continue;
+                consumerLoadMap.put(consumer.getConsumerId(),
+                        getConsumerLoad(clusterState, consumer.getConsumerId()));
+            }
+            List<ConsumerInfo> sortedConsumers = new ArrayList<>(consumerList);
+            Collections.sort(sortedConsumers, new Comparator<ConsumerInfo>() {
+                @Override
+                public int compare(ConsumerInfo o1, ConsumerInfo o2) {
+                    int loadCmp = consumerLoadMap.get(o2.getConsumerId())
+                            .compareTo(consumerLoadMap.get(o1.getConsumerId()));
+                    return loadCmp != 0 ? loadCmp
+                            : o1.getConsumerId().compareTo(o2.getConsumerId());
                 }
-                int numToOffload;
+            });
+            Queue<Partition> partitionToMove = new LinkedList<>();
+            Map<String, Integer> serverToTake = new LinkedHashMap<>();
+            for (ConsumerInfo consumer : sortedConsumers) {
+                int quota = min;
                 if (serverNumToLoadMax > 0) {
                     serverNumToLoadMax--;
-                    numToOffload = load - max;
-                } else {
-                    numToOffload = load - min;
+                    quota = min + 1;
                 }
-                // calculate if current consumer partition need to release or add
-                for (List<Partition> entry : partitions.values()) {
-                    if (entry.size() > numToOffload) {
-                        int condition = numToOffload;
-                        for (int i = 0; i < condition; i++) {
-                            partitionToMove.add(entry.remove(0));
-                            numToOffload--;
-                        }
-                        if (numToOffload <= 0) {
-                            break;
-                        }
-                    } else {
-                        numToOffload -= entry.size();
-                        partitionToMove.addAll(entry);
-                        entry.clear();
-                        if (numToOffload <= 0) {
-                            break;
-                        }
-                    }
+                int load = consumerLoadMap.get(consumer.getConsumerId());
+                if (load < quota) {
+                    serverToTake.put(consumer.getConsumerId(), quota - load);
+                } else if (load > quota) {
+                    offloadPartitions(clusterState.get(consumer.getConsumerId()),
+                            load - quota, partitionToMove);
                 }
             }
-            // random allocate the rest partition
+            // allocate the moved partitions to the consumers under quota
             for (Entry<String, Integer> entry : serverToTake.entrySet()) {
                 for (int i = 0; i < entry.getValue() && partitionToMove.size() > 0; i++) {
-                    Partition partition = partitionToMove.poll();
-                    assign(partition, clusterState, entry.getKey());
+                    assign(partitionToMove.poll(), clusterState, entry.getKey());
                 }
             }
             // load balance partition between consumer
@@ -355,7 +346,6 @@ public class DefaultLoadBalancer implements LoadBalancer {
                     assign(partitionToMove.poll(), clusterState, consumerId);
                 }
             }
-
         }
         return clusterState;
     }
@@ -377,7 +367,137 @@ public class DefaultLoadBalancer implements LoadBalancer {
     }
 
     /**
-     * Random assign partition
+     * Balance the partitions of a group by weight. The overloaded consumers release
+     * their partitions without dropping below the average weight, then the released
+     * partitions are assigned to the least loaded consumers, heaviest first.
+     *
+     * @param consumerList
+     * @param clusterState
+     */
+    private void weightedBalance(List<ConsumerInfo> consumerList,
+                                 Map<String, Map<String, List<Partition>>> clusterState) {
+        long totalWeight = 0;
+        final Map<String, Long> consumerWeightMap = new HashMap<>();
+        for (ConsumerInfo consumer : consumerList) {
+            long weight = getConsumerWeight(clusterState, consumer.getConsumerId());
+            consumerWeightMap.put(consumer.getConsumerId(), weight);
+            totalWeight += weight;
+        }
+        long avgWeight = totalWeight / consumerList.size();
+        long maxAllowedWeight = avgWeight + avgWeight * WEIGHT_BALANCE_TOLERANCE_PCT / 100;
+        List<Partition> partitionToMove = new ArrayList<>();
+        for (ConsumerInfo consumer : consumerList) {
+            long weight = consumerWeightMap.get(consumer.getConsumerId());
+            Map<String, List<Partition>> partitions = clusterState.get(consumer.getConsumerId());
+            while (weight > maxAllowedWeight && partitions != null) {
+                // release the heaviest partition which keeps the consumer above the average
+                List<Partition> selectedList = null;
+                int selectedIndex = -1;
+                long selectedWeight = -1;
+                for (List<Partition> ps : partitions.values()) {
+                    for (int i = 0; i < ps.size(); i++) {
+                        long partWeight = getPartitionWeight(ps.get(i));
+                        if (partWeight <= weight - avgWeight && partWeight > selectedWeight) {
+                            selectedList = ps;
+                            selectedIndex = i;
+                            selectedWeight = partWeight;
+                        }
+                    }
+                }
+                if (selectedList == null) {
+                    break;
+                }
+                partitionToMove.add(selectedList.remove(selectedIndex));
+                weight -= selectedWeight;
+            }
+            consumerWeightMap.put(consumer.getConsumerId(), weight);
+        }
+        sortByWeight(partitionToMove);
+        for (Partition partition : partitionToMove) {
+            String selectedId = null;
+            for (ConsumerInfo consumer : consumerList) {
+                if (selectedId == null || consumerWeightMap.get(consumer.getConsumerId())
+                        < consumerWeightMap.get(selectedId)) {
+                    selectedId = consumer.getConsumerId();
+                }
+            }
+            assign(partition, clusterState, selectedId);
+            consumerWeightMap.put(selectedId,
+                    consumerWeightMap.get(selectedId) + getPartitionWeight(partition));
+        }
+    }
+
+    private long getPartitionWeight(Partition partition) {
+        PartitionWeigher weigher = partitionWeigher;
+        return weigher == null ? 1 : weigher.getWeight(partition);
+    }
+
+    private void sortByWeight(List<Partition> partitions) {
+        final Map<String, Long> partWeightMap = new HashMap<>();
+        for (Partition partition : partitions) {
+            partWeightMap.put(partition.getPartitionKey(), getPartitionWeight(partition));
+        }
+        Collections.sort(partitions, new Comparator<Partition>() {
+            @Override
+            public int compare(Partition o1, Partition o2) {
+                return partWeightMap.get(o2.getPartitionKey())
+                        .compareTo(partWeightMap.get(o1.getPartitionKey()));
+            }
+        });
+    }
+
+    private long getConsumerWeight(Map<String, Map<String, List<Partition>>> clusterState,
+                                   String consumerId) {
+        long weight = 0;
+        Map<String, List<Partition>> partitions = clusterState.get(consumerId);
+        if (partitions != null) {
+            for (List<Partition> entry : partitions.values()) {
+                for (Partition partition : entry) {
+                    weight += getPartitionWeight(partition);
+                }
+            }
+        }
+        return weight;
+    }
+
+    private int getConsumerLoad(Map<String, Map<String, List<Partition>>> clusterState,
+                                String consumerId) {
+        int load = 0;
+        Map<String, List<Partition>> partitions = clusterState.get(consumerId);
+        if (partitions != null) {
+            for (List<Partition> entry : partitions.values()) {
+                load += entry.size();
+            }
+        }
+        return load;
+    }
+
+    /**
+     * Release partitions of a consumer, the partitions are taken from the topic
+     * the consumer holds the most partitions of, to keep the topics spread.
+     *
+     * @param partitions
+     * @param numToOffload
+     * @param partitionToMove
+     */
+    private void offloadPartitions(Map<String, List<Partition>> partitions,
+                                   int numToOffload, Queue<Partition> partitionToMove) {
+        for (int i = 0; i < numToOffload; i++) {
+            List<Partition> maxList = null;
+            for (List<Partition> entry : partitions.values()) {
+                if (maxList == null || entry.size() > maxList.size()) {
+                    maxList = entry;
+                }
+            }
+            if (maxList == null || maxList.isEmpty()) {
+                return;
+            }
+            partitionToMove.add(maxList.remove(maxList.size() - 1));
+        }
+    }
+
+    /**
+     * Assign the partitions without consumer to the least loaded consumers
      *
      * @param partitionToAssignMap
      * @param consumerList
@@ -385,55 +505,60 @@ public class DefaultLoadBalancer implements LoadBalancer {
      * @param oldClusterState
      * @param filterList
      */
-    private void randomAssign(Map<String, Partition> partitionToAssignMap,
-                              List<ConsumerInfo> consumerList,
-                              Map<String, Map<String, List<Partition>>> clusterState,
-                              Map<String, Map<String, Map<String, Partition>>> oldClusterState,
-                              List<String> filterList) {
-        int searched = 1;
+    private void leastLoadAssign(Map<String, Partition> partitionToAssignMap,
+                                 List<ConsumerInfo> consumerList,
+                                 Map<String, Map<String, List<Partition>>> clusterState,
+                                 Map<String, Map<String, Map<String, Partition>>> oldClusterState,
+                                 List<String> filterList) {
         int consumerSize = consumerList.size();
-        for (Partition partition : partitionToAssignMap.values()) {
-            ConsumerInfo consumer = null;
-            int indeId = RANDOM.nextInt(consumerSize);
-            do {
-                searched = 1;
-                consumer = consumerList.get(indeId);
-                if (filterList.contains(consumer.getConsumerId())) {
-                    if (consumerList.size() == 1) {
-                        searched = 0;
-                        break;
-                    }
+        long[] consumerLoads = new long[consumerSize];
+        for (int i = 0; i < consumerSize; i++) {
+            consumerLoads[i] = getConsumerWeight(clusterState, consumerList.get(i).getConsumerId());
+        }
+        // the heavier partitions are assigned first
+        List<Partition> partitions = new ArrayList<>(partitionToAssignMap.values());
+        if (partitionWeigher != null) {
+            sortByWeight(partitions);
+        }
+        // start from a random consumer, so the equally loaded consumers are selected evenly
+        int startIndex = RANDOM.nextInt(consumerSize);
+        for (Partition partition : partitions) {
+            int selectedIndex = -1;
+            for (int i = 0; i < consumerSize; i++) {
+                int index = (startIndex + i) % consumerSize;
+                if (selectedIndex >= 0 && consumerLoads[index] >= consumerLoads[selectedIndex]) {
+                    continue;
+                }
+                String consumerId = consumerList.get(index).getConsumerId();
+                // the consumer to be rebalanced doesn't take back its released partition
+                if (filterList.contains(consumerId)) {
                     Map<String, Map<String, Partition>> oldPartitionMap =
-                            oldClusterState.get(consumer.getConsumerId());
+                            oldClusterState.get(consumerId);
                     if (oldPartitionMap != null) {
                         Map<String, Partition> oldPartitions =
                                 oldPartitionMap.get(partition.getTopic());
-                        if (oldPartitions != null) {
-                            if (oldPartitions.get(partition.getPartitionKey()) != null) {
-                                searched = 2;
-                                indeId = (indeId + 1) % consumerSize;
-                            }
+                        if (oldPartitions != null
+                                && oldPartitions.get(partition.getPartitionKey()) != null) {
+                            continue;
                         }
                     }
                 }
-            } while (searched >= 2);
-            if (searched == 0) {
-                return;
-            }
-            Map<String, List<Partition>> partitions = clusterState.get(consumer.getConsumerId());
-            if (partitions == null) {
-                partitions = new HashMap<>();
-                clusterState.put(consumer.getConsumerId(), partitions);
+                selectedIndex = index;
             }
-            List<Partition> ps = partitions.get(partition.getTopic());
-            if (ps == null) {
-                ps = new ArrayList<>();
-                partitions.put(partition.getTopic(), ps);
+            if (selectedIndex < 0) {
+                continue;
             }
-            ps.add(partition);
+            assign(partition, clusterState, consumerList.get(selectedIndex).getConsumerId());
+            consumerLoads[selectedIndex] += getPartitionWeight(partition);
+            startIndex = (selectedIndex + 1) % consumerSize;
         }
     }
 
+    @Override
+    public void setPartitionWeigher(PartitionWeigher partitionWeigher) {
+        this.partitionWeigher = partitionWeigher;
+    }
+
     /**
      * Round robin assign partitions
      *
@@ -68,4 +68,12 @@ public interface LoadBalancer {
 
 
     ConsumerInfo randomAssignment(List<ConsumerInfo> servers);
+
+    /**
+     * Set the weigher of the partitions, the partitions are balanced by
+     * count if no weigher is set.
+     *
+     * @param partitionWeigher the partition weigher
+     */
+    void setPartitionWeigher(PartitionWeigher partitionWeigher);
 }
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.master.balance;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.inlong.tubemq.corebase.TokenConstants;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+
+/**
+ * Weigh the partitions by the traffic reported in the broker heartbeat. The weight
+ * is the ingest bytes per second plus the rate to drain the backlog in a period.
+ */
+public class TrafficPartitionWeigher implements PartitionWeigher {
+    // the backlog is expected to be drained in this period
+    private static final long BACKLOG_DRAIN_PERIOD_SEC = 60;
+    // the weight of the idle partitions, so they are still spread evenly
+    private static final long MIN_PARTITION_WEIGHT = 1024;
+    // partition key, the weight of the partition
+    private final ConcurrentHashMap<String, Long> partWeights =
+            new ConcurrentHashMap<>();
+    // broker id, the partition keys reported by the broker
+    private final ConcurrentHashMap<Integer, Set<String>> brokerPartKeys =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public long getWeight(Partition partition) {
+        Long weight = partWeights.get(partition.getPartitionKey());
+        return weight == null ? MIN_PARTITION_WEIGHT : weight;
+    }
+
+    /**
+     * Update the partition loads reported by a broker, the partitions
+     * not in the report are taken as idle.
+     *
+     * @param brokerId     the broker id
+     * @param partLoadInfo the load info list, formatted as
+     *                     topic:partitionId:ingestBytesPerSec:backlogBytes
+     */
+    public void updateBrokerPartLoads(int brokerId, List<String> partLoadInfo) {
+        Set<String> newPartKeys = new HashSet<>();
+        for (String loadInfo : partLoadInfo) {
+            String[] loadItems = loadInfo.split(TokenConstants.ATTR_SEP);
+            if (loadItems.length != 4) {
+                continue;
+            }
+            try {
+                long ingestRate = Long.parseLong(loadItems[2]);
+                long backlogSize = Long.parseLong(loadItems[3]);
+                String partKey = new StringBuilder(128).append(brokerId)
+                        .append(TokenConstants.ATTR_SEP).append(loadItems[0])
+                        .append(TokenConstants.ATTR_SEP).append(loadItems[1]).toString();
+                partWeights.put(partKey, Math.max(MIN_PARTITION_WEIGHT,
+                        ingestRate + backlogSize / BACKLOG_DRAIN_PERIOD_SEC));
+                newPartKeys.add(partKey);
+            } catch (NumberFormatException e) {
+                // skip the malformed item
+            }
+        }
+        Set<String> oldPartKeys = brokerPartKeys.put(brokerId, newPartKeys);
+        if (oldPartKeys != null) {
+            for (String partKey : oldPartKeys) {
+                if (!newPartKeys.contains(partKey)) {
+                    partWeights.remove(partKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the partition loads of an offline broker
+     *
+     * @param brokerId the broker id
+     */
+    public void removeBroker(int brokerId) {
+        Set<String> oldPartKeys = brokerPartKeys.remove(brokerId);
+        if (oldPartKeys != null) {
+            for (String partKey : oldPartKeys) {
+                partWeights.remove(partKey);
+            }
+        }
+    }
+}
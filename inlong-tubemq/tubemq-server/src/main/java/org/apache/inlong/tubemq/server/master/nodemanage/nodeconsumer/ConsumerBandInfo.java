@@ -61,6 +61,10 @@ public class ConsumerBandInfo {
     private int minRequireClientCnt = -2;       //minimal client count according to above ratio
     private int rebalanceCheckStatus = -2;      //rebalance check status
     private boolean rebalanceCheckPrint = true;   //log print flag
+    private volatile long lastRebalanceTime = -1;     //last rebalance time
+    private volatile long lastRebalanceDurMs = 0;     //last rebalance duration
+    private volatile int lastMovedPartCnt = 0;        //partitions moved in last rebalance
+    private AtomicLong totalMovedPartCnt = new AtomicLong(0); //total partitions moved
 
     public ConsumerBandInfo(boolean isSelectedBig) {
         this.sessionKey = "";
@@ -409,6 +413,35 @@ public class ConsumerBandInfo {
         return rebalanceCheckPrint;
     }
 
+    /**
+     * Record the statistics of the last rebalance
+     *
+     * @param rebalanceDurMs    the duration of the rebalance
+     * @param movedPartCnt      the count of partitions moved to other consumers
+     */
+    public void setRebalanceStats(long rebalanceDurMs, int movedPartCnt) {
+        this.lastRebalanceTime = System.currentTimeMillis();
+        this.lastRebalanceDurMs = rebalanceDurMs;
+        this.lastMovedPartCnt = movedPartCnt;
+        this.totalMovedPartCnt.addAndGet(movedPartCnt);
+    }
+
+    public long getLastRebalanceTime() {
+        return lastRebalanceTime;
+    }
+
+    public long getLastRebalanceDurMs() {
+        return lastRebalanceDurMs;
+    }
+
+    public int getLastMovedPartCnt() {
+        return lastMovedPartCnt;
+    }
+
+    public long getTotalMovedPartCnt() {
+        return totalMovedPartCnt.get();
+    }
+
     public AtomicBoolean getNotAllocate() {
         return notAllocate;
     }
@@ -116,6 +116,28 @@ public class ConsumerInfoHolder {
         return null;
     }
 
+    /**
+     * Record the statistics of the last rebalance of the group
+     *
+     * @param group            group name
+     * @param rebalanceDurMs   the duration of the rebalance
+     * @param movedPartCnt     the count of partitions moved to other consumers
+     */
+    public void setRebalanceStats(String group, long rebalanceDurMs, int movedPartCnt) {
+        if (group == null) {
+            return;
+        }
+        try {
+            rwLock.readLock().lock();
+            ConsumerBandInfo consumerBandInfo = groupInfoMap.get(group);
+            if (consumerBandInfo != null) {
+                consumerBandInfo.setRebalanceStats(rebalanceDurMs, movedPartCnt);
+            }
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
     /**
      * Set current broker/client ratio
      *
@@ -153,6 +153,10 @@ public class WebOtherInfoHandler extends AbstractWebHandler {
             int curBClientRate = -2;
             int minRequireClientCnt = -2;
             int rebalanceStatus = -2;
+            long lastRebalanceTime = -1;
+            long lastRebalanceDurMs = 0;
+            int lastMovedPartCnt = 0;
+            long totalMovedPartCnt = 0;
             Set<String> topicSet = new HashSet<>();
             List<ConsumerInfo> consumerList = new ArrayList<>();
             Map<String, NodeRebInfo> nodeRebInfoMap = new ConcurrentHashMap<>();
@@ -176,6 +180,10 @@ public class WebOtherInfoHandler extends AbstractWebHandler {
                 confBClientRate = consumerBandInfo.getConfBClientRate();
                 curBClientRate = consumerBandInfo.getCurBClientRate();
                 minRequireClientCnt = consumerBandInfo.getMinRequireClientCnt();
+                lastRebalanceTime = consumerBandInfo.getLastRebalanceTime();
+                lastRebalanceDurMs = consumerBandInfo.getLastRebalanceDurMs();
+                lastMovedPartCnt = consumerBandInfo.getLastMovedPartCnt();
+                totalMovedPartCnt = consumerBandInfo.getTotalMovedPartCnt();
                 if (isBandConsume) {
                     isNotAllocate = consumerBandInfo.isNotAllocate();
                     isSelectBig = consumerBandInfo.isSelectedBig();
@@ -228,6 +236,10 @@ public class WebOtherInfoHandler extends AbstractWebHandler {
                         .append(",\"confBClientRate\":").append(confBClientRate)
                         .append(",\"curBClientRate\":").append(curBClientRate);
             }
+            sBuilder.append("},\"rebStats\":{\"lastRebalanceTime\":").append(lastRebalanceTime)
+                    .append(",\"lastRebalanceDurMs\":").append(lastRebalanceDurMs)
+                    .append(",\"lastMovedPartCnt\":").append(lastMovedPartCnt)
+                    .append(",\"totalMovedPartCnt\":").append(totalMovedPartCnt);
             sBuilder.append("},\"filterConds\":{");
             if (existedTopicConditions != null) {
                 int keyCount = 0;
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/***
+ * MessageStoreManager test.
+ */
+public class MessageStoreManagerTest {
+
+    @Test
+    public void evictOldestFirst() {
+        // store1 holds the oldest and the third oldest files, store2 the second one
+        MessageStore store1 = mockStore("store1", new long[]{100L, 300L}, new long[]{10L, 30L});
+        MessageStore store2 = mockStore("store2", new long[]{200L, 400L}, new long[]{20L, 40L});
+        MessageStore store3 = mockStore("store3", new long[0], new long[0]);
+        List<MessageStore> candidateStores = new ArrayList<>();
+        candidateStores.add(store2);
+        candidateStores.add(store3);
+        candidateStores.add(store1);
+        AtomicInteger evictedCnt = new AtomicInteger(0);
+        // evicting stops once the released bytes reach the required size
+        long evictedSize = MessageStoreManager.evictOldestSegments(
+                candidateStores, 50L, evictedCnt, new StringBuilder(512));
+        Assert.assertEquals(60L, evictedSize);
+        Assert.assertEquals(3, evictedCnt.get());
+        InOrder inOrder = inOrder(store1, store2);
+        inOrder.verify(store1).expireOldestSegment();
+        inOrder.verify(store2).expireOldestSegment();
+        inOrder.verify(store1).expireOldestSegment();
+        verify(store2, times(1)).expireOldestSegment();
+        verify(store3, never()).expireOldestSegment();
+    }
+
+    @Test
+    public void evictUntilNoSealedFile() {
+        MessageStore store1 = mockStore("store1", new long[]{100L}, new long[]{10L});
+        // store2 reports a sealed file but fails to expire it
+        MessageStore store2 = mockStore("store2", new long[]{200L}, new long[]{20L});
+        doThrow(new IllegalStateException("closed")).when(store2).expireOldestSegment();
+        List<MessageStore> candidateStores = new ArrayList<>();
+        candidateStores.add(store1);
+        candidateStores.add(store2);
+        AtomicInteger evictedCnt = new AtomicInteger(0);
+        long evictedSize = MessageStoreManager.evictOldestSegments(
+                candidateStores, 1000L, evictedCnt, new StringBuilder(512));
+        Assert.assertEquals(10L, evictedSize);
+        Assert.assertEquals(1, evictedCnt.get());
+        // the failed store is not tried again
+        Assert.assertFalse(candidateStores.contains(store2));
+        verify(store2, times(1)).expireOldestSegment();
+    }
+
+    // a store with sealed files of the given modified times and sizes, oldest first
+    private MessageStore mockStore(String storeKey,
+                                   final long[] sealedTimes, final long[] fileSizes) {
+        final AtomicInteger expiredCnt = new AtomicInteger(0);
+        MessageStore msgStore = mock(MessageStore.class);
+        when(msgStore.getStoreKey()).thenReturn(storeKey);
+        when(msgStore.getOldestSealedTime()).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                int index = expiredCnt.get();
+                return index < sealedTimes.length ? sealedTimes[index] : Long.MAX_VALUE;
+            }
+        });
+        when(msgStore.expireOldestSegment()).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                int index = expiredCnt.get();
+                if (index >= fileSizes.length) {
+                    return 0L;
+                }
+                expiredCnt.incrementAndGet();
+                return fileSizes[index];
+            }
+        });
+        return msgStore;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * PendingFetchManager test.
+ */
+public class PendingFetchManagerTest {
+
+    @Test
+    public void wakeupAndExpire() throws Exception {
+        PendingFetchManager fetchManager = new PendingFetchManager(1);
+        try {
+            String storeKey = PendingFetchManager.getStoreKey("test", 1);
+            // woken up by new messages
+            final CountDownLatch wakeupLatch = new CountDownLatch(1);
+            long arrivalSeq = fetchManager.getArrivalSeq(storeKey);
+            Assert.assertTrue(fetchManager.park(storeKey, arrivalSeq,
+                    System.currentTimeMillis() + 60000, new Runnable() {
+                        @Override
+                        public void run() {
+                            wakeupLatch.countDown();
+                        }
+                    }));
+            Assert.assertEquals(1, fetchManager.getPendingCnt());
+            fetchManager.notifyArrival(storeKey);
+            Assert.assertTrue(wakeupLatch.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(0, fetchManager.getPendingCnt());
+            Assert.assertEquals(1, fetchManager.getWakeupCnt());
+            // messages arrived after the fetch, not parked
+            Assert.assertFalse(fetchManager.park(storeKey, arrivalSeq,
+                    System.currentTimeMillis() + 60000, wakeupLatch::countDown));
+            Assert.assertEquals(0, fetchManager.getPendingCnt());
+            // expired without new messages
+            final CountDownLatch expireLatch = new CountDownLatch(1);
+            Assert.assertTrue(fetchManager.park(storeKey,
+                    fetchManager.getArrivalSeq(storeKey),
+                    System.currentTimeMillis() + 50, expireLatch::countDown));
+            Assert.assertTrue(expireLatch.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, fetchManager.getExpiredCnt());
+            Assert.assertEquals(0, fetchManager.getPendingCnt());
+        } finally {
+            fetchManager.close();
+        }
+    }
+}
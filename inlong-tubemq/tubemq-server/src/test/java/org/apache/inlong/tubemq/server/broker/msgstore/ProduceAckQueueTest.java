@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * ProduceAckQueue test.
+ */
+public class ProduceAckQueueTest {
+
+    @Test
+    public void ackAndExpire() {
+        ProduceAckQueue ackQueue = new ProduceAckQueue();
+        final AtomicLong ackedOffset = new AtomicLong(0);
+        final AtomicInteger flushRequestCnt = new AtomicInteger(0);
+        final ProduceAckQueue.AckChecker ackChecker = new ProduceAckQueue.AckChecker() {
+            @Override
+            public boolean isAcked(long requiredOffset) {
+                if (ackedOffset.get() >= requiredOffset) {
+                    return true;
+                }
+                flushRequestCnt.incrementAndGet();
+                return false;
+            }
+        };
+        final AtomicInteger ackedCnt = new AtomicInteger(0);
+        final AtomicInteger unackedCnt = new AtomicInteger(0);
+        ProduceAckQueue.AckCallback callback = new ProduceAckQueue.AckCallback() {
+            @Override
+            public void onAckResult(boolean isAcked) {
+                if (isAcked) {
+                    ackedCnt.incrementAndGet();
+                } else {
+                    unackedCnt.incrementAndGet();
+                }
+            }
+        };
+        ackQueue.add(100, 1000, callback);
+        ackQueue.add(200, 1000, callback);
+        ackQueue.add(300, 2000, callback);
+        // nothing flushed, the flushes are requested
+        Assert.assertEquals(3, ackQueue.check(ackChecker, 0));
+        Assert.assertEquals(3, flushRequestCnt.get());
+        Assert.assertEquals(0, ackedCnt.get() + unackedCnt.get());
+        // the flush covers the first request only
+        ackedOffset.set(150);
+        Assert.assertEquals(2, ackQueue.check(ackChecker, 500));
+        Assert.assertEquals(1, ackedCnt.get());
+        // the second request expires, the third one still waits
+        Assert.assertEquals(1, ackQueue.check(ackChecker, 1000));
+        Assert.assertEquals(1, unackedCnt.get());
+        ackedOffset.set(300);
+        Assert.assertEquals(0, ackQueue.check(ackChecker, 1500));
+        Assert.assertEquals(2, ackedCnt.get());
+        Assert.assertTrue(ackQueue.isEmpty());
+        // the waiting requests fail when the store is closed
+        ackQueue.add(400, 5000, callback);
+        ackQueue.failAll();
+        Assert.assertEquals(2, unackedCnt.get());
+        Assert.assertEquals(0, ackQueue.check(ackChecker, 6000));
+        Assert.assertEquals(2, unackedCnt.get());
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore.disk;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/***
+ * DiskFlushService test.
+ */
+public class DiskFlushServiceTest {
+
+    @Test
+    public void closeWhileFlushing() throws Exception {
+        final CountDownLatch flushStartLatch = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        final AtomicInteger flushedCnt = new AtomicInteger(0);
+        MsgFileStore slowStore = Mockito.mock(MsgFileStore.class);
+        Mockito.when(slowStore.getStoreKey()).thenReturn("slow-0");
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                flushStartLatch.countDown();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                flushedCnt.incrementAndGet();
+                return null;
+            }
+        }).when(slowStore).forceFlush();
+        MsgFileStore queuedStore = Mockito.mock(MsgFileStore.class);
+        Mockito.when(queuedStore.getStoreKey()).thenReturn("queued-0");
+        DiskFlushService flushService = new DiskFlushService("/tmp/test");
+        flushService.start();
+        flushService.requestFlush(slowStore);
+        Assert.assertTrue(flushStartLatch.await(5, TimeUnit.SECONDS));
+        // queued while the round is running, flushed by close
+        flushService.requestFlush(queuedStore);
+        flushService.close();
+        // the running force is not interrupted and completes before close returns
+        Assert.assertFalse(interrupted.get());
+        Assert.assertEquals(1, flushedCnt.get());
+        Mockito.verify(queuedStore, Mockito.times(1)).forceFlush();
+        Assert.assertEquals(0, flushService.getPendingStoreCnt());
+        Assert.assertEquals(2, flushService.getFlushStoreCnt());
+    }
+}
@@ -83,4 +83,39 @@ public class FileSegmentListTest {
             }
         }
     }
+
+    @Test
+    public void expireSegmentsBySize() throws IOException {
+        File[] files = new File[3];
+        try {
+            fileSegmentList = new FileSegmentList();
+            for (int i = 0; i < files.length; i++) {
+                files[i] = File.createTempFile("data",
+                    DataStoreUtils.nameFromOffset(i * 10L, DataStoreUtils.DATA_FILE_SUFFIX));
+                Segment fileSegment = new FileSegment(i * 10L, files[i], true, SegmentType.DATA);
+                fileSegment.append(ByteBuffer.wrap(new byte[10]));
+                fileSegment.flush(true);
+                // only the last FileSegment is mutable.
+                fileSegment.setMutable(i == files.length - 1);
+                fileSegmentList.append(fileSegment);
+            }
+            Assert.assertEquals(30L, fileSegmentList.getSizeInBytes());
+            // expire the oldest sealed FileSegments until the size is under the limit.
+            Assert.assertEquals(20L, fileSegmentList.expireSegmentsBySize(15L));
+            Assert.assertEquals(10L, fileSegmentList.getSizeInBytes());
+            Assert.assertEquals(20L, fileSegmentList.getExpiredSizeInBytes());
+            Assert.assertEquals(20L, fileSegmentList.getMinOffset());
+            // the mutable FileSegment is never expired.
+            Assert.assertEquals(0L, fileSegmentList.expireSegmentsBySize(0L));
+            Assert.assertEquals(0L, fileSegmentList.expireOldestSegment());
+            Assert.assertEquals(Long.MAX_VALUE, fileSegmentList.getOldestSealedTime());
+        } finally {
+            fileSegmentList.close();
+            for (File file : files) {
+                if (file != null) {
+                    file.delete();
+                }
+            }
+        }
+    }
 }
@@ -20,6 +20,13 @@ package org.apache.inlong.tubemq.server.broker.msgstore.disk;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.inlong.tubemq.corebase.utils.CheckSum;
+import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
+import org.junit.Assert;
 
 /***
  * FileSegment test.
@@ -81,4 +88,268 @@ public class FileSegmentTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @org.junit.Test
+    public void mmapReadAndDelete() throws IOException {
+        File file = File.createTempFile("testdata", null);
+        file.deleteOnExit();
+        MmapReadController controller = new MmapReadController(true, 1024);
+        // create FileSegment, then seal it.
+        fileSegment = new FileSegment(100, file, true, SegmentType.DATA);
+        fileSegment.setMmapReadController(controller);
+        fileSegment.append(ByteBuffer.wrap("abcdef".getBytes()));
+        fileSegment.flush(true);
+        fileSegment.setMutable(false);
+        // read from the mapped buffer.
+        Assert.assertTrue(fileSegment.acquireViewRef());
+        ByteBuffer readBuffer = ByteBuffer.allocate(4);
+        fileSegment.read(readBuffer, 102);
+        readBuffer.flip();
+        Assert.assertEquals("cdef", new String(readBuffer.array(), 0, readBuffer.limit()));
+        Assert.assertEquals(6, controller.getMappedBytes());
+        // the file is kept until the reader releases it.
+        fileSegment.deleteFile();
+        Assert.assertTrue(file.exists());
+        fileSegment.relViewRef();
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(0, controller.getMappedBytes());
+        Assert.assertFalse(fileSegment.acquireViewRef());
+    }
+
+    @org.junit.Test
+    public void mmapReadAndClose() throws IOException {
+        File file = File.createTempFile("testdata", null);
+        file.deleteOnExit();
+        MmapReadController controller = new MmapReadController(true, 1024);
+        fileSegment = new FileSegment(0, file, true, SegmentType.DATA);
+        fileSegment.setMmapReadController(controller);
+        fileSegment.append(ByteBuffer.wrap("abcdef".getBytes()));
+        fileSegment.flush(true);
+        fileSegment.setMutable(false);
+        Assert.assertTrue(fileSegment.acquireViewRef());
+        ByteBuffer readBuffer = ByteBuffer.allocate(2);
+        fileSegment.read(readBuffer, 0);
+        Assert.assertEquals(6, controller.getMappedBytes());
+        // the mapping is kept for the reader holding the segment.
+        fileSegment.close();
+        Assert.assertEquals(6, controller.getMappedBytes());
+        fileSegment.relViewRef();
+        Assert.assertEquals(0, controller.getMappedBytes());
+        Assert.assertFalse(fileSegment.acquireViewRef());
+        // the file closed before is still deleted.
+        fileSegment.deleteFile();
+        Assert.assertFalse(file.exists());
+    }
+
+    @org.junit.Test
+    public void getOffsetByTime() throws IOException {
+        File file = File.createTempFile("testindex", null);
+        file.deleteOnExit();
+        // 200 index records, received at 1000, 1010, 1020...
+        final int recordCnt = 200;
+        ByteBuffer indexBuf = ByteBuffer.allocate(recordCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        for (int i = 0; i < recordCnt; i++) {
+            indexBuf.putInt(1);
+            indexBuf.putLong(i * 100L);
+            indexBuf.putInt(100);
+            indexBuf.putInt(0);
+            indexBuf.putLong(1000L + i * 10L);
+        }
+        indexBuf.flip();
+        fileSegment = new FileSegment(2800, file, true, SegmentType.INDEX);
+        fileSegment.append(indexBuf);
+        fileSegment.flush(true);
+        Assert.assertEquals(2800, fileSegment.getOffsetByTime(0));
+        Assert.assertEquals(2800 + 150 * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.getOffsetByTime(2500));
+        Assert.assertEquals(2800 + 151 * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.getOffsetByTime(2501));
+        Assert.assertEquals(-1, fileSegment.getOffsetByTime(3000));
+        fileSegment.close();
+        // the time index is rebuilt from the file after reload.
+        fileSegment = new FileSegment(2800, file, false, SegmentType.INDEX);
+        Assert.assertEquals(2800 + 150 * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.getOffsetByTime(2500));
+        fileSegment.close();
+        fileSegment = new FileSegment(2800, file, SegmentType.INDEX, Long.MAX_VALUE);
+        Assert.assertEquals(2800 + 64 * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.getOffsetByTime(1640));
+        fileSegment.close();
+    }
+
+    @org.junit.Test
+    public void skipUnmatchedRecords() throws IOException {
+        File file = File.createTempFile("testindex", null);
+        file.deleteOnExit();
+        // two full blocks with key code 1 and 2, then a partial block with key code 3
+        final int blockCnt = SegmentKeyIndex.BLOCK_RECORD_CNT;
+        final int recordCnt = blockCnt * 2 + 100;
+        ByteBuffer indexBuf = ByteBuffer.allocate(recordCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        for (int i = 0; i < recordCnt; i++) {
+            indexBuf.putInt(1);
+            indexBuf.putLong(i * 100L);
+            indexBuf.putInt(100);
+            indexBuf.putInt(i / blockCnt + 1);
+            indexBuf.putLong(1000L + i);
+        }
+        indexBuf.flip();
+        fileSegment = new FileSegment(0, file, true, SegmentType.INDEX);
+        fileSegment.append(indexBuf);
+        fileSegment.flush(true);
+        Assert.assertEquals(0,
+                fileSegment.skipUnmatchedRecords(0, Collections.singleton(1)));
+        Assert.assertEquals(blockCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.skipUnmatchedRecords(0, Collections.singleton(2)));
+        // the last block of a mutable segment is never skipped
+        Assert.assertEquals(2 * blockCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.skipUnmatchedRecords(
+                        10 * DataStoreUtils.STORE_INDEX_HEAD_LEN, Collections.singleton(4)));
+        fileSegment.setMutable(false);
+        Assert.assertEquals(recordCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.skipUnmatchedRecords(0, Collections.singleton(4)));
+        fileSegment.close();
+        // the key index is rebuilt from the file after reload.
+        fileSegment = new FileSegment(0, file, false, SegmentType.INDEX);
+        Assert.assertEquals(2 * blockCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.skipUnmatchedRecords(0, new HashSet<>(Arrays.asList(3, 4))));
+        fileSegment.close();
+    }
+
+    @org.junit.Test
+    public void buildIndexWhileAppending() throws Exception {
+        File file = File.createTempFile("testindex", null);
+        file.deleteOnExit();
+        new File(file.getPath() + DataStoreUtils.CHECKPOINT_FILE_SUFFIX).deleteOnExit();
+        final int blockCnt = SegmentKeyIndex.BLOCK_RECORD_CNT;
+        final int recordCnt = blockCnt * 4 + 10;
+        fileSegment = new FileSegment(0, file, true, SegmentType.INDEX);
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        // the index is built by the query while the records are appended one by one
+        Thread queryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!finished.get()) {
+                        fileSegment.skipUnmatchedRecords(0, Collections.singleton(1));
+                    }
+                } catch (IOException e) {
+                    //
+                }
+            }
+        });
+        for (int i = 0; i < recordCnt; i++) {
+            if (i == 100) {
+                queryThread.start();
+            }
+            ByteBuffer indexBuf = ByteBuffer.allocate(DataStoreUtils.STORE_INDEX_HEAD_LEN);
+            indexBuf.putInt(1);
+            indexBuf.putLong(i * 100L);
+            indexBuf.putInt(100);
+            indexBuf.putInt(i / blockCnt + 1);
+            indexBuf.putLong(1000L + i);
+            indexBuf.flip();
+            fileSegment.append(indexBuf);
+        }
+        finished.set(true);
+        queryThread.join();
+        // each record is indexed once, so the blocks keep in step with the file
+        for (int block = 0; block < 4; block++) {
+            Assert.assertEquals(block * blockCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                    fileSegment.skipUnmatchedRecords(0, Collections.singleton(block + 1)));
+        }
+        Assert.assertEquals(recordCnt / 2 * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.getOffsetByTime(1000L + recordCnt / 2));
+        fileSegment.close();
+    }
+
+    @org.junit.Test
+    public void recoverFromCheckpoint() throws IOException {
+        File file = File.createTempFile("testdata", null);
+        file.deleteOnExit();
+        File checkpointFile = new File(file.getPath() + DataStoreUtils.CHECKPOINT_FILE_SUFFIX);
+        checkpointFile.deleteOnExit();
+        final int recordCnt = 100;
+        final int recordSize = DataStoreUtils.STORE_DATA_HEADER_LEN + 10;
+        fileSegment = new FileSegment(0, file, true, SegmentType.DATA);
+        for (int i = 0; i < recordCnt; i++) {
+            fileSegment.append(buildDataRecord(i));
+        }
+        fileSegment.close();
+        // the segment closed cleanly is not scanned.
+        fileSegment = new FileSegment(0, file, SegmentType.DATA, Long.MAX_VALUE);
+        Assert.assertEquals(recordCnt * recordSize, fileSegment.getCachedSize());
+        Assert.assertEquals(0, fileSegment.getRecoverScannedBytes());
+        // append without a clean close, then a torn record.
+        fileSegment.append(buildDataRecord(recordCnt));
+        ByteBuffer tornBuf = buildDataRecord(recordCnt + 1);
+        tornBuf.limit(recordSize / 2);
+        fileSegment.append(tornBuf);
+        fileSegment.flush(true);
+        FileSegment recovered = new FileSegment(0, file, SegmentType.DATA, Long.MAX_VALUE);
+        // only the part after the checkpoint is scanned.
+        Assert.assertEquals(recordSize + recordSize / 2, recovered.getRecoverScannedBytes());
+        Assert.assertEquals(recordSize / 2, recovered.getRecoverTruncatedBytes());
+        Assert.assertEquals((recordCnt + 1) * recordSize, recovered.getCachedSize());
+        recovered.close();
+        // the whole segment is scanned without checkpoint.
+        Assert.assertTrue(checkpointFile.delete());
+        fileSegment = new FileSegment(0, file, SegmentType.DATA, Long.MAX_VALUE);
+        Assert.assertEquals((recordCnt + 1) * recordSize, fileSegment.getRecoverScannedBytes());
+        Assert.assertEquals(0, fileSegment.getRecoverTruncatedBytes());
+        fileSegment.setMutable(false);
+        Assert.assertFalse(checkpointFile.exists());
+        fileSegment.close();
+    }
+
+    @org.junit.Test
+    public void recoverIndexFromCheckpoint() throws IOException {
+        File file = File.createTempFile("testindex", null);
+        file.deleteOnExit();
+        new File(file.getPath() + DataStoreUtils.CHECKPOINT_FILE_SUFFIX).deleteOnExit();
+        final int blockCnt = SegmentKeyIndex.BLOCK_RECORD_CNT;
+        fileSegment = new FileSegment(0, file, true, SegmentType.INDEX);
+        fileSegment.append(buildIndexRecords(0, blockCnt, 1));
+        fileSegment.close();
+        // the segment closed cleanly is not scanned, its indexes are built before appending
+        fileSegment = new FileSegment(0, file, SegmentType.INDEX, Long.MAX_VALUE);
+        Assert.assertEquals(0, fileSegment.getRecoverScannedBytes());
+        fileSegment.append(buildIndexRecords(blockCnt, blockCnt, 2));
+        fileSegment.append(buildIndexRecords(blockCnt * 2, 10, 3));
+        Assert.assertEquals(blockCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.skipUnmatchedRecords(0, Collections.singleton(2)));
+        Assert.assertEquals(blockCnt * 2 * DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                fileSegment.getOffsetByTime(1000L + blockCnt * 2));
+        fileSegment.close();
+    }
+
+    private ByteBuffer buildIndexRecords(int startIndex, int recordCnt, int keyCode) {
+        ByteBuffer indexBuf = ByteBuffer.allocate(recordCnt * DataStoreUtils.STORE_INDEX_HEAD_LEN);
+        for (int i = startIndex; i < startIndex + recordCnt; i++) {
+            indexBuf.putInt(1);
+            indexBuf.putLong(i * 100L);
+            indexBuf.putInt(100);
+            indexBuf.putInt(keyCode);
+            indexBuf.putLong(1000L + i);
+        }
+        indexBuf.flip();
+        return indexBuf;
+    }
+
+    private ByteBuffer buildDataRecord(int index) {
+        byte[] data = String.format("data%06d", index).getBytes();
+        ByteBuffer buf = ByteBuffer.allocate(DataStoreUtils.STORE_DATA_HEADER_LEN + data.length);
+        buf.putInt(DataStoreUtils.STORE_DATA_PREFX_LEN + data.length);
+        buf.putInt(DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE);
+        buf.putInt(CheckSum.crc32(data));
+        buf.putInt(0);
+        buf.putLong(index);
+        buf.putLong(System.currentTimeMillis());
+        buf.putInt(0);
+        buf.putInt(0);
+        buf.putLong(index);
+        buf.putInt(0);
+        buf.put(data);
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.msgstore.disk;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.apache.inlong.tubemq.server.broker.BrokerConfig;
+import org.apache.inlong.tubemq.server.broker.msgstore.MessageStore;
+import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
+import org.apache.inlong.tubemq.server.common.utils.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * MsgFileStore test.
+ */
+public class MsgFileStoreTest {
+
+    private static final String STORE_KEY = "test-0";
+    // the size of each sealed data file, each file holds one message
+    private static final int DATA_FILE_SIZE = 100;
+
+    private File baseDir;
+    private MsgFileStore msgFileStore;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("msgfilestore").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (msgFileStore != null) {
+            msgFileStore.close();
+        }
+        FileUtil.fullyDelete(baseDir);
+    }
+
+    @Test
+    public void expireIndexWithData() throws Exception {
+        // each sealed index file refers to one sealed data file
+        openStore(new long[][]{{0L}, {DATA_FILE_SIZE}});
+        Assert.assertEquals(0L, msgFileStore.getExpiredSizeInBytes());
+        // the index file referring to the expired data file is expired with it
+        Assert.assertEquals(DATA_FILE_SIZE, msgFileStore.expireOldestSegment());
+        Assert.assertEquals(DATA_FILE_SIZE, msgFileStore.getDataMinOffset());
+        Assert.assertEquals(DATA_FILE_SIZE + DataStoreUtils.STORE_INDEX_HEAD_LEN,
+                msgFileStore.getExpiredSizeInBytes());
+        Assert.assertEquals(DATA_FILE_SIZE, msgFileStore.getDiskExpiredBytes());
+        Assert.assertEquals(DATA_FILE_SIZE, msgFileStore.expireOldestSegment());
+        Assert.assertEquals(2 * (DATA_FILE_SIZE + DataStoreUtils.STORE_INDEX_HEAD_LEN),
+                msgFileStore.getExpiredSizeInBytes());
+        // the mutable files are never expired
+        Assert.assertEquals(Long.MAX_VALUE, msgFileStore.getOldestSealedTime());
+        Assert.assertEquals(0L, msgFileStore.expireOldestSegment());
+    }
+
+    @Test
+    public void keepIndexOfLiveData() throws Exception {
+        // one sealed index file refers to both sealed data files
+        openStore(new long[][]{{0L, DATA_FILE_SIZE}});
+        // the index file is kept while its last record refers to the live data
+        Assert.assertEquals(DATA_FILE_SIZE, msgFileStore.expireOldestSegment());
+        Assert.assertEquals(DATA_FILE_SIZE, msgFileStore.getExpiredSizeInBytes());
+        Assert.assertEquals(0L, msgFileStore.getIndexMinOffset());
+        Assert.assertEquals(DATA_FILE_SIZE, msgFileStore.expireOldestSegment());
+        Assert.assertEquals(2 * (DATA_FILE_SIZE + DataStoreUtils.STORE_INDEX_HEAD_LEN),
+                msgFileStore.getExpiredSizeInBytes());
+    }
+
+    // open the store with two sealed data files and the sealed index files of the given records,
+    // the last data and index files are empty and mutable
+    private void openStore(long[][] indexFiles) throws IOException {
+        File dataDir = new File(baseDir, STORE_KEY);
+        File indexDir = new File(dataDir, "index");
+        Assert.assertTrue(indexDir.mkdirs());
+        writeFile(dataDir, 0L, DataStoreUtils.DATA_FILE_SUFFIX, new byte[DATA_FILE_SIZE]);
+        writeFile(dataDir, DATA_FILE_SIZE, DataStoreUtils.DATA_FILE_SUFFIX,
+                new byte[DATA_FILE_SIZE]);
+        writeFile(dataDir, 2 * DATA_FILE_SIZE, DataStoreUtils.DATA_FILE_SUFFIX, new byte[0]);
+        long indexStart = 0L;
+        for (long[] dataOffsets : indexFiles) {
+            ByteBuffer indexBuf =
+                    ByteBuffer.allocate(dataOffsets.length * DataStoreUtils.STORE_INDEX_HEAD_LEN);
+            for (long dataOffset : dataOffsets) {
+                indexBuf.putInt(0);
+                indexBuf.putLong(dataOffset);
+                indexBuf.putInt(DATA_FILE_SIZE);
+                indexBuf.putInt(0);
+                indexBuf.putLong(System.currentTimeMillis());
+            }
+            writeFile(indexDir, indexStart, DataStoreUtils.INDEX_FILE_SUFFIX, indexBuf.array());
+            indexStart += indexBuf.capacity();
+        }
+        writeFile(indexDir, indexStart, DataStoreUtils.INDEX_FILE_SUFFIX, new byte[0]);
+        MessageStore messageStore = mock(MessageStore.class);
+        when(messageStore.getStoreKey()).thenReturn(STORE_KEY);
+        msgFileStore = new MsgFileStore(messageStore,
+                mock(BrokerConfig.class), baseDir.getAbsolutePath(), 0L);
+    }
+
+    private void writeFile(File dir, long start, String suffix, byte[] content) throws IOException {
+        File file = new File(dir, DataStoreUtils.nameFromOffset(start, suffix));
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+}
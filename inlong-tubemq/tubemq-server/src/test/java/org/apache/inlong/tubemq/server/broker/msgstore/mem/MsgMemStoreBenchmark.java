@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.inlong.tubemq.server.broker.msgstore.mem;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import org.apache.inlong.tubemq.server.common.utils.AppendResult;
+
+/***
+ * Append throughput of MsgMemStore with different producer thread counts,
+ * run it by main method, e.g. MsgMemStoreBenchmark [msgCount] [entryLength]
+ */
+public class MsgMemStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int totalMsgCnt = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final int entryLength = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        final int[] threadCnts = {1, 2, 4, 8, 16, 32};
+        // warm up
+        runAppend(4, totalMsgCnt / 4, entryLength);
+        for (int threadCnt : threadCnts) {
+            long costNs = runAppend(threadCnt, totalMsgCnt, entryLength);
+            System.out.println(new StringBuilder(256).append("threads=").append(threadCnt)
+                    .append(", messages=").append(totalMsgCnt)
+                    .append(", cost=").append(costNs / 1000000).append(" ms")
+                    .append(", throughput=").append(totalMsgCnt * 1000000000L / Math.max(1, costNs))
+                    .append(" msg/s").toString());
+        }
+    }
+
+    private static long runAppend(final int threadCnt, final int totalMsgCnt,
+                                  final int entryLength) throws Exception {
+        final int msgCntPerThread = totalMsgCnt / threadCnt;
+        final MsgMemStore msgMemStore = new MsgMemStore(
+                msgCntPerThread * threadCnt * entryLength, msgCntPerThread * threadCnt, null);
+        msgMemStore.resetStartPos(0L, 0L);
+        final MsgMemStatisInfo msgMemStatisInfo = new MsgMemStatisInfo();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch finishLatch = new CountDownLatch(threadCnt);
+        for (int i = 0; i < threadCnt; i++) {
+            final int partitionId = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final ByteBuffer entry = ByteBuffer.allocate(entryLength);
+                    final AppendResult appendResult = new AppendResult();
+                    try {
+                        startLatch.await();
+                        for (int j = 0; j < msgCntPerThread; j++) {
+                            msgMemStore.appendMsg(msgMemStatisInfo, partitionId, j & 0xFF,
+                                    System.currentTimeMillis(), entryLength, entry, appendResult);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finishLatch.countDown();
+                    }
+                }
+            }).start();
+        }
+        final long startTime = System.nanoTime();
+        startLatch.countDown();
+        finishLatch.await();
+        final long costNs = System.nanoTime() - startTime;
+        msgMemStore.close();
+        return costNs;
+    }
+}
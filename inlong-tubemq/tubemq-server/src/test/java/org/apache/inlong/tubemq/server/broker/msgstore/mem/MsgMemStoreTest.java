@@ -17,10 +17,24 @@
 
 package org.apache.inlong.tubemq.server.broker.msgstore.mem;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
 
+import org.apache.inlong.tubemq.corebase.utils.CheckSum;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.FileSegment;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.MsgFileStore;
+import org.apache.inlong.tubemq.server.broker.msgstore.disk.SegmentType;
+import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
 import org.apache.inlong.tubemq.server.common.utils.AppendResult;
+import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /***
  * MsgMemStore test.
@@ -55,4 +69,137 @@ public class MsgMemStoreTest {
         // get messages
         GetCacheMsgResult getCacheMsgResult = msgMemStore.getMessages(0, 2, 1024, 1000, 0, false, false, null);
     }
+
+    @Test
+    public void concurrentAppendMsg() throws Exception {
+        final int threadCnt = 8;
+        final int msgCntPerThread = 1000;
+        final int entryLength = 64;
+        final MsgMemStore msgMemStore =
+                new MsgMemStore(threadCnt * msgCntPerThread * entryLength, threadCnt * msgCntPerThread, null);
+        msgMemStore.resetStartPos(0L, 0L);
+        final MsgMemStatisInfo msgMemStatisInfo = new MsgMemStatisInfo();
+        final CountDownLatch finishLatch = new CountDownLatch(threadCnt);
+        for (int i = 0; i < threadCnt; i++) {
+            final int partitionId = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < msgCntPerThread; j++) {
+                            ByteBuffer entry = ByteBuffer.allocate(entryLength);
+                            entry.put(0, (byte) partitionId);
+                            msgMemStore.appendMsg(msgMemStatisInfo, partitionId, 0,
+                                    System.currentTimeMillis(), entryLength, entry, new AppendResult());
+                        }
+                    } finally {
+                        finishLatch.countDown();
+                    }
+                }
+            }).start();
+        }
+        finishLatch.await();
+        Assert.assertEquals(threadCnt * msgCntPerThread, msgMemStore.getCurMsgCount());
+        Assert.assertEquals(threadCnt * msgCntPerThread * entryLength, msgMemStore.getCurDataCacheSize());
+        // the store is full now
+        Assert.assertFalse(msgMemStore.appendMsg(msgMemStatisInfo, 0, 0,
+                System.currentTimeMillis(), entryLength, ByteBuffer.allocate(entryLength), new AppendResult()));
+        // each record is fully written and refers to its own data
+        for (int partitionId = 0; partitionId < threadCnt; partitionId++) {
+            GetCacheMsgResult result = msgMemStore.getMessages(0L, 0L, Integer.MAX_VALUE,
+                    threadCnt * msgCntPerThread, partitionId, false, false, null);
+            Assert.assertEquals(msgCntPerThread, result.cacheMsgList.size());
+            long lastIndexOffset = -1L;
+            for (ByteBuffer msg : result.cacheMsgList) {
+                Assert.assertEquals(partitionId, msg.get(0));
+                long indexOffset = msg.getLong(DataStoreUtils.STORE_HEADER_POS_QUEUE_LOGICOFF);
+                Assert.assertTrue(indexOffset > lastIndexOffset);
+                lastIndexOffset = indexOffset;
+            }
+        }
+    }
+
+    @Test
+    public void recoverFailedAppend() throws Throwable {
+        final MsgMemStore msgMemStore = new MsgMemStore(1024 * 1024, 100, null);
+        msgMemStore.resetStartPos(0L, 0L);
+        final MsgMemStatisInfo msgMemStatisInfo = new MsgMemStatisInfo();
+        final ByteBuffer firstEntry = buildEntry(1, "first");
+        Assert.assertTrue(msgMemStore.appendMsg(msgMemStatisInfo, 1, 0,
+                System.currentTimeMillis(), firstEntry.limit(), firstEntry, new AppendResult()));
+        // the entry without array fails to be written after its space is reserved
+        final int failedLength = buildEntry(1, "failed").limit();
+        try {
+            msgMemStore.appendMsg(msgMemStatisInfo, 1, 0, System.currentTimeMillis(),
+                    failedLength, ByteBuffer.allocateDirect(failedLength), new AppendResult());
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            //
+        }
+        final ByteBuffer lastEntry = buildEntry(1, "last");
+        Assert.assertTrue(msgMemStore.appendMsg(msgMemStatisInfo, 1, 0,
+                System.currentTimeMillis(), lastEntry.limit(), lastEntry, new AppendResult()));
+        // the tombstone is skipped by the readers
+        GetCacheMsgResult result = msgMemStore.getMessages(0L, 0L, Integer.MAX_VALUE,
+                100, 1, false, false, null);
+        Assert.assertEquals(2, result.cacheMsgList.size());
+        // flush the cache into the segments, then recover them by scanning
+        final File dataFile = File.createTempFile("testdata", null);
+        final File indexFile = File.createTempFile("testindex", null);
+        dataFile.deleteOnExit();
+        indexFile.deleteOnExit();
+        final FileSegment dataSegment = new FileSegment(0, dataFile, true, SegmentType.DATA);
+        final FileSegment indexSegment = new FileSegment(0, indexFile, true, SegmentType.INDEX);
+        MsgFileStore msgFileStore = mock(MsgFileStore.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                indexSegment.append((ByteBuffer) invocation.getArgument(3));
+                dataSegment.append((ByteBuffer) invocation.getArgument(5));
+                return null;
+            }
+        }).when(msgFileStore).batchAppendMsg(any(StringBuilder.class), anyInt(),
+                anyInt(), any(ByteBuffer.class), anyInt(), any(ByteBuffer.class));
+        msgMemStore.batchFlush(msgFileStore, new StringBuilder(512));
+        dataSegment.flush(true);
+        indexSegment.flush(true);
+        final long dataSize = dataSegment.getCachedSize();
+        final long indexSize = indexSegment.getCachedSize();
+        Assert.assertEquals(firstEntry.limit() + failedLength + lastEntry.limit(), dataSize);
+        Assert.assertEquals(3 * DataStoreUtils.STORE_INDEX_HEAD_LEN, indexSize);
+        dataSegment.close();
+        indexSegment.close();
+        final FileSegment recoveredData =
+                new FileSegment(0, dataFile, SegmentType.DATA, 0L);
+        final FileSegment recoveredIndex =
+                new FileSegment(0, indexFile, SegmentType.INDEX, 0L);
+        // the whole segments are scanned, the records after the failed append are kept
+        Assert.assertEquals(dataSize, recoveredData.getRecoverScannedBytes());
+        Assert.assertEquals(0, recoveredData.getRecoverTruncatedBytes());
+        Assert.assertEquals(dataSize, recoveredData.getCachedSize());
+        Assert.assertEquals(0, recoveredIndex.getRecoverTruncatedBytes());
+        Assert.assertEquals(indexSize, recoveredIndex.getCachedSize());
+        recoveredData.close();
+        recoveredIndex.close();
+        new File(dataFile.getPath() + DataStoreUtils.CHECKPOINT_FILE_SUFFIX).delete();
+        new File(indexFile.getPath() + DataStoreUtils.CHECKPOINT_FILE_SUFFIX).delete();
+    }
+
+    private ByteBuffer buildEntry(int partitionId, String message) {
+        byte[] data = message.getBytes();
+        ByteBuffer buf = ByteBuffer.allocate(DataStoreUtils.STORE_DATA_HEADER_LEN + data.length);
+        buf.putInt(DataStoreUtils.STORE_DATA_PREFX_LEN + data.length);
+        buf.putInt(DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE);
+        buf.putInt(CheckSum.crc32(data));
+        buf.putInt(partitionId);
+        buf.putLong(-1L);
+        buf.putLong(System.currentTimeMillis());
+        buf.putInt(0);
+        buf.putInt(0);
+        buf.putLong(0L);
+        buf.putInt(0);
+        buf.put(data);
+        buf.flip();
+        return buf;
+    }
 }
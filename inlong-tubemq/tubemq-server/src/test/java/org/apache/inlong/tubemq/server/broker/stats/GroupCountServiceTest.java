@@ -19,6 +19,8 @@ package org.apache.inlong.tubemq.server.broker.stats;
 
 import java.util.HashMap;
 import java.util.Map;
+import org.apache.commons.codec.binary.StringUtils;
+import org.junit.Assert;
 import org.junit.Test;
 
 /***
@@ -35,5 +37,75 @@ public class GroupCountServiceTest {
         items.put("key2", new CountItem(1L, 1024));
         // add counts
         groupCountService.add(items);
+        MsgTimeCounter msgTimeCounter = new MsgTimeCounter();
+        msgTimeCounter.add("202110121200", 1L, 100);
+        msgTimeCounter.add("", 1L, 100);
+        msgTimeCounter.add("0930", 1L, 100);
+        groupCountService.add("key3", msgTimeCounter);
+        groupCountService.close(0);
+    }
+
+    @Test
+    public void msgTimeCounter() {
+        MsgTimeCounter msgTimeCounter = new MsgTimeCounter();
+        Assert.assertTrue(msgTimeCounter.isEmpty());
+        for (int i = 0; i < 10; i++) {
+            msgTimeCounter.add(String.valueOf(202110121200L + (i % 5)), 1L, 10);
+        }
+        msgTimeCounter.add("", 2L, 20);
+        msgTimeCounter.add("2021-10-12", 3L, 30);
+        msgTimeCounter.add("0930", 4L, 40);
+        Assert.assertEquals(6, msgTimeCounter.size());
+        Assert.assertEquals(202110121200L, msgTimeCounter.getMsgTime(0));
+        Assert.assertEquals(2L, msgTimeCounter.getMsgCount(0));
+        Assert.assertEquals(20L, msgTimeCounter.getMsgSize(0));
+        Assert.assertEquals(MsgTimeCounter.NO_MSG_TIME, msgTimeCounter.getMsgTime(5));
+        Assert.assertEquals(2, msgTimeCounter.getStrTimeCounts().size());
+        Assert.assertEquals(4L, msgTimeCounter.getStrTimeCounts().get("0930").getMsgCount());
+        Assert.assertEquals("key#",
+                MsgTimeCounter.appendMsgTime(new StringBuilder("key#"),
+                        MsgTimeCounter.NO_MSG_TIME).toString());
+        // parse the message time from attribute bytes
+        Assert.assertEquals(202110121200L, parseAttrMsgTime("$msgTime$=202110121200"));
+        Assert.assertEquals(202110121200L, parseAttrMsgTime("a=b,$msgTime$=202110121200,c=d"));
+        Assert.assertEquals(MsgTimeCounter.NO_MSG_TIME, parseAttrMsgTime("a=b,c=d"));
+        Assert.assertEquals(MsgTimeCounter.UNPARSED_MSG_TIME, parseAttrMsgTime("$msgTime$=0930"));
+        Assert.assertEquals(MsgTimeCounter.UNPARSED_MSG_TIME, parseAttrMsgTime("$msgTime$=12a"));
+        Assert.assertEquals(MsgTimeCounter.UNPARSED_MSG_TIME, parseAttrMsgTime("x$msgTime$=12"));
+    }
+
+    @Test
+    public void stripedCounterTable() {
+        StripedCounterTable counterTable = new StripedCounterTable();
+        for (long key = 1; key <= 1000; key++) {
+            counterTable.add(key, 1L, key);
+            counterTable.add(key, 2L, key);
+        }
+        final long[] totals = new long[3];
+        counterTable.visit(new StripedCounterTable.CounterVisitor() {
+            @Override
+            public void visit(long key, long msgCount, long msgSize) {
+                Assert.assertEquals(3L, msgCount);
+                Assert.assertEquals(2 * key, msgSize);
+                totals[0]++;
+                totals[1] += msgCount;
+                totals[2] += msgSize;
+            }
+        });
+        Assert.assertEquals(1000L, totals[0]);
+        Assert.assertEquals(3000L, totals[1]);
+        Assert.assertEquals(1001000L, totals[2]);
+        counterTable.clear();
+        counterTable.visit(new StripedCounterTable.CounterVisitor() {
+            @Override
+            public void visit(long key, long msgCount, long msgSize) {
+                Assert.fail();
+            }
+        });
+    }
+
+    private long parseAttrMsgTime(String attribute) {
+        byte[] data = StringUtils.getBytesUtf8("##" + attribute + "##");
+        return MsgTimeCounter.parseMsgTime(data, 2, data.length - 4);
     }
 }
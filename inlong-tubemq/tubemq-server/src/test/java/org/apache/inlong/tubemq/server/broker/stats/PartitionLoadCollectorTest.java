@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.stats;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.inlong.tubemq.server.broker.msgstore.MessageStore;
+import org.apache.inlong.tubemq.server.broker.nodeinfo.ConsumerNodeInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * PartitionLoadCollector test.
+ */
+public class PartitionLoadCollectorTest {
+
+    @Test
+    public void collect() {
+        final PartitionLoadCollector collector = new PartitionLoadCollector();
+        // one store holding the partitions 0 and 1 of the topic
+        Map<Integer, Long> partDataSizeMap = new HashMap<>();
+        partDataSizeMap.put(0, 30000L);
+        partDataSizeMap.put(1, 10000L);
+        MessageStore store = mock(MessageStore.class);
+        when(store.getPartInDataSizeMap()).thenReturn(partDataSizeMap);
+        when(store.getDataMaxOffset()).thenReturn(50000L);
+        ConcurrentHashMap<Integer, MessageStore> storeMap = new ConcurrentHashMap<>();
+        storeMap.put(0, store);
+        Map<String, ConcurrentHashMap<Integer, MessageStore>> messageStores = new HashMap<>();
+        messageStores.put("test", storeMap);
+        // two groups consume the partition 0, one group the partition 1
+        Map<String, ConsumerNodeInfo> consumerRegisterMap = new HashMap<>();
+        final ConsumerNodeInfo consumer1 = addConsumer(consumerRegisterMap, "g1:test:0", 10000L);
+        final ConsumerNodeInfo consumer2 = addConsumer(consumerRegisterMap, "g2:test:0", 30000L);
+        final ConsumerNodeInfo consumer3 = addConsumer(consumerRegisterMap, "g1:test:1", 40000L);
+        // the consumers without read offset or of an unknown partition are skipped
+        addConsumer(consumerRegisterMap, "g3:test:1", -1L);
+        addConsumer(consumerRegisterMap, "g1:other:0", 0L);
+        // no ingest rate at the first collection, the largest lag of the groups
+        // is shared out to the partitions by the ingest
+        assertLoads(collector.collect(messageStores, consumerRegisterMap, 1000L),
+                "test:0:0:30000", "test:1:0:2500");
+        // 10000 bytes appended to the partition 0 in one second
+        partDataSizeMap.put(0, 40000L);
+        when(store.getDataMaxOffset()).thenReturn(60000L);
+        assertLoads(collector.collect(messageStores, consumerRegisterMap, 2000L),
+                "test:0:3000:40000", "test:1:0:4000");
+        // the rate is smoothed, the idle partition without backlog is not reported
+        partDataSizeMap.put(0, 50000L);
+        when(store.getDataMaxOffset()).thenReturn(70000L);
+        when(consumer1.getLastDataRdOffset()).thenReturn(70000L);
+        when(consumer2.getLastDataRdOffset()).thenReturn(70000L);
+        when(consumer3.getLastDataRdOffset()).thenReturn(70000L);
+        assertLoads(collector.collect(messageStores, consumerRegisterMap, 3000L),
+                "test:0:5100:0");
+    }
+
+    private ConsumerNodeInfo addConsumer(Map<String, ConsumerNodeInfo> consumerRegisterMap,
+                                         String partStr, long lastDataRdOffset) {
+        ConsumerNodeInfo consumerNodeInfo = mock(ConsumerNodeInfo.class);
+        when(consumerNodeInfo.getPartStr()).thenReturn(partStr);
+        when(consumerNodeInfo.getLastDataRdOffset()).thenReturn(lastDataRdOffset);
+        consumerRegisterMap.put(partStr, consumerNodeInfo);
+        return consumerNodeInfo;
+    }
+
+    private void assertLoads(List<String> partLoadInfos, String... expectedLoads) {
+        Assert.assertEquals(expectedLoads.length, partLoadInfos.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(expectedLoads)),
+                new HashSet<>(partLoadInfos));
+    }
+}
@@ -17,7 +17,12 @@
 
 package org.apache.inlong.tubemq.server.broker.utils;
 
+import com.google.protobuf.ByteString;
 import java.nio.ByteBuffer;
+import org.apache.commons.codec.binary.StringUtils;
+import org.apache.inlong.tubemq.corebase.protobuf.generated.ClientBroker;
+import org.apache.inlong.tubemq.corebase.utils.MessageFlagUtils;
+import org.apache.inlong.tubemq.server.broker.stats.MsgTimeCounter;
 import org.junit.Test;
 import org.springframework.util.Assert;
 
@@ -36,4 +41,97 @@ public class DataStoreUtilsTest {
         // get int by DataStoreUtils
         Assert.isTrue(val == 123);
     }
+
+    @Test
+    public void getTransferMsg() {
+        byte[] attribute = StringUtils.getBytesUtf8("$msgTime$=202110121200");
+        ByteBuffer payLoad = ByteBuffer.allocate(4 + attribute.length + 3);
+        payLoad.putInt(attribute.length);
+        payLoad.put(attribute);
+        payLoad.put(StringUtils.getBytesUtf8("abc"));
+        MsgTimeCounter countMap = new MsgTimeCounter();
+        // the message time is read from the header extension
+        ByteBuffer extMsg = buildStoreMsg(payLoad.array(), 1, 202110121300L, "type");
+        ClientBroker.TransferedMessage message =
+                DataStoreUtils.getTransferMsg(extMsg, extMsg.limit(), countMap);
+        Assert.isTrue(message.getFlag() == 1);
+        Assert.isTrue(message.getPayLoadData().equals(
+                ByteString.copyFrom(payLoad.array())));
+        // the message time is parsed from the attribute
+        ByteBuffer oldMsg = buildStoreMsg(payLoad.array(), 1, -1L, null);
+        message = DataStoreUtils.getTransferMsg(oldMsg, oldMsg.limit(), countMap);
+        Assert.isTrue(message.getFlag() == 1);
+        Assert.isTrue(countMap.size() == 2);
+        Assert.isTrue(countMap.getMsgTime(0) == 202110121300L);
+        Assert.isTrue(countMap.getMsgTime(1) == 202110121200L);
+        Assert.isTrue(countMap.getMsgSize(0) == payLoad.limit());
+        // the peeked data covers the header extension
+        Assert.isTrue(DataStoreUtils.getMsgPeekSize(extMsg, extMsg.limit())
+                == DataStoreUtils.STORE_DATA_HEADER_LEN + DataStoreUtils.STORE_EXT_HEADER_LEN + 4);
+        Assert.isTrue(DataStoreUtils.countRegionMsg(extMsg, extMsg.limit(), countMap));
+        Assert.isTrue(countMap.getMsgCount(0) == 2);
+    }
+
+    @Test
+    public void parseDeleteSize() {
+        // a value without unit is in bytes, the units are case insensitive
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("100") == 100L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("1k") == 1024L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("2M") == 2L * 1024L * 1024L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize(" 100g ") == 100L * 1024L * 1024L * 1024L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("8388607t") == 8388607L << 40);
+        // the value overflows the long range
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("8388608t") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("9223372036854775807k") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("9223372036854775808") == -1L);
+        // the illegal values
+        Assert.isTrue(DataStoreUtils.parseDeleteSize(null) == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("  ") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("0g") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("-5m") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("g") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("10x") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("1.5g") == -1L);
+        Assert.isTrue(DataStoreUtils.parseDeleteSize("abc") == -1L);
+    }
+
+    @Test
+    public void getStoreMsgType() {
+        byte[] payLoad = StringUtils.getBytesUtf8("abc");
+        Assert.isTrue("type".equals(DataStoreUtils.getStoreMsgType(
+                buildStoreMsg(payLoad, 0, 202110121300L, "type"))));
+        // the extension without message type, and the message without extension
+        Assert.isNull(DataStoreUtils.getStoreMsgType(
+                buildStoreMsg(payLoad, 0, 202110121300L, null)));
+        Assert.isNull(DataStoreUtils.getStoreMsgType(buildStoreMsg(payLoad, 0, -1L, null)));
+    }
+
+    private ByteBuffer buildStoreMsg(byte[] payLoad, int flag, long msgTime, String msgType) {
+        byte[] msgTypeBytes = msgType == null ? new byte[0] : StringUtils.getBytesUtf8(msgType);
+        int extLen = msgTime >= 0
+                ? DataStoreUtils.STORE_EXT_HEADER_LEN + msgTypeBytes.length : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(
+                DataStoreUtils.STORE_DATA_HEADER_LEN + extLen + payLoad.length);
+        buffer.putInt(DataStoreUtils.STORE_DATA_PREFX_LEN + extLen + payLoad.length);
+        buffer.putInt(DataStoreUtils.STORE_DATA_TOKER_BEGIN_VALUE);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putLong(-1L);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putLong(1L);
+        if (extLen > 0) {
+            buffer.putInt(flag | MessageFlagUtils.STORE_SYS_HEADER_EXT);
+            buffer.putInt(extLen);
+            buffer.putLong(msgTime);
+            buffer.put(msgTypeBytes);
+        } else {
+            buffer.putInt(flag);
+        }
+        buffer.put(payLoad);
+        buffer.flip();
+        return buffer;
+    }
 }
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.broker.utils;
+
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * ReadBufferPool test.
+ */
+public class ReadBufferPoolTest {
+
+    @Test
+    public void borrowAndReturn() {
+        ReadBufferPool bufferPool = new ReadBufferPool(1024);
+        // first borrow allocates a new buffer
+        ByteBuffer buffer =
+                bufferPool.borrowBuffer(ReadBufferPool.BufferType.DATA, 100);
+        Assert.assertEquals(100, buffer.limit());
+        Assert.assertEquals(1, bufferPool.getMissCount(ReadBufferPool.BufferType.DATA));
+        bufferPool.returnBuffer(ReadBufferPool.BufferType.DATA, buffer);
+        // the returned buffer is reused
+        ByteBuffer buffer2 =
+                bufferPool.borrowBuffer(ReadBufferPool.BufferType.DATA, 50);
+        Assert.assertSame(buffer, buffer2);
+        Assert.assertEquals(50, buffer2.limit());
+        Assert.assertEquals(1, bufferPool.getHitCount(ReadBufferPool.BufferType.DATA));
+        // a borrowed buffer is not shared
+        ByteBuffer buffer3 =
+                bufferPool.borrowBuffer(ReadBufferPool.BufferType.DATA, 50);
+        Assert.assertNotSame(buffer2, buffer3);
+        Assert.assertEquals(0, bufferPool.getHitCount(ReadBufferPool.BufferType.INDEX));
+        // the buffer larger than the max cached size is dropped
+        bufferPool.returnBuffer(ReadBufferPool.BufferType.INDEX, ByteBuffer.allocate(2048));
+        bufferPool.borrowBuffer(ReadBufferPool.BufferType.INDEX, 10);
+        Assert.assertEquals(1, bufferPool.getMissCount(ReadBufferPool.BufferType.INDEX));
+    }
+}
@@ -17,9 +17,13 @@
 
 package org.apache.inlong.tubemq.server.common;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.inlong.tubemq.server.common.heartbeat.HeartbeatManager;
 import org.apache.inlong.tubemq.server.common.heartbeat.TimeoutInfo;
 import org.apache.inlong.tubemq.server.common.heartbeat.TimeoutListener;
+import org.apache.inlong.tubemq.server.common.heartbeat.TimeoutWheel;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -85,4 +89,32 @@ public class HeartbeatManagerTest {
         Assert.assertTrue(heartbeatManager.getProducerRegMap().get("node1").getTimeoutTime()
                 > System.currentTimeMillis());
     }
+
+    @Test
+    public void testTimeoutWheel() {
+        TimeoutWheel timeoutWheel = new TimeoutWheel(1000, 8);
+        ConcurrentHashMap<String, TimeoutInfo> nodeMap = new ConcurrentHashMap<>();
+        final Map<String, TimeoutInfo> expiredNodes = new HashMap<>();
+        final long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            TimeoutInfo timeoutInfo = new TimeoutInfo(5000);
+            nodeMap.put("node" + i, timeoutInfo);
+            timeoutWheel.add("node" + i, timeoutInfo);
+        }
+        // node1 is refreshed beyond a wheel round, node2 is unregistered
+        nodeMap.get("node1").updTimeoutTime(20000);
+        nodeMap.remove("node2");
+        timeoutWheel.advance(startTime + 3000, nodeMap, expiredNodes);
+        Assert.assertTrue(expiredNodes.isEmpty());
+        Assert.assertEquals(3, timeoutWheel.advance(startTime + 7000, nodeMap, expiredNodes));
+        Assert.assertEquals(1, expiredNodes.size());
+        Assert.assertTrue(expiredNodes.containsKey("node0"));
+        Assert.assertFalse(nodeMap.containsKey("node0"));
+        expiredNodes.clear();
+        timeoutWheel.advance(startTime + 15000, nodeMap, expiredNodes);
+        Assert.assertTrue(expiredNodes.isEmpty());
+        timeoutWheel.advance(startTime + 22000, nodeMap, expiredNodes);
+        Assert.assertTrue(expiredNodes.containsKey("node1"));
+        Assert.assertTrue(nodeMap.isEmpty());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.inlong.tubemq.server.common.heartbeat.TimeoutInfo;
+import org.apache.inlong.tubemq.server.common.heartbeat.TimeoutWheel;
+
+/***
+ * Per second check cost of the heartbeat timeouts, the full map scan against the timing wheel,
+ * run it by main method, e.g. HeartbeatScanBenchmark [nodeCount] [timeoutMs]
+ */
+public class HeartbeatScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int nodeCnt = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        final long timeoutMs = args.length > 1 ? Long.parseLong(args[1]) : 30000L;
+        final int heartbeatSecs = 5;
+        final int warmupCnt = 60;
+        final int checkCnt = 120;
+        final ConcurrentHashMap<String, TimeoutInfo> nodeMap = new ConcurrentHashMap<>();
+        final TimeoutWheel timeoutWheel = new TimeoutWheel(1000L, 512);
+        final TimeoutInfo[] timeoutInfos = new TimeoutInfo[nodeCnt];
+        final long startTime = System.currentTimeMillis();
+        for (int i = 0; i < nodeCnt; i++) {
+            // the nodes registered in different seconds
+            timeoutInfos[i] = new TimeoutInfo(timeoutMs - (i % heartbeatSecs) * 1000L);
+            nodeMap.put("node-" + i, timeoutInfos[i]);
+            timeoutWheel.add("node-" + i, timeoutInfos[i]);
+        }
+        // each node sends heartbeat every few seconds, so no node expires
+        long scanCostNs = 0L;
+        long wheelCostNs = 0L;
+        long wheelVisitCnt = 0L;
+        final Map<String, TimeoutInfo> expiredNodes = new HashMap<>();
+        for (int i = 1; i <= warmupCnt + checkCnt; i++) {
+            long currentTime = startTime + i * 1000L;
+            for (int j = i % heartbeatSecs; j < nodeCnt; j += heartbeatSecs) {
+                timeoutInfos[j].updTimeoutTime(currentTime - System.currentTimeMillis() + timeoutMs);
+            }
+            long checkStart = System.nanoTime();
+            int expiredCnt = 0;
+            for (Map.Entry<String, TimeoutInfo> entry : nodeMap.entrySet()) {
+                if (currentTime >= entry.getValue().getTimeoutTime()) {
+                    expiredCnt++;
+                }
+            }
+            long scanCost = System.nanoTime() - checkStart;
+            checkStart = System.nanoTime();
+            int visitCnt = timeoutWheel.advance(currentTime, nodeMap, expiredNodes);
+            long wheelCost = System.nanoTime() - checkStart;
+            if (expiredCnt > 0 || !expiredNodes.isEmpty()) {
+                throw new IllegalStateException("Unexpected timeout node found!");
+            }
+            if (i > warmupCnt) {
+                scanCostNs += scanCost;
+                wheelCostNs += wheelCost;
+                wheelVisitCnt += visitCnt;
+            }
+        }
+        System.out.println(new StringBuilder(256).append("nodes=").append(nodeCnt)
+                .append(", timeoutMs=").append(timeoutMs)
+                .append(", full scan=").append(scanCostNs / checkCnt / 1000)
+                .append(" us/check, visited=").append(nodeCnt)
+                .append(" nodes/check, timing wheel=").append(wheelCostNs / checkCnt / 1000)
+                .append(" us/check, visited=").append(wheelVisitCnt / checkCnt)
+                .append(" nodes/check").toString());
+    }
+}
@@ -47,4 +47,27 @@ public class WebParameterTest {
                 "", 20, false, "10.0.0.0");
         Assert.assertEquals("10.0.0.0", ip);
     }
+
+    @Test
+    public void validDeletePolicyTest() throws Exception {
+        Assert.assertEquals("delete,168h", WebParameterUtils.validDeletePolicyParameter(
+                "deletePolicy", "delete,168", true, ""));
+        Assert.assertEquals("delete,168h,100g", WebParameterUtils.validDeletePolicyParameter(
+                "deletePolicy", "delete,168h,100g", true, ""));
+        Assert.assertEquals("delete,30m,512m", WebParameterUtils.validDeletePolicyParameter(
+                "deletePolicy", "delete,30m, 512M", true, ""));
+        Assert.assertEquals("delete,12h,1073741824", WebParameterUtils.validDeletePolicyParameter(
+                "deletePolicy", "delete,12h,1073741824", true, ""));
+        String[] illegalPolicies = {"delete,", "delete,168h,", "delete,168h,0g", "delete,168h,-1g",
+            "delete,168h,100x", "delete,168h,g", "delete,168h,100g,", "delete,168h,100g,1g",
+            "delete,168h,9223372036854775807k"};
+        for (String policy : illegalPolicies) {
+            try {
+                WebParameterUtils.validDeletePolicyParameter("deletePolicy", policy, true, "");
+                Assert.fail("the illegal delete policy is accepted: " + policy);
+            } catch (Exception e) {
+                Assert.assertTrue(e.getMessage().startsWith("Illegal value"));
+            }
+        }
+    }
 }
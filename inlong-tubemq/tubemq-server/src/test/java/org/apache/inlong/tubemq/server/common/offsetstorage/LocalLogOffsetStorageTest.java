@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.common.offsetstorage;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.inlong.tubemq.server.broker.utils.DataStoreUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalLogOffsetStorageTest {
+    private static final long INDEX_LEN = DataStoreUtils.STORE_INDEX_HEAD_LEN;
+    private File logDir;
+    private File crashDir;
+    private StubOffsetStorage zkStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        logDir = Files.createTempDirectory("offset-log").toFile();
+        crashDir = Files.createTempDirectory("offset-log-crash").toFile();
+        zkStorage = new StubOffsetStorage();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir(logDir);
+        deleteDir(crashDir);
+    }
+
+    @Test
+    public void testCommitAndRecover() throws Exception {
+        LocalLogOffsetStorage storage =
+                new LocalLogOffsetStorage(logDir.getPath(), 1, zkStorage, 3600000L);
+        List<OffsetStorageInfo> infoList = new ArrayList<>();
+        infoList.add(new OffsetStorageInfo("topic1", 1, 0, 10 * INDEX_LEN, 10L, true));
+        infoList.add(new OffsetStorageInfo("topic1", 1, 1, 20 * INDEX_LEN, 20L, true));
+        storage.commitOffset("group1", infoList, false);
+        infoList.get(0).getAndSetOffset(30 * INDEX_LEN);
+        storage.commitOffset("group1", infoList, false);
+        // nothing is sent to the backing storage before checkpoint
+        Assert.assertEquals(0, zkStorage.commitCnt);
+        Assert.assertEquals(30 * INDEX_LEN, storage.loadOffset("group1", "topic1", 0).getOffset());
+        Map<String, Map<String, Set<Integer>>> deleteMap = new HashMap<>();
+        Map<String, Set<Integer>> topicMap = new HashMap<>();
+        topicMap.put("topic1", new HashSet<Integer>());
+        topicMap.get("topic1").add(1);
+        deleteMap.put("group1", topicMap);
+        storage.deleteGroupOffsetInfo(deleteMap);
+        Assert.assertNull(storage.loadOffset("group1", "topic1", 1));
+        // simulate a crash, recover from a copy of the snapshot and the log
+        copyFiles(logDir, crashDir);
+        storage.close();
+        zkStorage = new StubOffsetStorage();
+        LocalLogOffsetStorage recovered =
+                new LocalLogOffsetStorage(crashDir.getPath(), 1, zkStorage, 3600000L);
+        OffsetStorageInfo info = recovered.loadOffset("group1", "topic1", 0);
+        Assert.assertEquals(30 * INDEX_LEN, info.getOffset());
+        Assert.assertEquals(10L, info.getMessageId());
+        Assert.assertNull(recovered.loadOffset("group1", "topic1", 1));
+        Assert.assertTrue(recovered.queryZkAllGroupTopicInfos()
+                .get("group1").contains("topic1"));
+        // the coalesced offsets are checkpointed on close
+        recovered.close();
+        Assert.assertEquals(1, zkStorage.commitCnt);
+        Assert.assertEquals(30 * INDEX_LEN, zkStorage.offsetMap.get("group1:topic1:0").longValue());
+    }
+
+    @Test
+    public void testCheckpointFailure() throws Exception {
+        LocalLogOffsetStorage storage =
+                new LocalLogOffsetStorage(logDir.getPath(), 1, zkStorage, 3600000L);
+        List<OffsetStorageInfo> infoList = new ArrayList<>();
+        infoList.add(new OffsetStorageInfo("topic1", 1, 0, 10 * INDEX_LEN, 10L, true));
+        storage.commitOffset("group1", infoList, false);
+        // the offsets failed to store are kept for the next checkpoint
+        zkStorage.isFailCommit = true;
+        storage.checkpoint(false);
+        Assert.assertEquals(1, zkStorage.commitCnt);
+        Assert.assertTrue(zkStorage.offsetMap.isEmpty());
+        zkStorage.isFailCommit = false;
+        storage.checkpoint(false);
+        Assert.assertEquals(2, zkStorage.commitCnt);
+        Assert.assertEquals(10 * INDEX_LEN, zkStorage.offsetMap.get("group1:topic1:0").longValue());
+        // nothing left to checkpoint
+        storage.checkpoint(false);
+        Assert.assertEquals(2, zkStorage.commitCnt);
+        storage.close();
+    }
+
+    @Test
+    public void testRecoverTornRecord() throws Exception {
+        // the offset digits of the last record are cut off by a crash
+        String tornOffset = String.valueOf(110 * INDEX_LEN);
+        Files.write(new File(logDir, "offsets.log").toPath(), ("C:group1:topic1:0:10:"
+                + (10 * INDEX_LEN) + "\nC:group1:topic1:1:20:" + (20 * INDEX_LEN)
+                + "\nC:group1:topic1:0:11:" + tornOffset.substring(0, tornOffset.length() - 1))
+                .getBytes("UTF-8"));
+        LocalLogOffsetStorage storage =
+                new LocalLogOffsetStorage(logDir.getPath(), 1, zkStorage, 3600000L);
+        Assert.assertEquals(10 * INDEX_LEN, storage.loadOffset("group1", "topic1", 0).getOffset());
+        Assert.assertEquals(20 * INDEX_LEN, storage.loadOffset("group1", "topic1", 1).getOffset());
+        storage.close();
+        Assert.assertEquals(10 * INDEX_LEN, zkStorage.offsetMap.get("group1:topic1:0").longValue());
+    }
+
+    private void copyFiles(File srcDir, File dstDir) throws Exception {
+        File[] files = srcDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.copy(file.toPath(), new File(dstDir, file.getName()).toPath());
+            }
+        }
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static class StubOffsetStorage implements OffsetStorage {
+        private final Map<String, Long> offsetMap = new HashMap<>();
+        private int commitCnt = 0;
+        private boolean isFailCommit = false;
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public OffsetStorageInfo loadOffset(String group, String topic, int partitionId) {
+            return null;
+        }
+
+        @Override
+        public void commitOffset(String group, Collection<OffsetStorageInfo> offsetInfoList,
+                                 boolean isFailRetry) {
+            commitCnt++;
+            if (isFailCommit) {
+                return;
+            }
+            for (OffsetStorageInfo info : offsetInfoList) {
+                offsetMap.put(group + ":" + info.getTopic() + ":" + info.getPartitionId(),
+                        info.getOffset());
+                info.setModified(false);
+            }
+        }
+
+        @Override
+        public Map<String, Set<String>> queryZkAllGroupTopicInfos() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Map<String, Set<String>> queryZKGroupTopicInfo(List<String> groupSet) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Map<Integer, Long> queryGroupOffsetInfo(String group, String topic,
+                                                      Set<Integer> partitionIds) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void deleteGroupOffsetInfo(
+                Map<String, Map<String, Set<Integer>>> groupTopicPartMap) {
+        }
+    }
+}
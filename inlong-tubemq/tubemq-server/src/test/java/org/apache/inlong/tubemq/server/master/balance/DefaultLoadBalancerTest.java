@@ -0,0 +1,274 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.master.balance;
+
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.ConsumerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.apache.inlong.tubemq.server.master.nodemanage.nodebroker.BrokerConfManager;
+import org.apache.inlong.tubemq.server.master.nodemanage.nodebroker.BrokerInfoHolder;
+import org.apache.inlong.tubemq.server.master.nodemanage.nodebroker.TopicPSInfoManager;
+import org.apache.inlong.tubemq.server.master.nodemanage.nodeconsumer.ConsumerInfoHolder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class DefaultLoadBalancerTest {
+    private static final String GROUP = "test_group";
+    private static final String TOPIC = "test_topic";
+
+    private final List<Partition> partitions = new ArrayList<>();
+    private DefaultLoadBalancer loadBalancer;
+    private ConsumerInfoHolder consumerHolder;
+    private TopicPSInfoManager topicPSInfoManager;
+    private BrokerConfManager brokerConfManager;
+    // consumer id -> topic -> partition key -> partition
+    private Map<String, Map<String, Map<String, Partition>>> clusterState;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int brokerId = 1; brokerId <= 3; brokerId++) {
+            BrokerInfo brokerInfo = new BrokerInfo(brokerId + ":127.0.0.1:8123");
+            for (int partId = 0; partId < 4; partId++) {
+                partitions.add(new Partition(brokerInfo, TOPIC, partId));
+            }
+        }
+        loadBalancer = new DefaultLoadBalancer();
+        consumerHolder = new ConsumerInfoHolder();
+        topicPSInfoManager = mock(TopicPSInfoManager.class);
+        when(topicPSInfoManager.getTopicMaxBrokerCount(anySet())).thenReturn(3);
+        when(topicPSInfoManager.getPartitionMap(anySet())).thenAnswer(
+                new Answer<Map<String, Partition>>() {
+                    @Override
+                    public Map<String, Partition> answer(InvocationOnMock invocation) {
+                        Map<String, Partition> partMap = new HashMap<>();
+                        for (Partition partition : partitions) {
+                            partMap.put(partition.getPartitionKey(), partition);
+                        }
+                        return partMap;
+                    }
+                });
+        brokerConfManager = mock(BrokerConfManager.class);
+        clusterState = new HashMap<>();
+    }
+
+    @Test
+    public void testStableAssignment() {
+        for (int i = 0; i < 4; i++) {
+            addConsumer("consumer_" + i, partitions.subList(i * 3, i * 3 + 3));
+        }
+        Map<String, Map<String, Map<String, Partition>>> oldState = copyState(clusterState);
+        applyResult(balance());
+        // the balanced assignments stay put
+        Assert.assertEquals(oldState, clusterState);
+        Assert.assertEquals(0, countMovedPartitions(oldState, clusterState));
+    }
+
+    @Test
+    public void testConsumerJoin() {
+        for (int i = 0; i < 3; i++) {
+            addConsumer("consumer_" + i, partitions.subList(i * 4, i * 4 + 4));
+        }
+        addConsumer("consumer_3", new ArrayList<Partition>());
+        final Map<String, Map<String, Map<String, Partition>>> oldState = copyState(clusterState);
+        applyResult(balance());
+        assertBalanced(4);
+        // only the partitions of the quota of the new consumer are moved
+        Assert.assertEquals(3, countMovedPartitions(oldState, clusterState));
+        Assert.assertEquals(3, getPartitions("consumer_3").size());
+        for (int i = 0; i < 3; i++) {
+            Set<Partition> oldParts = new HashSet<>(
+                    oldState.get("consumer_" + i).get(TOPIC).values());
+            Assert.assertTrue(oldParts.containsAll(getPartitions("consumer_" + i)));
+        }
+        // a second round moves nothing
+        final Map<String, Map<String, Map<String, Partition>>> balancedState =
+                copyState(clusterState);
+        applyResult(balance());
+        Assert.assertEquals(balancedState, clusterState);
+    }
+
+    @Test
+    public void testConsumerLeave() {
+        for (int i = 0; i < 4; i++) {
+            addConsumer("consumer_" + i, partitions.subList(i * 3, i * 3 + 3));
+        }
+        consumerHolder.removeConsumer(GROUP, "consumer_3");
+        final Map<String, Map<String, Map<String, Partition>>> oldState = copyState(clusterState);
+        clusterState.remove("consumer_3");
+        applyResult(balance());
+        assertBalanced(3);
+        // only the partitions of the left consumer are moved
+        Assert.assertEquals(3, countMovedPartitions(oldState, clusterState));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(getPartitions("consumer_" + i).containsAll(
+                    oldState.get("consumer_" + i).get(TOPIC).values()));
+        }
+        // a second round moves nothing
+        final Map<String, Map<String, Map<String, Partition>>> balancedState =
+                copyState(clusterState);
+        applyResult(balance());
+        Assert.assertEquals(balancedState, clusterState);
+    }
+
+    @Test
+    public void testWeightedAssignment() {
+        for (int i = 0; i < 4; i++) {
+            addConsumer("consumer_" + i, partitions.subList(i * 3, i * 3 + 3));
+        }
+        // the first partition takes most of the traffic, the others are idle
+        TrafficPartitionWeigher weigher = new TrafficPartitionWeigher();
+        weigher.updateBrokerPartLoads(1, Arrays.asList(TOPIC + ":0:100000:0"));
+        loadBalancer.setPartitionWeigher(weigher);
+        final Map<String, Map<String, Map<String, Partition>>> oldState = copyState(clusterState);
+        applyResult(balance());
+        // the consumer of the hot partition releases its idle partitions only
+        Assert.assertEquals(1, getPartitions("consumer_0").size());
+        Assert.assertTrue(getPartitions("consumer_0").contains(partitions.get(0)));
+        Assert.assertEquals(2, countMovedPartitions(oldState, clusterState));
+        int minLoad = Integer.MAX_VALUE;
+        int maxLoad = 0;
+        for (int i = 1; i < 4; i++) {
+            Set<Partition> partSet = getPartitions("consumer_" + i);
+            Assert.assertTrue(partSet.containsAll(
+                    oldState.get("consumer_" + i).get(TOPIC).values()));
+            minLoad = Math.min(minLoad, partSet.size());
+            maxLoad = Math.max(maxLoad, partSet.size());
+        }
+        Assert.assertEquals(3, minLoad);
+        Assert.assertEquals(4, maxLoad);
+        // a second round moves nothing
+        final Map<String, Map<String, Map<String, Partition>>> balancedState =
+                copyState(clusterState);
+        applyResult(balance());
+        Assert.assertEquals(balancedState, clusterState);
+    }
+
+    private Map<String, Map<String, List<Partition>>> balance() {
+        List<String> groups = new ArrayList<>();
+        groups.add(GROUP);
+        return loadBalancer.balanceCluster(clusterState, consumerHolder,
+                mock(BrokerInfoHolder.class), topicPSInfoManager, groups,
+                brokerConfManager, 10, new StringBuilder(512));
+    }
+
+    private void addConsumer(String consumerId, List<Partition> assignedParts) {
+        Set<String> topicSet = new HashSet<>();
+        topicSet.add(TOPIC);
+        consumerHolder.addConsumer(new ConsumerInfo(consumerId, false, GROUP, topicSet,
+                null, false, "", System.currentTimeMillis(), -1, null), false, false);
+        Map<String, Partition> partMap = new HashMap<>();
+        for (Partition partition : assignedParts) {
+            partMap.put(partition.getPartitionKey(), partition);
+        }
+        Map<String, Map<String, Partition>> topicPartMap = new HashMap<>();
+        topicPartMap.put(TOPIC, partMap);
+        clusterState.put(consumerId, topicPartMap);
+    }
+
+    private void applyResult(Map<String, Map<String, List<Partition>>> result) {
+        clusterState.clear();
+        for (Map.Entry<String, Map<String, List<Partition>>> entry : result.entrySet()) {
+            Map<String, Map<String, Partition>> topicPartMap = new HashMap<>();
+            for (Map.Entry<String, List<Partition>> topicEntry : entry.getValue().entrySet()) {
+                Map<String, Partition> partMap = new HashMap<>();
+                for (Partition partition : topicEntry.getValue()) {
+                    partMap.put(partition.getPartitionKey(), partition);
+                }
+                topicPartMap.put(topicEntry.getKey(), partMap);
+            }
+            clusterState.put(entry.getKey(), topicPartMap);
+        }
+    }
+
+    private Set<Partition> getPartitions(String consumerId) {
+        Set<Partition> partSet = new HashSet<>();
+        Map<String, Map<String, Partition>> topicPartMap = clusterState.get(consumerId);
+        if (topicPartMap != null) {
+            for (Map<String, Partition> partMap : topicPartMap.values()) {
+                partSet.addAll(partMap.values());
+            }
+        }
+        return partSet;
+    }
+
+    // every partition is assigned once and the loads differ by one at most
+    private void assertBalanced(int consumerCnt) {
+        Set<Partition> assignedParts = new HashSet<>();
+        int minLoad = Integer.MAX_VALUE;
+        int maxLoad = 0;
+        int totalLoad = 0;
+        Assert.assertEquals(consumerCnt, clusterState.size());
+        for (String consumerId : clusterState.keySet()) {
+            Set<Partition> partSet = getPartitions(consumerId);
+            assignedParts.addAll(partSet);
+            minLoad = Math.min(minLoad, partSet.size());
+            maxLoad = Math.max(maxLoad, partSet.size());
+            totalLoad += partSet.size();
+        }
+        Assert.assertEquals(partitions.size(), totalLoad);
+        Assert.assertEquals(partitions.size(), assignedParts.size());
+        Assert.assertTrue(maxLoad - minLoad <= 1);
+    }
+
+    // count the partitions assigned to a consumer not holding them before
+    private int countMovedPartitions(Map<String, Map<String, Map<String, Partition>>> oldState,
+                                     Map<String, Map<String, Map<String, Partition>>> newState) {
+        int movedCnt = 0;
+        for (Map.Entry<String, Map<String, Map<String, Partition>>> entry : newState.entrySet()) {
+            Map<String, Map<String, Partition>> oldTopicPartMap = oldState.get(entry.getKey());
+            for (Map.Entry<String, Map<String, Partition>> topicEntry
+                    : entry.getValue().entrySet()) {
+                for (String partKey : topicEntry.getValue().keySet()) {
+                    if (oldTopicPartMap == null
+                            || oldTopicPartMap.get(topicEntry.getKey()) == null
+                            || !oldTopicPartMap.get(topicEntry.getKey()).containsKey(partKey)) {
+                        movedCnt++;
+                    }
+                }
+            }
+        }
+        return movedCnt;
+    }
+
+    private Map<String, Map<String, Map<String, Partition>>> copyState(
+            Map<String, Map<String, Map<String, Partition>>> state) {
+        Map<String, Map<String, Map<String, Partition>>> stateCopy = new HashMap<>();
+        for (Map.Entry<String, Map<String, Map<String, Partition>>> entry : state.entrySet()) {
+            Map<String, Map<String, Partition>> topicPartMap = new HashMap<>();
+            for (Map.Entry<String, Map<String, Partition>> topicEntry
+                    : entry.getValue().entrySet()) {
+                topicPartMap.put(topicEntry.getKey(), new HashMap<>(topicEntry.getValue()));
+            }
+            stateCopy.put(entry.getKey(), topicPartMap);
+        }
+        return stateCopy;
+    }
+}
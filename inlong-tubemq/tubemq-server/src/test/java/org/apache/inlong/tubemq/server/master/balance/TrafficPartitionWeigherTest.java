@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.inlong.tubemq.server.master.balance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.apache.inlong.tubemq.corebase.cluster.BrokerInfo;
+import org.apache.inlong.tubemq.corebase.cluster.Partition;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * TrafficPartitionWeigher test.
+ */
+public class TrafficPartitionWeigherTest {
+
+    @Test
+    public void getWeight() {
+        TrafficPartitionWeigher weigher = new TrafficPartitionWeigher();
+        Partition part0 = buildPartition(1, 0);
+        final Partition part1 = buildPartition(1, 1);
+        final Partition part2 = buildPartition(1, 2);
+        final Partition otherPart0 = buildPartition(2, 0);
+        // the unreported partitions take the min weight
+        Assert.assertEquals(1024, weigher.getWeight(part0));
+        // the weight is the ingest rate plus the rate to drain the backlog in 60 seconds,
+        // the malformed items are skipped
+        weigher.updateBrokerPartLoads(1, Arrays.asList("test:0:5000:60000",
+                "test:1:10:0", "test:2:abc:100", "test:3"));
+        weigher.updateBrokerPartLoads(2, Arrays.asList("test:0:0:6000000"));
+        Assert.assertEquals(6000, weigher.getWeight(part0));
+        Assert.assertEquals(1024, weigher.getWeight(part1));
+        Assert.assertEquals(1024, weigher.getWeight(part2));
+        Assert.assertEquals(100000, weigher.getWeight(otherPart0));
+        // the partitions not in the latest report are taken as idle
+        weigher.updateBrokerPartLoads(1, Arrays.asList("test:1:20000:0"));
+        Assert.assertEquals(1024, weigher.getWeight(part0));
+        Assert.assertEquals(20000, weigher.getWeight(part1));
+        Assert.assertEquals(100000, weigher.getWeight(otherPart0));
+        weigher.updateBrokerPartLoads(1, new ArrayList<String>());
+        Assert.assertEquals(1024, weigher.getWeight(part1));
+        // the loads of an offline broker are removed
+        weigher.removeBroker(2);
+        Assert.assertEquals(1024, weigher.getWeight(otherPart0));
+    }
+
+    private Partition buildPartition(int brokerId, int partitionId) {
+        return new Partition(new BrokerInfo(brokerId + ":127.0.0.1:8123"), "test", partitionId);
+    }
+}